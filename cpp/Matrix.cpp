@@ -1,5 +1,6 @@
 #include "Matrix.h"
 #include <algorithm>
+#include <cstring>
 
 void Matrix::create(int _rows, int _columns) {
 	rows = _rows;
@@ -5,26 +5,98 @@
 #include <iostream>
 #include <math.h>
 #include <algorithm>
+#include <cstring>
 #include "TrainingSamples.h"
 #include "StreamBuffer.h"
 
-double sigmoid(double v) {
-	return 1.0 / (1.0 + exp(-v));
+template<typename T> T sigmoid(T v) {
+	return (T)1 / ((T)1 + exp(-v));
 }
 
-double sigmoid_prime(double v) {
-	double s = sigmoid(v);
-	return s * (1.0 - s);
+template<typename T> T sigmoid_prime(T v) {
+	T s = sigmoid(v);
+	return s * ((T)1 - s);
 }
 
-double* newMatrix(int rows, int columns) {
+// Activation ordinals, same order as org.yah.tests.perceptron.Activation
+enum Activation { SIGMOID = 0, RELU = 1, LEAKY_RELU = 2, TANH = 3, SOFTMAX = 4 };
+
+#define LEAKY_RELU_SLOPE 0.01
+
+// a[i] = activation(z[i]), the activation is resolved once for all elements
+template<typename T> void activate(int activation, const T* z, T* a, size_t count) {
+	switch (activation) {
+	case RELU:
+		for (size_t i = 0; i < count; i++)
+			a[i] = z[i] > 0 ? z[i] : 0;
+		break;
+	case LEAKY_RELU:
+		for (size_t i = 0; i < count; i++)
+			a[i] = z[i] > 0 ? z[i] : (T)LEAKY_RELU_SLOPE * z[i];
+		break;
+	case TANH:
+		for (size_t i = 0; i < count; i++)
+			a[i] = tanh(z[i]);
+		break;
+	default:
+		for (size_t i = 0; i < count; i++)
+			a[i] = sigmoid(z[i]);
+		break;
+	}
+}
+
+// z[i] = activation'(z[i])
+template<typename T> void derivative(int activation, T* z, size_t count) {
+	switch (activation) {
+	case RELU:
+		for (size_t i = 0; i < count; i++)
+			z[i] = z[i] > 0 ? (T)1 : (T)0;
+		break;
+	case LEAKY_RELU:
+		for (size_t i = 0; i < count; i++)
+			z[i] = z[i] > 0 ? (T)1 : (T)LEAKY_RELU_SLOPE;
+		break;
+	case TANH:
+		for (size_t i = 0; i < count; i++) {
+			T t = tanh(z[i]);
+			z[i] = (T)1 - t * t;
+		}
+		break;
+	default:
+		for (size_t i = 0; i < count; i++)
+			z[i] = sigmoid_prime(z[i]);
+		break;
+	}
+}
+
+// a = softmax(z) for one column of count values
+template<typename T> void softmax(const T* z, T* a, int count) {
+	T max = z[0];
+	for (int i = 1; i < count; i++)
+		max = std::max(max, z[i]);
+	T sum = 0;
+	for (int i = 0; i < count; i++) {
+		a[i] = exp(z[i] - max);
+		sum += a[i];
+	}
+	for (int i = 0; i < count; i++)
+		a[i] /= sum;
+}
+
+// fused softmax and cross entropy cost derivative: delta = softmax(z) - expected, for one column
+template<typename T> void softmaxCrossEntropy(const T* z, T* delta, int count, int expected) {
+	softmax(z, delta, count);
+	delta[expected] -= 1;
+}
+
+template<typename T> T* newMatrix(int rows, int columns) {
 	size_t capacity = (size_t)rows * columns;
-	double* res = new double[capacity];
-	memset(res, 0, capacity * sizeof(double));
+	T* res = new T[capacity];
+	memset(res, 0, capacity * sizeof(T));
 	return res;
 }
 
-int maxIndex(double* values, int count) {
+template<typename T> int maxIndex(const T* values, int count) {
 	int res = 0;
 	for (int i = 1; i < count; i++) {
 		if (values[i] > values[res])
@@ -33,22 +105,67 @@ int maxIndex(double* values, int count) {
 	return res;
 }
 
-class NeuralNetwork {
+// propagate and evaluate outputs, written in place in the java DirectBufferOutputs buffers
+struct NetworkOutputs {
+	int* indices; // [samples x topK]
+	int topK;
+	void* scores; // T [samples x topK], null if only the output index is requested
+	void* activations; // T [samples x outputs], null if not requested
+};
+
+// rank the outputs of a sample in one pass: keep the topK indices and scores and copy the activations if requested
+template<typename T> int rankOutputs(const T* values, int count, const NetworkOutputs& outputs, int sample) {
+	int topK = outputs.topK;
+	int* indices = outputs.indices + (size_t)sample * topK;
+	T* scores = (T*)outputs.scores + (size_t)sample * topK;
+	if (outputs.activations)
+		memcpy((T*)outputs.activations + (size_t)sample * count, values, count * sizeof(T));
+	int ranked = 0;
+	for (int i = 0; i < count; i++) {
+		T v = values[i];
+		// equal values keep the lowest index first, same as maxIndex
+		int rank = ranked;
+		while (rank > 0 && scores[rank - 1] < v)
+			rank--;
+		if (rank == topK)
+			continue;
+		for (int r = std::min(ranked, topK - 1); r > rank; r--) {
+			indices[r] = indices[r - 1];
+			scores[r] = scores[r - 1];
+		}
+		indices[rank] = i;
+		scores[rank] = v;
+		if (ranked < topK)
+			ranked++;
+	}
+	return indices[0];
+}
+
+class BaseNeuralNetwork {
+public:
+	virtual ~BaseNeuralNetwork() {}
+	virtual void propagate(const TrainingSamples& samples, const NetworkOutputs& outputs) = 0;
+	virtual double evaluate(const TrainingSamples& samples, const NetworkOutputs* outputs) = 0;
+	virtual void train(const TrainingSamples& samples, double learningRate) = 0;
+};
+
+template<typename T> class NeuralNetwork : public BaseNeuralNetwork {
 private:
 	int layersCount = 0;
 	int* layerSizes = 0;
-	double** weights = 0;
-	double** biases = 0;
+	int* layerActivations = 0;
+	T** weights = 0;
+	T** biases = 0;
 
 	int capacity = 0;
-	double** zs = 0;
-	double** activations = 0;
+	T** zs = 0;
+	T** activations = 0;
 
-	double** wgrads = 0;
-	double** bgrads = 0;
+	T** wgrads = 0;
+	T** bgrads = 0;
 public:
-	NeuralNetwork(int, int*, double* state);
-	~NeuralNetwork();
+	NeuralNetwork(int, int*, int*, T* state);
+	~NeuralNetwork() override;
 
 	inline int layers() const { return layersCount; }
 	inline int features() const { return layerSizes[0]; }
@@ -56,50 +173,50 @@ public:
 	inline int neurons(int layer) const { return layerSizes[layer + 1]; }
 	inline int features(int layer) const { return layerSizes[layer]; }
 
-	void propagate(const TrainingSamples& samples, int* outputs);
-	double evaluate(const TrainingSamples& samples, int* outputs);
-	void train(const TrainingSamples& samples, double learningRate);
+	void propagate(const TrainingSamples& samples, const NetworkOutputs& outputs) override;
+	double evaluate(const TrainingSamples& samples, const NetworkOutputs* outputs) override;
+	void train(const TrainingSamples& samples, double learningRate) override;
 
 private:
-	void forward(TrainingBatch& batch);
+	void forward(TrainingBatch<T>& batch);
+	void weightedInputs(int layer, const T* inputs, int samples);
+	void activateLayer(int layer, int samples);
 
 	void ensureCapacity(int capacity);
 
-	int indexOutputs(TrainingBatch& batch, int* outputs);
+	int indexOutputs(TrainingBatch<T>& batch, const NetworkOutputs* outputs);
 
-	void train(TrainingBatch& batch, double learningRate);
+	void train(TrainingBatch<T>& batch, double learningRate);
 
-	void backward(int layer, const double* inputs, int samples);
-	void updateNetwork(int layer, double lr);
+	void backward(int layer, const T* inputs, int samples);
+	void updateNetwork(int layer, T lr);
 
 };
 
-NeuralNetwork::NeuralNetwork(int _layersCount, int* _layerSizes, double* state)
-	: layersCount(_layersCount), layerSizes(_layerSizes) {
-	weights = new double* [layersCount];
-	biases = new double* [layersCount];
-	zs = new double* [layersCount];
-	activations = new double* [layersCount];
-	wgrads = new double* [layersCount];
-	bgrads = new double* [layersCount];
+template<typename T> NeuralNetwork<T>::NeuralNetwork(int _layersCount, int* _layerSizes, int* _layerActivations, T* state)
+	: layersCount(_layersCount), layerSizes(_layerSizes), layerActivations(_layerActivations) {
+	weights = new T* [layersCount];
+	biases = new T* [layersCount];
+	zs = new T* [layersCount];
+	activations = new T* [layersCount];
+	wgrads = new T* [layersCount];
+	bgrads = new T* [layersCount];
 
+	// NetworkParameters layout: for each layer, its weights (column major) followed by its biases
 	int stateOffset = 0;
 	for (int layer = 0; layer < layersCount; layer++)
 	{
 		weights[layer] = state + stateOffset;
 		stateOffset += neurons(layer) * features(layer);
-
-		wgrads[layer] = newMatrix(neurons(layer), features(layer));
-		bgrads[layer] = newMatrix(neurons(layer), 1);
-	}
-	for (int layer = 0; layer < layersCount; layer++)
-	{
 		biases[layer] = state + stateOffset;
 		stateOffset += neurons(layer);
+
+		wgrads[layer] = newMatrix<T>(neurons(layer), features(layer));
+		bgrads[layer] = newMatrix<T>(neurons(layer), 1);
 	}
 }
 
-NeuralNetwork::~NeuralNetwork() {
+template<typename T> NeuralNetwork<T>::~NeuralNetwork() {
 	for (int layer = 0; layer < layers(); layer++)
 	{
 		if (capacity) {
@@ -117,7 +234,7 @@ NeuralNetwork::~NeuralNetwork() {
 	delete[]biases;
 }
 
-void NeuralNetwork::ensureCapacity(int newCapacity) {
+template<typename T> void NeuralNetwork<T>::ensureCapacity(int newCapacity) {
 	if (capacity < newCapacity) {
 		if (capacity) {
 			for (int layer = 0; layer < layers(); layer++)
@@ -128,24 +245,24 @@ void NeuralNetwork::ensureCapacity(int newCapacity) {
 		}
 		for (int layer = 0; layer < layers(); layer++)
 		{
-			zs[layer] = newMatrix(neurons(layer), newCapacity);
-			activations[layer] = newMatrix(neurons(layer), newCapacity);
+			zs[layer] = newMatrix<T>(neurons(layer), newCapacity);
+			activations[layer] = newMatrix<T>(neurons(layer), newCapacity);
 		}
 		capacity = newCapacity;
 	}
 }
 
-void NeuralNetwork::propagate(const TrainingSamples& samples, int* outputs) {
-	TrainingBatch batch(samples);
+template<typename T> void NeuralNetwork<T>::propagate(const TrainingSamples& samples, const NetworkOutputs& outputs) {
+	TrainingBatch<T> batch(samples);
 	while (batch.hasNext()) {
 		forward(batch);
-		indexOutputs(batch, outputs);
+		indexOutputs(batch, &outputs);
 		batch.next();
 	}
 }
 
-double NeuralNetwork::evaluate(const TrainingSamples& samples, int* outputs) {
-	TrainingBatch batch(samples);
+template<typename T> double NeuralNetwork<T>::evaluate(const TrainingSamples& samples, const NetworkOutputs* outputs) {
+	TrainingBatch<T> batch(samples);
 	int matched = 0;
 	while (batch.hasNext()) {
 		forward(batch);
@@ -155,52 +272,87 @@ double NeuralNetwork::evaluate(const TrainingSamples& samples, int* outputs) {
 	return matched / (double)samples.size;
 }
 
-void NeuralNetwork::train(const TrainingSamples& samples, double learningRate) {
-	TrainingBatch batch(samples);
+template<typename T> void NeuralNetwork<T>::train(const TrainingSamples& samples, double learningRate) {
+	TrainingBatch<T> batch(samples);
 	while (batch.hasNext()) {
 		train(batch, learningRate);
 		batch.next();
 	}
 }
 
-void NeuralNetwork::forward(TrainingBatch& batch) {
+template<typename T> void NeuralNetwork<T>::forward(TrainingBatch<T>& batch) {
 	ensureCapacity(batch.size);
-	const double* inputs = batch.inputs();
+	const T* inputs = batch.inputs();
 	for (int layer = 0; layer < layers(); layer++)
 	{
-		// weight . inputs + bias
-		int neurons = this->neurons(layer);
-		int features = this->features(layer);
-		const double* w = weights[layer];
-		const double* b = biases[layer];
-		double* z = zs[layer];
-		double* a = activations[layer];
-		for (int neuron = 0; neuron < neurons; neuron++) {
-			for (int sample = 0; sample < batch.size; sample++) {
-				double s = 0;
-				for (int feature = 0; feature < features; feature++) {
-					s += w[feature * neurons + neuron] * inputs[sample * features + feature];
-				}
-				s += b[neuron];
-				z[sample * neurons + neuron] = s;
-				a[sample * neurons + neuron] = sigmoid(s);
+		weightedInputs(layer, inputs, batch.size);
+		activateLayer(layer, batch.size);
+		inputs = activations[layer];
+	}
+}
+
+template<typename T> void NeuralNetwork<T>::weightedInputs(int layer, const T* inputs, int samples) {
+	// weight . inputs + bias
+	int neurons = this->neurons(layer);
+	int features = this->features(layer);
+	const T* w = weights[layer];
+	const T* b = biases[layer];
+	T* z = zs[layer];
+	for (int neuron = 0; neuron < neurons; neuron++) {
+		for (int sample = 0; sample < samples; sample++) {
+			T s = 0;
+			for (int feature = 0; feature < features; feature++) {
+				s += w[feature * neurons + neuron] * inputs[sample * features + feature];
 			}
+			s += b[neuron];
+			z[sample * neurons + neuron] = s;
 		}
-		inputs = a;
 	}
 }
 
-void NeuralNetwork::train(TrainingBatch& batch, double learningRate) {
+template<typename T> void NeuralNetwork<T>::activateLayer(int layer, int samples) {
+	int neurons = this->neurons(layer);
+	T* z = zs[layer];
+	T* a = activations[layer];
+	if (layerActivations[layer] == SOFTMAX) {
+		for (int sample = 0; sample < samples; sample++) {
+			softmax(z + (size_t)sample * neurons, a + (size_t)sample * neurons, neurons);
+		}
+	} else {
+		activate(layerActivations[layer], z, a, (size_t)neurons * samples);
+	}
+}
+
+template<typename T> void NeuralNetwork<T>::train(TrainingBatch<T>& batch, double learningRate) {
 	// forward propagation
-	forward(batch);
+	ensureCapacity(batch.size);
+	int outputLayer = layersCount - 1;
+	const T* inputs = batch.inputs();
+	for (int layer = 0; layer < outputLayer; layer++)
+	{
+		weightedInputs(layer, inputs, batch.size);
+		activateLayer(layer, batch.size);
+		inputs = activations[layer];
+	}
+	weightedInputs(outputLayer, inputs, batch.size);
 
 	//cost derivative
-	double* a = activations[layersCount - 1];
+	T* z = zs[outputLayer];
+	T* a = activations[outputLayer];
 	int neurons = outputs();
-	for (int sample = 0; sample < batch.size; sample++)
-	{
-		for (int neuron = 0; neuron < neurons; neuron++) {
-			a[sample * neurons + neuron] -= batch.expectedIndex(sample) == neuron ? 1 : 0;
+	if (layerActivations[outputLayer] == SOFTMAX) {
+		// delta = softmax(z) - expected, in one pass per sample
+		for (int sample = 0; sample < batch.size; sample++) {
+			size_t offset = (size_t)sample * neurons;
+			softmaxCrossEntropy(z + offset, a + offset, neurons, batch.expectedIndex(sample));
+		}
+	} else {
+		activateLayer(outputLayer, batch.size);
+		for (int sample = 0; sample < batch.size; sample++)
+		{
+			for (int neuron = 0; neuron < neurons; neuron++) {
+				a[sample * neurons + neuron] -= batch.expectedIndex(sample) == neuron ? 1 : 0;
+			}
 		}
 	}
 
@@ -213,47 +365,56 @@ void NeuralNetwork::train(TrainingBatch& batch, double learningRate) {
 	backward(0, batch.inputs(), batch.size);
 
 	// model update
-	double lr = learningRate / batch.size;
+	T lr = (T) (learningRate / batch.size);
 	for (int layer = 0; layer < layersCount; layer++)
 	{
 		updateNetwork(layer, lr);
 	}
 }
 
-int NeuralNetwork::indexOutputs(TrainingBatch& batch, int* outputsIndices) {
+template<typename T> int NeuralNetwork<T>::indexOutputs(TrainingBatch<T>& batch, const NetworkOutputs* networkOutputs) {
 	int matched = 0;
-	double* networkOutputs = activations[layersCount - 1];
+	T* outputActivations = activations[layersCount - 1];
 	int outputsCount = outputs();
+	bool ranked = networkOutputs && networkOutputs->scores;
 	for (int sample = 0; sample < batch.size; sample++)
 	{
-		int outputIndex = maxIndex(networkOutputs + (size_t) sample * outputsCount, outputsCount);
+		const T* values = outputActivations + (size_t)sample * outputsCount;
+		int outputIndex;
+		if (ranked) {
+			// ranked outputs replace the max index pass
+			outputIndex = rankOutputs(values, outputsCount, *networkOutputs, batch.offset + sample);
+		} else {
+			outputIndex = maxIndex(values, outputsCount);
+			if (networkOutputs)
+				networkOutputs->indices[batch.offset + sample] = outputIndex;
+		}
 		if (outputIndex == batch.expectedIndex(sample))
 			matched++;
-		if (outputsIndices)
-			outputsIndices[batch.offset + sample] = outputIndex;
 	}
 	return matched;
 }
 
-void NeuralNetwork::backward(int layer, const double* inputs, int samples) {
+template<typename T> void NeuralNetwork<T>::backward(int layer, const T* inputs, int samples) {
 	int neurons = this->neurons(layer);
 	int features = this->features(layer);
-	double* z = zs[layer];
-	double* a = activations[layer];
-	double* bgrad = bgrads[layer];
-	double* wgrad = wgrads[layer];
-
-	// delta = activation * sigmoid_prime(z) 
-	for (int sample = 0; sample < samples; sample++) {
-		for (int neuron = 0; neuron < neurons; neuron++) {
-			int offset = sample * neurons + neuron;
-			a[offset] *= sigmoid_prime(z[offset]);
+	T* z = zs[layer];
+	T* a = activations[layer];
+	T* bgrad = bgrads[layer];
+	T* wgrad = wgrads[layer];
+
+	// delta = activation * activation'(z), softmax delta is computed with the cost derivative
+	if (layerActivations[layer] != SOFTMAX) {
+		size_t count = (size_t)neurons * samples;
+		derivative(layerActivations[layer], z, count);
+		for (size_t i = 0; i < count; i++) {
+			a[i] *= z[i];
 		}
 	}
 
 	// bgrad = sum(activations[r])
 	for (int neuron = 0; neuron < neurons; neuron++) {
-		double s = 0;
+		T s = 0;
 		for (int sample = 0; sample < samples; sample++) {
 			s += a[sample * neurons + neuron];
 		}
@@ -263,7 +424,7 @@ void NeuralNetwork::backward(int layer, const double* inputs, int samples) {
 	// wgrad = a . T(inputs)
 	for (int neuron = 0; neuron < neurons; neuron++) {
 		for (int feature = 0; feature < features; feature++) {
-			double s = 0;
+			T s = 0;
 			for (int sample = 0; sample < samples; sample++) {
 				s += a[sample * neurons + neuron] * inputs[sample * features + feature];
 			}
@@ -273,12 +434,12 @@ void NeuralNetwork::backward(int layer, const double* inputs, int samples) {
 
 	if (layer > 0) {
 		// activations[layer - 1] = T(weights[layer]) . a 
-		double* nexta = activations[layer - 1];
-		double* weight = weights[layer];
+		T* nexta = activations[layer - 1];
+		T* weight = weights[layer];
 		for (int feature = 0; feature < features; feature++)
 		{
 			for (int sample = 0; sample < samples; sample++) {
-				double s = 0;
+				T s = 0;
 				for (int neuron = 0; neuron < neurons; neuron++) {
 					s += weight[feature * neurons + neuron] * a[sample * neurons + neuron];
 				}
@@ -288,12 +449,12 @@ void NeuralNetwork::backward(int layer, const double* inputs, int samples) {
 	}
 }
 
-void NeuralNetwork::updateNetwork(int layer, double lr) {
+template<typename T> void NeuralNetwork<T>::updateNetwork(int layer, T lr) {
 	// w = w - (learningRate/batchSize) * wgrad
 	int neurons = this->neurons(layer);
 	int features = this->features(layer);
-	double* weight = weights[layer];
-	double* wgrad = wgrads[layer];
+	T* weight = weights[layer];
+	T* wgrad = wgrads[layer];
 	for (int feature = 0; feature < features; feature++) {
 		for (int neuron = 0; neuron < neurons; neuron++) {
 			int offset = feature * neurons + neuron;
@@ -301,8 +462,8 @@ void NeuralNetwork::updateNetwork(int layer, double lr) {
 		}
 	}
 	// b = b - (learningRate/batchSize) * bgrad
-	double* bias = biases[layer];
-	double* bgrad = bgrads[layer];
+	T* bias = biases[layer];
+	T* bgrad = bgrads[layer];
 	for (int neuron = 0; neuron < neurons; neuron++) {
 		bias[neuron] -= bgrad[neuron] * lr;
 	}
@@ -311,9 +472,9 @@ void NeuralNetwork::updateNetwork(int layer, double lr) {
 /*
  * Class:     org_yah_tests_perceptron_jni_NativeNeuralNetwork
  * Method:    create
- * Signature: ([I)J
+ * Signature: (Ljava/nio/ByteBuffer;I)J
  */
-JNIEXPORT jlong JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_create(JNIEnv* env, jclass, jobject _stateBuffer) {
+JNIEXPORT jlong JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_create(JNIEnv* env, jclass, jobject _stateBuffer, jint typeSize) {
 	StreamBuffer sb(env, _stateBuffer);
 	int layersCount;
 	if (!sb.next(layersCount))
@@ -321,7 +482,14 @@ JNIEXPORT jlong JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_cr
 	int* layerSizes;
 	if (!sb.array(layerSizes, layersCount + 1))
 		return 0;
-	return (jlong) new NeuralNetwork(layersCount, layerSizes, (double*) sb.address());
+	int* layerActivations;
+	if (!sb.array(layerActivations, layersCount))
+		return 0;
+	if (typeSize == sizeof(float))
+		return (jlong) new NeuralNetwork<float>(layersCount, layerSizes, layerActivations, (float*) sb.address());
+	if (typeSize == sizeof(double))
+		return (jlong) new NeuralNetwork<double>(layersCount, layerSizes, layerActivations, (double*) sb.address());
+	return 0;
 }
 
 /*
@@ -330,21 +498,34 @@ JNIEXPORT jlong JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_cr
  * Signature: (J)V
  */
 JNIEXPORT void JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_delete(JNIEnv*, jobject, jlong networkReference) {
-	delete ((NeuralNetwork*)networkReference);
+	delete ((BaseNeuralNetwork*)networkReference);
+}
+
+static NetworkOutputs networkOutputs(JNIEnv* env, jobject _indicesBuffer, jint topK, jobject _scoresBuffer, jobject _activationsBuffer) {
+	NetworkOutputs outputs;
+	outputs.indices = (int*)env->GetDirectBufferAddress(_indicesBuffer);
+	outputs.topK = topK;
+	outputs.scores = _scoresBuffer ? env->GetDirectBufferAddress(_scoresBuffer) : 0;
+	outputs.activations = _activationsBuffer ? env->GetDirectBufferAddress(_activationsBuffer) : 0;
+	return outputs;
 }
 
-JNIEXPORT void JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_propagate(JNIEnv* env, jclass, jlong networkReference, jobject _samplesBuffer, jobject _outputsBuffer) {
-	NeuralNetwork* network = (NeuralNetwork*)networkReference;
+JNIEXPORT void JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_propagate(JNIEnv* env, jclass, jlong networkReference, jobject _samplesBuffer,
+	jobject _outputsBuffer, jint topK, jobject _scoresBuffer, jobject _activationsBuffer) {
+	BaseNeuralNetwork* network = (BaseNeuralNetwork*)networkReference;
 	TrainingSamples* samples = (TrainingSamples*)env->GetDirectBufferAddress(_samplesBuffer);
-	int* outputs = (int*)env->GetDirectBufferAddress(_outputsBuffer);
+	NetworkOutputs outputs = networkOutputs(env, _outputsBuffer, topK, _scoresBuffer, _activationsBuffer);
 	network->propagate(*samples, outputs);
 }
 
-JNIEXPORT jdouble JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_evaluate(JNIEnv* env, jclass, jlong networkReference, jobject _samplesBuffer, jobject _outputsBuffer) {
-	NeuralNetwork* network = (NeuralNetwork*)networkReference;
+JNIEXPORT jdouble JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_evaluate(JNIEnv* env, jclass, jlong networkReference, jobject _samplesBuffer,
+	jobject _outputsBuffer, jint topK, jobject _scoresBuffer, jobject _activationsBuffer) {
+	BaseNeuralNetwork* network = (BaseNeuralNetwork*)networkReference;
 	TrainingSamples* samples = (TrainingSamples*)env->GetDirectBufferAddress(_samplesBuffer);
-	int* outputs = _outputsBuffer ? (int*)env->GetDirectBufferAddress(_outputsBuffer) : 0;
-	return network->evaluate(*samples, outputs);
+	if (!_outputsBuffer)
+		return network->evaluate(*samples, 0);
+	NetworkOutputs outputs = networkOutputs(env, _outputsBuffer, topK, _scoresBuffer, _activationsBuffer);
+	return network->evaluate(*samples, &outputs);
 }
 
 /*
@@ -353,7 +534,7 @@ JNIEXPORT jdouble JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_
  * Signature: (JJD)V
  */
 JNIEXPORT void JNICALL Java_org_yah_tests_perceptron_jni_NativeNeuralNetwork_train(JNIEnv* env, jclass, jlong networkReference, jobject _samplesBuffer, jdouble learningRate) {
-	NeuralNetwork* network = (NeuralNetwork*)networkReference;
+	BaseNeuralNetwork* network = (BaseNeuralNetwork*)networkReference;
 	TrainingSamples* samples = (TrainingSamples*)env->GetDirectBufferAddress(_samplesBuffer);
 	network->train(*samples, learningRate);
 }
\ No newline at end of file
@@ -1,23 +1,31 @@
 #pragma once
 
 #include <algorithm>
+#include <cstring>
+#include <vector>
 
 struct TrainingSamples {
 	int size = 0;
 	int batchSize = 0;
 	int features = 0;
 	
-	double* inputs = 0;
+	void* inputs = 0; // float or double, depending on network precision
 	int* expectedIndices = 0;
+	int* indices = 0; // iteration order, null for the inputs order
 };
 
-struct TrainingBatch {
+template<typename T> struct TrainingBatch {
 	const TrainingSamples samples;
 	int size = 0;
 	int offset = 0;
+	std::vector<T> gathered; // batch inputs gathered through the samples indices
 
 	TrainingBatch(const TrainingSamples& _samples) : samples(_samples) {
 		size = std::min(samples.batchSize, samples.size);
+		if (samples.indices) {
+			gathered.resize((size_t) size * samples.features);
+			gather();
+		}
 	};
 
 	inline bool hasNext() {
@@ -27,14 +35,30 @@ struct TrainingBatch {
 	inline void next() {
 		offset += size;
 		size = std::min(samples.batchSize, samples.size - offset);
+		if (samples.indices && size > 0)
+			gather();
 	}
 
-	inline const double* inputs() const {
-		return samples.inputs + (size_t) offset * samples.features;
+	inline const T* inputs() const {
+		if (samples.indices)
+			return gathered.data();
+		return (const T*) samples.inputs + (size_t) offset * samples.features;
 	}
 
 	inline int expectedIndex(int index) const {
-		return samples.expectedIndices ? samples.expectedIndices[offset + index] : 0;
+		if (!samples.expectedIndices)
+			return 0;
+		return samples.expectedIndices[samples.indices ? samples.indices[offset + index] : offset + index];
+	}
+
+private:
+	void gather() {
+		const T* source = (const T*) samples.inputs;
+		for (int sample = 0; sample < size; sample++) {
+			memcpy(gathered.data() + (size_t) sample * samples.features,
+				source + (size_t) samples.indices[offset + sample] * samples.features,
+				sizeof(T) * samples.features);
+		}
 	}
 
 };
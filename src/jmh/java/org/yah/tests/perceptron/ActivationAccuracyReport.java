@@ -0,0 +1,61 @@
+package org.yah.tests.perceptron;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Print the absolute error of the approximate activations ({@link SigmoidTable} and the Schraudolph
+ * {@link Activation#exp(double)}) against {@link Math#exp(double)} and {@link Math#tanh(double)}.<br/>
+ * <code>java -cp target/benchmarks.jar org.yah.tests.perceptron.ActivationAccuracyReport [min max step]</code>
+ *
+ * @author Yah
+ */
+public final class ActivationAccuracyReport {
+
+    private final double min, max, step;
+
+    private ActivationAccuracyReport(double min, double max, double step) {
+        this.min = min;
+        this.max = max;
+        this.step = step;
+    }
+
+    public static void main(String[] args) {
+        double min = args.length > 0 ? Double.parseDouble(args[0]) : -20;
+        double max = args.length > 1 ? Double.parseDouble(args[1]) : 20;
+        double step = args.length > 2 ? Double.parseDouble(args[2]) : 1E-4;
+        ActivationAccuracyReport report = new ActivationAccuracyReport(min, max, step);
+
+        System.out.printf("absolute error on [%s, %s], step %s%n", min, max, step);
+        System.out.printf("%-24s %14s %14s %14s%n", "function", "max", "mean", "max at");
+        DoubleUnaryOperator sigmoid = v -> 1.0 / (1.0 + Math.exp(-v));
+        DoubleUnaryOperator schraudolph = v -> 1.0 / (1.0 + Activation.exp(-v));
+        report.print("sigmoid table", sigmoid, SigmoidTable::sigmoid);
+        report.print("sigmoid schraudolph", sigmoid, schraudolph);
+        report.print("sigmoid' table", prime(sigmoid), prime(SigmoidTable::sigmoid));
+        report.print("sigmoid' schraudolph", prime(sigmoid), prime(schraudolph));
+        report.print("tanh table", Math::tanh, v -> 2 * SigmoidTable.sigmoid(2 * v) - 1);
+        report.print("tanh schraudolph", Math::tanh, v -> 2 * schraudolph.applyAsDouble(2 * v) - 1);
+    }
+
+    private static DoubleUnaryOperator prime(DoubleUnaryOperator sigmoid) {
+        return v -> {
+            double s = sigmoid.applyAsDouble(v);
+            return s * (1 - s);
+        };
+    }
+
+    private void print(String name, DoubleUnaryOperator expected, DoubleUnaryOperator actual) {
+        double maxError = 0, sum = 0, maxAt = min;
+        long count = 0;
+        for (double v = min; v <= max; v += step, count++) {
+            double error = Math.abs(expected.applyAsDouble(v) - actual.applyAsDouble(v));
+            if (error > maxError) {
+                maxError = error;
+                maxAt = v;
+            }
+            sum += error;
+        }
+        System.out.printf("%-24s %14.3e %14.3e %14.4f%n", name, maxError, sum / count, maxAt);
+    }
+
+}
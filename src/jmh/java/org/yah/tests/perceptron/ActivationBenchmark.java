@@ -0,0 +1,68 @@
+package org.yah.tests.perceptron;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk sigmoid over <code>length</code> values in [-8, 8]: {@link Math#exp(double)}, {@link SigmoidTable} and
+ * the Schraudolph {@link Activation#exp(double)}.<br/>
+ * <code>activation</code> is {@link Activation#activate(double[], int, double[], int, int, boolean)} in the default
+ * mode of the engines: exact, add <code>-jvmArgs -Dactivation.approximate=true</code> to use the table.
+ *
+ * @author Yah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ActivationBenchmark {
+
+    @Param({"1024", "65536"})
+    public int length;
+
+    private double[] src;
+    private double[] dst;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(12345);
+        src = new double[length];
+        dst = new double[length];
+        for (int i = 0; i < length; i++) {
+            src[i] = random.nextDouble() * 16 - 8;
+        }
+    }
+
+    @Benchmark
+    public double[] exp() {
+        for (int i = 0; i < length; i++) {
+            dst[i] = 1.0 / (1.0 + Math.exp(-src[i]));
+        }
+        return dst;
+    }
+
+    @Benchmark
+    public double[] table() {
+        SigmoidTable.sigmoid(src, 0, dst, 0, length);
+        return dst;
+    }
+
+    @Benchmark
+    public double[] schraudolph() {
+        for (int i = 0; i < length; i++) {
+            dst[i] = 1.0 / (1.0 + Activation.exp(-src[i]));
+        }
+        return dst;
+    }
+
+    @Benchmark
+    public double[] activation() {
+        Activation.SIGMOID.activate(src, 0, dst, 0, length, Activation.APPROXIMATE);
+        return dst;
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.yah.tests.perceptron;
+
+import org.openjdk.jmh.annotations.*;
+import org.yah.tests.perceptron.NeuralNetworkBenchmark.RandomSamplesProvider;
+import org.yah.tests.perceptron.base.DefaultNetworkState;
+import org.yah.tests.perceptron.mt.HogwildNeuralNetwork;
+import org.yah.tests.perceptron.mt.MTNeuralNetwork;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous {@link HogwildNeuralNetwork} training versus the synchronous {@link MTNeuralNetwork} ones: one epoch
+ * per operation, the <code>samples</code> counter gives the samples/s. The racy updates may cost accuracy: the
+ * accuracy on the training samples is printed after each iteration, compare it at the same iteration.<br/>
+ * Each trial starts from the same initial state.
+ *
+ * @author Yah
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HogwildBenchmark {
+
+    private static final double LEARNING_RATE = 0.1;
+
+    @Param({"mt", "mt-samples", "hogwild"})
+    public String engine;
+
+    @Param({"2-64-64-2", "64-256-10"})
+    public String topology;
+
+    @Param({"16", "64"})
+    public int batchSize;
+
+    @Param({"100000"})
+    public int samples;
+
+    private NeuralNetwork network;
+    private TrainingSamples training;
+    private int iteration;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class SamplesCounter {
+        public long samples;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            samples = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        int[] layers = Arrays.stream(topology.split("-")).mapToInt(Integer::parseInt).toArray();
+        DefaultNetworkState state = new DefaultNetworkState(RandomUtils.newRandomSource(12345), layers);
+        state.activation(state.layers() - 1, Activation.SOFTMAX);
+        network = NeuralNetworkBenchmark.createNetwork(engine, state, Precision.DOUBLE);
+        training = network.createTraining(new RandomSamplesProvider(samples, layers[0], layers[layers.length - 1]),
+                batchSize);
+        iteration = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printAccuracy() {
+        System.out.printf(Locale.ENGLISH, "%n%s iteration %d accuracy %.4f%n", engine, ++iteration,
+                network.evaluate(training));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (network instanceof AutoCloseable)
+            ((AutoCloseable) network).close();
+    }
+
+    @Benchmark
+    public void train(SamplesCounter counter) {
+        network.train(training, LEARNING_RATE);
+        counter.samples += training.size();
+    }
+
+}
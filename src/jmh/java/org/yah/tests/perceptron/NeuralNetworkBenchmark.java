@@ -0,0 +1,202 @@
+package org.yah.tests.perceptron;
+
+import org.openjdk.jmh.annotations.*;
+import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
+import org.yah.tests.perceptron.base.DefaultNetworkState;
+import org.yah.tests.perceptron.datasets.Dataset;
+import org.yah.tests.perceptron.jni.NativeNeuralNetwork;
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork;
+import org.yah.tests.perceptron.matrix.flat.CMFlatMatrix;
+import org.yah.tests.perceptron.matrix.flat.CMFloatMatrix;
+import org.yah.tests.perceptron.mt.ChunkExecutor;
+import org.yah.tests.perceptron.mt.HogwildNeuralNetwork;
+import org.yah.tests.perceptron.mt.MTNeuralNetwork;
+import org.yah.tests.perceptron.mt.MTNeuralNetwork.TrainingMode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link NeuralNetwork#train(TrainingSamples, double)} or {@link NeuralNetwork#evaluate(TrainingSamples)}
+ * epoch per operation, the <code>samples</code> counter gives the samples/s.<br/>
+ * The native engine requires the <code>neuralnetwork</code> library (built from <code>cpp/</code>) in
+ * <code>java.library.path</code>.<br/>
+ * The matrix engine uses the flat column major matrices, {@link CMFloatMatrix} in float precision.
+ *
+ * @author Yah
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class NeuralNetworkBenchmark {
+
+    private static final double LEARNING_RATE = 0.1;
+
+    /**
+     * mt-samples: mt engine with the {@link TrainingMode#SAMPLES} training, hogwild: {@link HogwildNeuralNetwork}
+     */
+    @Param({"matrix", "mt", "mt-samples", "hogwild", "native"})
+    public String engine;
+
+    @Param({"double", "float"})
+    public String precision;
+
+    @Param({"2-16-2", "2-64-64-2", "64-256-10"})
+    public String topology;
+
+    /**
+     * activation of the hidden layers
+     */
+    @Param({"SIGMOID", "RELU"})
+    public Activation activation;
+
+    /**
+     * activation of the output layer, softmax is trained with the fused cross entropy gradient
+     */
+    @Param({"SIGMOID", "SOFTMAX"})
+    public Activation output;
+
+    @Param({"64", "512"})
+    public int batchSize;
+
+    @Param({"10000", "100000"})
+    public int samples;
+
+    /**
+     * optional dataset file(s) replacing the random samples, see {@link Dataset#load(String)}: <code>samples</code>
+     * is ignored and the topology input and output sizes are replaced by the dataset features and labels count
+     */
+    @Param({""})
+    public String dataset;
+
+    private NeuralNetwork network;
+    private TrainingSamples training;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class SamplesCounter {
+        public long samples;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            samples = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        int[] layers = Arrays.stream(topology.split("-")).mapToInt(Integer::parseInt).toArray();
+        TrainingSamplesProvider provider;
+        if (dataset.isEmpty()) {
+            provider = new RandomSamplesProvider(samples, layers[0], layers[layers.length - 1]);
+        } else {
+            Dataset loaded = Dataset.load(dataset);
+            layers[0] = loaded.features();
+            layers[layers.length - 1] = loaded.outputs();
+            provider = loaded;
+        }
+        DefaultNetworkState state = new DefaultNetworkState(RandomUtils.newRandomSource(12345), layers);
+        for (int layer = 0; layer < state.layers() - 1; layer++) {
+            state.activation(layer, activation);
+        }
+        state.activation(state.layers() - 1, output);
+        network = createNetwork(engine, state, Precision.parse(precision));
+        training = network.createTraining(provider, batchSize);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (training instanceof AutoCloseable)
+            ((AutoCloseable) training).close();
+        if (network instanceof AutoCloseable)
+            ((AutoCloseable) network).close();
+    }
+
+    @Benchmark
+    public void train(SamplesCounter counter) {
+        network.train(training, LEARNING_RATE);
+        counter.samples += training.size();
+    }
+
+    @Benchmark
+    public double evaluate(SamplesCounter counter) {
+        double res = network.evaluate(training);
+        counter.samples += training.size();
+        return res;
+    }
+
+    static NeuralNetwork createNetwork(String engine, NeuralNetworkState state, Precision precision) {
+        switch (engine) {
+            case "matrix":
+                if (precision == Precision.FLOAT)
+                    return new MatrixNeuralNetwork<>(CMFloatMatrix::new, state);
+                return new MatrixNeuralNetwork<>(CMFlatMatrix::new, state);
+            case "mt":
+                return new MTNeuralNetwork(state, precision);
+            case "mt-samples":
+                return new MTNeuralNetwork(state, precision,
+                        new ChunkExecutor(Runtime.getRuntime().availableProcessors()), TrainingMode.SAMPLES);
+            case "hogwild":
+                return new HogwildNeuralNetwork(state, precision);
+            case "native":
+                return new NativeNeuralNetwork(state, precision);
+            default:
+                throw new IllegalArgumentException("Invalid engine " + engine);
+        }
+    }
+
+    /**
+     * Gaussian inputs, expected output is a fixed random linear classification of the inputs.
+     */
+    static final class RandomSamplesProvider implements TrainingSamplesProvider {
+        private final int features;
+        private final double[] inputs;
+        private final int[] outputIndices;
+
+        RandomSamplesProvider(int samples, int features, int outputs) {
+            this.features = features;
+            Random random = RandomUtils.newRandom(12345);
+            double[][] projection = new double[outputs][features];
+            for (double[] row : projection) {
+                for (int f = 0; f < features; f++) row[f] = random.nextGaussian();
+            }
+            inputs = new double[samples * features];
+            outputIndices = new int[samples];
+            for (int sample = 0; sample < samples; sample++) {
+                int offset = sample * features;
+                for (int f = 0; f < features; f++) inputs[offset + f] = random.nextGaussian();
+                int index = 0;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int output = 0; output < outputs; output++) {
+                    double v = 0;
+                    for (int f = 0; f < features; f++) v += projection[output][f] * inputs[offset + f];
+                    if (v > max) {
+                        max = v;
+                        index = output;
+                    }
+                }
+                outputIndices[sample] = index;
+            }
+        }
+
+        @Override
+        public int samples() {
+            return outputIndices.length;
+        }
+
+        @Override
+        public double input(int sample, int feature) {
+            return inputs[sample * features + feature];
+        }
+
+        @Override
+        public int outputIndex(int sample) {
+            return outputIndices[sample];
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.yah.tests.perceptron;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+import org.yah.tests.perceptron.base.DefaultNetworkState;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a single sample scoring: {@link NeuralNetwork#predict(double[], double[])} against the batch path
+ * (<code>createInputs</code>, <code>createOutpus</code> and <code>propagate</code> of a one sample provider).<br/>
+ * Run with <code>-prof gc</code>: <code>gc.alloc.rate.norm</code> of the predict benchmarks should be 0 B/op.
+ *
+ * @author Yah
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PredictBenchmark {
+
+    @Param({"matrix", "mt", "native"})
+    public String engine;
+
+    @Param({"double", "float"})
+    public String precision;
+
+    @Param({"2-16-2", "64-256-10", "784-128-10"})
+    public String topology;
+
+    private NeuralNetwork network;
+    private double[] features;
+    private DoubleBuffer featuresBuffer;
+    private double[] scores;
+
+    @Setup
+    public void setup() {
+        int[] layers = Arrays.stream(topology.split("-")).mapToInt(Integer::parseInt).toArray();
+        DefaultNetworkState state = new DefaultNetworkState(RandomUtils.newRandomSource(12345), layers);
+        state.activation(state.layers() - 1, Activation.SOFTMAX);
+        network = NeuralNetworkBenchmark.createNetwork(engine, state, Precision.parse(precision));
+        features = RandomUtils.newRandom(12345).doubles(network.features()).toArray();
+        featuresBuffer = DoubleBuffer.wrap(features);
+        scores = new double[network.outputs()];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (network instanceof AutoCloseable)
+            ((AutoCloseable) network).close();
+    }
+
+    @Benchmark
+    public int predict() {
+        return network.predict(features);
+    }
+
+    @Benchmark
+    public void predict_scores(Blackhole blackhole) {
+        blackhole.consume(network.predict(features, scores));
+        blackhole.consume(scores);
+    }
+
+    @Benchmark
+    public int predict_buffer() {
+        return network.predict(featuresBuffer, null);
+    }
+
+    @Benchmark
+    public int propagate() {
+        SamplesProvider provider = SamplesProviders.newSamplesProvider(new double[][]{features}, false);
+        InputSamples inputs = network.createInputs(provider, 1);
+        NetworkOutputs outputs = network.createOutpus(1);
+        try {
+            network.propagate(inputs, outputs);
+            return outputs.outputIndex(0);
+        } finally {
+            if (inputs instanceof AutoCloseable)
+                close((AutoCloseable) inputs);
+            if (outputs instanceof AutoCloseable)
+                close((AutoCloseable) outputs);
+        }
+    }
+
+    private static void close(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
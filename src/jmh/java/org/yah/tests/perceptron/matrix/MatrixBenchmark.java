@@ -0,0 +1,118 @@
+package org.yah.tests.perceptron.matrix;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.yah.tests.perceptron.RandomUtils;
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork.MatrixFactory;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link Matrix} operation used by {@link MatrixNeuralNetwork}, for each {@link MatrixLayout}.<br/>
+ * A shape is <code>neurons x features x batchSize</code>, the matrices are the one of a layer with that shape:
+ * <ul>
+ * <li>weights: neurons x features</li>
+ * <li>inputs: features x batchSize</li>
+ * <li>zs, activations, deltas: neurons x batchSize</li>
+ * </ul>
+ * Default mode is ns/op, use <code>-bm thrpt -tu s</code> to get ops/s.<br/>
+ * {@link MatrixLayout#VECTOR} requires the <code>vector</code> profile and
+ * <code>--add-modules jdk.incubator.vector</code>: <code>-p layout=FLAT,VECTOR</code> compares it to the flat layout.
+ *
+ * @author Yah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class MatrixBenchmark {
+
+    @Param({"CM", "RM", "FLAT"})
+    public MatrixLayout layout;
+
+    /**
+     * 16x2x64, 2x16x64: the 2-16-2 flowers topology layers<br/>
+     * 64x64x64: deep hidden layer<br/>
+     * 512x784x128, 512x512x128: wide input and hidden layers
+     */
+    @Param({"16x2x64", "2x16x64", "64x64x64", "512x784x128", "512x512x128"})
+    public String shape;
+
+    private Matrix weights, biases, inputs;
+    private Matrix zs, activations, deltas;
+    private Matrix wgrads, bgrads, previousDeltas;
+
+    @Setup
+    public void setup() {
+        String[] parts = shape.split("x");
+        int neurons = Integer.parseInt(parts[0]);
+        int features = Integer.parseInt(parts[1]);
+        int batchSize = Integer.parseInt(parts[2]);
+        MatrixFactory<Matrix> factory = (MatrixFactory) layout.factory();
+        Random random = RandomUtils.newRandom(12345);
+
+        weights = random(factory.newMatrix(neurons, features), random);
+        biases = random(factory.newMatrix(neurons, 1), random);
+        inputs = random(factory.newMatrix(features, batchSize), random);
+        zs = random(factory.newMatrix(neurons, batchSize), random);
+        activations = random(factory.newMatrix(neurons, batchSize), random);
+        deltas = random(factory.newMatrix(neurons, batchSize), random);
+        wgrads = factory.newMatrix(neurons, features);
+        bgrads = factory.newMatrix(neurons, 1);
+        previousDeltas = factory.newMatrix(features, batchSize);
+    }
+
+    private static Matrix random(Matrix matrix, Random random) {
+        matrix.apply((row, column, value) -> random.nextGaussian());
+        return matrix;
+    }
+
+    @Benchmark
+    public Object dot() {
+        // zs = weights . inputs
+        return weights.dot(inputs, zs);
+    }
+
+    @Benchmark
+    public Object transpose_dot() {
+        // previous deltas = T(weights) . deltas
+        return weights.transpose_dot(deltas, previousDeltas);
+    }
+
+    @Benchmark
+    public Object dot_transpose() {
+        // wgrads = deltas . T(inputs)
+        return deltas.dot_transpose(inputs, wgrads);
+    }
+
+    @Benchmark
+    public Object addColumnVector() {
+        // zs = zs + biases
+        zs.addColumnVector(biases, zs);
+        return zs;
+    }
+
+    @Benchmark
+    public Object sigmoid() {
+        return zs.sigmoid(activations);
+    }
+
+    @Benchmark
+    public Object sumRows() {
+        deltas.sumRows(bgrads);
+        return bgrads;
+    }
+
+    @Benchmark
+    public void maxRowIndex(Blackhole blackhole) {
+        int columns = activations.columns();
+        for (int column = 0; column < columns; column++) {
+            blackhole.consume(activations.maxRowIndex(column));
+        }
+    }
+
+}
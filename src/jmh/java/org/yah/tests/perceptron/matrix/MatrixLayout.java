@@ -0,0 +1,56 @@
+package org.yah.tests.perceptron.matrix;
+
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork.MatrixFactory;
+import org.yah.tests.perceptron.matrix.array.CMArrayMatrix;
+import org.yah.tests.perceptron.matrix.array.RMArrayMatrix;
+import org.yah.tests.perceptron.matrix.flat.CMFlatMatrix;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * The {@link Matrix} implementations compared by the benchmarks.
+ *
+ * @author Yah
+ */
+public enum MatrixLayout {
+    CM(CMArrayMatrix::new),
+    RM(RMArrayMatrix::new),
+    FLAT(CMFlatMatrix::new),
+    /**
+     * CMVectorMatrix, built by the <code>vector</code> profile
+     */
+    VECTOR(optional("org.yah.tests.perceptron.matrix.vector.CMVectorMatrix"));
+
+    private final MatrixFactory<?> factory;
+
+    MatrixLayout(MatrixFactory<?> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @return the factory of a matrix class built by an optional profile, failing on use if the class is missing
+     */
+    private static MatrixFactory<?> optional(String className) {
+        Constructor<?> constructor;
+        try {
+            constructor = Class.forName(className).getConstructor(int.class, int.class);
+        } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+            return (rows, columns) -> {
+                throw new UnsupportedOperationException(className + " is not available: " + e);
+            };
+        }
+        return (rows, columns) -> {
+            try {
+                return constructor.newInstance(rows, columns);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    public <M extends Matrix<M>> MatrixFactory<M> factory() {
+        return (MatrixFactory<M>) factory;
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.yah.tests.perceptron.mt;
+
+import org.openjdk.jmh.annotations.*;
+import org.yah.tests.perceptron.mt.ChunkExecutor.Backend;
+import org.yah.tests.perceptron.mt.ChunkExecutor.ChunkHandler;
+import org.yah.tests.perceptron.mt.ChunkExecutor.WaitStrategy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch overhead of {@link ChunkExecutor#distribute(int, int, ChunkHandler)} versus the chunk size, for each
+ * {@link Backend} and {@link WaitStrategy}: one distribution of <code>concurrency x chunkSize</code> elements per
+ * operation, in <code>chunksPerThread</code> chunks per thread, compared to the <code>inline</code> benchmark
+ * handling the same range on the calling thread and to the <code>adaptive</code> benchmark letting the executor
+ * size the chunks from its calibration.
+ *
+ * @author Yah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChunkExecutorBenchmark {
+
+    @Param({"FIXED", "FORK_JOIN"})
+    public Backend backend;
+
+    @Param({"SPIN", "YIELD", "PARK"})
+    public WaitStrategy waitStrategy;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int chunkSize;
+
+    @Param({"1", "4"})
+    public int chunksPerThread;
+
+    /**
+     * 0 for the available processors
+     */
+    @Param({"0"})
+    public int concurrency;
+
+    private ChunkExecutor executor;
+    private double[] values;
+    private ChunkHandler handler;
+    private int chunks;
+
+    @Setup
+    public void setup() {
+        int threads = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        executor = new ChunkExecutor(threads, backend, waitStrategy);
+        chunks = threads * chunksPerThread;
+        values = new double[threads * chunkSize];
+        handler = (chunkIndex, offset, size) -> {
+            for (int i = offset; i < offset + size; i++) {
+                values[i] = values[i] * 0.5 + 1;
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Benchmark
+    public double distribute() {
+        executor.distribute(values.length, chunks, handler);
+        return values[0];
+    }
+
+    @Benchmark
+    public double adaptive() {
+        executor.distribute(values.length, handler);
+        return values[0];
+    }
+
+    @Benchmark
+    public double inline() {
+        handler.handle(0, 0, values.length);
+        return values[0];
+    }
+
+}
@@ -1,6 +1,210 @@
 package org.yah.tests.perceptron;
 
-public class Activation {
+/**
+ * Layer activation function.<br/>
+ * Engines use the bulk methods: the activation is resolved once per call, outside of the elements loop.
+ * The ordinal is the activation identifier used by the native and OpenCL engines.
+ */
+public enum Activation {
+    SIGMOID,
+    RELU,
+    LEAKY_RELU,
+    TANH,
+    /**
+     * Output layer only: normalize each output column, trained with a cross entropy cost.<br/>
+     * Not element wise: the bulk {@link #activate(double[], int, double[], int, int)} range is one column.
+     * There is no derivative pass, the gradient is fused with the cost in
+     * {@link #softmaxCrossEntropy(double[], int, double[], int, int, int)}.
+     */
+    SOFTMAX;
+
+    public static final double LEAKY_RELU_SLOPE = 0.01;
+
+    /**
+     * Default {@link NeuralNetwork#approximate()} of the Java engines: approximate sigmoid and tanh using
+     * {@link SigmoidTable} instead of {@link Math#exp(double)}.<br/>
+     * Enabled with <code>-Dactivation.approximate=true</code>, each network can then be switched with
+     * {@link NeuralNetwork#approximate(boolean)}.
+     */
+    public static final boolean APPROXIMATE = Boolean.getBoolean("activation.approximate");
+
+    private static final float LEAKY_RELU_SLOPE_F = (float) LEAKY_RELU_SLOPE;
+
+    public double activate(double z) {
+        return activate(z, false);
+    }
+
+    /**
+     * @param approximate compute sigmoid and tanh with {@link SigmoidTable}
+     */
+    public double activate(double z, boolean approximate) {
+        switch (this) {
+            case SIGMOID:
+                return sigmoid(z, approximate);
+            case RELU:
+                return relu(z);
+            case LEAKY_RELU:
+                return leaky_relu(z);
+            case TANH:
+                return tanh(z, approximate);
+            case SOFTMAX:
+                throw new UnsupportedOperationException("softmax is not element wise");
+            default:
+                throw new IllegalStateException("Unhandled activation " + this);
+        }
+    }
+
+    public double derivative(double z) {
+        return derivative(z, false);
+    }
+
+    public double derivative(double z, boolean approximate) {
+        switch (this) {
+            case SIGMOID:
+                return sigmoid_prime(z, approximate);
+            case RELU:
+                return relu_prime(z);
+            case LEAKY_RELU:
+                return leaky_relu_prime(z);
+            case TANH:
+                return tanh_prime(z, approximate);
+            case SOFTMAX:
+                throw new UnsupportedOperationException("softmax is not element wise");
+            default:
+                throw new IllegalStateException("Unhandled activation " + this);
+        }
+    }
+
+    /**
+     * dst[dstOffset + i] = activate(src[srcOffset + i])
+     */
+    public void activate(double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        activate(src, srcOffset, dst, dstOffset, length, false);
+    }
+
+    public void activate(double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+                         boolean approximate) {
+        switch (this) {
+            case SIGMOID:
+                if (approximate)
+                    SigmoidTable.sigmoid(src, srcOffset, dst, dstOffset, length);
+                else
+                    sigmoid(src, srcOffset, dst, dstOffset, length);
+                break;
+            case RELU:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = relu(src[srcOffset + i]);
+                break;
+            case LEAKY_RELU:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = leaky_relu(src[srcOffset + i]);
+                break;
+            case TANH:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = tanh(src[srcOffset + i], approximate);
+                break;
+            case SOFTMAX:
+                softmax(src, srcOffset, dst, dstOffset, length);
+                break;
+            default:
+                throw new IllegalStateException("Unhandled activation " + this);
+        }
+    }
+
+    /**
+     * dst[dstOffset + i] = derivative(src[srcOffset + i])
+     */
+    public void derivative(double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        derivative(src, srcOffset, dst, dstOffset, length, false);
+    }
+
+    public void derivative(double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+                           boolean approximate) {
+        switch (this) {
+            case SIGMOID:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = sigmoid_prime(src[srcOffset + i], approximate);
+                break;
+            case RELU:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = relu_prime(src[srcOffset + i]);
+                break;
+            case LEAKY_RELU:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = leaky_relu_prime(src[srcOffset + i]);
+                break;
+            case TANH:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = tanh_prime(src[srcOffset + i], approximate);
+                break;
+            case SOFTMAX:
+                throw new UnsupportedOperationException("softmax derivative is fused with the cross entropy cost");
+            default:
+                throw new IllegalStateException("Unhandled activation " + this);
+        }
+    }
+
+    public void activate(float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        activate(src, srcOffset, dst, dstOffset, length, false);
+    }
+
+    public void activate(float[] src, int srcOffset, float[] dst, int dstOffset, int length, boolean approximate) {
+        switch (this) {
+            case SIGMOID:
+                if (approximate)
+                    SigmoidTable.sigmoid(src, srcOffset, dst, dstOffset, length);
+                else
+                    sigmoid(src, srcOffset, dst, dstOffset, length);
+                break;
+            case RELU:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = relu(src[srcOffset + i]);
+                break;
+            case LEAKY_RELU:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = leaky_relu(src[srcOffset + i]);
+                break;
+            case TANH:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = tanh(src[srcOffset + i], approximate);
+                break;
+            case SOFTMAX:
+                softmax(src, srcOffset, dst, dstOffset, length);
+                break;
+            default:
+                throw new IllegalStateException("Unhandled activation " + this);
+        }
+    }
+
+    public void derivative(float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        derivative(src, srcOffset, dst, dstOffset, length, false);
+    }
+
+    public void derivative(float[] src, int srcOffset, float[] dst, int dstOffset, int length,
+                           boolean approximate) {
+        switch (this) {
+            case SIGMOID:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = sigmoid_prime(src[srcOffset + i], approximate);
+                break;
+            case RELU:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = relu_prime(src[srcOffset + i]);
+                break;
+            case LEAKY_RELU:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = leaky_relu_prime(src[srcOffset + i]);
+                break;
+            case TANH:
+                for (int i = 0; i < length; i++)
+                    dst[dstOffset + i] = tanh_prime(src[srcOffset + i], approximate);
+                break;
+            case SOFTMAX:
+                throw new UnsupportedOperationException("softmax derivative is fused with the cross entropy cost");
+            default:
+                throw new IllegalStateException("Unhandled activation " + this);
+        }
+    }
 
     public static double sigmoid(double v) {
         return 1.0 / (1.0 + Math.exp(-v));
@@ -11,10 +215,179 @@ public class Activation {
         return s * (1.0 - s);
     }
 
+    public static float sigmoid(float v) {
+        return 1f / (1f + (float) Math.exp(-v));
+    }
+
+    /**
+     * dst[dstOffset + i] = sigmoid(src[srcOffset + i])
+     */
+    public static void sigmoid(double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++)
+            dst[dstOffset + i] = 1.0 / (1.0 + Math.exp(-src[srcOffset + i]));
+    }
+
+    public static void sigmoid(float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++)
+            dst[dstOffset + i] = 1f / (1f + (float) Math.exp(-src[srcOffset + i]));
+    }
+
+    public static float sigmoid_prime(float v) {
+        float s = sigmoid(v);
+        return s * (1f - s);
+    }
+
+    public static double relu(double v) {
+        return v > 0 ? v : 0;
+    }
+
+    public static double relu_prime(double v) {
+        return v > 0 ? 1 : 0;
+    }
+
+    public static float relu(float v) {
+        return v > 0 ? v : 0;
+    }
+
+    public static float relu_prime(float v) {
+        return v > 0 ? 1 : 0;
+    }
+
+    public static double leaky_relu(double v) {
+        return v > 0 ? v : LEAKY_RELU_SLOPE * v;
+    }
+
+    public static double leaky_relu_prime(double v) {
+        return v > 0 ? 1 : LEAKY_RELU_SLOPE;
+    }
+
+    public static float leaky_relu(float v) {
+        return v > 0 ? v : LEAKY_RELU_SLOPE_F * v;
+    }
+
+    public static float leaky_relu_prime(float v) {
+        return v > 0 ? 1 : LEAKY_RELU_SLOPE_F;
+    }
+
+    public static double tanh(double v) {
+        return Math.tanh(v);
+    }
+
+    public static float tanh(float v) {
+        return (float) tanh((double) v);
+    }
+
+    public static double tanh_prime(double v) {
+        double t = tanh(v);
+        return 1.0 - t * t;
+    }
+
+    public static float tanh_prime(float v) {
+        float t = tanh(v);
+        return 1f - t * t;
+    }
+
+    private static double sigmoid(double v, boolean approximate) {
+        return approximate ? SigmoidTable.sigmoid(v) : sigmoid(v);
+    }
+
+    private static double sigmoid_prime(double v, boolean approximate) {
+        double s = sigmoid(v, approximate);
+        return s * (1.0 - s);
+    }
+
+    private static float sigmoid_prime(float v, boolean approximate) {
+        float s = approximate ? SigmoidTable.sigmoid(v) : sigmoid(v);
+        return s * (1f - s);
+    }
+
+    private static double tanh(double v, boolean approximate) {
+        return approximate ? 2 * SigmoidTable.sigmoid(2 * v) - 1 : Math.tanh(v);
+    }
+
+    private static float tanh(float v, boolean approximate) {
+        return (float) tanh((double) v, approximate);
+    }
+
+    private static double tanh_prime(double v, boolean approximate) {
+        double t = tanh(v, approximate);
+        return 1.0 - t * t;
+    }
+
+    private static float tanh_prime(float v, boolean approximate) {
+        float t = tanh(v, approximate);
+        return 1f - t * t;
+    }
+
+    /**
+     * dst[dstOffset + i] = exp(src[srcOffset + i]) / sum(exp(src[srcOffset + j])), shifted by the max for stability.
+     */
+    public static void softmax(double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        double max = max(src, srcOffset, length);
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double e = Math.exp(src[srcOffset + i] - max);
+            dst[dstOffset + i] = e;
+            sum += e;
+        }
+        double scale = 1.0 / sum;
+        for (int i = 0; i < length; i++)
+            dst[dstOffset + i] *= scale;
+    }
+
+    public static void softmax(float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        float max = max(src, srcOffset, length);
+        float sum = 0;
+        for (int i = 0; i < length; i++) {
+            float e = (float) Math.exp(src[srcOffset + i] - max);
+            dst[dstOffset + i] = e;
+            sum += e;
+        }
+        float scale = 1f / sum;
+        for (int i = 0; i < length; i++)
+            dst[dstOffset + i] *= scale;
+    }
+
+    /**
+     * Fused softmax and cross entropy cost derivative of one output column:<br/>
+     * delta[deltaOffset + i] = softmax(z)[i] - (i == expected ? 1 : 0)
+     *
+     * @return the cross entropy cost of the column: -log(softmax(z)[expected])
+     */
+    public static double softmaxCrossEntropy(double[] z, int zOffset, double[] delta, int deltaOffset, int length,
+                                             int expected) {
+        softmax(z, zOffset, delta, deltaOffset, length);
+        double p = delta[deltaOffset + expected];
+        delta[deltaOffset + expected] = p - 1;
+        return -Math.log(p);
+    }
+
+    public static double softmaxCrossEntropy(float[] z, int zOffset, float[] delta, int deltaOffset, int length,
+                                             int expected) {
+        softmax(z, zOffset, delta, deltaOffset, length);
+        float p = delta[deltaOffset + expected];
+        delta[deltaOffset + expected] = p - 1;
+        return -Math.log(p);
+    }
+
+    private static double max(double[] src, int offset, int length) {
+        double res = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++)
+            res = Math.max(res, src[offset + i]);
+        return res;
+    }
+
+    private static float max(float[] src, int offset, int length) {
+        float res = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++)
+            res = Math.max(res, src[offset + i]);
+        return res;
+    }
+
     /** @noinspection unused*/
     public static double exp(double val) {
         final long tmp = (long) (1512775 * val + (1072693248 - 60801));
         return Double.longBitsToDouble(tmp << 32);
     }
-    
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,52 @@
+package org.yah.tests.perceptron;
+
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Samples stored off heap in the engines inputs layout: samples x features values, features of a sample are
+ * contiguous, followed by an optional block of int output indices.<br/>
+ * The native, OpenCL and MT engines use the inputs in place when they are {@link #isDirect(Precision, int)}, other
+ * engines copy them as any {@link SamplesProvider}.
+ *
+ * @author Yah
+ */
+public interface DirectSamples extends TrainingSamplesProvider {
+
+    int features();
+
+    Precision precision();
+
+    boolean hasLabels();
+
+    /**
+     * @return true if an engine of this precision and features count can use {@link #inputsBuffer()} in place
+     */
+    default boolean isDirect(Precision precision, int features) {
+        return precision() == precision && features() == features
+               && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /**
+     * @return true if {@link #inputsBuffer()} stays valid until its owner explicitly releases it: the OpenCL engine
+     * then uses it as the host memory of its inputs buffer instead of copying it
+     */
+    default boolean sharedInputs() {
+        return false;
+    }
+
+    /**
+     * @return a little endian view of the inputs block, only used when {@link #isDirect(Precision, int)}
+     */
+    ByteBuffer inputsBuffer();
+
+    /**
+     * @return a little endian view of the labels block, null if there is no labels, only used when
+     * {@link #isDirect(Precision, int)}
+     */
+    ByteBuffer labelsBuffer();
+
+}
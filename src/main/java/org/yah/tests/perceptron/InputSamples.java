@@ -1,5 +1,7 @@
 package org.yah.tests.perceptron;
 
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+
 public interface InputSamples {
     /**
      * @return the total number of samples
@@ -12,4 +14,15 @@ public interface InputSamples {
         return (int) Math.ceil(size() / (double) batchSize());
     }
 
+    /**
+     * Replace the inputs by the samples of the provider, in the storage allocated at creation: successive batches of
+     * a bounded size reuse the same engine buffers (see {@link PredictionBatcher}).
+     *
+     * @throws IllegalArgumentException if the provider has more samples than the samples this storage was created for
+     * @throws IllegalStateException    if these samples are not created by
+     *                                  {@link NeuralNetwork#createInputs(SamplesProvider, int)}, or are read in place
+     *                                  from {@link DirectSamples}
+     */
+    void load(SamplesProvider provider);
+
 }
@@ -0,0 +1,321 @@
+package org.yah.tests.perceptron;
+
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Samples stored in a binary file mapped in memory with {@link FileChannel#map(FileChannel.MapMode, long, long)}.<br/>
+ * File layout, little endian:
+ * <ul>
+ * <li>header, {@link #HEADER_SIZE} bytes: magic, version, value size (4 for float, 8 for double), samples,
+ * features, labels flag (1 if the labels block is present), 2 reserved ints</li>
+ * <li>inputs block: samples x features values, features of a sample are contiguous (the engines inputs layout)</li>
+ * <li>labels block: samples int output indices, if present</li>
+ * </ul>
+ * The native, OpenCL and MT engines use the mapped inputs directly when each block fits in one mapped region
+ * ({@link Integer#MAX_VALUE} bytes). Larger blocks are mapped in several regions holding whole samples and are read
+ * as any {@link SamplesProvider}.
+ *
+ * @author Yah
+ */
+public final class MappedSamples implements DirectSamples {
+
+    public static final int MAGIC = 0x4D534E4E; // "NNSM"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8 * Integer.BYTES;
+
+    private final int samples;
+    private final int features;
+    private final Precision precision;
+
+    /**
+     * samples in each inputs region, the last one can hold less
+     */
+    private final int regionSamples;
+    private final ByteBuffer[] inputs;
+    private final DoubleBuffer[] doubleInputs;
+    private final FloatBuffer[] floatInputs;
+
+    /**
+     * labels in each labels region, the last one can hold less
+     */
+    private final int regionLabels;
+    private final ByteBuffer[] labels; // null if no labels
+    private final IntBuffer[] labelIndices;
+
+    private MappedSamples(int samples, int features, Precision precision,
+                          int regionSamples, ByteBuffer[] inputs,
+                          int regionLabels, ByteBuffer[] labels) {
+        this.samples = samples;
+        this.features = features;
+        this.precision = precision;
+        this.regionSamples = regionSamples;
+        this.inputs = inputs;
+        this.doubleInputs = precision == Precision.DOUBLE ? new DoubleBuffer[inputs.length] : null;
+        this.floatInputs = precision == Precision.FLOAT ? new FloatBuffer[inputs.length] : null;
+        for (int i = 0; i < inputs.length; i++) {
+            if (doubleInputs != null)
+                doubleInputs[i] = inputs[i].asDoubleBuffer();
+            else
+                floatInputs[i] = inputs[i].asFloatBuffer();
+        }
+        this.regionLabels = regionLabels;
+        this.labels = labels;
+        if (labels != null) {
+            labelIndices = new IntBuffer[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                labelIndices[i] = labels[i].asIntBuffer();
+            }
+        } else
+            labelIndices = null;
+    }
+
+    /**
+     * Map a samples file, the file can be closed as soon as it is mapped.
+     */
+    public static MappedSamples open(Path path) throws IOException {
+        return open(path, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxRegionSize maximum bytes mapped in one region
+     */
+    static MappedSamples open(Path path, int maxRegionSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0)
+                    throw new IOException("Truncated header in " + path);
+            }
+            header.flip();
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a samples file " + path);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported samples file version " + version + " in " + path);
+            Precision precision = precision(header.getInt());
+            int samples = header.getInt();
+            int features = header.getInt();
+            boolean hasLabels = header.getInt() != 0;
+            if (samples < 0 || features <= 0)
+                throw new IOException("Invalid samples " + samples + " or features " + features + " in " + path);
+
+            int sampleSize = sampleSize(features, precision, maxRegionSize);
+            long inputsSize = (long) samples * sampleSize;
+            long labelsSize = hasLabels ? (long) samples * Integer.BYTES : 0;
+            if (channel.size() < HEADER_SIZE + inputsSize + labelsSize)
+                throw new IOException("Truncated samples file " + path);
+
+            int regionSamples = maxRegionSize / sampleSize;
+            ByteBuffer[] inputs = map(channel, FileChannel.MapMode.READ_ONLY, HEADER_SIZE, samples, sampleSize,
+                    regionSamples);
+            int regionLabels = maxRegionSize / Integer.BYTES;
+            ByteBuffer[] labels = hasLabels ? map(channel, FileChannel.MapMode.READ_ONLY, HEADER_SIZE + inputsSize,
+                    samples, Integer.BYTES, regionLabels) : null;
+            return new MappedSamples(samples, features, precision, regionSamples, inputs, regionLabels, labels);
+        }
+    }
+
+    /**
+     * Write the first <code>features</code> inputs of each sample, and the output indices if the provider has some
+     * ({@link SamplesProviders#hasLabels(SamplesProvider)}).
+     */
+    public static void write(Path path, SamplesProvider provider, int features, Precision precision)
+            throws IOException {
+        write(path, provider, features, precision, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxRegionSize maximum bytes mapped in one region
+     */
+    static void write(Path path, SamplesProvider provider, int features, Precision precision, int maxRegionSize)
+            throws IOException {
+        int samples = provider.samples();
+        boolean hasLabels = SamplesProviders.hasLabels(provider);
+        int sampleSize = sampleSize(features, precision, maxRegionSize);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC)
+                  .putInt(VERSION)
+                  .putInt(precision.size())
+                  .putInt(samples)
+                  .putInt(features)
+                  .putInt(hasLabels ? 1 : 0)
+                  .putInt(0)
+                  .putInt(0)
+                  .flip();
+            while (header.hasRemaining())
+                channel.write(header);
+
+            int regionSamples = maxRegionSize / sampleSize;
+            ByteBuffer[] inputs = map(channel, FileChannel.MapMode.READ_WRITE, HEADER_SIZE, samples, sampleSize,
+                    regionSamples);
+            for (int i = 0; i < inputs.length; i++) {
+                int first = i * regionSamples;
+                SamplesProviders.writeInputs(provider, first, Math.min(regionSamples, samples - first), features,
+                        precision, inputs[i]);
+            }
+
+            if (hasLabels) {
+                TrainingSamplesProvider trainingProvider = (TrainingSamplesProvider) provider;
+                int regionLabels = maxRegionSize / Integer.BYTES;
+                ByteBuffer[] labels = map(channel, FileChannel.MapMode.READ_WRITE,
+                        HEADER_SIZE + (long) samples * sampleSize, samples, Integer.BYTES, regionLabels);
+                int sample = 0;
+                for (ByteBuffer region : labels) {
+                    IntBuffer indices = region.asIntBuffer();
+                    while (indices.hasRemaining())
+                        indices.put(trainingProvider.outputIndex(sample++));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int samples() {
+        return samples;
+    }
+
+    @Override
+    public int features() {
+        return features;
+    }
+
+    @Override
+    public Precision precision() {
+        return precision;
+    }
+
+    @Override
+    public boolean hasLabels() {
+        return labels != null;
+    }
+
+    /**
+     * @return false if a block is mapped in several regions
+     */
+    @Override
+    public boolean isDirect(Precision precision, int features) {
+        return inputs.length <= 1 && (labels == null || labels.length <= 1)
+               && DirectSamples.super.isDirect(precision, features);
+    }
+
+    /**
+     * @return a read only view of the mapped inputs block
+     * @throws IllegalStateException if the inputs block is mapped in several regions
+     */
+    @Override
+    public ByteBuffer inputsBuffer() {
+        return single(inputs, "Inputs").duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return a read only view of the mapped labels block, null if there is no labels
+     * @throws IllegalStateException if the labels block is mapped in several regions
+     */
+    @Override
+    public ByteBuffer labelsBuffer() {
+        return labels == null ? null : single(labels, "Labels").duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public double input(int sample, int feature) {
+        int region = sample / regionSamples;
+        int index = (sample - region * regionSamples) * features + feature;
+        return doubleInputs != null ? doubleInputs[region].get(index) : floatInputs[region].get(index);
+    }
+
+    @Override
+    public void inputs(int sample, int count, int features, double[] target, int offset) {
+        if (doubleInputs != null && features == this.features) {
+            int end = sample + count;
+            while (sample < end) {
+                int region = sample / regionSamples;
+                int regionCount = Math.min(end, (region + 1) * regionSamples) - sample;
+                int length = regionCount * features;
+                doubleInputs[region].duplicate()
+                                    .position((sample - region * regionSamples) * features)
+                                    .get(target, offset, length);
+                sample += regionCount;
+                offset += length;
+            }
+        } else {
+            DirectSamples.super.inputs(sample, count, features, target, offset);
+        }
+    }
+
+    @Override
+    public void inputs(int sample, int count, int features, DoubleBuffer target) {
+        if (doubleInputs != null && features == this.features) {
+            int end = sample + count;
+            while (sample < end) {
+                int region = sample / regionSamples;
+                int regionCount = Math.min(end, (region + 1) * regionSamples) - sample;
+                int position = (sample - region * regionSamples) * features;
+                target.put(doubleInputs[region].duplicate()
+                                               .position(position)
+                                               .limit(position + regionCount * features));
+                sample += regionCount;
+            }
+        } else {
+            DirectSamples.super.inputs(sample, count, features, target);
+        }
+    }
+
+    @Override
+    public int outputIndex(int sample) {
+        if (labelIndices == null)
+            throw new IllegalStateException("No labels in mapped samples");
+        int region = sample / regionLabels;
+        return labelIndices[region].get(sample - region * regionLabels);
+    }
+
+    private static Precision precision(int size) throws IOException {
+        for (Precision precision : Precision.values()) {
+            if (precision.size() == size)
+                return precision;
+        }
+        throw new IOException("Invalid value size " + size);
+    }
+
+    private static int sampleSize(int features, Precision precision, int maxRegionSize) throws IOException {
+        long res = (long) features * precision.size();
+        if (res > maxRegionSize)
+            throw new IOException("Sample of " + res + " bytes is too large to be mapped");
+        return (int) res;
+    }
+
+    /**
+     * Map <code>count</code> elements of <code>size</code> bytes from <code>position</code>, in regions of
+     * <code>regionCount</code> elements.
+     */
+    private static ByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long position, int count, int size,
+                                    int regionCount) throws IOException {
+        int regions = Math.max(1, (int) ((count + (long) regionCount - 1) / regionCount));
+        ByteBuffer[] res = new ByteBuffer[regions];
+        for (int i = 0; i < regions; i++) {
+            long first = (long) i * regionCount;
+            long regionSize = Math.min(regionCount, count - first) * size;
+            res[i] = channel.map(mode, position + first * size, regionSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return res;
+    }
+
+    private static ByteBuffer single(ByteBuffer[] regions, String block) {
+        if (regions.length > 1)
+            throw new IllegalStateException(block + " block is mapped in " + regions.length + " regions");
+        return regions[0];
+    }
+
+}
@@ -2,13 +2,63 @@ package org.yah.tests.perceptron;
 
 import java.nio.IntBuffer;
 
+/**
+ * Outputs of {@link NeuralNetwork#propagate(InputSamples, NetworkOutputs)}: the output index (highest activation) of
+ * each sample.<br/>
+ * Outputs created with {@link NeuralNetwork#createOutpus(int, int, boolean)} also keep the top-k output indices with
+ * their scores and optionally all the output activations, filled by the engine in the same pass.
+ */
 public interface NetworkOutputs {
 
     int samples();
 
     int outputIndex(int sample);
 
+    /**
+     * @return the number of ranked output indices kept for each sample
+     */
+    default int topK() {
+        return 1;
+    }
+
+    /**
+     * @param rank 0 for the highest activation, up to {@link #topK()} - 1
+     */
+    default int outputIndex(int sample, int rank) {
+        if (rank != 0)
+            throw new IndexOutOfBoundsException("rank " + rank + " >= top k " + topK());
+        return outputIndex(sample);
+    }
+
+    /**
+     * @return true if the activations of the ranked output indices are kept
+     */
+    default boolean hasScores() {
+        return false;
+    }
+
+    /**
+     * @return the activation of the output index of this rank (the class probability with a softmax output)
+     */
+    default double score(int sample, int rank) {
+        throw new UnsupportedOperationException("Scores are not kept");
+    }
+
+    /**
+     * @return true if the activations of every outputs are kept
+     */
+    default boolean hasActivations() {
+        return false;
+    }
+
+    default double activation(int sample, int output) {
+        throw new UnsupportedOperationException("Activations are not kept");
+    }
+
     void reset();
 
+    /**
+     * copy the output index of each sample
+     */
     void copy(IntBuffer target);
 }
@@ -0,0 +1,61 @@
+package org.yah.tests.perceptron;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Canonical parameters block of a network, shared by every engine and by
+ * {@link NeuralNetworkState#getParameters(ByteBuffer, Precision)}:<br/>
+ * for each layer, its weights in {@link NeuralNetworkState.WeightsLayout#COLUMN_MAJOR} order
+ * (<code>weights[feature * neurons + neuron]</code>), followed by its biases.<br/>
+ * Values are stored in the engine {@link Precision}, in the buffer byte order (native order for the engines).
+ * The native network and the OpenCL kernels use this block as is, so a handoff between engines of the same
+ * precision is a single copy.
+ *
+ * @author Yah
+ */
+public final class NetworkParameters {
+
+    private NetworkParameters() {
+    }
+
+    /**
+     * @return the number of values of the block
+     */
+    public static int size(NeuralNetworkState state) {
+        return state.totalWeights() + state.totalNeurons();
+    }
+
+    /**
+     * @return the size in bytes of the block
+     */
+    public static int bytes(NeuralNetworkState state, Precision precision) {
+        return size(state) * precision.size();
+    }
+
+    /**
+     * @return the index of the first weight of a layer, in values
+     */
+    public static int weightsOffset(NeuralNetworkState state, int layer) {
+        int res = 0;
+        for (int l = 0; l < layer; l++) {
+            res += state.neurons(l) * (state.features(l) + 1);
+        }
+        return res;
+    }
+
+    /**
+     * @return the index of the first bias of a layer, in values
+     */
+    public static int biasesOffset(NeuralNetworkState state, int layer) {
+        return weightsOffset(state, layer) + state.neurons(layer) * state.features(layer);
+    }
+
+    /**
+     * @return a new direct buffer, in native order, sized for the block
+     */
+    public static ByteBuffer allocate(NeuralNetworkState state, Precision precision) {
+        return ByteBuffer.allocateDirect(bytes(state, precision)).order(ByteOrder.nativeOrder());
+    }
+
+}
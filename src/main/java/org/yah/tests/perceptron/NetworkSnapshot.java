@@ -0,0 +1,17 @@
+package org.yah.tests.perceptron;
+
+/**
+ * Immutable copy of a network state, tagged with the training epoch it was taken at.<br/>
+ * Snapshots can be held and read from any thread while the network keeps training, the setters throw
+ * {@link UnsupportedOperationException}.
+ *
+ * @author Yah
+ */
+public interface NetworkSnapshot extends NeuralNetworkState {
+
+    /**
+     * @return the network epoch when this snapshot was taken
+     */
+    int epoch();
+
+}
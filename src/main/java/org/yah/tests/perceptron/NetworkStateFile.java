@@ -0,0 +1,120 @@
+package org.yah.tests.perceptron;
+
+import org.yah.tests.perceptron.base.DefaultNetworkState;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Saved network state, little endian:
+ * <ul>
+ * <li>header, {@link #HEADER_SIZE} bytes: magic, version, value size (4 for float, 8 for double), layers, features,
+ * 1 reserved int</li>
+ * <li>for each layer: neurons and activation ordinal</li>
+ * <li>the {@link NetworkParameters} block</li>
+ * </ul>
+ *
+ * @author Yah
+ */
+public final class NetworkStateFile {
+
+    public static final int MAGIC = 0x544E4E4E; // "NNNT"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 6 * Integer.BYTES;
+
+    private NetworkStateFile() {
+    }
+
+    public static void write(Path path, NeuralNetworkState state, Precision precision) throws IOException {
+        Files.write(path, toBytes(state, precision));
+    }
+
+    public static byte[] toBytes(NeuralNetworkState state, Precision precision) {
+        int layers = state.layers();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + layers * 2 * Integer.BYTES
+                                                + NetworkParameters.bytes(state, precision))
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+              .putInt(VERSION)
+              .putInt(precision.size())
+              .putInt(layers)
+              .putInt(state.features())
+              .putInt(0);
+        for (int layer = 0; layer < layers; layer++) {
+            buffer.putInt(state.neurons(layer)).putInt(state.activation(layer).ordinal());
+        }
+        state.getParameters(buffer, precision);
+        return buffer.array();
+    }
+
+    public static DefaultNetworkState read(Path path) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /**
+     * @param source a state file content, read from its position
+     */
+    public static DefaultNetworkState read(ByteBuffer source) throws IOException {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a network state file");
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported network state file version " + version);
+            Precision precision = precision(buffer.getInt());
+            int layers = buffer.getInt();
+            // the header values are checked against the content size before any allocation
+            if (layers <= 0 || 2L * Integer.BYTES * (layers + 1L) > buffer.remaining())
+                throw new IOException("Invalid layers count " + layers);
+            int[] layerSizes = new int[layers + 1];
+            layerSizes[0] = buffer.getInt();
+            buffer.getInt();
+            Activation[] activations = new Activation[layers];
+            for (int layer = 0; layer < layers; layer++) {
+                layerSizes[layer + 1] = buffer.getInt();
+                activations[layer] = activation(buffer.getInt());
+            }
+            long parametersSize = 0;
+            for (int layer = 0; layer <= layers; layer++) {
+                int size = layerSizes[layer];
+                if (size <= 0 || size > buffer.remaining())
+                    throw new IOException("Invalid layer size " + size);
+                // weights and biases of the layer
+                if (layer > 0)
+                    parametersSize += (long) size * (layerSizes[layer - 1] + 1) * precision.size();
+                if (parametersSize > buffer.remaining())
+                    throw new IOException("Truncated network state file");
+            }
+
+            DefaultNetworkState state = new DefaultNetworkState(layerSizes);
+            for (int layer = 0; layer < layers; layer++) {
+                state.activation(layer, activations[layer]);
+            }
+            state.setParameters(buffer, precision);
+            return state;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated network state file");
+        }
+    }
+
+    private static Precision precision(int size) throws IOException {
+        for (Precision precision : Precision.values()) {
+            if (precision.size() == size)
+                return precision;
+        }
+        throw new IOException("Invalid value size " + size);
+    }
+
+    private static Activation activation(int ordinal) throws IOException {
+        Activation[] activations = Activation.values();
+        if (ordinal < 0 || ordinal >= activations.length)
+            throw new IOException("Invalid activation " + ordinal);
+        return activations[ordinal];
+    }
+
+}
@@ -3,18 +3,62 @@ package org.yah.tests.perceptron;
 import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
 import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
 
+import java.nio.DoubleBuffer;
+import java.util.concurrent.CompletableFuture;
+
 public interface NeuralNetwork extends NeuralNetworkState {
 
     int epoch();
 
     NeuralNetworkState getState();
 
+    /**
+     * @return the last published snapshot, never blocks: safe to call from any thread while training
+     */
+    NetworkSnapshot snapshot();
+
+    /**
+     * Take a snapshot of the current model, and publish it once built.<br/>
+     * The model is copied by the calling thread, which must be the training thread: the snapshot itself is built
+     * and published asynchronously.
+     */
+    CompletableFuture<NetworkSnapshot> publishSnapshot();
+
+    /**
+     * Publish a snapshot every <code>epochs</code> trainings, 0 to disable automatic snapshots (the default).
+     */
+    void snapshotInterval(int epochs);
+
+    /**
+     * @return true if this network computes sigmoid and tanh with {@link SigmoidTable}, {@link Activation#APPROXIMATE}
+     * by default for the Java engines
+     */
+    boolean approximate();
+
+    /**
+     * Switch the sigmoid and tanh implementation of this network only, not concurrently with training or
+     * propagations: a model trained with one implementation predicts with the other within the table error.
+     *
+     * @throws UnsupportedOperationException if the engine only computes exact activations
+     */
+    void approximate(boolean approximate);
+
     InputSamples createInputs(SamplesProvider provider, int batchSize);
 
     TrainingSamples createTraining(TrainingSamplesProvider provider, int batchSize);
 
     NetworkOutputs createOutpus(int samples);
 
+    /**
+     * @param topK        number of ranked output indices (with their scores) kept for each sample
+     * @param activations keep the activations of every outputs (class probabilities with a softmax output)
+     */
+    NetworkOutputs createOutpus(int samples, int topK, boolean activations);
+
+    /**
+     * @param outputs outputs of at least <code>samples.size()</code> samples, the first ones receive the samples
+     *                outputs
+     */
     void propagate(InputSamples samples, NetworkOutputs outputs);
 
     double evaluate(TrainingSamples samples, NetworkOutputs outputs);
@@ -25,4 +69,24 @@ public interface NeuralNetwork extends NeuralNetworkState {
 
     void train(TrainingSamples samples, double learningRate);
 
+    /**
+     * Propagate a single sample without any allocation once the network is warmed up, for online scoring.<br/>
+     * Can be called concurrently with other propagations, but not with training or state modifications.
+     *
+     * @param features the sample features, at least {@link #features()} values
+     * @param scores   receive the activations of the output layer if not null, at least {@link #outputs()} values
+     * @return the index of the highest output activation
+     */
+    int predict(double[] features, double[] scores);
+
+    /**
+     * Same as {@link #predict(double[], double[])}, the features are read from the buffer position, which is not
+     * modified.
+     */
+    int predict(DoubleBuffer features, double[] scores);
+
+    default int predict(double[] features) {
+        return predict(features, null);
+    }
+
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package org.yah.tests.perceptron;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.stream.IntStream;
 
 public interface NeuralNetworkState {
@@ -12,6 +14,24 @@ public interface NeuralNetworkState {
         void visit(int layer, int neuron);
     }
 
+    /**
+     * Layout of a layer weights in the bulk copies, seen as a [neurons x features] matrix
+     */
+    enum WeightsLayout {
+        /**
+         * weights[neuron * features + feature]
+         */
+        ROW_MAJOR,
+        /**
+         * weights[feature * neurons + neuron], the {@link #visitWeights(int, WeightVisitor)} order
+         */
+        COLUMN_MAJOR;
+
+        public int index(int neurons, int features, int neuron, int feature) {
+            return this == ROW_MAJOR ? neuron * features + feature : feature * neurons + neuron;
+        }
+    }
+
     int layers();
 
     int features();
@@ -38,6 +58,12 @@ public interface NeuralNetworkState {
 
     int totalWeights();
 
+    /**
+     * @return the activation function of a layer
+     */
+    default Activation activation(int layer) {
+        return Activation.SIGMOID;
+    }
 
     default void visitWeights(int layer, WeightVisitor visitor) {
         int neurons = neurons(layer);
@@ -68,6 +94,116 @@ public interface NeuralNetworkState {
         }
     }
 
+    /**
+     * Copy the <code>neurons(layer) * features(layer)</code> weights of a layer to target, starting at offset.
+     */
+    default void getWeights(int layer, double[] target, int offset, WeightsLayout layout) {
+        int neurons = neurons(layer);
+        int features = features(layer);
+        for (int neuron = 0; neuron < neurons; neuron++) {
+            for (int feature = 0; feature < features; feature++) {
+                target[offset + layout.index(neurons, features, neuron, feature)] = weight(layer, neuron, feature);
+            }
+        }
+    }
+
+    /**
+     * Set the <code>neurons(layer) * features(layer)</code> weights of a layer from source, starting at offset.
+     */
+    default void setWeights(int layer, double[] source, int offset, WeightsLayout layout) {
+        int neurons = neurons(layer);
+        int features = features(layer);
+        for (int neuron = 0; neuron < neurons; neuron++) {
+            for (int feature = 0; feature < features; feature++) {
+                weight(layer, neuron, feature, source[offset + layout.index(neurons, features, neuron, feature)]);
+            }
+        }
+    }
+
+    /**
+     * Copy the weights of a layer at the target position, the position is advanced.
+     */
+    default void getWeights(int layer, DoubleBuffer target, WeightsLayout layout) {
+        double[] weights = new double[neurons(layer) * features(layer)];
+        getWeights(layer, weights, 0, layout);
+        target.put(weights);
+    }
+
+    /**
+     * Set the weights of a layer from the source position, the position is advanced.
+     */
+    default void setWeights(int layer, DoubleBuffer source, WeightsLayout layout) {
+        double[] weights = new double[neurons(layer) * features(layer)];
+        source.get(weights);
+        setWeights(layer, weights, 0, layout);
+    }
+
+    /**
+     * Copy the <code>neurons(layer)</code> biases of a layer to target, starting at offset.
+     */
+    default void getBiases(int layer, double[] target, int offset) {
+        int neurons = neurons(layer);
+        for (int neuron = 0; neuron < neurons; neuron++) {
+            target[offset + neuron] = bias(layer, neuron);
+        }
+    }
+
+    /**
+     * Set the <code>neurons(layer)</code> biases of a layer from source, starting at offset.
+     */
+    default void setBiases(int layer, double[] source, int offset) {
+        int neurons = neurons(layer);
+        for (int neuron = 0; neuron < neurons; neuron++) {
+            bias(layer, neuron, source[offset + neuron]);
+        }
+    }
+
+    /**
+     * Copy the biases of a layer at the target position, the position is advanced.
+     */
+    default void getBiases(int layer, DoubleBuffer target) {
+        double[] biases = new double[neurons(layer)];
+        getBiases(layer, biases, 0);
+        target.put(biases);
+    }
+
+    /**
+     * Set the biases of a layer from the source position, the position is advanced.
+     */
+    default void setBiases(int layer, DoubleBuffer source) {
+        double[] biases = new double[neurons(layer)];
+        source.get(biases);
+        setBiases(layer, biases, 0);
+    }
+
+    /**
+     * Write all the parameters at the target position, in the {@link NetworkParameters} layout. The position is
+     * advanced.
+     */
+    default void getParameters(ByteBuffer target, Precision precision) {
+        double[] values = new double[maxNeurons() * maxFeatures()];
+        for (int layer = 0; layer < layers(); layer++) {
+            getWeights(layer, values, 0, WeightsLayout.COLUMN_MAJOR);
+            precision.put(target, values, 0, neurons(layer) * features(layer));
+            getBiases(layer, values, 0);
+            precision.put(target, values, 0, neurons(layer));
+        }
+    }
+
+    /**
+     * Set all the parameters from the source position, in the {@link NetworkParameters} layout. The position is
+     * advanced.
+     */
+    default void setParameters(ByteBuffer source, Precision precision) {
+        double[] values = new double[maxNeurons() * maxFeatures()];
+        for (int layer = 0; layer < layers(); layer++) {
+            precision.get(source, values, 0, neurons(layer) * features(layer));
+            setWeights(layer, values, 0, WeightsLayout.COLUMN_MAJOR);
+            precision.get(source, values, 0, neurons(layer));
+            setBiases(layer, values, 0);
+        }
+    }
+
     static int maxNeurons(NeuralNetworkState state) {
         return IntStream.range(0, state.layers())
                 .map(state::neurons)
@@ -0,0 +1,75 @@
+package org.yah.tests.perceptron;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Floating point type used by an engine to store and compute its model and samples.<br/>
+ * {@link NeuralNetworkState} values are always exchanged as double.
+ *
+ * @author Yah
+ */
+public enum Precision {
+    FLOAT(Float.BYTES, "float"),
+    DOUBLE(Double.BYTES, "double");
+
+    private final int size;
+    private final String typeName;
+
+    Precision(int size, String typeName) {
+        this.size = size;
+        this.typeName = typeName;
+    }
+
+    /**
+     * @return size in bytes of a value
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the C/OpenCL type name
+     */
+    public String typeName() {
+        return typeName;
+    }
+
+    /**
+     * Write <code>values[offset, offset + length[</code> at the buffer position, in this precision and the buffer
+     * order. The buffer position is advanced.
+     */
+    public void put(ByteBuffer buffer, double[] values, int offset, int length) {
+        if (this == DOUBLE) {
+            buffer.asDoubleBuffer().put(values, offset, length);
+        } else {
+            FloatBuffer floats = buffer.asFloatBuffer();
+            for (int i = 0; i < length; i++) {
+                floats.put(i, (float) values[offset + i]);
+            }
+        }
+        buffer.position(buffer.position() + length * size);
+    }
+
+    /**
+     * Read <code>length</code> values of this precision from the buffer position into values, starting at offset.
+     * The buffer position is advanced.
+     */
+    public void get(ByteBuffer buffer, double[] values, int offset, int length) {
+        if (this == DOUBLE) {
+            DoubleBuffer doubles = buffer.asDoubleBuffer();
+            doubles.get(values, offset, length);
+        } else {
+            FloatBuffer floats = buffer.asFloatBuffer();
+            for (int i = 0; i < length; i++) {
+                values[offset + i] = floats.get(i);
+            }
+        }
+        buffer.position(buffer.position() + length * size);
+    }
+
+    public static Precision parse(String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
@@ -0,0 +1,241 @@
+package org.yah.tests.perceptron;
+
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micro-batching of single sample predictions: concurrent callers {@link #submit(double[])} one sample, a dispatcher
+ * thread packs the pending samples in one batch, up to <code>maxBatchSize</code> samples or <code>maxWait</code>
+ * microseconds after the first one, and runs a single {@link NeuralNetwork#propagate(InputSamples, NetworkOutputs)}.
+ * <br/>
+ * The mt and OpenCL engines are only efficient on large batches (chunking, kernel launch overhead): the batcher
+ * trades a bounded latency for the batch throughput. The engine inputs and outputs are allocated once for
+ * <code>maxBatchSize</code> samples, each batch is {@link InputSamples#load(SamplesProvider) loaded} in them. The
+ * dispatcher is the only thread propagating through the
+ * batcher, the network must not be trained while predictions are pending.
+ *
+ * @author Yah
+ */
+public final class PredictionBatcher implements AutoCloseable {
+
+    private final NeuralNetwork network;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    // dispatcher thread only
+    private final List<Request> batch;
+    private final BatchProvider provider;
+    private final InputSamples inputs;
+    private final NetworkOutputs outputs;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong predictions = new AtomicLong();
+
+    /**
+     * @param maxWait maximum delay between the first sample of a batch and its propagation, in microseconds
+     */
+    public PredictionBatcher(NeuralNetwork network, int maxBatchSize, long maxWait) {
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("Invalid max batch size " + maxBatchSize);
+        if (maxWait < 0)
+            throw new IllegalArgumentException("Invalid max wait " + maxWait);
+        this.network = network;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWait);
+        batch = new ArrayList<>(maxBatchSize);
+        provider = new BatchProvider(network.features(), maxBatchSize);
+        inputs = network.createInputs(provider, maxBatchSize);
+        outputs = network.createOutpus(maxBatchSize);
+        dispatcher = new Thread(this::dispatch, "prediction-batcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * @param features the sample features, copied: the array can be reused once this method returns
+     * @return the output index of the sample, completed by the dispatcher thread
+     */
+    public CompletableFuture<Integer> submit(double[] features) {
+        if (features.length < network.features())
+            throw new IllegalArgumentException("Expected " + network.features() + " features, got " + features.length);
+        Request request = new Request(features.clone());
+        if (closed) {
+            request.future.completeExceptionally(new IllegalStateException("Batcher is closed"));
+            return request.future;
+        }
+        requests.add(request);
+        // closed while adding: the dispatcher may be gone
+        if (closed && requests.remove(request))
+            request.future.completeExceptionally(new IllegalStateException("Batcher is closed"));
+        return request.future;
+    }
+
+    /**
+     * @return the number of propagated batches
+     */
+    public long batches() {
+        return batches.get();
+    }
+
+    /**
+     * @return the number of propagated samples
+     */
+    public long predictions() {
+        return predictions.get();
+    }
+
+    /**
+     * Stop the dispatcher and release the engine inputs and outputs, the pending predictions complete exceptionally.
+     * <br/>
+     * If the calling thread is interrupted, the dispatcher is still awaited and the thread interrupt status is
+     * restored.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        boolean interrupted = false;
+        while (dispatcher.isAlive()) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        Request request;
+        while ((request = requests.poll()) != null) {
+            request.future.completeExceptionally(new IllegalStateException("Batcher is closed"));
+        }
+        try {
+            close(inputs);
+            close(outputs);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to release the batcher engine buffers", e);
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch() {
+        while (!closed) {
+            try {
+                collect();
+            } catch (InterruptedException e) {
+                break;
+            }
+            propagate();
+        }
+        for (Request request : batch) {
+            request.future.completeExceptionally(new IllegalStateException("Batcher is closed"));
+        }
+        batch.clear();
+    }
+
+    /**
+     * wait for a first request, then for the others until the batch is full or the first one has waited maxWait
+     */
+    private void collect() throws InterruptedException {
+        batch.add(requests.take());
+        long deadline = System.nanoTime() + maxWaitNanos;
+        requests.drainTo(batch, maxBatchSize - batch.size());
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                break;
+            Request request = requests.poll(remaining, TimeUnit.NANOSECONDS);
+            if (request == null)
+                break;
+            batch.add(request);
+            requests.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void propagate() {
+        int size = batch.size();
+        try {
+            provider.fill(batch);
+            inputs.load(provider);
+            network.propagate(inputs, outputs);
+            for (int sample = 0; sample < size; sample++) {
+                batch.get(sample).future.complete(outputs.outputIndex(sample));
+            }
+            batches.incrementAndGet();
+            predictions.addAndGet(size);
+        } catch (Exception e) {
+            for (Request request : batch) {
+                request.future.completeExceptionally(e);
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private static void close(Object resource) throws Exception {
+        if (resource instanceof AutoCloseable)
+            ((AutoCloseable) resource).close();
+    }
+
+    private static final class Request {
+        private final double[] features;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        private Request(double[] features) {
+            this.features = features;
+        }
+    }
+
+    /**
+     * inputs of the current batch, features of a sample are contiguous
+     */
+    private static final class BatchProvider implements SamplesProvider {
+        private final int features;
+        private final double[] inputs;
+        private int samples;
+
+        /**
+         * initially capacity samples of zeros, to allocate the engine inputs
+         */
+        private BatchProvider(int features, int capacity) {
+            this.features = features;
+            this.inputs = new double[features * capacity];
+            this.samples = capacity;
+        }
+
+        private void fill(List<Request> requests) {
+            samples = requests.size();
+            for (int sample = 0; sample < samples; sample++) {
+                System.arraycopy(requests.get(sample).features, 0, inputs, sample * features, features);
+            }
+        }
+
+        @Override
+        public int samples() {
+            return samples;
+        }
+
+        @Override
+        public double input(int sample, int feature) {
+            return inputs[sample * features + feature];
+        }
+
+        @Override
+        public void inputs(int sample, int count, int features, double[] target, int offset) {
+            for (int s = 0; s < count; s++) {
+                System.arraycopy(inputs, (sample + s) * this.features, target, offset + s * features, features);
+            }
+        }
+    }
+
+}
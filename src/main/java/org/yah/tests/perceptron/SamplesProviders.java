@@ -1,7 +1,16 @@
 package org.yah.tests.perceptron;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
 public final class SamplesProviders {
 
+    /**
+     * Number of samples copied at once by {@link #readInputs(SamplesProvider, int, InputsConsumer)}
+     */
+    public static final int CHUNK_SAMPLES = 4096;
+
     private SamplesProviders() {
     }
 
@@ -10,6 +19,39 @@ public final class SamplesProviders {
         int samples();
 
         double input(int sample, int feature);
+
+        /**
+         * Bulk copy of the inputs of samples [sample, sample + count[, features of a sample are contiguous:<br/>
+         * target[offset + s * features + f] = input(sample + s, f)<br/>
+         * Used by the engines to ingest the samples, the default implementation calls {@link #input(int, int)}.
+         */
+        default void inputs(int sample, int count, int features, double[] target, int offset) {
+            for (int s = 0; s < count; s++) {
+                for (int f = 0; f < features; f++) {
+                    target[offset++] = input(sample + s, f);
+                }
+            }
+        }
+
+        /**
+         * Same layout as {@link #inputs(int, int, int, double[], int)}, written at the target position.
+         */
+        default void inputs(int sample, int count, int features, DoubleBuffer target) {
+            for (int s = 0; s < count; s++) {
+                for (int f = 0; f < features; f++) {
+                    target.put(input(sample + s, f));
+                }
+            }
+        }
+    }
+
+    /**
+     * Receive the inputs of samples [sample, sample + count[ copied by
+     * {@link SamplesProvider#inputs(int, int, int, double[], int)}
+     */
+    @FunctionalInterface
+    public interface InputsConsumer {
+        void accept(int sample, int count, double[] inputs);
     }
 
     public interface TrainingSamplesProvider extends SamplesProvider {
@@ -55,6 +97,21 @@ public final class SamplesProviders {
         public double input(int sample, int feature) {
             return inputs[sample][feature];
         }
+
+        @Override
+        public void inputs(int sample, int count, int features, double[] target, int offset) {
+            for (int s = 0; s < count; s++) {
+                System.arraycopy(inputs[sample + s], 0, target, offset, features);
+                offset += features;
+            }
+        }
+
+        @Override
+        public void inputs(int sample, int count, int features, DoubleBuffer target) {
+            for (int s = 0; s < count; s++) {
+                target.put(inputs[sample + s], 0, features);
+            }
+        }
     }
 
     private static class RMArraySamplesProvider extends AbstractArraySamplesProvider {
@@ -67,10 +124,190 @@ public final class SamplesProviders {
         public double input(int sample, int feature) {
             return inputs[feature][sample];
         }
+
+        @Override
+        public void inputs(int sample, int count, int features, double[] target, int offset) {
+            if (features == 1) {
+                System.arraycopy(inputs[0], sample, target, offset, count);
+                return;
+            }
+            for (int f = 0; f < features; f++) {
+                double[] row = inputs[f];
+                int index = offset + f;
+                for (int s = 0; s < count; s++) {
+                    target[index] = row[sample + s];
+                    index += features;
+                }
+            }
+        }
+
+        @Override
+        public void inputs(int sample, int count, int features, DoubleBuffer target) {
+            int position = target.position();
+            for (int f = 0; f < features; f++) {
+                double[] row = inputs[f];
+                int index = position + f;
+                for (int s = 0; s < count; s++) {
+                    target.put(index, row[sample + s]);
+                    index += features;
+                }
+            }
+            target.position(position + count * features);
+        }
+    }
+
+    private static class FlatArraySamplesProvider implements TrainingSamplesProvider {
+        private final int features;
+        private final double[] inputs;
+        private final int[] outputIndices;
+
+        public FlatArraySamplesProvider(double[] inputs, int features, int[] outputIndices) {
+            if (inputs.length % features != 0)
+                throw new IllegalArgumentException(
+                        "Inputs length " + inputs.length + " is not a multiple of " + features);
+            this.features = features;
+            this.inputs = inputs;
+            this.outputIndices = outputIndices;
+        }
+
+        @Override
+        public int samples() {
+            return inputs.length / features;
+        }
+
+        @Override
+        public double input(int sample, int feature) {
+            return inputs[sample * this.features + feature];
+        }
+
+        @Override
+        public void inputs(int sample, int count, int features, double[] target, int offset) {
+            if (features == this.features) {
+                System.arraycopy(inputs, sample * features, target, offset, count * features);
+            } else {
+                for (int s = 0; s < count; s++) {
+                    System.arraycopy(inputs, (sample + s) * this.features, target, offset, features);
+                    offset += features;
+                }
+            }
+        }
+
+        @Override
+        public void inputs(int sample, int count, int features, DoubleBuffer target) {
+            if (features == this.features) {
+                target.put(inputs, sample * features, count * features);
+            } else {
+                for (int s = 0; s < count; s++) {
+                    target.put(inputs, (sample + s) * this.features, features);
+                }
+            }
+        }
+
+        @Override
+        public int outputIndex(int sample) {
+            return outputIndices[sample];
+        }
+    }
+
+    /**
+     * Inputs only view of an array provider, not seen as a {@link TrainingSamplesProvider} by the engines
+     */
+    private static final class InputsProvider implements SamplesProvider {
+        private final SamplesProvider delegate;
+
+        private InputsProvider(SamplesProvider delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int samples() {
+            return delegate.samples();
+        }
+
+        @Override
+        public double input(int sample, int feature) {
+            return delegate.input(sample, feature);
+        }
+
+        @Override
+        public void inputs(int sample, int count, int features, double[] target, int offset) {
+            delegate.inputs(sample, count, features, target, offset);
+        }
+
+        @Override
+        public void inputs(int sample, int count, int features, DoubleBuffer target) {
+            delegate.inputs(sample, count, features, target);
+        }
+    }
+
+    /**
+     * @return true if the provider has output indices: a {@link TrainingSamplesProvider}, unless it is a
+     * {@link DirectSamples} without labels block
+     */
+    public static boolean hasLabels(SamplesProvider provider) {
+        if (provider instanceof DirectSamples)
+            return ((DirectSamples) provider).hasLabels();
+        return provider instanceof TrainingSamplesProvider;
+    }
+
+    /**
+     * Copy all the provider inputs by chunks of {@link #CHUNK_SAMPLES} samples, the chunk array is reused between
+     * calls of the consumer.
+     */
+    public static void readInputs(SamplesProvider provider, int features, InputsConsumer consumer) {
+        readInputs(provider, 0, provider.samples(), features, consumer);
+    }
+
+    /**
+     * Same as {@link #readInputs(SamplesProvider, int, InputsConsumer)}, for samples [first, first + samples[ only.
+     */
+    public static void readInputs(SamplesProvider provider, int first, int samples, int features,
+                                  InputsConsumer consumer) {
+        double[] chunk = new double[Math.min(samples, CHUNK_SAMPLES) * features];
+        for (int sample = 0; sample < samples; sample += CHUNK_SAMPLES) {
+            int count = Math.min(CHUNK_SAMPLES, samples - sample);
+            provider.inputs(first + sample, count, features, chunk, 0);
+            consumer.accept(first + sample, count, chunk);
+        }
+    }
+
+    /**
+     * Write all the provider inputs in <code>target</code> from its position, in the engine precision and the target
+     * byte order.
+     *
+     * @return the target, position after the inputs
+     */
+    public static ByteBuffer writeInputs(SamplesProvider provider, int features, Precision precision,
+                                         ByteBuffer target) {
+        return writeInputs(provider, 0, provider.samples(), features, precision, target);
+    }
+
+    /**
+     * Same as {@link #writeInputs(SamplesProvider, int, Precision, ByteBuffer)}, for samples [first, first + samples[
+     * only.
+     */
+    public static ByteBuffer writeInputs(SamplesProvider provider, int first, int samples, int features,
+                                         Precision precision, ByteBuffer target) {
+        int position = target.position();
+        if (precision == Precision.FLOAT) {
+            FloatBuffer floats = target.asFloatBuffer();
+            float[] values = new float[Math.min(samples, CHUNK_SAMPLES) * features];
+            readInputs(provider, first, samples, features, (sample, count, inputs) -> {
+                int length = count * features;
+                for (int i = 0; i < length; i++) {
+                    values[i] = (float) inputs[i];
+                }
+                floats.put(values, 0, length);
+            });
+        } else {
+            provider.inputs(first, samples, features, target.asDoubleBuffer());
+        }
+        target.position(position + samples * features * precision.size());
+        return target;
     }
 
     public static SamplesProvider newSamplesProvider(double[][] inputs, boolean transpose) {
-        return newTrainingProvider(inputs, transpose, null);
+        return new InputsProvider(newTrainingProvider(inputs, transpose, null));
     }
 
     public static TrainingSamplesProvider newTrainingProvider(double[][] inputs, boolean transpose,
@@ -78,4 +315,11 @@ public final class SamplesProviders {
         return transpose ? new RMArraySamplesProvider(inputs, outputIndices)
                 : new CMArraySamplesProvider(inputs, outputIndices);
     }
+
+    /**
+     * @param inputs features of each sample, contiguous: inputs[sample * features + feature]
+     */
+    public static TrainingSamplesProvider newTrainingProvider(double[] inputs, int features, int[] outputIndices) {
+        return new FlatArraySamplesProvider(inputs, features, outputIndices);
+    }
 }
\ No newline at end of file
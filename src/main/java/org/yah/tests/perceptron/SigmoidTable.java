@@ -0,0 +1,63 @@
+package org.yah.tests.perceptron;
+
+/**
+ * Sigmoid lookup table with linear interpolation, used by {@link Activation} when
+ * {@link NeuralNetwork#approximate()}.<br/>
+ * Sampled every 1/128 on [-16, 16], absolute error is below 1E-6. Values outside of the table are clamped to the
+ * table bounds, NaN is returned as is (as the exact sigmoid).
+ */
+public final class SigmoidTable {
+
+    public static final double MIN = -16;
+    public static final double MAX = 16;
+
+    private static final int RESOLUTION = 128;
+    private static final double SCALE = RESOLUTION;
+
+    private static final double[] TABLE = createTable();
+
+    private static final double LOW = TABLE[0];
+    private static final double HIGH = TABLE[TABLE.length - 1];
+
+    private SigmoidTable() {}
+
+    private static double[] createTable() {
+        int size = (int) ((MAX - MIN) * RESOLUTION) + 1;
+        double[] res = new double[size];
+        for (int i = 0; i < size; i++) {
+            res[i] = 1.0 / (1.0 + Math.exp(-(MIN + i / SCALE)));
+        }
+        return res;
+    }
+
+    public static double sigmoid(double v) {
+        if (!(v > MIN))
+            return Double.isNaN(v) ? v : LOW;
+        if (v >= MAX)
+            return HIGH;
+        double p = (v - MIN) * SCALE;
+        int i = (int) p;
+        double low = TABLE[i];
+        return low + (p - i) * (TABLE[i + 1] - low);
+    }
+
+    public static float sigmoid(float v) {
+        return (float) sigmoid((double) v);
+    }
+
+    /**
+     * dst[dstOffset + i] = sigmoid(src[srcOffset + i])
+     */
+    public static void sigmoid(double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = sigmoid(src[srcOffset + i]);
+        }
+    }
+
+    public static void sigmoid(float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = (float) sigmoid((double) src[srcOffset + i]);
+        }
+    }
+
+}
@@ -1,8 +1,25 @@
 package org.yah.tests.perceptron;
 
+import java.util.Random;
+
 /**
  * @author Yah
  *
  */
 public interface TrainingSamples extends InputSamples {
+
+    /**
+     * Shuffle the iteration order with a new random permutation, used by the next epochs.<br/>
+     * The batches gather their samples through the permutation, the samples data is not moved.
+     */
+    void shuffle(Random random);
+
+    /**
+     * View of some samples sharing these samples data, for k-fold splits or bootstrap subsets.<br/>
+     * Outputs of the view are in the view order.
+     *
+     * @param indices positions of the samples in the current order, repeated indices are allowed
+     */
+    TrainingSamples select(int[] indices);
+
 }
@@ -26,7 +26,7 @@ public abstract class AbstractBatchedNeuralNetwork<B extends TrainingBatch, O ex
     @SuppressWarnings("unchecked")
     @Override
     protected void doPropagate(InputSamples samples, O outputs) {
-        assert outputs != null && outputs.samples() == samples.size();
+        assert outputs != null && outputs.samples() >= samples.size();
         checkModel();
         for (B batch : (BatchedSamples<B>) samples) {
             propagate(batch, outputs);
@@ -36,7 +36,7 @@ public abstract class AbstractBatchedNeuralNetwork<B extends TrainingBatch, O ex
     @SuppressWarnings("unchecked")
     @Override
     protected double doEvaluate(InputSamples samples, O outputs) {
-        assert outputs == null || outputs.samples() == samples.size();
+        assert outputs == null || outputs.samples() >= samples.size();
         checkModel();
         int matched = 0;
         for (B batch : (BatchedSamples<B>) samples) {
@@ -2,16 +2,33 @@ package org.yah.tests.perceptron.base;
 
 import org.yah.tests.perceptron.*;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
 public abstract class AbstractNeuralNetwork<O extends NetworkOutputs> implements NeuralNetwork {
 
     protected final NeuralNetworkState state;
 
     private int epoch;
 
-    private boolean stateDirty, modelDirty;
+    // volatile for the engines supporting concurrent propagations
+    private volatile boolean stateDirty, modelDirty;
+
+    private final AtomicReference<NetworkSnapshot> snapshot;
+    private int snapshotInterval;
+
+    // read by the engines threads at each propagation
+    private volatile boolean approximate = Activation.APPROXIMATE;
+
+    // lazily created by the engines using the default predict
+    private SamplePredictor predictor;
+    private volatile boolean predictorDirty = true;
 
     public AbstractNeuralNetwork(NeuralNetworkState state) {
         this.state = new DefaultNetworkState(state);
+        this.snapshot = new AtomicReference<>(new DefaultNetworkSnapshot(this.state, 0));
     }
 
     @Override
@@ -65,11 +82,57 @@ public abstract class AbstractNeuralNetwork<O extends NetworkOutputs> implements
         return state.totalWeights();
     }
 
+    @Override
+    public Activation activation(int layer) {
+        return state.activation(layer);
+    }
+
     @Override
     public NeuralNetworkState getState() {
         return new DefaultNetworkState(this);
     }
 
+    @Override
+    public NetworkSnapshot snapshot() {
+        return snapshot.get();
+    }
+
+    @Override
+    public CompletableFuture<NetworkSnapshot> publishSnapshot() {
+        // only the copy of the model is done by the training thread
+        Precision precision = modelPrecision();
+        ByteBuffer parameters = NetworkParameters.allocate(this, precision);
+        getParameters(parameters, precision);
+        parameters.flip();
+        int snapshotEpoch = epoch;
+        return CompletableFuture.supplyAsync(() -> {
+            NetworkSnapshot newSnapshot = new DefaultNetworkSnapshot(state, snapshotEpoch, parameters, precision);
+            // keep the most recent one if snapshots are published out of order
+            return snapshot.accumulateAndGet(newSnapshot, (current, s) -> s.epoch() >= current.epoch() ? s : current);
+        });
+    }
+
+    @Override
+    public void snapshotInterval(int epochs) {
+        if (epochs < 0)
+            throw new IllegalArgumentException("Invalid snapshot interval " + epochs);
+        this.snapshotInterval = epochs;
+    }
+
+    @Override
+    public boolean approximate() {
+        return approximate;
+    }
+
+    @Override
+    public void approximate(boolean approximate) {
+        synchronized (this) {
+            this.approximate = approximate;
+            predictor = null;
+            predictorDirty = true;
+        }
+    }
+
     @Override
     public double weight(int layer, int neuron, int feature) {
         checkState();
@@ -94,6 +157,101 @@ public abstract class AbstractNeuralNetwork<O extends NetworkOutputs> implements
         stateChanged();
     }
 
+    @Override
+    public void getWeights(int layer, double[] target, int offset, WeightsLayout layout) {
+        checkState();
+        state.getWeights(layer, target, offset, layout);
+    }
+
+    @Override
+    public void setWeights(int layer, double[] source, int offset, WeightsLayout layout) {
+        state.setWeights(layer, source, offset, layout);
+        stateChanged();
+    }
+
+    @Override
+    public void getWeights(int layer, DoubleBuffer target, WeightsLayout layout) {
+        checkState();
+        state.getWeights(layer, target, layout);
+    }
+
+    @Override
+    public void setWeights(int layer, DoubleBuffer source, WeightsLayout layout) {
+        state.setWeights(layer, source, layout);
+        stateChanged();
+    }
+
+    @Override
+    public void getBiases(int layer, double[] target, int offset) {
+        checkState();
+        state.getBiases(layer, target, offset);
+    }
+
+    @Override
+    public void setBiases(int layer, double[] source, int offset) {
+        state.setBiases(layer, source, offset);
+        stateChanged();
+    }
+
+    @Override
+    public void getBiases(int layer, DoubleBuffer target) {
+        checkState();
+        state.getBiases(layer, target);
+    }
+
+    @Override
+    public void setBiases(int layer, DoubleBuffer source) {
+        state.setBiases(layer, source);
+        stateChanged();
+    }
+
+    @Override
+    public void getParameters(ByteBuffer target, Precision precision) {
+        if (stateDirty && readParameters(target, precision))
+            return;
+        checkState();
+        state.getParameters(target, precision);
+    }
+
+    @Override
+    public void setParameters(ByteBuffer source, Precision precision) {
+        ByteBuffer parameters = source.duplicate().order(source.order());
+        state.setParameters(source, precision);
+        if (writeParameters(parameters, precision)) {
+            // state and model are both up to date
+            stateDirty = modelDirty = false;
+        } else {
+            stateChanged();
+        }
+    }
+
+    /**
+     * @return the precision of the engine model, used to copy the model for the snapshots and to compute the default
+     * predictions
+     */
+    protected Precision modelPrecision() {
+        return Precision.DOUBLE;
+    }
+
+    /**
+     * Copy the engine model straight to target, in the {@link NetworkParameters} layout, without updating the state.
+     * The target position is advanced.
+     *
+     * @return false if the engine can not copy its model in this precision, the state is then used
+     */
+    protected boolean readParameters(ByteBuffer target, Precision precision) {
+        return false;
+    }
+
+    /**
+     * Set the engine model straight from source, in the {@link NetworkParameters} layout.
+     *
+     * @return false if the engine can not set its model from this precision, the model is then updated from the state
+     */
+    protected boolean writeParameters(ByteBuffer source, Precision precision) {
+        return false;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + state.toString();
@@ -101,24 +259,34 @@ public abstract class AbstractNeuralNetwork<O extends NetworkOutputs> implements
 
     protected final void checkState() {
         if (stateDirty) {
-            updateState();
-            stateDirty = false;
+            synchronized (this) {
+                if (stateDirty) {
+                    updateState();
+                    stateDirty = false;
+                }
+            }
         }
     }
 
     protected final void checkModel() {
         if (modelDirty) {
-            updateModel();
-            modelDirty = false;
+            synchronized (this) {
+                if (modelDirty) {
+                    updateModel();
+                    modelDirty = false;
+                }
+            }
         }
     }
 
     protected final void stateChanged() {
         modelDirty = true;
+        predictorDirty = true;
     }
 
     protected final void modelChanged() {
         stateDirty = true;
+        predictorDirty = true;
     }
 
     @SuppressWarnings("unchecked")
@@ -141,11 +309,59 @@ public abstract class AbstractNeuralNetwork<O extends NetworkOutputs> implements
         doTrain(samples, learningRate);
         modelChanged();
         epoch++;
+        if (snapshotInterval > 0 && epoch % snapshotInterval == 0)
+            publishSnapshot();
+    }
+
+    @Override
+    public final int predict(double[] features, double[] scores) {
+        checkModel();
+        return doPredict(features, scores);
+    }
+
+    @Override
+    public final int predict(DoubleBuffer features, double[] scores) {
+        checkModel();
+        return doPredict(features, scores);
+    }
+
+    /**
+     * Default single sample prediction, on a {@link SamplePredictor} loaded from the state, in the
+     * {@link #modelPrecision()}.
+     */
+    protected int doPredict(double[] features, double[] scores) {
+        return predictor().predict(features, scores);
+    }
+
+    /**
+     * @see #doPredict(double[], double[])
+     */
+    protected int doPredict(DoubleBuffer features, double[] scores) {
+        return predictor().predict(features, scores);
+    }
+
+    private SamplePredictor predictor() {
+        if (predictorDirty) {
+            synchronized (this) {
+                if (predictorDirty) {
+                    checkState();
+                    if (predictor == null)
+                        predictor = new SamplePredictor(state, modelPrecision(), approximate());
+                    else
+                        predictor.load(state);
+                    predictorDirty = false;
+                }
+            }
+        }
+        return predictor;
     }
 
     @Override
     public abstract O createOutpus(int samples);
 
+    @Override
+    public abstract O createOutpus(int samples, int topK, boolean activations);
+
     protected abstract void updateState();
 
     protected abstract void updateModel();
@@ -6,51 +6,182 @@ import java.nio.IntBuffer;
 
 public class ArrayNetworkOutputs implements NetworkOutputs {
 
-    private int[] outputs;
-    private int offset;
+    private final int samples;
+    private final int topK;
+    private final int outputsCount;
+
+    private final int[] outputs; // [samples x topK]
+    private final double[] scores; // [samples x topK], null if not ranked
+    private final double[] activations; // [samples x outputs], null if not kept
 
     public ArrayNetworkOutputs(int size) {
+        this.samples = size;
+        this.topK = 1;
+        this.outputsCount = 0;
         this.outputs = new int[size];
+        this.scores = null;
+        this.activations = null;
+    }
+
+    /**
+     * Ranked outputs: keep the topK output indices and scores of each sample, and the activations of every outputs if
+     * <code>activations</code> is true.
+     */
+    public ArrayNetworkOutputs(int size, int outputs, int topK, boolean activations) {
+        if (topK < 1 || topK > outputs)
+            throw new IllegalArgumentException("Invalid top k " + topK + " for " + outputs + " outputs");
+        this.samples = size;
+        this.topK = topK;
+        this.outputsCount = outputs;
+        this.outputs = new int[size * topK];
+        this.scores = new double[size * topK];
+        this.activations = activations ? new double[size * outputs] : null;
     }
 
     @Override
     public int samples() {
-        return outputs.length;
+        return samples;
     }
 
     @Override
     public int outputIndex(int sample) {
-        return outputs[sample];
+        return outputs[sample * topK];
+    }
+
+    @Override
+    public int topK() {
+        return topK;
+    }
+
+    @Override
+    public int outputIndex(int sample, int rank) {
+        return outputs[rankIndex(sample, rank)];
+    }
+
+    @Override
+    public boolean hasScores() {
+        return scores != null;
+    }
+
+    @Override
+    public double score(int sample, int rank) {
+        if (scores == null)
+            return NetworkOutputs.super.score(sample, rank);
+        return scores[rankIndex(sample, rank)];
+    }
+
+    @Override
+    public boolean hasActivations() {
+        return activations != null;
     }
 
-    public void push(int index) {
-        outputs[offset++] = index;
+    @Override
+    public double activation(int sample, int output) {
+        if (activations == null)
+            return NetworkOutputs.super.activation(sample, output);
+        return activations[sample * outputsCount + output];
+    }
+
+    /**
+     * @return true if the engine must use {@link #set(int, double[], int, int)} instead of only the output index
+     */
+    public boolean ranked() {
+        return scores != null;
     }
 
     public void set(int index, int value) {
-        outputs[index] = value;
+        outputs[index * topK] = value;
+    }
+
+    /**
+     * Rank the outputs of a sample in one pass over its output activations: keep the top k indices and scores, and
+     * the activations if requested.
+     *
+     * @param values backing array of the output activations, the activation of output o is
+     *               <code>values[offset + o * stride]</code>
+     * @return the output index of the sample
+     */
+    public int set(int sample, double[] values, int offset, int stride) {
+        int rankOffset = sample * topK;
+        int activationsOffset = sample * outputsCount;
+        int ranked = 0;
+        for (int output = 0, index = offset; output < outputsCount; output++, index += stride) {
+            double value = values[index];
+            if (activations != null)
+                activations[activationsOffset + output] = value;
+            ranked = insert(rankOffset, ranked, output, value);
+        }
+        return outputs[rankOffset];
+    }
+
+    /**
+     * Float variant of {@link #set(int, double[], int, int)}
+     */
+    public int set(int sample, float[] values, int offset, int stride) {
+        int rankOffset = sample * topK;
+        int activationsOffset = sample * outputsCount;
+        int ranked = 0;
+        for (int output = 0, index = offset; output < outputsCount; output++, index += stride) {
+            double value = values[index];
+            if (activations != null)
+                activations[activationsOffset + output] = value;
+            ranked = insert(rankOffset, ranked, output, value);
+        }
+        return outputs[rankOffset];
+    }
+
+    /**
+     * insertion in the sorted ranks, equal values keep the lowest index first (same as maxRowIndex)
+     */
+    private int insert(int rankOffset, int ranked, int output, double value) {
+        int rank = ranked;
+        while (rank > 0 && scores[rankOffset + rank - 1] < value)
+            rank--;
+        if (rank == topK)
+            return ranked;
+        for (int i = Math.min(ranked, topK - 1); i > rank; i--) {
+            outputs[rankOffset + i] = outputs[rankOffset + i - 1];
+            scores[rankOffset + i] = scores[rankOffset + i - 1];
+        }
+        outputs[rankOffset + rank] = output;
+        scores[rankOffset + rank] = value;
+        return Math.min(ranked + 1, topK);
+    }
+
+    private int rankIndex(int sample, int rank) {
+        if (rank < 0 || rank >= topK)
+            throw new IndexOutOfBoundsException("rank " + rank + " >= top k " + topK);
+        return sample * topK + rank;
     }
 
     @Override
     public void reset() {
-        offset = 0;
+        // outputs are set by sample index, nothing to rewind
     }
 
     @Override
     public void copy(IntBuffer target) {
-        target.put(outputs).flip();
+        if (topK == 1) {
+            target.put(outputs).flip();
+        } else {
+            for (int sample = 0; sample < samples; sample++) {
+                target.put(outputIndex(sample));
+            }
+            target.flip();
+        }
     }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        int count = Math.min(outputs.length, 128);
+        int count = Math.min(samples, 128);
         sb.append('[');
         for (int i = 0; i < count; i++) {
-            sb.append(outputs[i]);
+            sb.append(outputIndex(i));
             if (i < count - 1) sb.append(", ");
         }
-        if (count < outputs.length)
-            sb.append(" ... (").append(outputs.length - count).append(" more)");
+        if (count < samples)
+            sb.append(" ... (").append(samples - count).append(" more)");
         sb.append(']');
         return sb.toString();
     }
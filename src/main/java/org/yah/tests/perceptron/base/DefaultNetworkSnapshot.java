@@ -0,0 +1,175 @@
+package org.yah.tests.perceptron.base;
+
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.NetworkSnapshot;
+import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+/**
+ * {@link NetworkSnapshot} backed by a private {@link DefaultNetworkState}.
+ */
+public final class DefaultNetworkSnapshot implements NetworkSnapshot {
+
+    private final int epoch;
+    private final DefaultNetworkState state;
+
+    public DefaultNetworkSnapshot(NeuralNetworkState from, int epoch) {
+        this.epoch = epoch;
+        this.state = new DefaultNetworkState(from);
+    }
+
+    /**
+     * @param layout     state giving the layers and activations of the snapshot
+     * @param parameters the parameters, in the {@link org.yah.tests.perceptron.NetworkParameters} layout
+     */
+    public DefaultNetworkSnapshot(NeuralNetworkState layout, int epoch, ByteBuffer parameters, Precision precision) {
+        this.epoch = epoch;
+        int[] layerSizes = new int[layout.layers() + 1];
+        layerSizes[0] = layout.features();
+        for (int layer = 0; layer < layout.layers(); layer++) {
+            layerSizes[layer + 1] = layout.neurons(layer);
+        }
+        state = new DefaultNetworkState(layerSizes);
+        for (int layer = 0; layer < layout.layers(); layer++) {
+            state.activation(layer, layout.activation(layer));
+        }
+        state.setParameters(parameters, precision);
+    }
+
+    @Override
+    public int epoch() {
+        return epoch;
+    }
+
+    @Override
+    public int layers() {
+        return state.layers();
+    }
+
+    @Override
+    public int features() {
+        return state.features();
+    }
+
+    @Override
+    public int outputs() {
+        return state.outputs();
+    }
+
+    @Override
+    public int features(int layer) {
+        return state.features(layer);
+    }
+
+    @Override
+    public int neurons(int layer) {
+        return state.neurons(layer);
+    }
+
+    @Override
+    public int maxNeurons() {
+        return state.maxNeurons();
+    }
+
+    @Override
+    public int maxFeatures() {
+        return state.maxFeatures();
+    }
+
+    @Override
+    public int totalNeurons() {
+        return state.totalNeurons();
+    }
+
+    @Override
+    public int totalWeights() {
+        return state.totalWeights();
+    }
+
+    @Override
+    public Activation activation(int layer) {
+        return state.activation(layer);
+    }
+
+    @Override
+    public double weight(int layer, int neuron, int feature) {
+        return state.weight(layer, neuron, feature);
+    }
+
+    @Override
+    public double bias(int layer, int neuron) {
+        return state.bias(layer, neuron);
+    }
+
+    @Override
+    public void getWeights(int layer, double[] target, int offset, WeightsLayout layout) {
+        state.getWeights(layer, target, offset, layout);
+    }
+
+    @Override
+    public void getWeights(int layer, DoubleBuffer target, WeightsLayout layout) {
+        state.getWeights(layer, target, layout);
+    }
+
+    @Override
+    public void getBiases(int layer, double[] target, int offset) {
+        state.getBiases(layer, target, offset);
+    }
+
+    @Override
+    public void getBiases(int layer, DoubleBuffer target) {
+        state.getBiases(layer, target);
+    }
+
+    @Override
+    public void getParameters(ByteBuffer target, Precision precision) {
+        state.getParameters(target, precision);
+    }
+
+    @Override
+    public void weight(int layer, int neuron, int feature, double weight) {
+        throw readOnly();
+    }
+
+    @Override
+    public void bias(int layer, int neuron, double bias) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setWeights(int layer, double[] source, int offset, WeightsLayout layout) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setWeights(int layer, DoubleBuffer source, WeightsLayout layout) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setBiases(int layer, double[] source, int offset) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setBiases(int layer, DoubleBuffer source) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setParameters(ByteBuffer source, Precision precision) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Snapshots are immutable");
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot" + state + "@" + epoch;
+    }
+}
@@ -1,13 +1,21 @@
 package org.yah.tests.perceptron.base;
 
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.NetworkParameters;
 import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
-import java.util.Objects;
 import java.util.function.DoubleSupplier;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Network state stored in one flat array, in the {@link NetworkParameters} layout: for each layer, its weights in
+ * {@link WeightsLayout#COLUMN_MAJOR} order, followed by its biases.
+ */
 public final class DefaultNetworkState implements NeuralNetworkState {
 
     protected final int layers;
@@ -19,8 +27,11 @@ public final class DefaultNetworkState implements NeuralNetworkState {
 
     private final int[] layerSizes;
 
-    private final double[][][] weights;
-    private final double[][] biases;
+    private final Activation[] activations;
+
+    private final double[] parameters;
+    private final int[] weightsOffsets;
+    private final int[] biasesOffsets;
 
     public DefaultNetworkState(NeuralNetworkState from) {
         requireNonNull(from,"from");
@@ -35,19 +46,15 @@ public final class DefaultNetworkState implements NeuralNetworkState {
         totalNeurons = NeuralNetworkState.totalNeurons(this);
         totalWeights = NeuralNetworkState.totalWeights(this);
 
-        weights = new double[layers][][];
-        biases = new double[layers][];
+        activations = new Activation[layers];
+        parameters = new double[totalWeights + totalNeurons];
+        weightsOffsets = new int[layers];
+        biasesOffsets = new int[layers];
+        computeOffsets();
         for (int layer = 0; layer < layers; layer++) {
-            int neurons = neurons(layer);
-            int features = features(layer);
-            weights[layer] = new double[neurons][features];
-            biases[layer] = new double[neurons];
-            for (int neuron = 0; neuron < neurons; neuron++) {
-                for (int feature = 0; feature < features; feature++) {
-                    weights[layer][neuron][feature] = from.weight(layer, neuron, feature);
-                }
-                biases[layer][neuron] = from.bias(layer, neuron);
-            }
+            activations[layer] = checkActivation(layer, from.activation(layer));
+            from.getWeights(layer, parameters, weightsOffsets[layer], WeightsLayout.COLUMN_MAJOR);
+            from.getBiases(layer, parameters, biasesOffsets[layer]);
         }
     }
 
@@ -64,31 +71,47 @@ public final class DefaultNetworkState implements NeuralNetworkState {
         maxFeatures = NeuralNetworkState.maxFeatures(this);
         totalNeurons = NeuralNetworkState.totalNeurons(this);
         totalWeights = NeuralNetworkState.totalWeights(this);
-        weights = new double[layers][][];
-        biases = new double[layers][];
-        for (int layer = 0; layer < layers; layer++) {
-            int neurons = neurons(layer);
-            int features = features(layer);
-            weights[layer] = new double[neurons][features];
-            biases[layer] = new double[neurons];
-            if (randomSource != null) {
+        activations = new Activation[layers];
+        Arrays.fill(activations, Activation.SIGMOID);
+        parameters = new double[totalWeights + totalNeurons];
+        weightsOffsets = new int[layers];
+        biasesOffsets = new int[layers];
+        computeOffsets();
+        if (randomSource != null) {
+            for (int layer = 0; layer < layers; layer++) {
                 // He-et-al Initialization
                 // https://towardsdatascience.com/random-initialization-for-neural-networks-a-thing-of-the-past-bfcdd806bf9e
-                double q = Math.sqrt(2.0 / features);
-                randomize(weights[layer], randomSource, q);
+                double q = Math.sqrt(2.0 / features(layer));
+                randomize(layer, randomSource, q);
             }
         }
     }
 
-    private static void randomize(double[][] weights, DoubleSupplier randomSource, double q) {
-        int features = weights[0].length;
-        for (int neuron = 0; neuron < weights.length; neuron++) {
+    private void computeOffsets() {
+        int offset = 0;
+        for (int layer = 0; layer < layers; layer++) {
+            weightsOffsets[layer] = offset;
+            offset += neurons(layer) * features(layer);
+            biasesOffsets[layer] = offset;
+            offset += neurons(layer);
+        }
+    }
+
+    private void randomize(int layer, DoubleSupplier randomSource, double q) {
+        // same draw order as the original [neuron][feature] storage
+        int neurons = neurons(layer);
+        int features = features(layer);
+        for (int neuron = 0; neuron < neurons; neuron++) {
             for (int feature = 0; feature < features; feature++) {
-                weights[neuron][feature] = randomSource.getAsDouble() * q;
+                parameters[weightIndex(layer, neuron, feature)] = randomSource.getAsDouble() * q;
             }
         }
     }
 
+    private int weightIndex(int layer, int neuron, int feature) {
+        return weightsOffsets[layer] + feature * neurons(layer) + neuron;
+    }
+
     @Override
     public int layers() {
         return layers;
@@ -134,24 +157,113 @@ public final class DefaultNetworkState implements NeuralNetworkState {
         return totalWeights;
     }
 
+    @Override
+    public Activation activation(int layer) {
+        return activations[layer];
+    }
+
+    public void activation(int layer, Activation activation) {
+        activations[layer] = checkActivation(layer, activation);
+    }
+
+    private Activation checkActivation(int layer, Activation activation) {
+        requireNonNull(activation, "activation");
+        if (activation == Activation.SOFTMAX && layer != layers - 1)
+            throw new IllegalArgumentException("Softmax is only supported by the output layer, not by layer " + layer);
+        return activation;
+    }
+
+    /**
+     * Set the activation of every layers
+     */
+    public void activations(Activation... activations) {
+        if (activations.length != layers)
+            throw new IllegalArgumentException("Invalid activations count " + activations.length + ", expected " + layers);
+        for (int layer = 0; layer < layers; layer++) {
+            activation(layer, activations[layer]);
+        }
+    }
+
     @Override
     public double weight(int layer, int neuron, int feature) {
-        return weights[layer][neuron][feature];
+        return parameters[weightIndex(layer, neuron, feature)];
     }
 
     @Override
     public void weight(int layer, int neuron, int feature, double weight) {
-        weights[layer][neuron][feature] = weight;
+        parameters[weightIndex(layer, neuron, feature)] = weight;
     }
 
     @Override
     public double bias(int layer, int neuron) {
-        return biases[layer][neuron];
+        return parameters[biasesOffsets[layer] + neuron];
     }
 
     @Override
     public void bias(int layer, int neuron, double bias) {
-        biases[layer][neuron] = bias;
+        parameters[biasesOffsets[layer] + neuron] = bias;
+    }
+
+    @Override
+    public void getWeights(int layer, double[] target, int offset, WeightsLayout layout) {
+        if (layout == WeightsLayout.COLUMN_MAJOR)
+            System.arraycopy(parameters, weightsOffsets[layer], target, offset, neurons(layer) * features(layer));
+        else
+            NeuralNetworkState.super.getWeights(layer, target, offset, layout);
+    }
+
+    @Override
+    public void setWeights(int layer, double[] source, int offset, WeightsLayout layout) {
+        if (layout == WeightsLayout.COLUMN_MAJOR)
+            System.arraycopy(source, offset, parameters, weightsOffsets[layer], neurons(layer) * features(layer));
+        else
+            NeuralNetworkState.super.setWeights(layer, source, offset, layout);
+    }
+
+    @Override
+    public void getWeights(int layer, DoubleBuffer target, WeightsLayout layout) {
+        if (layout == WeightsLayout.COLUMN_MAJOR)
+            target.put(parameters, weightsOffsets[layer], neurons(layer) * features(layer));
+        else
+            NeuralNetworkState.super.getWeights(layer, target, layout);
+    }
+
+    @Override
+    public void setWeights(int layer, DoubleBuffer source, WeightsLayout layout) {
+        if (layout == WeightsLayout.COLUMN_MAJOR)
+            source.get(parameters, weightsOffsets[layer], neurons(layer) * features(layer));
+        else
+            NeuralNetworkState.super.setWeights(layer, source, layout);
+    }
+
+    @Override
+    public void getBiases(int layer, double[] target, int offset) {
+        System.arraycopy(parameters, biasesOffsets[layer], target, offset, neurons(layer));
+    }
+
+    @Override
+    public void setBiases(int layer, double[] source, int offset) {
+        System.arraycopy(source, offset, parameters, biasesOffsets[layer], neurons(layer));
+    }
+
+    @Override
+    public void getBiases(int layer, DoubleBuffer target) {
+        target.put(parameters, biasesOffsets[layer], neurons(layer));
+    }
+
+    @Override
+    public void setBiases(int layer, DoubleBuffer source) {
+        source.get(parameters, biasesOffsets[layer], neurons(layer));
+    }
+
+    @Override
+    public void getParameters(ByteBuffer target, Precision precision) {
+        precision.put(target, parameters, 0, parameters.length);
+    }
+
+    @Override
+    public void setParameters(ByteBuffer source, Precision precision) {
+        precision.get(source, parameters, 0, parameters.length);
     }
 
     @Override
@@ -2,15 +2,50 @@ package org.yah.tests.perceptron.base;
 
 import org.lwjgl.BufferUtils;
 import org.yah.tests.perceptron.NetworkOutputs;
+import org.yah.tests.perceptron.Precision;
 
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
+/**
+ * Outputs written in place by the native and OpenCL engines.<br/>
+ * Ranked outputs scores and activations are stored in the engine precision.
+ */
 public class DirectBufferOutputs implements NetworkOutputs {
 
-    private IntBuffer buffer;
+    private final int samples;
+    private final int topK;
+    private final int outputsCount;
+    private final Precision precision;
+
+    private final IntBuffer buffer; // [samples x topK]
+    private final ByteBuffer scores; // [samples x topK], null if not ranked
+    private final ByteBuffer activations; // [samples x outputs], null if not kept
 
     public DirectBufferOutputs(int size) {
+        this.samples = size;
+        this.topK = 1;
+        this.outputsCount = 0;
+        this.precision = null;
         this.buffer = BufferUtils.createIntBuffer(size);
+        this.scores = null;
+        this.activations = null;
+    }
+
+    /**
+     * Ranked outputs: keep the topK output indices and scores of each sample, and the activations of every outputs if
+     * <code>activations</code> is true.
+     */
+    public DirectBufferOutputs(int size, int outputs, int topK, boolean activations, Precision precision) {
+        if (topK < 1 || topK > outputs)
+            throw new IllegalArgumentException("Invalid top k " + topK + " for " + outputs + " outputs");
+        this.samples = size;
+        this.topK = topK;
+        this.outputsCount = outputs;
+        this.precision = precision;
+        this.buffer = BufferUtils.createIntBuffer(size * topK);
+        this.scores = BufferUtils.createByteBuffer(size * topK * precision.size());
+        this.activations = activations ? BufferUtils.createByteBuffer(size * outputs * precision.size()) : null;
     }
 
     @Override
@@ -20,18 +55,81 @@ public class DirectBufferOutputs implements NetworkOutputs {
 
     @Override
     public int samples() {
-        return buffer.capacity();
+        return samples;
     }
 
     @Override
     public int outputIndex(int sample) {
-        return buffer.get(sample);
+        return buffer.get(sample * topK);
+    }
+
+    @Override
+    public int topK() {
+        return topK;
+    }
+
+    @Override
+    public int outputIndex(int sample, int rank) {
+        return buffer.get(rankIndex(sample, rank));
+    }
+
+    @Override
+    public boolean hasScores() {
+        return scores != null;
+    }
+
+    @Override
+    public double score(int sample, int rank) {
+        if (scores == null)
+            return NetworkOutputs.super.score(sample, rank);
+        return get(scores, rankIndex(sample, rank));
     }
 
+    @Override
+    public boolean hasActivations() {
+        return activations != null;
+    }
+
+    @Override
+    public double activation(int sample, int output) {
+        if (activations == null)
+            return NetworkOutputs.super.activation(sample, output);
+        return get(activations, sample * outputsCount + output);
+    }
+
+    private double get(ByteBuffer values, int index) {
+        if (precision == Precision.FLOAT)
+            return values.getFloat(index * Float.BYTES);
+        return values.getDouble(index * Double.BYTES);
+    }
+
+    private int rankIndex(int sample, int rank) {
+        if (rank < 0 || rank >= topK)
+            throw new IndexOutOfBoundsException("rank " + rank + " >= top k " + topK);
+        return sample * topK + rank;
+    }
+
+    /**
+     * @return the output indices, topK per sample
+     */
     public IntBuffer buffer() {
         return buffer;
     }
 
+    /**
+     * @return the ranked output scores, topK per sample, null if not ranked
+     */
+    public ByteBuffer scores() {
+        return scores;
+    }
+
+    /**
+     * @return the activations of every outputs, null if not kept
+     */
+    public ByteBuffer activations() {
+        return activations;
+    }
+
     public IntBuffer position(int newPosition) {
         return buffer.position(newPosition);
     }
@@ -50,20 +148,27 @@ public class DirectBufferOutputs implements NetworkOutputs {
 
     @Override
     public void copy(IntBuffer target) {
-        target.put(buffer.position(0)).flip();
+        if (topK == 1) {
+            target.put(buffer.position(0)).flip();
+        } else {
+            for (int sample = 0; sample < samples; sample++) {
+                target.put(outputIndex(sample));
+            }
+            target.flip();
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        int count = Math.min(buffer.capacity(), 128);
+        int count = Math.min(samples, 128);
         sb.append('[');
         for (int i = 0; i < count; i++) {
-            sb.append(buffer.get(i));
+            sb.append(outputIndex(i));
             if (i < count - 1) sb.append(", ");
         }
-        if (count < buffer.capacity())
-            sb.append(" ... (").append(buffer().capacity() - count).append(" more)");
+        if (count < samples)
+            sb.append(" ... (").append(samples - count).append(" more)");
         sb.append(']');
         return sb.toString();
     }
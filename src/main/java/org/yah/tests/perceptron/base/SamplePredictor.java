@@ -0,0 +1,214 @@
+package org.yah.tests.perceptron.base;
+
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.NetworkParameters;
+import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.NeuralNetworkState.WeightsLayout;
+import org.yah.tests.perceptron.Precision;
+
+import java.nio.DoubleBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single sample forward pass on a copy of the network parameters (in the {@link NetworkParameters} layout), used by
+ * the engines without a cheap single sample path: a one column batch through JNI or OpenCL costs more than the
+ * propagation itself.<br/>
+ * No allocation once loaded: the activation buffers are recycled, a concurrent prediction only allocates its own
+ * buffers while the cached ones are in use.<br/>
+ * The forward pass is computed in the engine precision, so that the predictions match the batch propagation.
+ *
+ * @author Yah
+ */
+public final class SamplePredictor {
+
+    private final int[] neurons;
+    private final int[] features;
+    private final Activation[] activations;
+    private final boolean approximate;
+    private final int[] weightsOffsets;
+    private final int[] biasesOffsets;
+    private final int bufferSize;
+
+    private final double[] parameters;
+    private final float[] floatParameters; // FLOAT precision copy of parameters, null in DOUBLE
+
+    private final AtomicReference<double[][]> buffers = new AtomicReference<>();
+    private final AtomicReference<float[][]> floatBuffers = new AtomicReference<>();
+
+    public SamplePredictor(NeuralNetworkState state) {
+        this(state, Precision.DOUBLE);
+    }
+
+    public SamplePredictor(NeuralNetworkState state, Precision precision) {
+        this(state, precision, false);
+    }
+
+    /**
+     * @param approximate compute sigmoid and tanh with {@link org.yah.tests.perceptron.SigmoidTable}, as the network
+     */
+    public SamplePredictor(NeuralNetworkState state, Precision precision, boolean approximate) {
+        this.approximate = approximate;
+        int layers = state.layers();
+        neurons = new int[layers];
+        features = new int[layers];
+        activations = new Activation[layers];
+        weightsOffsets = new int[layers];
+        biasesOffsets = new int[layers];
+        for (int layer = 0; layer < layers; layer++) {
+            neurons[layer] = state.neurons(layer);
+            features[layer] = state.features(layer);
+            activations[layer] = state.activation(layer);
+            weightsOffsets[layer] = NetworkParameters.weightsOffset(state, layer);
+            biasesOffsets[layer] = NetworkParameters.biasesOffset(state, layer);
+        }
+        bufferSize = Math.max(state.maxNeurons(), state.features());
+        parameters = new double[NetworkParameters.size(state)];
+        floatParameters = precision == Precision.FLOAT ? new float[parameters.length] : null;
+        load(state);
+    }
+
+    /**
+     * Copy the parameters of state, must not run concurrently with {@link #predict(double[], double[])}.
+     */
+    public void load(NeuralNetworkState state) {
+        for (int layer = 0; layer < neurons.length; layer++) {
+            state.getWeights(layer, parameters, weightsOffsets[layer], WeightsLayout.COLUMN_MAJOR);
+            state.getBiases(layer, parameters, biasesOffsets[layer]);
+        }
+        if (floatParameters != null) {
+            for (int i = 0; i < parameters.length; i++)
+                floatParameters[i] = (float) parameters[i];
+        }
+    }
+
+    /**
+     * @see org.yah.tests.perceptron.NeuralNetwork#predict(double[], double[])
+     */
+    public int predict(double[] features, double[] scores) {
+        if (floatParameters != null) {
+            float[][] buffers = acquireFloatBuffers();
+            try {
+                float[] inputs = buffers[0];
+                for (int feature = 0; feature < this.features[0]; feature++)
+                    inputs[feature] = (float) features[feature];
+                return forward(buffers, scores);
+            } finally {
+                floatBuffers.compareAndSet(null, buffers);
+            }
+        }
+        double[][] buffers = acquireBuffers();
+        try {
+            System.arraycopy(features, 0, buffers[0], 0, this.features[0]);
+            return forward(buffers, scores);
+        } finally {
+            this.buffers.compareAndSet(null, buffers);
+        }
+    }
+
+    /**
+     * @see org.yah.tests.perceptron.NeuralNetwork#predict(DoubleBuffer, double[])
+     */
+    public int predict(DoubleBuffer features, double[] scores) {
+        int position = features.position();
+        if (floatParameters != null) {
+            float[][] buffers = acquireFloatBuffers();
+            try {
+                float[] inputs = buffers[0];
+                for (int feature = 0; feature < this.features[0]; feature++)
+                    inputs[feature] = (float) features.get(position + feature);
+                return forward(buffers, scores);
+            } finally {
+                floatBuffers.compareAndSet(null, buffers);
+            }
+        }
+        double[][] buffers = acquireBuffers();
+        try {
+            double[] inputs = buffers[0];
+            for (int feature = 0; feature < this.features[0]; feature++) {
+                inputs[feature] = features.get(position + feature);
+            }
+            return forward(buffers, scores);
+        } finally {
+            this.buffers.compareAndSet(null, buffers);
+        }
+    }
+
+    private double[][] acquireBuffers() {
+        double[][] res = buffers.getAndSet(null);
+        return res == null ? new double[][]{new double[bufferSize], new double[bufferSize]} : res;
+    }
+
+    private float[][] acquireFloatBuffers() {
+        float[][] res = floatBuffers.getAndSet(null);
+        return res == null ? new float[][]{new float[bufferSize], new float[bufferSize]} : res;
+    }
+
+    /**
+     * @param buffers inputs in buffers[0], the layers swap the two buffers
+     */
+    private int forward(double[][] buffers, double[] scores) {
+        double[] inputs = buffers[0], outputs = buffers[1];
+        for (int layer = 0; layer < neurons.length; layer++) {
+            int layerNeurons = neurons[layer];
+            int weights = weightsOffsets[layer];
+            // z = biases + sum(weights column * input)
+            System.arraycopy(parameters, biasesOffsets[layer], outputs, 0, layerNeurons);
+            for (int feature = 0; feature < features[layer]; feature++) {
+                double input = inputs[feature];
+                int column = weights + feature * layerNeurons;
+                for (int neuron = 0; neuron < layerNeurons; neuron++) {
+                    outputs[neuron] += parameters[column + neuron] * input;
+                }
+            }
+            activations[layer].activate(outputs, 0, outputs, 0, layerNeurons, approximate);
+            double[] swap = inputs;
+            inputs = outputs;
+            outputs = swap;
+        }
+
+        int outputCount = neurons[neurons.length - 1];
+        if (scores != null)
+            System.arraycopy(inputs, 0, scores, 0, outputCount);
+        int res = 0;
+        for (int output = 1; output < outputCount; output++) {
+            if (inputs[output] > inputs[res]) res = output;
+        }
+        return res;
+    }
+
+    /**
+     * float variant of {@link #forward(double[][], double[])}
+     */
+    private int forward(float[][] buffers, double[] scores) {
+        float[] parameters = floatParameters;
+        float[] inputs = buffers[0], outputs = buffers[1];
+        for (int layer = 0; layer < neurons.length; layer++) {
+            int layerNeurons = neurons[layer];
+            int weights = weightsOffsets[layer];
+            System.arraycopy(parameters, biasesOffsets[layer], outputs, 0, layerNeurons);
+            for (int feature = 0; feature < features[layer]; feature++) {
+                float input = inputs[feature];
+                int column = weights + feature * layerNeurons;
+                for (int neuron = 0; neuron < layerNeurons; neuron++) {
+                    outputs[neuron] += parameters[column + neuron] * input;
+                }
+            }
+            activations[layer].activate(outputs, 0, outputs, 0, layerNeurons, approximate);
+            float[] swap = inputs;
+            inputs = outputs;
+            outputs = swap;
+        }
+
+        int outputCount = neurons[neurons.length - 1];
+        if (scores != null) {
+            for (int output = 0; output < outputCount; output++)
+                scores[output] = inputs[output];
+        }
+        int res = 0;
+        for (int output = 1; output < outputCount; output++) {
+            if (inputs[output] > inputs[res]) res = output;
+        }
+        return res;
+    }
+
+}
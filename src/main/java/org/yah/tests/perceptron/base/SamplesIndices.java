@@ -0,0 +1,62 @@
+package org.yah.tests.perceptron.base;
+
+import java.util.Random;
+
+/**
+ * Iteration order of the engines samples: null indices iterate the samples in storage order, otherwise the batches
+ * gather the samples at <code>indices[offset, offset + batchSize[</code>.
+ *
+ * @author Yah
+ */
+public final class SamplesIndices {
+
+    private SamplesIndices() {
+    }
+
+    /**
+     * @return the storage index of the sample at this iteration position
+     */
+    public static int index(int[] indices, int sample) {
+        return indices == null ? sample : indices[sample];
+    }
+
+    /**
+     * Fisher-Yates shuffle of the indices, in place.
+     *
+     * @param indices current indices, null for the storage order
+     * @param size    samples count, used if indices is null
+     * @return the shuffled indices, a new identity permutation if indices was null
+     */
+    public static int[] shuffle(int[] indices, int size, Random random) {
+        if (indices == null) {
+            indices = new int[size];
+            for (int i = 0; i < size; i++) {
+                indices[i] = i;
+            }
+        }
+        for (int i = indices.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = indices[i];
+            indices[i] = indices[j];
+            indices[j] = tmp;
+        }
+        return indices;
+    }
+
+    /**
+     * @param indices   current indices, null for the storage order
+     * @param size      samples count
+     * @param selection positions of the selected samples in the current order
+     * @return the storage indices of the selection
+     */
+    public static int[] select(int[] indices, int size, int[] selection) {
+        int[] res = new int[selection.length];
+        for (int i = 0; i < selection.length; i++) {
+            int sample = selection[i];
+            if (sample < 0 || sample >= size)
+                throw new IndexOutOfBoundsException("Sample " + sample + " out of [0, " + size + "[");
+            res[i] = index(indices, sample);
+        }
+        return res;
+    }
+}
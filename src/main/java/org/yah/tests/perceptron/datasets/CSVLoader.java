@@ -0,0 +1,203 @@
+package org.yah.tests.perceptron.datasets;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Loader of numeric CSV files: one sample per line, every column is a feature except the label column.<br/>
+ * The file is mapped and split in chunks of about {@link #CHUNK_SIZE} bytes on line boundaries, the chunks are
+ * parsed in parallel. Labels can be any text: output indices follow the numeric order of the labels if they are all
+ * numbers, the lexicographic order otherwise.
+ *
+ * @author Yah
+ */
+public final class CSVLoader {
+
+    public static final int CHUNK_SIZE = 1 << 20;
+
+    private static final char SEPARATOR = ',';
+
+    private CSVLoader() {
+    }
+
+    /**
+     * @param labelColumn index of the label column, negative to count from the end (-1 for the last column)
+     * @param header      skip the first line
+     */
+    public static Dataset load(Path file, int labelColumn, boolean header) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int start = header ? nextLine(data, 0) : 0;
+        int columns = columns(data, start);
+        if (columns < 2)
+            throw new IOException("Expecting at least 2 columns in " + file);
+        int label = labelColumn < 0 ? columns + labelColumn : labelColumn;
+        if (label < 0 || label >= columns)
+            throw new IOException("Invalid label column " + labelColumn + " for " + columns + " columns");
+
+        int[] bounds = chunkBounds(data, start);
+        Chunk[] chunks = new Chunk[bounds.length - 1];
+        try {
+            IntStream.range(0, chunks.length).parallel().forEach(chunk -> {
+                chunks[chunk] = new Chunk(columns, label);
+                chunks[chunk].parse(data, bounds[chunk], bounds[chunk + 1]);
+            });
+        } catch (UncheckedIOException e) {
+            throw new IOException("Error parsing " + file + ": " + e.getCause().getMessage(), e.getCause());
+        }
+
+        int features = columns - 1;
+        int samples = Arrays.stream(chunks).mapToInt(c -> c.samples).sum();
+        double[] inputs = new double[samples * features];
+        String[] labelValues = new String[samples];
+        int sample = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.inputs, 0, inputs, sample * features, chunk.samples * features);
+            System.arraycopy(chunk.labels, 0, labelValues, sample, chunk.samples);
+            sample += chunk.samples;
+        }
+
+        int[] outputIndices = new int[samples];
+        String[] labels = Dataset.mapLabels(labelValues, outputIndices);
+        return new Dataset(inputs, features, outputIndices, labels);
+    }
+
+    private static int[] chunkBounds(ByteBuffer data, int start) {
+        int size = data.limit();
+        int count = Math.max(1, (size - start) / CHUNK_SIZE);
+        int[] res = new int[count + 1];
+        res[0] = start;
+        for (int i = 1; i < count; i++) {
+            res[i] = Math.max(res[i - 1], nextLine(data, start + i * CHUNK_SIZE));
+        }
+        res[count] = size;
+        return res;
+    }
+
+    /**
+     * @return the position after the next end of line from position, or the data limit
+     */
+    private static int nextLine(ByteBuffer data, int position) {
+        int limit = data.limit();
+        while (position < limit && data.get(position) != '\n')
+            position++;
+        return Math.min(position + 1, limit);
+    }
+
+    private static int columns(ByteBuffer data, int position) {
+        int end = nextLine(data, position);
+        int res = 1;
+        for (int i = position; i < end; i++) {
+            if (data.get(i) == SEPARATOR)
+                res++;
+        }
+        return res;
+    }
+
+    private static final class Chunk {
+        private final int columns;
+        private final int labelColumn;
+        private final byte[] field = new byte[64];
+
+        private double[] inputs = new double[1024];
+        private String[] labels = new String[64];
+        private int samples;
+
+        private Chunk(int columns, int labelColumn) {
+            this.columns = columns;
+            this.labelColumn = labelColumn;
+        }
+
+        void parse(ByteBuffer data, int position, int end) {
+            while (position < end) {
+                int lineEnd = nextLine(data, position);
+                parseLine(data, position, lineEnd);
+                position = lineEnd;
+            }
+        }
+
+        private void parseLine(ByteBuffer data, int position, int end) {
+            if (isBlank(data, position, end))
+                return;
+            int features = columns - 1;
+            ensureCapacity((samples + 1) * features);
+            int inputOffset = samples * features;
+            int column = 0;
+            int fieldStart = position;
+            for (int i = position; i <= end; i++) {
+                if (i == end || data.get(i) == SEPARATOR || data.get(i) == '\n') {
+                    if (column >= columns)
+                        throw invalidLine(data, position, end);
+                    String value = field(data, fieldStart, i);
+                    if (column == labelColumn) {
+                        labels[samples] = value;
+                    } else {
+                        try {
+                            inputs[inputOffset++] = Double.parseDouble(value);
+                        } catch (NumberFormatException e) {
+                            throw invalidLine(data, position, end);
+                        }
+                    }
+                    column++;
+                    fieldStart = i + 1;
+                    if (i < end && data.get(i) == '\n')
+                        break;
+                }
+            }
+            if (column != columns)
+                throw invalidLine(data, position, end);
+            samples++;
+        }
+
+        private String field(ByteBuffer data, int start, int end) {
+            while (start < end && isSpace(data.get(start)))
+                start++;
+            while (end > start && isSpace(data.get(end - 1)))
+                end--;
+            int length = end - start;
+            byte[] bytes = length <= field.length ? field : new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = data.get(start + i);
+            }
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void ensureCapacity(int inputsCapacity) {
+            if (inputs.length < inputsCapacity)
+                inputs = Arrays.copyOf(inputs, Math.max(inputsCapacity, inputs.length * 2));
+            if (labels.length <= samples)
+                labels = Arrays.copyOf(labels, labels.length * 2);
+        }
+
+        private static boolean isBlank(ByteBuffer data, int position, int end) {
+            for (int i = position; i < end; i++) {
+                if (!isSpace(data.get(i)))
+                    return false;
+            }
+            return true;
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+        }
+
+        private static UncheckedIOException invalidLine(ByteBuffer data, int position, int end) {
+            byte[] line = new byte[Math.min(end - position, 256)];
+            for (int i = 0; i < line.length; i++) {
+                line[i] = data.get(position + i);
+            }
+            String text = new String(line, StandardCharsets.UTF_8).trim();
+            return new UncheckedIOException(new IOException("Invalid line '" + text + "'"));
+        }
+    }
+}
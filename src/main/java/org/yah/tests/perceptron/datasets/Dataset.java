@@ -0,0 +1,139 @@
+package org.yah.tests.perceptron.datasets;
+
+import org.yah.tests.perceptron.SamplesProviders;
+import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Samples loaded in memory by {@link IDXLoader} or {@link CSVLoader}: inputs are stored in one array, features of a
+ * sample are contiguous.<br/>
+ * The source labels are mapped to output indices, {@link #label(int)} gives the label of an output index.
+ *
+ * @author Yah
+ */
+public final class Dataset implements TrainingSamplesProvider {
+
+    private final int features;
+    private final String[] labels;
+    private final TrainingSamplesProvider provider;
+
+    public Dataset(double[] inputs, int features, int[] outputIndices, String[] labels) {
+        this.features = features;
+        this.labels = labels;
+        this.provider = SamplesProviders.newTrainingProvider(inputs, features, outputIndices);
+        if (outputIndices.length != provider.samples())
+            throw new IllegalArgumentException("Expected " + provider.samples() + " output indices, got " +
+                                               outputIndices.length);
+    }
+
+    public int features() {
+        return features;
+    }
+
+    /**
+     * @return the number of distinct labels, the network outputs
+     */
+    public int outputs() {
+        return labels.length;
+    }
+
+    public String label(int outputIndex) {
+        return labels[outputIndex];
+    }
+
+    @Override
+    public int samples() {
+        return provider.samples();
+    }
+
+    @Override
+    public double input(int sample, int feature) {
+        return provider.input(sample, feature);
+    }
+
+    @Override
+    public void inputs(int sample, int count, int features, double[] target, int offset) {
+        provider.inputs(sample, count, features, target, offset);
+    }
+
+    @Override
+    public void inputs(int sample, int count, int features, DoubleBuffer target) {
+        provider.inputs(sample, count, features, target);
+    }
+
+    @Override
+    public int outputIndex(int sample) {
+        return provider.outputIndex(sample);
+    }
+
+    /**
+     * Load a dataset from a benchmark or demo parameter:
+     * <ul>
+     * <li><code>file.csv</code>: numeric CSV with a header line, the label is the last column</li>
+     * <li><code>images,labels</code>: IDX images and labels files (MNIST), optionally gzipped</li>
+     * </ul>
+     */
+    public static Dataset load(String path) throws IOException {
+        String[] paths = path.split(",");
+        if (paths.length == 2)
+            return IDXLoader.load(Paths.get(paths[0].trim()), Paths.get(paths[1].trim()));
+        if (paths.length == 1)
+            return CSVLoader.load(Paths.get(path.trim()), -1, true);
+        throw new IllegalArgumentException("Invalid dataset " + path);
+    }
+
+    /**
+     * Map the distinct label values to output indices, in ascending order.
+     *
+     * @param values        label value of each sample
+     * @param outputIndices receive the output index of each sample
+     * @return the label of each output index
+     */
+    static String[] mapLabels(long[] values, int[] outputIndices) {
+        long[] distinct = Arrays.stream(values).distinct().sorted().toArray();
+        for (int i = 0; i < values.length; i++) {
+            outputIndices[i] = Arrays.binarySearch(distinct, values[i]);
+        }
+        return Arrays.stream(distinct).mapToObj(Long::toString).toArray(String[]::new);
+    }
+
+    /**
+     * Map the distinct labels to output indices, in numeric order if all the labels are numbers, in lexicographic
+     * order otherwise.
+     *
+     * @param values        label of each sample
+     * @param outputIndices receive the output index of each sample
+     * @return the label of each output index
+     */
+    static String[] mapLabels(String[] values, int[] outputIndices) {
+        String[] distinct = Arrays.stream(values).distinct().toArray(String[]::new);
+        Comparator<String> order = Arrays.stream(distinct).allMatch(Dataset::isNumber)
+                ? Comparator.comparingDouble(Double::parseDouble) : Comparator.naturalOrder();
+        Arrays.sort(distinct, order);
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < distinct.length; i++) {
+            indices.put(distinct[i], i);
+        }
+        for (int i = 0; i < values.length; i++) {
+            outputIndices[i] = indices.get(values[i]);
+        }
+        return distinct;
+    }
+
+    private static boolean isNumber(String s) {
+        try {
+            Double.parseDouble(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package org.yah.tests.perceptron.datasets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loader of the IDX format used by MNIST: an images (or any samples) file and a labels file, plain or gzipped.<br/>
+ * The first dimension is the samples, the product of the others is the features. Unsigned byte values are scaled to
+ * [0, 1], other types are kept as is. The samples are converted in parallel, by chunks of {@link #CHUNK_SAMPLES}.
+ *
+ * @author Yah
+ */
+public final class IDXLoader {
+
+    public static final int CHUNK_SAMPLES = 1024;
+
+    private static final int UNSIGNED_BYTE = 0x08;
+    private static final int BYTE = 0x09;
+    private static final int SHORT = 0x0B;
+    private static final int INT = 0x0C;
+    private static final int FLOAT = 0x0D;
+    private static final int DOUBLE = 0x0E;
+
+    private IDXLoader() {
+    }
+
+    public static Dataset load(Path samplesFile, Path labelsFile) throws IOException {
+        IDXFile samples = IDXFile.read(samplesFile);
+        IDXFile labels = IDXFile.read(labelsFile);
+        if (labels.count() != samples.count())
+            throw new IOException(labels.count() + " labels for " + samples.count() + " samples");
+        if (labels.elementSize() != 1)
+            throw new IOException("Invalid labels dimensions in " + labelsFile);
+
+        int count = samples.count();
+        int features = samples.elementSize();
+        double[] inputs = new double[count * features];
+        long[] labelValues = new long[count];
+        IntStream.range(0, (count + CHUNK_SAMPLES - 1) / CHUNK_SAMPLES).parallel().forEach(chunk -> {
+            int start = chunk * CHUNK_SAMPLES;
+            int end = Math.min(start + CHUNK_SAMPLES, count);
+            samples.read(start * features, end * features, inputs);
+            for (int sample = start; sample < end; sample++) {
+                labelValues[sample] = (long) labels.value(sample);
+            }
+        });
+
+        int[] outputIndices = new int[count];
+        String[] labelNames = Dataset.mapLabels(labelValues, outputIndices);
+        return new Dataset(inputs, features, outputIndices, labelNames);
+    }
+
+    private static final class IDXFile {
+        private final int type;
+        private final int[] dimensions;
+        private final ByteBuffer data;
+
+        private IDXFile(int type, int[] dimensions, ByteBuffer data) {
+            this.type = type;
+            this.dimensions = dimensions;
+            this.data = data;
+        }
+
+        static IDXFile read(Path path) throws IOException {
+            ByteBuffer buffer = open(path).order(ByteOrder.BIG_ENDIAN);
+            int magic = buffer.getInt();
+            if ((magic >>> 16) != 0)
+                throw new IOException("Not an IDX file " + path);
+            int type = (magic >> 8) & 0xFF;
+            int dimensionsCount = magic & 0xFF;
+            if (dimensionsCount == 0)
+                throw new IOException("No dimension in " + path);
+            int[] dimensions = new int[dimensionsCount];
+            long size = typeSize(type, path);
+            for (int i = 0; i < dimensionsCount; i++) {
+                dimensions[i] = buffer.getInt();
+                size *= dimensions[i];
+            }
+            if (buffer.remaining() < size)
+                throw new IOException("Truncated IDX file " + path);
+            return new IDXFile(type, dimensions, buffer.slice().order(ByteOrder.BIG_ENDIAN));
+        }
+
+        private static ByteBuffer open(Path path) throws IOException {
+            if (path.getFileName().toString().endsWith(".gz")) {
+                try (InputStream is = new GZIPInputStream(Files.newInputStream(path), 1 << 16)) {
+                    return ByteBuffer.wrap(is.readAllBytes());
+                }
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        private static int typeSize(int type, Path path) throws IOException {
+            switch (type) {
+                case UNSIGNED_BYTE:
+                case BYTE:
+                    return 1;
+                case SHORT:
+                    return 2;
+                case INT:
+                case FLOAT:
+                    return 4;
+                case DOUBLE:
+                    return 8;
+                default:
+                    throw new IOException("Invalid IDX type " + type + " in " + path);
+            }
+        }
+
+        int count() {
+            return dimensions[0];
+        }
+
+        int elementSize() {
+            int res = 1;
+            for (int i = 1; i < dimensions.length; i++) {
+                res *= dimensions[i];
+            }
+            return res;
+        }
+
+        double value(int index) {
+            switch (type) {
+                case UNSIGNED_BYTE:
+                    return data.get(index) & 0xFF;
+                case BYTE:
+                    return data.get(index);
+                case SHORT:
+                    return data.getShort(index * 2);
+                case INT:
+                    return data.getInt(index * 4);
+                case FLOAT:
+                    return data.getFloat(index * 4);
+                case DOUBLE:
+                    return data.getDouble(index * 8);
+                default:
+                    throw new IllegalStateException("Unhandled type " + type);
+            }
+        }
+
+        /**
+         * target[i] = value(i) for i in [from, to[, unsigned bytes are scaled to [0, 1]
+         */
+        void read(int from, int to, double[] target) {
+            if (type == UNSIGNED_BYTE) {
+                double scale = 1.0 / 255;
+                for (int i = from; i < to; i++) {
+                    target[i] = (data.get(i) & 0xFF) * scale;
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    target[i] = value(i);
+                }
+            }
+        }
+    }
+}
@@ -21,6 +21,8 @@ import org.yah.tests.perceptron.base.DirectBufferOutputs;
 import org.yah.tests.perceptron.jni.NativeNeuralNetwork;
 import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork;
 import org.yah.tests.perceptron.matrix.array.CMArrayMatrix;
+import org.yah.tests.perceptron.matrix.flat.CMFloatMatrix;
+import org.yah.tests.perceptron.mt.HogwildNeuralNetwork;
 import org.yah.tests.perceptron.mt.MTNeuralNetwork;
 import org.yah.tests.perceptron.opencl.CLNeuralNetwork;
 
@@ -368,7 +370,8 @@ public class FlowersDemo {
     }
 
     public static void main(String[] args) throws IOException {
-        NeuralNetwork network = createNetwork(args.length > 0 ? args[0] : "matrix");
+        NeuralNetwork network = createNetwork(args.length > 0 ? args[0] : "matrix",
+                args.length > 1 ? Precision.parse(args[1]) : Precision.DOUBLE);
         try {
             new FlowersDemo(network).start();
         } finally {
@@ -386,21 +389,27 @@ public class FlowersDemo {
         }
     }
 
-    private static NeuralNetwork createNetwork(String arg) throws IOException {
+    private static NeuralNetwork createNetwork(String arg, Precision precision) throws IOException {
         NeuralNetwork network;
         NeuralNetworkState state = new DefaultNetworkState(RandomUtils.newRandomSource(), LAYERS);
         switch (arg) {
             case "native":
-                network = new NativeNeuralNetwork(state);
+                network = new NativeNeuralNetwork(state, precision);
                 break;
             case "cl":
-                network = new CLNeuralNetwork(state);
+                network = new CLNeuralNetwork(null, state, precision);
                 break;
             case "mt":
-                network = new MTNeuralNetwork(state);
+                network = new MTNeuralNetwork(state, precision);
+                break;
+            case "hogwild":
+                network = new HogwildNeuralNetwork(state, precision);
                 break;
             default:
-                network = new MatrixNeuralNetwork<>(CMArrayMatrix::new, state);
+                if (precision == Precision.FLOAT)
+                    network = new MatrixNeuralNetwork<>(CMFloatMatrix::new, state);
+                else
+                    network = new MatrixNeuralNetwork<>(CMArrayMatrix::new, state);
         }
         return network;
     }
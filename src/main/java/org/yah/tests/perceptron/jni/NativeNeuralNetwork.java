@@ -2,7 +2,9 @@ package org.yah.tests.perceptron.jni;
 
 import org.lwjgl.BufferUtils;
 import org.yah.tests.perceptron.InputSamples;
+import org.yah.tests.perceptron.NetworkParameters;
 import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
 import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
 import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
 import org.yah.tests.perceptron.TrainingSamples;
@@ -10,6 +12,7 @@ import org.yah.tests.perceptron.base.AbstractNeuralNetwork;
 import org.yah.tests.perceptron.base.DirectBufferOutputs;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 
 /**
@@ -24,16 +27,33 @@ public class NativeNeuralNetwork extends AbstractNeuralNetwork<DirectBufferOutpu
 
     private long reference;
 
+    private final Precision precision;
+
     private final ByteBuffer stateBuffer;
+    /**
+     * view of the {@link NetworkParameters} block of the state buffer, used in place by the native network
+     */
+    private final ByteBuffer parameters;
 
     public NativeNeuralNetwork(NeuralNetworkState state) {
+        this(state, Precision.DOUBLE);
+    }
+
+    public NativeNeuralNetwork(NeuralNetworkState state, Precision precision) {
         super(state);
+        this.precision = precision;
         stateBuffer = createStateBuffer(state);
-        reference = create(stateBuffer);
+        parameters = stateBuffer.position(parametersOffset(state)).slice().order(ByteOrder.nativeOrder());
+        stateBuffer.position(0);
+        reference = create(stateBuffer, precision.size());
         if (reference == 0)
             throw new IllegalStateException("Error creating native neuralnetwork");
     }
 
+    public Precision precision() {
+        return precision;
+    }
+
     @Override
     public void close() {
         if (reference != 0) {
@@ -57,6 +77,11 @@ public class NativeNeuralNetwork extends AbstractNeuralNetwork<DirectBufferOutpu
         return new DirectBufferOutputs(samples);
     }
 
+    @Override
+    public DirectBufferOutputs createOutpus(int samples, int topK, boolean activations) {
+        return new DirectBufferOutputs(samples, outputs(), topK, activations, precision);
+    }
+
 
     @Override
     protected void doPropagate(InputSamples samples, DirectBufferOutputs outputs) {
@@ -74,11 +99,14 @@ public class NativeNeuralNetwork extends AbstractNeuralNetwork<DirectBufferOutpu
     }
 
     private void propagate(NativeTrainingSamples samples, DirectBufferOutputs outputs) {
-        propagate(reference, samples.struct, outputs.buffer());
+        propagate(reference, samples.struct, outputs.buffer(), outputs.topK(), outputs.scores(), outputs.activations());
     }
 
     private double evaluate(NativeTrainingSamples samples, DirectBufferOutputs outputs) {
-        return evaluate(reference, samples.struct, outputs != null ? outputs.buffer() : null);
+        if (outputs == null)
+            return evaluate(reference, samples.struct, null, 0, null, null);
+        return evaluate(reference, samples.struct, outputs.buffer(), outputs.topK(), outputs.scores(),
+                outputs.activations());
     }
 
     private void train(NativeTrainingSamples samples, double learningRate) {
@@ -88,25 +116,63 @@ public class NativeNeuralNetwork extends AbstractNeuralNetwork<DirectBufferOutpu
 
     @Override
     protected void updateState() {
-        stateBuffer.position((2 + layers()) * Integer.BYTES);
-        visitWeights((layer, neuron, feature) -> weight(layer, neuron, feature, stateBuffer.getDouble()));
-        visitBiases((layer, neuron) -> bias(layer, neuron, stateBuffer.getDouble()));
-        stateBuffer.position(0);
+        state.setParameters(parameters.duplicate().order(ByteOrder.nativeOrder()), precision);
     }
 
     @Override
     protected void updateModel() {
-        stateBuffer.position((2 + layers()) * Integer.BYTES);
-        visitWeights((layer, neuron, feature) -> stateBuffer.putDouble(weight(layer, neuron, feature)));
-        visitBiases((layer, neuron) -> stateBuffer.putDouble(bias(layer, neuron)));
-        stateBuffer.position(0);
+        state.getParameters(parameters.duplicate().order(ByteOrder.nativeOrder()), precision);
+    }
+
+    @Override
+    protected Precision modelPrecision() {
+        return precision;
+    }
+
+    /**
+     * the native activations are exact
+     */
+    @Override
+    public boolean approximate() {
+        return false;
+    }
+
+    @Override
+    public void approximate(boolean approximate) {
+        if (approximate)
+            throw new UnsupportedOperationException("Native activations are exact");
+    }
+
+    @Override
+    protected boolean readParameters(ByteBuffer target, Precision precision) {
+        if (precision != this.precision || target.order() != ByteOrder.nativeOrder())
+            return false;
+        target.put(parameters.duplicate());
+        return true;
     }
 
-    private static ByteBuffer createStateBuffer(NeuralNetworkState state) {
+    @Override
+    protected boolean writeParameters(ByteBuffer source, Precision precision) {
+        if (precision != this.precision || source.order() != ByteOrder.nativeOrder())
+            return false;
+        ByteBuffer values = source.duplicate();
+        values.limit(values.position() + parameters.capacity());
+        parameters.duplicate().put(values);
+        return true;
+    }
+
+    /**
+     * @return offset of the weights in the state buffer: after layers count, layer sizes and activations
+     */
+    private static int parametersOffset(NeuralNetworkState state) {
+        return (2 + 2 * state.layers()) * Integer.BYTES;
+    }
+
+    private ByteBuffer createStateBuffer(NeuralNetworkState state) {
         int size = Integer.BYTES; // layers count
         size += (state.layers() + 1) * Integer.BYTES; // layer sizes
-        size += state.totalWeights() * Double.BYTES; // weights
-        size += state.totalNeurons() * Double.BYTES; // neurons
+        size += state.layers() * Integer.BYTES; // layer activations
+        size += NetworkParameters.bytes(state, precision); // weights and biases
         ByteBuffer buffer = BufferUtils.createByteBuffer(size);
         buffer.putInt(state.layers());
         buffer.putInt(state.features());
@@ -114,30 +180,25 @@ public class NativeNeuralNetwork extends AbstractNeuralNetwork<DirectBufferOutpu
             buffer.putInt(state.neurons(layer));
         }
         for (int layer = 0; layer < state.layers(); layer++) {
-            int neurons = state.neurons(layer);
-            int features = state.features(layer);
-            for (int feature = 0; feature < features; feature++) {
-                for (int neuron = 0; neuron < neurons; neuron++) {
-                    buffer.putDouble(state.weight(layer, neuron, feature));
-                }
-            }
-        }
-        for (int layer = 0; layer < state.layers(); layer++) {
-            int neurons = state.neurons(layer);
-            for (int neuron = 0; neuron < neurons; neuron++) {
-                buffer.putDouble(state.bias(layer, neuron));
-            }
+            buffer.putInt(state.activation(layer).ordinal());
         }
+        state.getParameters(buffer, precision);
         return buffer.flip();
     }
 
     protected native void delete(long networkReference);
 
-    private static native long create(ByteBuffer state);
+    private static native long create(ByteBuffer state, int typeSize);
 
-    private static native void propagate(long networkReference, ByteBuffer samples, IntBuffer outputs);
+    /**
+     * @param scores      ranked outputs scores, null to only write the output indices
+     * @param activations outputs activations, may be null
+     */
+    private static native void propagate(long networkReference, ByteBuffer samples, IntBuffer outputs, int topK,
+                                         ByteBuffer scores, ByteBuffer activations);
 
-    private static native double evaluate(long networkReference, ByteBuffer samples, IntBuffer outputs);
+    private static native double evaluate(long networkReference, ByteBuffer samples, IntBuffer outputs, int topK,
+                                          ByteBuffer scores, ByteBuffer activations);
 
     private static native void train(long networkReference, ByteBuffer samples, double learningRate);
 
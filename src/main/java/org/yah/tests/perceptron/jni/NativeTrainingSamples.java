@@ -3,30 +3,57 @@ package org.yah.tests.perceptron.jni;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryUtil;
+import org.yah.tests.perceptron.DirectSamples;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.SamplesProviders;
 import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
 import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
 import org.yah.tests.perceptron.TrainingSamples;
+import org.yah.tests.perceptron.base.SamplesIndices;
 
 import java.nio.ByteBuffer;
-import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
+import java.util.Random;
 
 class NativeTrainingSamples implements TrainingSamples {
 
-    private final int size;
+    private int size;
     private final int features;
+    private final Precision precision;
     private final int batchSize;
-    final DoubleBuffer inputs;
+    /**
+     * inputs read in place from {@link DirectSamples}
+     */
+    private final boolean direct;
+    final ByteBuffer inputs;
     final IntBuffer expectedIndices;
+    /**
+     * iteration order, null for the inputs order. Copied to indicesBuffer read by the native batches.
+     */
+    private int[] indices;
+    private IntBuffer indicesBuffer;
 
-    final ByteBuffer struct;
+    ByteBuffer struct;
 
     NativeTrainingSamples(NativeNeuralNetwork network, SamplesProvider provider, int batchSize) {
         this.size = provider.samples();
         this.batchSize = batchSize == 0 ? size : batchSize;
         this.features = network.features();
+        this.precision = network.precision();
+        this.direct = provider instanceof DirectSamples
+                      && ((DirectSamples) provider).isDirect(network.precision(), features);
+        if (direct) {
+            // use the mapped file or off heap memory in place
+            DirectSamples directSamples = (DirectSamples) provider;
+            this.inputs = directSamples.inputsBuffer();
+            this.expectedIndices = directSamples.hasLabels() ? directSamples.labelsBuffer().asIntBuffer() : null;
+            if (expectedIndices != null)
+                checkExpecteds(network, directSamples);
+            struct = serialize();
+            return;
+        }
         this.inputs = createInputs(network, provider);
-        if (provider instanceof TrainingSamplesProvider) {
+        if (SamplesProviders.hasLabels(provider)) {
             TrainingSamplesProvider trainingProvider = (TrainingSamplesProvider) provider;
             checkExpecteds(network, trainingProvider);
             this.expectedIndices = createExpectedIndices(trainingProvider);
@@ -35,6 +62,42 @@ class NativeTrainingSamples implements TrainingSamples {
         struct = serialize();
     }
 
+    private NativeTrainingSamples(NativeTrainingSamples from, int[] indices, int batchSize) {
+        this.size = indices.length;
+        this.batchSize = batchSize;
+        this.features = from.features;
+        this.precision = from.precision;
+        this.direct = from.direct;
+        this.inputs = from.inputs;
+        this.expectedIndices = from.expectedIndices;
+        this.indices = indices;
+        this.indicesBuffer = createIndicesBuffer(indices);
+        struct = serialize();
+    }
+
+    @Override
+    public void shuffle(Random random) {
+        boolean created = indices == null;
+        indices = SamplesIndices.shuffle(indices, size, random);
+        if (created) {
+            indicesBuffer = createIndicesBuffer(indices);
+            struct = serialize();
+        } else {
+            indicesBuffer.clear();
+            indicesBuffer.put(indices).flip();
+        }
+    }
+
+    @Override
+    public TrainingSamples select(int[] selection) {
+        return new NativeTrainingSamples(this, SamplesIndices.select(indices, size, selection),
+                Math.min(batchSize, selection.length));
+    }
+
+    private static IntBuffer createIndicesBuffer(int[] indices) {
+        return BufferUtils.createIntBuffer(indices.length).put(indices).flip();
+    }
+
     private ByteBuffer serialize() {
         int size = Integer.BYTES; // size
         size += Integer.BYTES; // batch size
@@ -45,6 +108,7 @@ class NativeTrainingSamples implements TrainingSamples {
 
         size += PointerBuffer.POINTER_SIZE; // inputs address
         size += PointerBuffer.POINTER_SIZE; // expected indices address
+        size += PointerBuffer.POINTER_SIZE; // indices address
 
 
         ByteBuffer buffer = BufferUtils.createByteBuffer(size);
@@ -57,9 +121,25 @@ class NativeTrainingSamples implements TrainingSamples {
 
         PointerBuffer.put(buffer, MemoryUtil.memAddress(inputs));
         PointerBuffer.put(buffer, expectedIndices == null ? 0 : MemoryUtil.memAddress(expectedIndices));
+        PointerBuffer.put(buffer, indicesBuffer == null ? 0 : MemoryUtil.memAddress(indicesBuffer));
         return buffer.flip();
     }
 
+    @Override
+    public void load(SamplesProvider provider) {
+        if (expectedIndices != null || indices != null)
+            throw new IllegalStateException("Only the samples created by createInputs can be loaded");
+        if (direct)
+            throw new IllegalStateException("Direct samples inputs are read in place");
+        int capacity = inputs.capacity() / (features * precision.size());
+        if (provider.samples() > capacity)
+            throw new IllegalArgumentException("Can not load " + provider.samples() + " samples in " + capacity);
+        inputs.clear();
+        SamplesProviders.writeInputs(provider, features, precision, inputs).flip();
+        size = provider.samples();
+        struct.putInt(0, size);
+    }
+
     @Override
     public int size() {
         return size;
@@ -70,14 +150,10 @@ class NativeTrainingSamples implements TrainingSamples {
         return batchSize;
     }
 
-    private DoubleBuffer createInputs(NativeNeuralNetwork network, SamplesProvider provider) {
-        DoubleBuffer buffer = BufferUtils.createDoubleBuffer(provider.samples() * network.features());
-        for (int sample = 0; sample < provider.samples(); sample++) {
-            for (int feature = 0; feature < network.features(); feature++) {
-                buffer.put(provider.input(sample, feature));
-            }
-        }
-        return buffer.flip();
+    private ByteBuffer createInputs(NativeNeuralNetwork network, SamplesProvider provider) {
+        int typeSize = network.precision().size();
+        ByteBuffer buffer = BufferUtils.createByteBuffer(provider.samples() * network.features() * typeSize);
+        return SamplesProviders.writeInputs(provider, network.features(), network.precision(), buffer).flip();
     }
 
     private void checkExpecteds(NativeNeuralNetwork network, TrainingSamplesProvider provider) {
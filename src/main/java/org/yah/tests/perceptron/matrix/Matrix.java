@@ -1,5 +1,9 @@
 package org.yah.tests.perceptron.matrix;
 
+import org.yah.tests.perceptron.Activation;
+
+import java.util.function.IntUnaryOperator;
+
 public interface Matrix<M extends Matrix<M>> {
 
     M self();
@@ -14,6 +18,45 @@ public interface Matrix<M extends Matrix<M>> {
 
     void apply(MatrixFunction func);
 
+    /**
+     * Copy <code>count</code> columns from <code>values</code>, starting at <code>column</code>.<br/>
+     * values are column major: values[offset + c * rows() + r] is the row r of the column (column + c).
+     */
+    default void setColumns(int column, int count, double[] values, int offset) {
+        int rows = rows();
+        for (int c = 0; c < count; c++) {
+            for (int r = 0; r < rows; r++) {
+                set(r, column + c, values[offset++]);
+            }
+        }
+    }
+
+    /**
+     * Copy <code>count</code> columns, starting at <code>column</code>, to <code>target</code>, in the
+     * {@link #setColumns(int, int, double[], int)} layout.
+     */
+    default void getColumns(int column, int count, double[] target, int offset) {
+        int rows = rows();
+        for (int c = 0; c < count; c++) {
+            for (int r = 0; r < rows; r++) {
+                target[offset++] = get(r, column + c);
+            }
+        }
+    }
+
+    /**
+     * this[:, c] = source[:, indices[offset + c]] for c in [0, count[
+     */
+    default void gatherColumns(M source, int[] indices, int offset, int count) {
+        int rows = rows();
+        for (int c = 0; c < count; c++) {
+            int column = indices[offset + c];
+            for (int r = 0; r < rows; r++) {
+                set(r, c, source.get(r, column));
+            }
+        }
+    }
+
     default void sub(M b) {
         sub(b, self());
     }
@@ -71,13 +114,53 @@ public interface Matrix<M extends Matrix<M>> {
 
     M dot_transpose(M b);
     
-    M sigmoid(M target);
+    /**
+     * target = activation(this)
+     *
+     * @param approximate compute sigmoid and tanh with {@link org.yah.tests.perceptron.SigmoidTable}
+     */
+    M activate(Activation activation, boolean approximate, M target);
+
+    default M activate(Activation activation, M target) {
+        return activate(activation, false, target);
+    }
+
+    default M activate(Activation activation) {
+        return activate(activation, self());
+    }
+
+    /**
+     * target = activation'(this)
+     */
+    void derivative(Activation activation, boolean approximate, M target);
+
+    default void derivative(Activation activation, M target) {
+        derivative(activation, false, target);
+    }
+
+    default void derivative(Activation activation) {
+        derivative(activation, self());
+    }
+
+    /**
+     * Fused softmax and cross entropy cost derivative, per column:<br/>
+     * target = softmax(this) - onehot(expectedIndex(column))
+     *
+     * @return the cross entropy cost sum of all columns
+     */
+    double softmaxCrossEntropy(IntUnaryOperator expectedIndex, M target);
+
+    default M sigmoid(M target) {
+        return activate(Activation.SIGMOID, target);
+    }
 
     default M sigmoid() {
         return sigmoid(self());
     }
 
-    void sigmoid_prime(M target);
+    default void sigmoid_prime(M target) {
+        derivative(Activation.SIGMOID, target);
+    }
 
     default void sigmoid_prime() {
         sigmoid_prime(self());
@@ -1,15 +1,26 @@
 package org.yah.tests.perceptron.matrix;
 
+import org.yah.tests.perceptron.base.SamplesIndices;
 import org.yah.tests.perceptron.base.TrainingBatch;
 
 class MatrixBatch<M extends Matrix<M>> implements TrainingBatch {
+    /**
+     * a view of the samples inputs, or the gathered columns if the samples are indexed
+     */
     final M inputs;
     final int[] expectedIndices;
+    private final M samplesInputs;
+    private final int[] indices;
     int expectedOffset;
 
     public MatrixBatch(MatrixSamples<M> samples) {
-        inputs = samples.inputs.createView();
         expectedIndices = samples.expectedIndices;
+        indices = samples.indices;
+        samplesInputs = samples.inputs;
+        if (indices == null)
+            inputs = samples.inputs.createView();
+        else
+            inputs = samples.matrixFactory.newMatrix(samples.inputs.rows(), samples.batchSize);
     }
 
     @Override
@@ -18,12 +29,18 @@ class MatrixBatch<M extends Matrix<M>> implements TrainingBatch {
     }
 
     public int slide(int offset, int columns) {
-        int newSize = inputs.slide(offset, columns);
+        int newSize;
+        if (indices == null) {
+            newSize = inputs.slide(offset, columns);
+        } else {
+            newSize = inputs.slide(0, Math.min(columns, indices.length - offset));
+            inputs.gatherColumns(samplesInputs, indices, offset, newSize);
+        }
         expectedOffset = offset;
         return newSize;
     }
 
     public int expectedIndex(int sample) {
-        return expectedIndices[expectedOffset + sample];
+        return expectedIndices[SamplesIndices.index(indices, expectedOffset + sample)];
     }
 }
@@ -1,14 +1,25 @@
 package org.yah.tests.perceptron.matrix;
 
+import org.yah.tests.perceptron.Activation;
 import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.NeuralNetworkState.WeightsLayout;
 import org.yah.tests.perceptron.base.AbstractBatchedNeuralNetwork;
 import org.yah.tests.perceptron.base.ArrayNetworkOutputs;
 import org.yah.tests.perceptron.base.SamplesSource;
 
+import java.nio.DoubleBuffer;
 import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
+ * Propagation and evaluation can be called concurrently from several threads: each call uses a workspace taken from a
+ * pool, and writes its outputs by absolute sample index. Training and state modifications must not run concurrently
+ * with them.<br/>
+ * Single sample predictions use a cached single column workspace, and do not allocate unless called concurrently.
+ *
  * @author Yah
  */
 public final class MatrixNeuralNetwork<M extends Matrix<M>>
@@ -16,14 +27,13 @@ public final class MatrixNeuralNetwork<M extends Matrix<M>>
 
     private final MatrixFactory<M> matrixFactory;
 
-    private int batchSize;
-    private int capacity;
-
     private M[] weightMatrices;
     private M[] biasesMatrices;
 
-    private M[] zs; // results of weight + bias [neurons[layer] X batchSize]
-    private M[] activations; // sigmoid(z) [neurons[layer] X batchSize]
+    private final Workspace trainingWorkspace;
+    private final Queue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+    // not pooled in the queue: offering to a ConcurrentLinkedQueue allocates a node
+    private final AtomicReference<SampleWorkspace> sampleWorkspace = new AtomicReference<>();
 
     private M[] wgrads; // weight gradients [neurons[layer] X features]
     private M[] bgrads; // bias gradients [neurons[layer] X 1]
@@ -39,18 +49,15 @@ public final class MatrixNeuralNetwork<M extends Matrix<M>>
         this.matrixFactory = matrixFactory;
         weightMatrices = newMatrixArray(layers);
         biasesMatrices = newMatrixArray(layers);
-        zs = newMatrixArray(layers);
-        activations = newMatrixArray(layers);
+        trainingWorkspace = new Workspace();
         bgrads = newMatrixArray(layers);
         wgrads = newMatrixArray(layers);
-        for (int l = 0; l < layers; l++) {
-            final int layer = l;
+        for (int layer = 0; layer < layers; layer++) {
             int neurons = neurons(layer);
             int features = features(layer);
             weightMatrices[layer] = newMatrix(neurons, features);
             biasesMatrices[layer] = newMatrix(neurons, 1);
-            weightMatrices[layer].apply((row, column, value) -> weight(layer, row, column));
-            biasesMatrices[layer].apply((row, column, value) -> bias(layer, row));
+            copyParameters(layer);
             wgrads[layer] = newMatrix(neurons, features);
             bgrads[layer] = newMatrix(neurons, 1);
         }
@@ -61,6 +68,11 @@ public final class MatrixNeuralNetwork<M extends Matrix<M>>
         return new ArrayNetworkOutputs(samples);
     }
 
+    @Override
+    public ArrayNetworkOutputs createOutpus(int samples, int topK, boolean activations) {
+        return new ArrayNetworkOutputs(samples, outputs(), topK, activations);
+    }
+
     @Override
     protected SamplesSource<MatrixBatch<M>> createSampleSource() {
         return new MatrixSamplesSource<>(this);
@@ -68,106 +80,190 @@ public final class MatrixNeuralNetwork<M extends Matrix<M>>
 
     @Override
     protected void updateState() {
-        visitWeights((layer, neuron, feature) -> weight(layer, neuron, feature,
-                weightMatrices[layer].get(neuron, feature)));
-        visitBiases((layer, neuron) -> bias(layer, neuron, biasesMatrices[layer].get(neuron, 0)));
+        for (int layer = 0; layer < layers(); layer++) {
+            double[] values = new double[neurons(layer) * features(layer)];
+            weightMatrices[layer].getColumns(0, features(layer), values, 0);
+            state.setWeights(layer, values, 0, WeightsLayout.COLUMN_MAJOR);
+            biasesMatrices[layer].getColumns(0, 1, values, 0);
+            state.setBiases(layer, values, 0);
+        }
     }
 
     @Override
     protected void updateModel() {
-        visitWeights((layer, neuron, feature) -> weightMatrices[layer].set(neuron, feature, weight(layer, neuron, feature)));
-        visitBiases((layer, neuron) -> biasesMatrices[layer].set(neuron, 0, bias(layer, neuron)));
+        for (int layer = 0; layer < layers(); layer++) {
+            copyParameters(layer);
+        }
+    }
+
+    private void copyParameters(int layer) {
+        double[] values = new double[neurons(layer) * features(layer)];
+        state.getWeights(layer, values, 0, WeightsLayout.COLUMN_MAJOR);
+        weightMatrices[layer].setColumns(0, features(layer), values, 0);
+        state.getBiases(layer, values, 0);
+        biasesMatrices[layer].setColumns(0, 1, values, 0);
     }
 
     @Override
     protected void propagate(MatrixBatch<M> batch, ArrayNetworkOutputs outputs) {
-        M outputsMatrix = forward(batch);
-        for (int sample = 0; sample < batch.size(); sample++) {
-            outputs.push(outputsMatrix.maxRowIndex(sample));
+        Workspace workspace = acquireWorkspace();
+        try {
+            M outputsMatrix = forward(workspace, batch);
+            for (int sample = 0; sample < batch.size(); sample++) {
+                indexOutput(workspace, outputsMatrix, batch, sample, outputs);
+            }
+        } finally {
+            workspaces.offer(workspace);
         }
     }
 
     @Override
     protected int evaluate(MatrixBatch<M> batch, ArrayNetworkOutputs outputs) {
-        int matched = 0;
-        M outputsMatrix = forward(batch);
-        for (int sample = 0; sample < batch.size(); sample++) {
-            int expected = batch.expectedIndex(sample);
-            int actual = outputsMatrix.maxRowIndex(sample);
-            if (outputs != null)
-                outputs.push(actual);
-            if (expected == actual) matched++;
+        Workspace workspace = acquireWorkspace();
+        try {
+            int matched = 0;
+            M outputsMatrix = forward(workspace, batch);
+            for (int sample = 0; sample < batch.size(); sample++) {
+                int expected = batch.expectedIndex(sample);
+                int actual = indexOutput(workspace, outputsMatrix, batch, sample, outputs);
+                if (expected == actual) matched++;
+            }
+            return matched;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    @Override
+    protected int doPredict(double[] features, double[] scores) {
+        SampleWorkspace workspace = acquireSampleWorkspace();
+        try {
+            workspace.inputs.setColumns(0, 1, features, 0);
+            return predict(workspace, scores);
+        } finally {
+            sampleWorkspace.compareAndSet(null, workspace);
+        }
+    }
+
+    @Override
+    protected int doPredict(DoubleBuffer features, double[] scores) {
+        SampleWorkspace workspace = acquireSampleWorkspace();
+        try {
+            int position = features.position();
+            for (int feature = 0; feature < features(); feature++) {
+                workspace.inputs.set(feature, 0, features.get(position + feature));
+            }
+            return predict(workspace, scores);
+        } finally {
+            sampleWorkspace.compareAndSet(null, workspace);
+        }
+    }
+
+    private int predict(SampleWorkspace workspace, double[] scores) {
+        M outputs = workspace.inputs;
+        for (int layer = 0; layer < layers(); layer++) {
+            outputs = forward(workspace, layer, outputs);
+        }
+        if (scores != null)
+            outputs.getColumns(0, 1, scores, 0);
+        return outputs.maxRowIndex(0);
+    }
+
+    private SampleWorkspace acquireSampleWorkspace() {
+        SampleWorkspace workspace = sampleWorkspace.getAndSet(null);
+        return workspace == null ? new SampleWorkspace() : workspace;
+    }
+
+    private Workspace acquireWorkspace() {
+        Workspace workspace = workspaces.poll();
+        return workspace == null ? new Workspace() : workspace;
+    }
+
+    /**
+     * ranked outputs replace the maxRowIndex pass
+     */
+    private int indexOutput(Workspace workspace, M outputsMatrix, MatrixBatch<M> batch, int sample,
+                            ArrayNetworkOutputs outputs) {
+        int index = batch.expectedOffset + sample;
+        if (outputs != null && outputs.ranked()) {
+            // rank a bulk copy of the column
+            outputsMatrix.getColumns(sample, 1, workspace.outputs, 0);
+            return outputs.set(index, workspace.outputs, 0, 1);
         }
-        return matched;
+        int outputIndex = outputsMatrix.maxRowIndex(sample);
+        if (outputs != null)
+            outputs.set(index, outputIndex);
+        return outputIndex;
     }
 
     protected void train(MatrixBatch<M> batch, double learningRate) {
         // forward propagation
-        setBatchSize(batch.size());
+        Workspace workspace = trainingWorkspace;
+        workspace.setBatchSize(batch.size());
+        M[] zs = workspace.zs;
+        M[] activations = workspace.activations;
         M inputs = batch.inputs;
 
-        for (int layer = 0; layer < layers(); layer++) {
-            inputs = forward(layer, inputs);
+        int outputLayer = layers() - 1;
+        for (int layer = 0; layer < outputLayer; layer++) {
+            inputs = forward(workspace, layer, inputs);
         }
 
         // compute gradients
-        // cost derivative = actual - expected
-        activations[layers() - 1].apply((index, sample, value) -> value - (batch.expectedIndex(sample) == index ? 1 : 0));
+        if (activation(outputLayer) == Activation.SOFTMAX) {
+            // delta = softmax(z) - expected, in one pass per column
+            weightedInputs(workspace, outputLayer, inputs);
+            zs[outputLayer].softmaxCrossEntropy(batch::expectedIndex, activations[outputLayer]);
+        } else {
+            forward(workspace, outputLayer, inputs);
+            // cost derivative = actual - expected
+            activations[outputLayer].apply((index, sample, value) -> value - (batch.expectedIndex(sample) == index ? 1 : 0));
+        }
 
         // backward propagation
         for (int layer = layers() - 1; layer > 0; layer--) {
-            backward(layer, activations[layer - 1]);
+            backward(workspace, layer, activations[layer - 1]);
         }
-        backward(0, batch.inputs);
+        backward(workspace, 0, batch.inputs);
 
         // apply gradients
         for (int layer = 0; layer < layers(); layer++) {
-            updateNetwork(layer, learningRate);
-        }
-    }
-
-    private void setBatchSize(int batchSize) {
-        if (batchSize == this.batchSize)
-            return;
-        if (batchSize > capacity) {
-            for (int layer = 0; layer < layers(); layer++) {
-                zs[layer] = newMatrix(neurons(layer), batchSize);
-                activations[layer] = newMatrix(neurons(layer), batchSize);
-            }
-            capacity = batchSize;
-        } else {
-            for (int layer = 0; layer < layers(); layer++) {
-                zs[layer].slide(0, batchSize);
-                activations[layer].slide(0, batchSize);
-            }
+            updateNetwork(layer, learningRate / workspace.batchSize);
         }
-        this.batchSize = batchSize;
     }
 
-    private M forward(MatrixBatch<M> batch) {
-        setBatchSize(batch.size());
+    private M forward(Workspace workspace, MatrixBatch<M> batch) {
+        workspace.setBatchSize(batch.size());
         M inputs = batch.inputs;
         for (int layer = 0; layer < layers(); layer++) {
-            inputs = forward(layer, inputs);
+            inputs = forward(workspace, layer, inputs);
         }
         return inputs;
     }
 
-    private M forward(int layer, M inputs) {
+    private M forward(Workspace workspace, int layer, M inputs) {
+        weightedInputs(workspace, layer, inputs);
+        return workspace.zs[layer].activate(activation(layer), approximate(), workspace.activations[layer]);
+    }
+
+    private void weightedInputs(Workspace workspace, int layer, M inputs) {
         // weight . inputs + bias
-        weightMatrices[layer].dot(inputs, zs[layer]);
-        zs[layer].addColumnVector(biasesMatrices[layer]);
-        return zs[layer].sigmoid(activations[layer]);
+        M z = workspace.zs[layer];
+        weightMatrices[layer].dot(inputs, z);
+        z.addColumnVector(biasesMatrices[layer]);
     }
 
 
-    private void backward(int layer, M inputs) {
+    private void backward(Workspace workspace, int layer, M inputs) {
+        M[] activations = workspace.activations;
         M activation = activations[layer];
-        M z = zs[layer];
+        M z = workspace.zs[layer];
 
-        // activation = activation * sigmoid_prime(z)
-        z.sigmoid_prime();
-        activation.mul(z);
+        if (activation(layer) != Activation.SOFTMAX) {
+            // activation = activation * activation'(z)
+            z.derivative(activation(layer), approximate(), z);
+            activation.mul(z);
+        }
         activation.sumRows(bgrads[layer]);
 
         // wgrad = delta . T(inputs)
@@ -179,19 +275,65 @@ public final class MatrixNeuralNetwork<M extends Matrix<M>>
         }
     }
 
-    private void updateNetwork(int layer, double learningRate) {
-        double lr = learningRate / batchSize;
+    /**
+     * @param lr learning rate / batch size
+     */
+    private void updateNetwork(int layer, double lr) {
         // w = w - (learningRate/batchSize) * wgrad
         weightMatrices[layer].sub(wgrads[layer].mul(lr));
         // b = b - (learningRate/batchSize) * bgrad
         biasesMatrices[layer].sub(bgrads[layer].mul(lr));
     }
 
+    /**
+     * zs and activations of a batch, one per concurrent propagation
+     */
+    private class Workspace {
+        private final M[] zs = newMatrixArray(layers()); // results of weight + bias [neurons[layer] X batchSize]
+        private final M[] activations = newMatrixArray(layers()); // activation(z) [neurons[layer] X batchSize]
+        private final double[] outputs = new double[outputs()]; // outputs column of a sample, when ranked
+        private int batchSize;
+        private int capacity;
+
+        void setBatchSize(int batchSize) {
+            if (batchSize == this.batchSize)
+                return;
+            if (batchSize > capacity) {
+                for (int layer = 0; layer < layers(); layer++) {
+                    zs[layer] = newMatrix(neurons(layer), batchSize);
+                    activations[layer] = newMatrix(neurons(layer), batchSize);
+                }
+                capacity = batchSize;
+            } else {
+                for (int layer = 0; layer < layers(); layer++) {
+                    zs[layer].slide(0, batchSize);
+                    activations[layer].slide(0, batchSize);
+                }
+            }
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * single column workspace of the predictions, with its inputs column
+     */
+    private final class SampleWorkspace extends Workspace {
+        private final M inputs = newMatrix(features(), 1);
+
+        private SampleWorkspace() {
+            setBatchSize(1);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private M[] newMatrixArray(int length) {
         return (M[]) new Matrix[length];
     }
 
+    MatrixFactory<M> matrixFactory() {
+        return matrixFactory;
+    }
+
     M newMatrix(int rows, int columns) {
         return matrixFactory.newMatrix(rows, columns);
     }
@@ -1,24 +1,47 @@
 package org.yah.tests.perceptron.matrix;
 
+import org.yah.tests.perceptron.SamplesProviders;
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+import org.yah.tests.perceptron.TrainingSamples;
 import org.yah.tests.perceptron.base.BatchedSamples;
+import org.yah.tests.perceptron.base.SamplesIndices;
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork.MatrixFactory;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 final class MatrixSamples<M extends Matrix<M>>
         implements BatchedSamples<MatrixBatch<M>>, Iterable<MatrixBatch<M>> {
+    final MatrixFactory<M> matrixFactory;
     final M inputs;
     final int[] expectedIndices;
     final int batchSize;
+    /**
+     * iteration order, null for the inputs columns order
+     */
+    int[] indices;
+    /**
+     * samples in the inputs columns, less than the columns once {@link #load(SamplesProvider) loaded}
+     */
+    private int samples;
 
-    public MatrixSamples(int batchSize, M inputs) {
-        this(batchSize, inputs, null);
+    public MatrixSamples(MatrixFactory<M> matrixFactory, int batchSize, M inputs) {
+        this(matrixFactory, batchSize, inputs, null);
     }
 
-    public MatrixSamples(int batchSize, M inputs, int[] expectedIndices) {
-        this.batchSize = batchSize == 0 ? inputs.columns() : batchSize;
+    public MatrixSamples(MatrixFactory<M> matrixFactory, int batchSize, M inputs, int[] expectedIndices) {
+        this(matrixFactory, batchSize, inputs, expectedIndices, null);
+    }
+
+    private MatrixSamples(MatrixFactory<M> matrixFactory, int batchSize, M inputs, int[] expectedIndices,
+                          int[] indices) {
+        this.matrixFactory = matrixFactory;
         this.inputs = inputs;
         this.expectedIndices = expectedIndices;
+        this.indices = indices;
+        this.samples = inputs.columns();
+        this.batchSize = batchSize == 0 ? size() : batchSize;
     }
 
     @Override
@@ -28,7 +51,7 @@ final class MatrixSamples<M extends Matrix<M>>
 
     @Override
     public int size() {
-        return inputs.columns();
+        return indices == null ? samples : indices.length;
     }
 
     @Override
@@ -36,6 +59,29 @@ final class MatrixSamples<M extends Matrix<M>>
         return batchSize;
     }
 
+    @Override
+    public void shuffle(Random random) {
+        indices = SamplesIndices.shuffle(indices, size(), random);
+    }
+
+    @Override
+    public TrainingSamples select(int[] selection) {
+        return new MatrixSamples<>(matrixFactory, Math.min(batchSize, selection.length), inputs, expectedIndices,
+                SamplesIndices.select(indices, size(), selection));
+    }
+
+    @Override
+    public void load(SamplesProvider provider) {
+        if (expectedIndices != null || indices != null)
+            throw new IllegalStateException("Only the samples created by createInputs can be loaded");
+        if (provider.samples() > inputs.columns())
+            throw new IllegalArgumentException("Can not load " + provider.samples() + " samples in "
+                                               + inputs.columns() + " columns");
+        SamplesProviders.readInputs(provider, inputs.rows(),
+                (sample, count, values) -> inputs.setColumns(sample, count, values, 0));
+        samples = provider.samples();
+    }
+
     private static final class MatrixBatchIterator<M extends Matrix<M>>
             implements Iterator<MatrixBatch<M>> {
         private final MatrixSamples<M> samples;
@@ -56,7 +102,7 @@ final class MatrixSamples<M extends Matrix<M>>
         public synchronized MatrixBatch<M> next() {
             if (!hasNext())
                 throw new NoSuchElementException();
-            offset += batch.slide(offset, samples.batchSize);
+            offset += batch.slide(offset, Math.min(samples.batchSize, samples.size() - offset));
             return batch;
         }
     }
@@ -1,5 +1,6 @@
 package org.yah.tests.perceptron.matrix;
 
+import org.yah.tests.perceptron.SamplesProviders;
 import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
 import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
 import org.yah.tests.perceptron.base.SamplesSource;
@@ -21,19 +22,20 @@ final class MatrixSamplesSource<M extends Matrix<M>> implements SamplesSource<Ma
     @Override
     public MatrixSamples<M> createInputs(SamplesProvider provider, int batchSize) {
         M inputsMatrix = createInputs(provider);
-        return new MatrixSamples<>(batchSize, inputsMatrix);
+        return new MatrixSamples<>(network.matrixFactory(), batchSize, inputsMatrix);
     }
 
     @Override
     public MatrixSamples<M> createTraining(TrainingSamplesProvider provider, int batchSize) {
         M inputsMatrix = createInputs(provider);
         checkExpecteds(provider, inputsMatrix.columns());
-        return new MatrixSamples<>(batchSize, inputsMatrix, provider.createExpectedIndices());
+        return new MatrixSamples<>(network.matrixFactory(), batchSize, inputsMatrix, provider.createExpectedIndices());
     }
 
     private M createInputs(SamplesProvider provider) {
         M res = network.newMatrix(network.features(), provider.samples());
-        res.apply((r, c, v) -> provider.input(c, r));
+        SamplesProviders.readInputs(provider, network.features(),
+                (sample, count, inputs) -> res.setColumns(sample, count, inputs, 0));
         return res;
     }
 
@@ -1,6 +1,7 @@
 package org.yah.tests.perceptron.matrix.array;
 
 import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 import org.yah.tests.perceptron.Activation;
 import org.yah.tests.perceptron.matrix.Matrix;
@@ -204,6 +205,32 @@ public class CMArrayMatrix implements Matrix<CMArrayMatrix> {
         data[col + colOffset][row] = value;
     }
 
+    @Override
+    public void gatherColumns(CMArrayMatrix source, int[] indices, int offset, int count) {
+        int rows = rows();
+        for (int c = 0; c < count; c++) {
+            System.arraycopy(source.data[indices[offset + c] + source.colOffset], 0, data[c + colOffset], 0, rows);
+        }
+    }
+
+    @Override
+    public void setColumns(int column, int count, double[] values, int offset) {
+        int rows = rows();
+        for (int c = 0; c < count; c++) {
+            System.arraycopy(values, offset, data[column + c + colOffset], 0, rows);
+            offset += rows;
+        }
+    }
+
+    @Override
+    public void getColumns(int column, int count, double[] target, int offset) {
+        int rows = rows();
+        for (int c = 0; c < count; c++) {
+            System.arraycopy(data[column + c + colOffset], 0, target, offset, rows);
+            offset += rows;
+        }
+    }
+
     @Override
     public void addColumnVector(CMArrayMatrix vector, CMArrayMatrix target) {
         int rows = rows();
@@ -221,32 +248,37 @@ public class CMArrayMatrix implements Matrix<CMArrayMatrix> {
     }
 
     @Override
-    public CMArrayMatrix sigmoid(CMArrayMatrix target) {
+    public CMArrayMatrix activate(Activation activation, boolean approximate, CMArrayMatrix target) {
         int rows = rows();
         assert target.columns == columns;
         assert target.rows() == rows;
         for (int c = 0; c < columns; c++) {
-            double[] col = data[c + colOffset];
-            double[] tcol = target.data[c + target.colOffset];
-            for (int r = 0; r < rows; r++) {
-                tcol[r] = Activation.sigmoid(col[r]);
-            }
+            activation.activate(data[c + colOffset], 0, target.data[c + target.colOffset], 0, rows, approximate);
         }
         return target;
     }
 
     @Override
-    public void sigmoid_prime(CMArrayMatrix target) {
+    public void derivative(Activation activation, boolean approximate, CMArrayMatrix target) {
         int rows = rows();
         assert target.columns == columns;
         assert target.rows() == rows;
         for (int c = 0; c < columns; c++) {
-            double[] col = data[c + colOffset];
-            double[] tcol = target.data[c + target.colOffset];
-            for (int r = 0; r < rows; r++) {
-                tcol[r] = Activation.sigmoid_prime(col[r]);
-            }
+            activation.derivative(data[c + colOffset], 0, target.data[c + target.colOffset], 0, rows, approximate);
+        }
+    }
+
+    @Override
+    public double softmaxCrossEntropy(IntUnaryOperator expectedIndex, CMArrayMatrix target) {
+        int rows = rows();
+        assert target.columns == columns;
+        assert target.rows() == rows;
+        double cost = 0;
+        for (int c = 0; c < columns; c++) {
+            cost += Activation.softmaxCrossEntropy(data[c + colOffset], 0, target.data[c + target.colOffset], 0, rows,
+                    expectedIndex.applyAsInt(c));
         }
+        return cost;
     }
 
     @Override
@@ -266,10 +298,10 @@ public class CMArrayMatrix implements Matrix<CMArrayMatrix> {
 
     @Override
     public int maxRowIndex(int column) {
-        int res = -1;
-        double max = Double.MIN_VALUE;
+        int res = 0;
         double[] col = data[column + colOffset];
-        for (int i = 0; i < col.length; i++) {
+        double max = col[0];
+        for (int i = 1; i < col.length; i++) {
             double v = col[i];
             if (v > max) {
                 res = i;
@@ -4,6 +4,8 @@ import org.yah.tests.perceptron.Activation;
 import org.yah.tests.perceptron.matrix.Matrix;
 import org.yah.tests.perceptron.matrix.MatrixFunction;
 
+import java.util.function.IntUnaryOperator;
+
 /**
  * @author Yah
  */
@@ -14,6 +16,8 @@ public class RMArrayMatrix implements Matrix<RMArrayMatrix> {
     private int colOffset;
     private int columns;
 
+    private double[] softmaxColumn; // softmax gathering buffer, allocated on first use
+
     public RMArrayMatrix(int rows, int columns) {
         this.data = new double[rows][columns];
         this.columns = columns;
@@ -210,31 +214,57 @@ public class RMArrayMatrix implements Matrix<RMArrayMatrix> {
     }
 
     @Override
-    public RMArrayMatrix sigmoid(RMArrayMatrix target) {
+    public RMArrayMatrix activate(Activation activation, boolean approximate, RMArrayMatrix target) {
         assert target.columns == columns;
         assert target.rows() == rows();
+        if (activation == Activation.SOFTMAX) {
+            softmax(null, target);
+            return target;
+        }
         for (int r = 0; r < data.length; r++) {
-            double[] row = data[r];
-            double[] trow = target.data[r];
-            for (int c = 0; c < columns; c++) {
-                trow[c + target.colOffset] = Activation.sigmoid(row[c + colOffset]);
-            }
+            activation.activate(data[r], colOffset, target.data[r], target.colOffset, columns, approximate);
         }
         return target;
     }
 
     @Override
-    public void sigmoid_prime(RMArrayMatrix target) {
-        int rows = rows();
+    public void derivative(Activation activation, boolean approximate, RMArrayMatrix target) {
         assert target.columns == columns;
-        assert target.rows() == rows;
+        assert target.rows() == rows();
         for (int r = 0; r < data.length; r++) {
-            double[] row = data[r];
-            double[] trow = target.data[r];
-            for (int c = 0; c < columns; c++) {
-                trow[c + target.colOffset] = Activation.sigmoid_prime(row[c + colOffset]);
+            activation.derivative(data[r], colOffset, target.data[r], target.colOffset, columns, approximate);
+        }
+    }
+
+    @Override
+    public double softmaxCrossEntropy(IntUnaryOperator expectedIndex, RMArrayMatrix target) {
+        assert target.columns == columns;
+        assert target.rows() == rows();
+        return softmax(expectedIndex, target);
+    }
+
+    /**
+     * columns are gathered in a contiguous buffer, softmax only if expectedIndex is null.
+     */
+    private double softmax(IntUnaryOperator expectedIndex, RMArrayMatrix target) {
+        int rows = rows();
+        if (softmaxColumn == null)
+            softmaxColumn = new double[rows];
+        double[] column = softmaxColumn;
+        double cost = 0;
+        for (int c = 0; c < columns; c++) {
+            for (int r = 0; r < rows; r++) {
+                column[r] = data[r][c + colOffset];
+            }
+            if (expectedIndex == null)
+                Activation.softmax(column, 0, column, 0, rows);
+            else
+                cost += Activation.softmaxCrossEntropy(column, 0, column, 0, rows, expectedIndex.applyAsInt(c));
+            for (int r = 0; r < rows; r++) {
+                target.data[r][c + target.colOffset] = column[r];
             }
         }
+        return cost;
     }
 
     @Override
@@ -255,9 +285,9 @@ public class RMArrayMatrix implements Matrix<RMArrayMatrix> {
 
     @Override
     public int maxRowIndex(int column) {
-        int res = -1;
-        double max = Double.MIN_VALUE;
-        for (int r = 0; r < data.length; r++) {
+        int res = 0;
+        double max = data[0][column + colOffset];
+        for (int r = 1; r < data.length; r++) {
             double v = data[r][column + colOffset];
             if (v > max) {
                 res = r;
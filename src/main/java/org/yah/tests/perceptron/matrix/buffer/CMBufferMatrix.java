@@ -0,0 +1,633 @@
+package org.yah.tests.perceptron.matrix.buffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryUtil;
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.DirectSamples;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.matrix.Matrix;
+import org.yah.tests.perceptron.matrix.MatrixFunction;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Column major matrix stored off heap, in double or float precision: the
+ * {@link org.yah.tests.perceptron.matrix.flat.CMFlatMatrix} layout in a direct buffer.<br/>
+ * <br/>
+ * Memory lifetime depends on the creation:
+ * <ul>
+ * <li>{@link #allocate(Precision, int, int)}: native memory, freed by {@link #close()}. Large datasets stay outside
+ * of the GC heap and are released as soon as they are no longer needed</li>
+ * <li>{@link #CMBufferMatrix(int, int)}: direct buffer released by the GC, used as a {@link Matrix} factory</li>
+ * <li>{@link #CMBufferMatrix(ByteBuffer, Precision, int, int)}: wraps a buffer owned by the caller</li>
+ * </ul>
+ * The views created by {@link #createView()} share the memory of their matrix and are not usable once it is
+ * closed.<br/>
+ * A matrix with a sample per column is also usable as the samples of the native, OpenCL and MT engines without
+ * copy: see {@link #samples(int[])}.
+ *
+ * @author Yah
+ * @see org.yah.tests.perceptron.matrix.flat.CMFlatMatrix
+ */
+public class CMBufferMatrix implements Matrix<CMBufferMatrix>, AutoCloseable {
+
+    /**
+     * Values copied at once by the element wise activations and derivatives
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Storage shared by a matrix and its views.
+     */
+    private static final class Memory {
+        private final Precision precision;
+        private final boolean owned;
+        private ByteBuffer bytes;
+        private DoubleBuffer doubles;
+        private FloatBuffer floats;
+
+        private Memory(ByteBuffer bytes, Precision precision, boolean owned) {
+            this.precision = precision;
+            this.owned = owned;
+            this.bytes = bytes;
+            if (precision == Precision.FLOAT)
+                floats = bytes.asFloatBuffer();
+            else
+                doubles = bytes.asDoubleBuffer();
+        }
+
+        private ByteBuffer bytes() {
+            if (bytes == null)
+                throw new IllegalStateException("Matrix memory is released");
+            return bytes;
+        }
+
+        private FloatBuffer floats() {
+            if (floats == null)
+                throw new IllegalStateException("Matrix memory is released");
+            return floats;
+        }
+
+        private void release() {
+            if (bytes != null && owned)
+                MemoryUtil.memFree(bytes);
+            bytes = null;
+            doubles = null;
+            floats = null;
+        }
+    }
+
+    private final Memory memory;
+    private final boolean view;
+    private final int rows, totalColumns;
+    private int colOffset, columns;
+
+    public CMBufferMatrix(double[][] _data) {
+        this(_data[0].length, _data.length);
+        for (int c = 0; c < _data.length; c++) {
+            put(c * rows, _data[c], rows);
+        }
+    }
+
+    public CMBufferMatrix(int rows, int columns) {
+        this(new Memory(BufferUtils.createByteBuffer(byteSize(Precision.DOUBLE, rows, columns)), Precision.DOUBLE,
+                false), rows, columns, false);
+    }
+
+    /**
+     * @param buffer column major values, in the buffer byte order, from its position. Not released by
+     *               {@link #close()}
+     */
+    public CMBufferMatrix(ByteBuffer buffer, Precision precision, int rows, int columns) {
+        this(new Memory(buffer.slice().order(buffer.order()), precision, false), rows, columns, false);
+        if (buffer.remaining() < byteSize(precision, rows, columns))
+            throw new IllegalArgumentException("Buffer of " + buffer.remaining() + " bytes is too small for "
+                                               + rows + "x" + columns + " " + precision + " values");
+    }
+
+    private CMBufferMatrix(Memory memory, int rows, int columns, boolean view) {
+        this.memory = memory;
+        this.view = view;
+        this.rows = rows;
+        this.totalColumns = columns;
+        this.columns = columns;
+        this.colOffset = 0;
+    }
+
+    /**
+     * Allocate a zeroed matrix in native memory, outside of the GC heap, released by {@link #close()}.
+     */
+    public static CMBufferMatrix allocate(Precision precision, int rows, int columns) {
+        ByteBuffer buffer = MemoryUtil.memCalloc(byteSize(precision, rows, columns), 1)
+                                      .order(ByteOrder.nativeOrder());
+        return new CMBufferMatrix(new Memory(buffer, precision, true), rows, columns, false);
+    }
+
+    private static int byteSize(Precision precision, int rows, int columns) {
+        long size = (long) rows * columns * precision.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Matrix of " + size + " bytes is too large for a buffer");
+        return (int) size;
+    }
+
+    /**
+     * Release the native memory of a matrix created by {@link #allocate(Precision, int, int)}, the matrix and its
+     * views are no longer usable. Does nothing on a view.
+     */
+    @Override
+    public void close() {
+        if (!view)
+            memory.release();
+    }
+
+    public Precision precision() {
+        return memory.precision;
+    }
+
+    /**
+     * @return a view of the values of the current columns, in the matrix memory
+     */
+    public ByteBuffer buffer() {
+        ByteBuffer bytes = memory.bytes();
+        int size = precision().size();
+        ByteBuffer res = bytes.duplicate().order(bytes.order());
+        res.limit(indexOf(columns) * size).position(indexOf(0) * size);
+        return res.slice().order(bytes.order());
+    }
+
+    /**
+     * The current columns as samples, a sample per column and a feature per row, with their output indices.<br/>
+     * The inputs are read in place by the native, OpenCL (without copy to the device) and MT engines of the same
+     * features and precision: the matrix must stay open while they are used.
+     *
+     * @param outputIndices the expected output index of each sample, null if the samples have no labels
+     */
+    public DirectSamples samples(int[] outputIndices) {
+        if (outputIndices != null && outputIndices.length != columns)
+            throw new IllegalArgumentException("Expected " + columns + " output indices, got " + outputIndices.length);
+        return new ColumnSamples(outputIndices);
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return value(indexOf(col) + row);
+    }
+
+    @Override
+    public void set(int row, int col, double value) {
+        value(indexOf(col) + row, value);
+    }
+
+    @Override
+    public void getColumns(int column, int count, double[] target, int offset) {
+        // columns are contiguous
+        get(indexOf(column), target, offset, count * rows);
+    }
+
+    @Override
+    public CMBufferMatrix self() {
+        return this;
+    }
+
+    @Override
+    public void apply(MatrixFunction func) {
+        double[] values = new double[rows];
+        for (int c = 0; c < columns; c++) {
+            int ci = indexOf(c);
+            get(ci, values, rows);
+            for (int r = 0; r < rows; r++) {
+                values[r] = func.apply(r, c, values[r]);
+            }
+            put(ci, values, rows);
+        }
+    }
+
+    @Override
+    public void sub(CMBufferMatrix b, CMBufferMatrix target) {
+        double[] values = new double[rows], bvalues = new double[rows];
+        for (int c = 0; c < columns; c++) {
+            get(indexOf(c), values, rows);
+            b.get(b.indexOf(c), bvalues, rows);
+            for (int r = 0; r < rows; r++) {
+                values[r] -= bvalues[r];
+            }
+            target.put(target.indexOf(c), values, rows);
+        }
+    }
+
+    @Override
+    public void mul(CMBufferMatrix b, CMBufferMatrix target) {
+        double[] values = new double[rows], bvalues = new double[rows];
+        for (int c = 0; c < columns; c++) {
+            get(indexOf(c), values, rows);
+            b.get(b.indexOf(c), bvalues, rows);
+            for (int r = 0; r < rows; r++) {
+                values[r] *= bvalues[r];
+            }
+            target.put(target.indexOf(c), values, rows);
+        }
+    }
+
+    @Override
+    public CMBufferMatrix mul(double s, CMBufferMatrix target) {
+        double[] values = new double[rows];
+        for (int c = 0; c < columns; c++) {
+            get(indexOf(c), values, rows);
+            for (int r = 0; r < rows; r++) {
+                values[r] *= s;
+            }
+            target.put(target.indexOf(c), values, rows);
+        }
+        return target;
+    }
+
+    @Override
+    public void addColumnVector(CMBufferMatrix vector, CMBufferMatrix target) {
+        assert vector.columns == 1;
+        assert vector.rows() == rows;
+
+        double[] values = new double[rows], vvalues = new double[rows];
+        vector.get(vector.indexOf(0), vvalues, rows);
+        for (int c = 0; c < columns; c++) {
+            get(indexOf(c), values, rows);
+            for (int r = 0; r < rows; r++) {
+                values[r] += vvalues[r];
+            }
+            target.put(target.indexOf(c), values, rows);
+        }
+    }
+
+    @Override
+    public void sumRows(CMBufferMatrix target) {
+        assert target.rows == rows;
+        assert target.columns == 1;
+        double[] values = new double[rows], sums = new double[rows];
+        for (int c = 0; c < columns; c++) {
+            get(indexOf(c), values, rows);
+            for (int r = 0; r < rows; r++) {
+                sums[r] += values[r];
+            }
+        }
+        target.put(target.indexOf(0), sums, rows);
+    }
+
+    @Override
+    public CMBufferMatrix dot(CMBufferMatrix b, CMBufferMatrix target) {
+        assert columns == b.rows();
+        assert target.rows() == rows() && target.columns == b.columns;
+
+        // target column += this column * b value: contiguous reads of this and writes of target
+        double[] values = new double[rows], bvalues = new double[columns], sums = new double[rows];
+        for (int c = 0; c < target.columns; c++) {
+            b.get(b.indexOf(c), bvalues, columns);
+            Arrays.fill(sums, 0);
+            for (int k = 0; k < columns; k++) {
+                double bv = bvalues[k];
+                get(indexOf(k), values, rows);
+                for (int r = 0; r < rows; r++) {
+                    sums[r] += values[r] * bv;
+                }
+            }
+            target.put(target.indexOf(c), sums, rows);
+        }
+        return target;
+    }
+
+    @Override
+    public CMBufferMatrix transpose_dot(CMBufferMatrix b, CMBufferMatrix target) {
+        assert rows() == b.rows();
+        assert target.rows() == columns && target.columns == b.columns;
+
+        // column by column dot products
+        double[] values = new double[rows], bvalues = new double[rows], sums = new double[target.rows];
+        for (int c = 0; c < target.columns; c++) {
+            b.get(b.indexOf(c), bvalues, rows);
+            for (int r = 0; r < target.rows; r++) {
+                get(indexOf(r), values, rows);
+                double s = 0;
+                for (int k = 0; k < rows; k++) {
+                    s += values[k] * bvalues[k];
+                }
+                sums[r] = s;
+            }
+            target.put(target.indexOf(c), sums, target.rows);
+        }
+        return target;
+    }
+
+    @Override
+    public CMBufferMatrix dot_transpose(CMBufferMatrix b, CMBufferMatrix target) {
+        assert columns == b.columns;
+        assert target.rows() == rows() && target.columns == b.rows();
+
+        // target column c += this column k * b[c, k]
+        double[] values = new double[rows], bvalues = new double[b.rows], sums = new double[rows];
+        for (int c = 0; c < target.columns; c++) {
+            Arrays.fill(sums, 0);
+            for (int k = 0; k < columns; k++) {
+                b.get(b.indexOf(k), bvalues, b.rows);
+                double bv = bvalues[c];
+                get(indexOf(k), values, rows);
+                for (int r = 0; r < rows; r++) {
+                    sums[r] += values[r] * bv;
+                }
+            }
+            target.put(target.indexOf(c), sums, rows);
+        }
+        return target;
+    }
+
+    @Override
+    public CMBufferMatrix dot(CMBufferMatrix b) {
+        return dot(b, new CMBufferMatrix(rows(), b.columns()));
+    }
+
+    @Override
+    public CMBufferMatrix transpose_dot(CMBufferMatrix b) {
+        return transpose_dot(b, new CMBufferMatrix(columns(), b.columns()));
+    }
+
+    @Override
+    public CMBufferMatrix dot_transpose(CMBufferMatrix b) {
+        return dot_transpose(b, new CMBufferMatrix(rows(), b.rows()));
+    }
+
+    @Override
+    public CMBufferMatrix activate(Activation activation, boolean approximate, CMBufferMatrix target) {
+        if (activation != Activation.SOFTMAX) {
+            elementWise(activation, approximate, false, target);
+            return target;
+        }
+        // not element wise: a column per call
+        if (floats(target)) {
+            float[] values = new float[rows];
+            for (int c = 0; c < columns; c++) {
+                get(indexOf(c), values, rows);
+                activation.activate(values, 0, values, 0, rows);
+                target.put(target.indexOf(c), values, rows);
+            }
+        } else {
+            double[] values = new double[rows];
+            for (int c = 0; c < columns; c++) {
+                get(indexOf(c), values, rows);
+                activation.activate(values, 0, values, 0, rows);
+                target.put(target.indexOf(c), values, rows);
+            }
+        }
+        return target;
+    }
+
+    @Override
+    public void derivative(Activation activation, boolean approximate, CMBufferMatrix target) {
+        elementWise(activation, approximate, true, target);
+    }
+
+    /**
+     * Bulk {@link Activation} methods on chunks of {@link #CHUNK_SIZE} values, in float if this matrix and the target
+     * store floats.
+     */
+    private void elementWise(Activation activation, boolean approximate, boolean derivative,
+                             CMBufferMatrix target) {
+        int length = rows * columns;
+        int chunk = Math.min(length, CHUNK_SIZE);
+        int ci = indexOf(0), tci = target.indexOf(0);
+        if (floats(target)) {
+            float[] values = new float[chunk];
+            for (int i = 0; i < length; i += chunk) {
+                int count = Math.min(chunk, length - i);
+                get(ci + i, values, count);
+                if (derivative)
+                    activation.derivative(values, 0, values, 0, count, approximate);
+                else
+                    activation.activate(values, 0, values, 0, count, approximate);
+                target.put(tci + i, values, count);
+            }
+        } else {
+            double[] values = new double[chunk];
+            for (int i = 0; i < length; i += chunk) {
+                int count = Math.min(chunk, length - i);
+                get(ci + i, values, count);
+                if (derivative)
+                    activation.derivative(values, 0, values, 0, count, approximate);
+                else
+                    activation.activate(values, 0, values, 0, count, approximate);
+                target.put(tci + i, values, count);
+            }
+        }
+    }
+
+    @Override
+    public double softmaxCrossEntropy(IntUnaryOperator expectedIndex, CMBufferMatrix target) {
+        double cost = 0;
+        if (floats(target)) {
+            float[] values = new float[rows];
+            for (int c = 0; c < columns; c++) {
+                get(indexOf(c), values, rows);
+                cost += Activation.softmaxCrossEntropy(values, 0, values, 0, rows, expectedIndex.applyAsInt(c));
+                target.put(target.indexOf(c), values, rows);
+            }
+        } else {
+            double[] values = new double[rows];
+            for (int c = 0; c < columns; c++) {
+                get(indexOf(c), values, rows);
+                cost += Activation.softmaxCrossEntropy(values, 0, values, 0, rows, expectedIndex.applyAsInt(c));
+                target.put(target.indexOf(c), values, rows);
+            }
+        }
+        return cost;
+    }
+
+    @Override
+    public int maxRowIndex(int column) {
+        double[] values = new double[rows];
+        get(indexOf(column), values, rows);
+        int res = 0;
+        double max = values[0];
+        for (int r = 1; r < rows; r++) {
+            if (values[r] > max) {
+                res = r;
+                max = values[r];
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public int slide(int offset, int columns) {
+        this.colOffset = offset;
+        this.columns = Math.min(columns, totalColumns - colOffset);
+        return this.columns;
+    }
+
+    @Override
+    public CMBufferMatrix createView() {
+        return new CMBufferMatrix(memory, rows, totalColumns, true);
+    }
+
+    private int indexOf(int column) {
+        return (column + colOffset) * rows;
+    }
+
+    private double value(int index) {
+        DoubleBuffer doubles = memory.doubles;
+        return doubles != null ? doubles.get(index) : memory.floats().get(index);
+    }
+
+    private void value(int index, double value) {
+        DoubleBuffer doubles = memory.doubles;
+        if (doubles != null)
+            doubles.put(index, value);
+        else
+            memory.floats().put(index, (float) value);
+    }
+
+    /**
+     * @return true if this matrix and the target store floats: operations can be computed in float
+     */
+    private boolean floats(CMBufferMatrix target) {
+        return memory.precision == Precision.FLOAT && target.memory.precision == Precision.FLOAT;
+    }
+
+    private void get(int index, double[] dst, int length) {
+        get(index, dst, 0, length);
+    }
+
+    /**
+     * dst[offset + i] = this[index + i] for i in [0, length[, the precision is resolved once per call
+     */
+    private void get(int index, double[] dst, int offset, int length) {
+        DoubleBuffer doubles = memory.doubles;
+        if (doubles != null) {
+            doubles.duplicate().position(index).get(dst, offset, length);
+        } else {
+            FloatBuffer floats = memory.floats();
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = floats.get(index + i);
+            }
+        }
+    }
+
+    private void put(int index, double[] src, int length) {
+        DoubleBuffer doubles = memory.doubles;
+        if (doubles != null) {
+            doubles.duplicate().position(index).put(src, 0, length);
+        } else {
+            FloatBuffer floats = memory.floats();
+            for (int i = 0; i < length; i++) {
+                floats.put(index + i, (float) src[i]);
+            }
+        }
+    }
+
+    /**
+     * float matrix only
+     */
+    private void get(int index, float[] dst, int length) {
+        memory.floats().duplicate().position(index).get(dst, 0, length);
+    }
+
+    /**
+     * float matrix only
+     */
+    private void put(int index, float[] src, int length) {
+        memory.floats().duplicate().position(index).put(src, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return Matrix.toString(this);
+    }
+
+    /**
+     * Samples over the matrix columns, the labels are copied in a direct buffer.
+     */
+    private final class ColumnSamples implements DirectSamples {
+        private final int samples;
+        private final int colOffset;
+        private final ByteBuffer labels; // null if no labels
+
+        private ColumnSamples(int[] outputIndices) {
+            this.samples = columns;
+            this.colOffset = CMBufferMatrix.this.colOffset;
+            if (outputIndices != null) {
+                labels = BufferUtils.createByteBuffer(samples * Integer.BYTES);
+                labels.asIntBuffer().put(outputIndices);
+            } else {
+                labels = null;
+            }
+        }
+
+        @Override
+        public int samples() {
+            return samples;
+        }
+
+        @Override
+        public int features() {
+            return rows;
+        }
+
+        @Override
+        public Precision precision() {
+            return memory.precision;
+        }
+
+        @Override
+        public boolean hasLabels() {
+            return labels != null;
+        }
+
+        @Override
+        public boolean isDirect(Precision precision, int features) {
+            return DirectSamples.super.isDirect(precision, features)
+                   && memory.bytes().order() == ByteOrder.LITTLE_ENDIAN;
+        }
+
+        @Override
+        public boolean sharedInputs() {
+            return memory.owned;
+        }
+
+        @Override
+        public ByteBuffer inputsBuffer() {
+            ByteBuffer bytes = memory.bytes();
+            int size = memory.precision.size();
+            ByteBuffer res = bytes.duplicate();
+            res.limit((colOffset + samples) * rows * size).position(colOffset * rows * size);
+            return res.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public ByteBuffer labelsBuffer() {
+            return labels == null ? null : labels.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public double input(int sample, int feature) {
+            return value((colOffset + sample) * rows + feature);
+        }
+
+        @Override
+        public int outputIndex(int sample) {
+            if (labels == null)
+                throw new IllegalStateException("No labels in matrix samples");
+            return labels.getInt(sample * Integer.BYTES);
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.yah.tests.perceptron.matrix.flat;
 
 import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 import org.yah.tests.perceptron.Activation;
 import org.yah.tests.perceptron.matrix.Matrix;
@@ -65,6 +66,23 @@ public class CMFlatMatrix implements Matrix<CMFlatMatrix> {
         data[indexOf(col) + row] = value;
     }
 
+    @Override
+    public void gatherColumns(CMFlatMatrix source, int[] indices, int offset, int count) {
+        for (int c = 0; c < count; c++) {
+            System.arraycopy(source.data, source.indexOf(indices[offset + c]), data, indexOf(c), rows);
+        }
+    }
+
+    @Override
+    public void setColumns(int column, int count, double[] values, int offset) {
+        System.arraycopy(values, offset, data, indexOf(column), count * rows);
+    }
+
+    @Override
+    public void getColumns(int column, int count, double[] target, int offset) {
+        System.arraycopy(data, indexOf(column), target, offset, count * rows);
+    }
+
     @Override
     public CMFlatMatrix self() {
         return this;
@@ -149,16 +167,10 @@ public class CMFlatMatrix implements Matrix<CMFlatMatrix> {
         assert columns == b.rows();
         assert target.rows() == rows() && target.columns == b.columns;
 
-        for (int tr = 0; tr < target.rows; tr++) {
-            for (int tc = 0; tc < target.columns; tc++) {
-                int bi = b.indexOf(tc);
-                double v = 0;
-                for (int c = 0; c < columns; c++) {
-                    v += data[indexOf(c) + tr] * b.data[bi + c];
-                }
-                target.data[target.indexOf(tc) + tr] = v;
-            }
-        }
+        Gemm.gemm(rows, b.columns, columns,
+                data, indexOf(0), 1, rows,
+                b.data, b.indexOf(0), 1, b.rows,
+                target.data, target.indexOf(0), 1, target.rows);
         return target;
     }
 
@@ -167,17 +179,11 @@ public class CMFlatMatrix implements Matrix<CMFlatMatrix> {
         assert rows() == b.rows();
         assert target.rows() == columns && target.columns == b.columns;
 
-        for (int tr = 0; tr < target.rows; tr++) {
-            for (int tc = 0; tc < target.columns; tc++) {
-                int bi = b.indexOf(tc);
-                int i = indexOf(tr);
-                double v = 0;
-                for (int c = 0; c < rows; c++) {
-                    v += data[i + c] * b.data[bi + c];
-                }
-                target.data[target.indexOf(tc) + tr] = v;
-            }
-        }
+        // T(this): rows and columns strides swapped
+        Gemm.gemm(columns, b.columns, rows,
+                data, indexOf(0), rows, 1,
+                b.data, b.indexOf(0), 1, b.rows,
+                target.data, target.indexOf(0), 1, target.rows);
         return target;
     }
 
@@ -185,16 +191,12 @@ public class CMFlatMatrix implements Matrix<CMFlatMatrix> {
     public CMFlatMatrix dot_transpose(CMFlatMatrix b, CMFlatMatrix target) {
         assert columns == b.columns;
         assert target.rows() == rows() && target.columns == b.rows();
-        
-        for (int tr = 0; tr < target.rows; tr++) {
-            for (int tc = 0; tc < target.columns; tc++) {
-                double v = 0;
-                for (int c = 0; c < columns; c++) {
-                    v += data[indexOf(c) + tr] * b.data[b.indexOf(c) + tc];
-                }
-                target.data[target.indexOf(tc) + tr] = v;
-            }
-        }
+
+        // T(b): rows and columns strides swapped
+        Gemm.gemm(rows, b.rows, columns,
+                data, indexOf(0), 1, rows,
+                b.data, b.indexOf(0), b.rows, 1,
+                target.data, target.indexOf(0), 1, target.rows);
         return target;
     }
 
@@ -214,32 +216,38 @@ public class CMFlatMatrix implements Matrix<CMFlatMatrix> {
     }
 
     @Override
-    public CMFlatMatrix sigmoid(CMFlatMatrix target) {
-        int ci = indexOf(colOffset);
-        int tci = target.indexOf(target.colOffset);
-        int count = rows * columns;
-        for (int i = 0; i < count; i++) {
-            target.data[tci + i] = Activation.sigmoid(data[ci + i]);
+    public CMFlatMatrix activate(Activation activation, boolean approximate, CMFlatMatrix target) {
+        if (activation == Activation.SOFTMAX) {
+            for (int c = 0; c < columns; c++) {
+                Activation.softmax(data, indexOf(c), target.data, target.indexOf(c), rows);
+            }
+        } else {
+            activation.activate(data, indexOf(0), target.data, target.indexOf(0), rows * columns, approximate);
         }
         return target;
     }
 
     @Override
-    public void sigmoid_prime(CMFlatMatrix target) {
-        int ci = indexOf(colOffset);
-        int tci = target.indexOf(target.colOffset);
-        int count = rows * columns;
-        for (int i = 0; i < count; i++) {
-            target.data[tci + i] = Activation.sigmoid_prime(data[ci + i]);
+    public void derivative(Activation activation, boolean approximate, CMFlatMatrix target) {
+        activation.derivative(data, indexOf(0), target.data, target.indexOf(0), rows * columns, approximate);
+    }
+
+    @Override
+    public double softmaxCrossEntropy(IntUnaryOperator expectedIndex, CMFlatMatrix target) {
+        double cost = 0;
+        for (int c = 0; c < columns; c++) {
+            cost += Activation.softmaxCrossEntropy(data, indexOf(c), target.data, target.indexOf(c), rows,
+                    expectedIndex.applyAsInt(c));
         }
+        return cost;
     }
 
     @Override
     public int maxRowIndex(int column) {
         int ci = indexOf(column);
-        int res = -1;
-        double max = Double.MIN_VALUE;
-        for (int r = 0; r < rows; r++) {
+        int res = 0;
+        double max = data[ci];
+        for (int r = 1; r < rows; r++) {
             double v = data[ci + r];
             if (v > max) {
                 res = r;
@@ -0,0 +1,292 @@
+package org.yah.tests.perceptron.matrix.flat;
+
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.matrix.Matrix;
+import org.yah.tests.perceptron.matrix.MatrixFunction;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Single precision {@link CMFlatMatrix}: values are stored and computed as float.
+ *
+ * @author Yah
+ */
+public class CMFloatMatrix implements Matrix<CMFloatMatrix> {
+
+    private final float[] data;
+    private final int rows, totalColumns;
+    private int colOffset, columns;
+
+    /**
+     */
+    public CMFloatMatrix(double[][] _data) {
+        this.totalColumns = _data.length;
+        this.rows = _data[0].length;
+        this.columns = totalColumns;
+        this.colOffset = 0;
+        this.data = new float[rows * columns];
+        for (int c = 0; c < _data.length; c++) {
+            for (int r = 0; r < rows; r++) {
+                this.data[c * rows + r] = (float) _data[c][r];
+            }
+        }
+    }
+
+    public CMFloatMatrix(int rows, int columns) {
+        this.totalColumns = columns;
+        this.rows = rows;
+        this.columns = totalColumns;
+        this.colOffset = 0;
+        this.data = new float[rows * columns];
+    }
+
+    private CMFloatMatrix(CMFloatMatrix from) {
+        this.totalColumns = from.totalColumns;
+        this.columns = totalColumns;
+        this.rows = from.rows;
+        this.data = from.data;
+        this.colOffset = 0;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return data[indexOf(col) + row];
+    }
+
+    @Override
+    public void set(int row, int col, double value) {
+        data[indexOf(col) + row] = (float) value;
+    }
+
+    @Override
+    public void gatherColumns(CMFloatMatrix source, int[] indices, int offset, int count) {
+        for (int c = 0; c < count; c++) {
+            System.arraycopy(source.data, source.indexOf(indices[offset + c]), data, indexOf(c), rows);
+        }
+    }
+
+    @Override
+    public void setColumns(int column, int count, double[] values, int offset) {
+        int index = indexOf(column);
+        int length = count * rows;
+        for (int i = 0; i < length; i++) {
+            data[index + i] = (float) values[offset + i];
+        }
+    }
+
+    @Override
+    public void getColumns(int column, int count, double[] target, int offset) {
+        int index = indexOf(column);
+        int length = count * rows;
+        for (int i = 0; i < length; i++) {
+            target[offset + i] = data[index + i];
+        }
+    }
+
+    @Override
+    public CMFloatMatrix self() {
+        return this;
+    }
+
+    @Override
+    public void apply(MatrixFunction func) {
+        for (int c = 0; c < columns; c++) {
+            int ci = indexOf(c);
+            for (int r = 0; r < rows; r++) {
+                data[ci + r] = (float) func.apply(r, c, data[ci + r]);
+            }
+        }
+    }
+
+    @Override
+    public void sub(CMFloatMatrix b, CMFloatMatrix target) {
+        for (int c = 0; c < columns; c++) {
+            int ci = indexOf(c);
+            int bci = b.indexOf(c);
+            int tci = target.indexOf(c);
+            for (int r = 0; r < rows; r++) {
+                target.data[tci + r] = data[ci + r] - b.data[bci + r];
+            }
+        }
+    }
+
+    @Override
+    public void mul(CMFloatMatrix b, CMFloatMatrix target) {
+        for (int c = 0; c < columns; c++) {
+            int ci = indexOf(c);
+            int bci = b.indexOf(c);
+            int tci = target.indexOf(c);
+            for (int r = 0; r < rows; r++) {
+                target.data[tci + r] = data[ci + r] * b.data[bci + r];
+            }
+        }
+    }
+
+    @Override
+    public CMFloatMatrix mul(double s, CMFloatMatrix target) {
+        float fs = (float) s;
+        for (int c = 0; c < columns; c++) {
+            int ci = indexOf(c);
+            int tci = target.indexOf(c);
+            for (int r = 0; r < rows; r++) {
+                target.data[tci + r] = data[ci + r] * fs;
+            }
+        }
+        return target;
+    }
+
+    @Override
+    public void addColumnVector(CMFloatMatrix vector, CMFloatMatrix target) {
+        assert vector.columns == 1;
+        assert vector.rows() == rows;
+
+        int vi = vector.indexOf(vector.colOffset);
+        for (int c = 0; c < columns; c++) {
+            int ci = indexOf(c);
+            int tci = target.indexOf(c);
+            for (int r = 0; r < rows; r++) {
+                target.data[tci + r] = data[ci + r] + vector.data[vi + r];
+            }
+        }
+    }
+
+    @Override
+    public void sumRows(CMFloatMatrix target) {
+        assert target.rows == rows;
+        assert target.columns == 1;
+        for (int r = 0; r < rows; r++) {
+            float s = 0;
+            for (int c = 0; c < columns; c++) {
+                s += data[indexOf(c) + r];
+            }
+            target.data[target.indexOf(0) + r] = s;
+        }
+    }
+
+    @Override
+    public CMFloatMatrix dot(CMFloatMatrix b, CMFloatMatrix target) {
+        assert columns == b.rows();
+        assert target.rows() == rows() && target.columns == b.columns;
+
+        Gemm.gemm(rows, b.columns, columns,
+                data, indexOf(0), 1, rows,
+                b.data, b.indexOf(0), 1, b.rows,
+                target.data, target.indexOf(0), 1, target.rows);
+        return target;
+    }
+
+    @Override
+    public CMFloatMatrix transpose_dot(CMFloatMatrix b, CMFloatMatrix target) {
+        assert rows() == b.rows();
+        assert target.rows() == columns && target.columns == b.columns;
+
+        // T(this): rows and columns strides swapped
+        Gemm.gemm(columns, b.columns, rows,
+                data, indexOf(0), rows, 1,
+                b.data, b.indexOf(0), 1, b.rows,
+                target.data, target.indexOf(0), 1, target.rows);
+        return target;
+    }
+
+    @Override
+    public CMFloatMatrix dot_transpose(CMFloatMatrix b, CMFloatMatrix target) {
+        assert columns == b.columns;
+        assert target.rows() == rows() && target.columns == b.rows();
+
+        // T(b): rows and columns strides swapped
+        Gemm.gemm(rows, b.rows, columns,
+                data, indexOf(0), 1, rows,
+                b.data, b.indexOf(0), b.rows, 1,
+                target.data, target.indexOf(0), 1, target.rows);
+        return target;
+    }
+
+    @Override
+    public CMFloatMatrix dot(CMFloatMatrix b) {
+        return dot(b, new CMFloatMatrix(rows(), b.columns()));
+    }
+
+    @Override
+    public CMFloatMatrix transpose_dot(CMFloatMatrix b) {
+        return transpose_dot(b, new CMFloatMatrix(columns(), b.columns()));
+    }
+
+    @Override
+    public CMFloatMatrix dot_transpose(CMFloatMatrix b) {
+        return dot_transpose(b, new CMFloatMatrix(rows(), b.rows()));
+    }
+
+    @Override
+    public CMFloatMatrix activate(Activation activation, boolean approximate, CMFloatMatrix target) {
+        if (activation == Activation.SOFTMAX) {
+            for (int c = 0; c < columns; c++) {
+                Activation.softmax(data, indexOf(c), target.data, target.indexOf(c), rows);
+            }
+        } else {
+            activation.activate(data, indexOf(0), target.data, target.indexOf(0), rows * columns, approximate);
+        }
+        return target;
+    }
+
+    @Override
+    public void derivative(Activation activation, boolean approximate, CMFloatMatrix target) {
+        activation.derivative(data, indexOf(0), target.data, target.indexOf(0), rows * columns, approximate);
+    }
+
+    @Override
+    public double softmaxCrossEntropy(IntUnaryOperator expectedIndex, CMFloatMatrix target) {
+        double cost = 0;
+        for (int c = 0; c < columns; c++) {
+            cost += Activation.softmaxCrossEntropy(data, indexOf(c), target.data, target.indexOf(c), rows,
+                    expectedIndex.applyAsInt(c));
+        }
+        return cost;
+    }
+
+    @Override
+    public int maxRowIndex(int column) {
+        int ci = indexOf(column);
+        int res = 0;
+        float max = data[ci];
+        for (int r = 1; r < rows; r++) {
+            float v = data[ci + r];
+            if (v > max) {
+                res = r;
+                max = v;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public int slide(int offset, int columns) {
+        this.colOffset = offset;
+        this.columns = Math.min(columns, totalColumns - colOffset);
+        return this.columns;
+    }
+
+    @Override
+    public CMFloatMatrix createView() {
+        return new CMFloatMatrix(this);
+    }
+
+    private int indexOf(int column) {
+        return (column + colOffset) * rows;
+    }
+
+    @Override
+    public String toString() {
+        return Matrix.toString(this);
+    }
+
+}
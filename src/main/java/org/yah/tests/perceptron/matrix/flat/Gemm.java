@@ -0,0 +1,353 @@
+package org.yah.tests.perceptron.matrix.flat;
+
+/**
+ * Blocked matrix products over flat arrays: c = a . b, where a is m x k, b is k x n and c is m x n.<br/>
+ * Each operand is given by its offset and the strides of its rows and columns, so a transposed operand is the same
+ * storage with swapped strides.<br/>
+ * <br/>
+ * The product is computed by a {@link #MR} x {@link #NR} register blocked kernel: 16 accumulators, each loaded value
+ * of a and b is used 4 times. Small products run the kernel directly on the operands. Products of at least
+ * {@link #PACK_THRESHOLD} multiply-adds are cache blocked: {@link #KC} x {@link #NC} panels of b and {@link #MC} x
+ * {@link #KC} blocks of a are packed in contiguous thread local buffers, in the kernel order, so the kernel reads them
+ * sequentially whatever the operands strides.
+ *
+ * @author Yah
+ */
+public final class Gemm {
+
+    /**
+     * kernel rows and columns
+     */
+    public static final int MR = 4, NR = 4;
+
+    /**
+     * packed block sizes: a block (MC x KC) stays in L2, a b panel (KC x NC) in L3
+     */
+    public static final int MC = 128, KC = 256, NC = 1024;
+
+    /**
+     * minimum m * n * k of a packed product
+     */
+    public static final long PACK_THRESHOLD = 64 * 64 * 64;
+
+    private static final ThreadLocal<double[][]> DOUBLE_PACKS = ThreadLocal.withInitial(() -> new double[2][0]);
+
+    private static final ThreadLocal<float[][]> FLOAT_PACKS = ThreadLocal.withInitial(() -> new float[2][0]);
+
+    private Gemm() {
+    }
+
+    /**
+     * c = a . b
+     *
+     * @param ars a row stride: a(i, p) = a[aOffset + i * ars + p * acs]
+     * @param brs b row stride: b(p, j) = b[bOffset + p * brs + j * bcs]
+     * @param crs c row stride: c(i, j) = c[cOffset + i * crs + j * ccs]
+     */
+    public static void gemm(int m, int n, int k,
+                            double[] a, int aOffset, int ars, int acs,
+                            double[] b, int bOffset, int brs, int bcs,
+                            double[] c, int cOffset, int crs, int ccs) {
+        if ((long) m * n * k < PACK_THRESHOLD) {
+            block(m, n, k, a, aOffset, ars, acs, b, bOffset, brs, bcs, c, cOffset, crs, ccs, false);
+            return;
+        }
+
+        double[][] packs = DOUBLE_PACKS.get();
+        int packedACapacity = Math.min(MC, m) * Math.min(KC, k);
+        int packedBCapacity = Math.min(KC, k) * Math.min(NC, n);
+        if (packs[0].length < packedACapacity)
+            packs[0] = new double[packedACapacity];
+        if (packs[1].length < packedBCapacity)
+            packs[1] = new double[packedBCapacity];
+        double[] packedA = packs[0], packedB = packs[1];
+
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                // b panel: NR wide column panels, each one row after row
+                for (int jr = 0; jr < nc; jr += NR) {
+                    int nr = Math.min(NR, nc - jr);
+                    int index = jr * kc;
+                    for (int p = 0; p < kc; p++) {
+                        int bi = bOffset + (pc + p) * brs + (jc + jr) * bcs;
+                        for (int j = 0; j < nr; j++) {
+                            packedB[index++] = b[bi + j * bcs];
+                        }
+                    }
+                }
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    // a block: MR high row panels, each one column after column
+                    for (int ir = 0; ir < mc; ir += MR) {
+                        int mr = Math.min(MR, mc - ir);
+                        int index = ir * kc;
+                        for (int p = 0; p < kc; p++) {
+                            int ai = aOffset + (ic + ir) * ars + (pc + p) * acs;
+                            for (int i = 0; i < mr; i++) {
+                                packedA[index++] = a[ai + i * ars];
+                            }
+                        }
+                    }
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            int ci = cOffset + (ic + ir) * crs + (jc + jr) * ccs;
+                            if (mr == MR && nr == NR) {
+                                kernel(kc, packedA, ir * kc, 1, MR, packedB, jr * kc, NR, 1,
+                                        c, ci, crs, ccs, pc > 0);
+                            } else {
+                                edge(mr, nr, kc, packedA, ir * kc, 1, mr, packedB, jr * kc, nr, 1,
+                                        c, ci, crs, ccs, pc > 0);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * c = a . b, in single precision
+     *
+     * @see #gemm(int, int, int, double[], int, int, int, double[], int, int, int, double[], int, int, int)
+     */
+    public static void gemm(int m, int n, int k,
+                            float[] a, int aOffset, int ars, int acs,
+                            float[] b, int bOffset, int brs, int bcs,
+                            float[] c, int cOffset, int crs, int ccs) {
+        if ((long) m * n * k < PACK_THRESHOLD) {
+            block(m, n, k, a, aOffset, ars, acs, b, bOffset, brs, bcs, c, cOffset, crs, ccs, false);
+            return;
+        }
+
+        float[][] packs = FLOAT_PACKS.get();
+        int packedACapacity = Math.min(MC, m) * Math.min(KC, k);
+        int packedBCapacity = Math.min(KC, k) * Math.min(NC, n);
+        if (packs[0].length < packedACapacity)
+            packs[0] = new float[packedACapacity];
+        if (packs[1].length < packedBCapacity)
+            packs[1] = new float[packedBCapacity];
+        float[] packedA = packs[0], packedB = packs[1];
+
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                for (int jr = 0; jr < nc; jr += NR) {
+                    int nr = Math.min(NR, nc - jr);
+                    int index = jr * kc;
+                    for (int p = 0; p < kc; p++) {
+                        int bi = bOffset + (pc + p) * brs + (jc + jr) * bcs;
+                        for (int j = 0; j < nr; j++) {
+                            packedB[index++] = b[bi + j * bcs];
+                        }
+                    }
+                }
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    for (int ir = 0; ir < mc; ir += MR) {
+                        int mr = Math.min(MR, mc - ir);
+                        int index = ir * kc;
+                        for (int p = 0; p < kc; p++) {
+                            int ai = aOffset + (ic + ir) * ars + (pc + p) * acs;
+                            for (int i = 0; i < mr; i++) {
+                                packedA[index++] = a[ai + i * ars];
+                            }
+                        }
+                    }
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            int ci = cOffset + (ic + ir) * crs + (jc + jr) * ccs;
+                            if (mr == MR && nr == NR) {
+                                kernel(kc, packedA, ir * kc, 1, MR, packedB, jr * kc, NR, 1,
+                                        c, ci, crs, ccs, pc > 0);
+                            } else {
+                                edge(mr, nr, kc, packedA, ir * kc, 1, mr, packedB, jr * kc, nr, 1,
+                                        c, ci, crs, ccs, pc > 0);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * unpacked product, kernel blocks then edges
+     */
+    private static void block(int m, int n, int k,
+                              double[] a, int aOffset, int ars, int acs,
+                              double[] b, int bOffset, int brs, int bcs,
+                              double[] c, int cOffset, int crs, int ccs, boolean accumulate) {
+        for (int jr = 0; jr < n; jr += NR) {
+            int nr = Math.min(NR, n - jr);
+            for (int ir = 0; ir < m; ir += MR) {
+                int mr = Math.min(MR, m - ir);
+                int ai = aOffset + ir * ars, bi = bOffset + jr * bcs, ci = cOffset + ir * crs + jr * ccs;
+                if (mr == MR && nr == NR)
+                    kernel(k, a, ai, ars, acs, b, bi, brs, bcs, c, ci, crs, ccs, accumulate);
+                else
+                    edge(mr, nr, k, a, ai, ars, acs, b, bi, brs, bcs, c, ci, crs, ccs, accumulate);
+            }
+        }
+    }
+
+    private static void block(int m, int n, int k,
+                              float[] a, int aOffset, int ars, int acs,
+                              float[] b, int bOffset, int brs, int bcs,
+                              float[] c, int cOffset, int crs, int ccs, boolean accumulate) {
+        for (int jr = 0; jr < n; jr += NR) {
+            int nr = Math.min(NR, n - jr);
+            for (int ir = 0; ir < m; ir += MR) {
+                int mr = Math.min(MR, m - ir);
+                int ai = aOffset + ir * ars, bi = bOffset + jr * bcs, ci = cOffset + ir * crs + jr * ccs;
+                if (mr == MR && nr == NR)
+                    kernel(k, a, ai, ars, acs, b, bi, brs, bcs, c, ci, crs, ccs, accumulate);
+                else
+                    edge(mr, nr, k, a, ai, ars, acs, b, bi, brs, bcs, c, ci, crs, ccs, accumulate);
+            }
+        }
+    }
+
+    /**
+     * MR x NR block of c, accumulated in registers
+     */
+    private static void kernel(int k,
+                               double[] a, int ai, int ars, int acs,
+                               double[] b, int bi, int brs, int bcs,
+                               double[] c, int ci, int crs, int ccs, boolean accumulate) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        for (int p = 0; p < k; p++, ai += acs, bi += brs) {
+            double a0 = a[ai], a1 = a[ai + ars], a2 = a[ai + 2 * ars], a3 = a[ai + 3 * ars];
+            double b0 = b[bi], b1 = b[bi + bcs], b2 = b[bi + 2 * bcs], b3 = b[bi + 3 * bcs];
+            c00 += a0 * b0;
+            c01 += a0 * b1;
+            c02 += a0 * b2;
+            c03 += a0 * b3;
+            c10 += a1 * b0;
+            c11 += a1 * b1;
+            c12 += a1 * b2;
+            c13 += a1 * b3;
+            c20 += a2 * b0;
+            c21 += a2 * b1;
+            c22 += a2 * b2;
+            c23 += a2 * b3;
+            c30 += a3 * b0;
+            c31 += a3 * b1;
+            c32 += a3 * b2;
+            c33 += a3 * b3;
+        }
+        store(c, ci, crs, c00, c10, c20, c30, accumulate);
+        store(c, ci + ccs, crs, c01, c11, c21, c31, accumulate);
+        store(c, ci + 2 * ccs, crs, c02, c12, c22, c32, accumulate);
+        store(c, ci + 3 * ccs, crs, c03, c13, c23, c33, accumulate);
+    }
+
+    private static void kernel(int k,
+                               float[] a, int ai, int ars, int acs,
+                               float[] b, int bi, int brs, int bcs,
+                               float[] c, int ci, int crs, int ccs, boolean accumulate) {
+        float c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        float c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        float c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        float c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        for (int p = 0; p < k; p++, ai += acs, bi += brs) {
+            float a0 = a[ai], a1 = a[ai + ars], a2 = a[ai + 2 * ars], a3 = a[ai + 3 * ars];
+            float b0 = b[bi], b1 = b[bi + bcs], b2 = b[bi + 2 * bcs], b3 = b[bi + 3 * bcs];
+            c00 += a0 * b0;
+            c01 += a0 * b1;
+            c02 += a0 * b2;
+            c03 += a0 * b3;
+            c10 += a1 * b0;
+            c11 += a1 * b1;
+            c12 += a1 * b2;
+            c13 += a1 * b3;
+            c20 += a2 * b0;
+            c21 += a2 * b1;
+            c22 += a2 * b2;
+            c23 += a2 * b3;
+            c30 += a3 * b0;
+            c31 += a3 * b1;
+            c32 += a3 * b2;
+            c33 += a3 * b3;
+        }
+        store(c, ci, crs, c00, c10, c20, c30, accumulate);
+        store(c, ci + ccs, crs, c01, c11, c21, c31, accumulate);
+        store(c, ci + 2 * ccs, crs, c02, c12, c22, c32, accumulate);
+        store(c, ci + 3 * ccs, crs, c03, c13, c23, c33, accumulate);
+    }
+
+    private static void store(double[] c, int ci, int crs, double c0, double c1, double c2, double c3,
+                              boolean accumulate) {
+        if (accumulate) {
+            c[ci] += c0;
+            c[ci + crs] += c1;
+            c[ci + 2 * crs] += c2;
+            c[ci + 3 * crs] += c3;
+        } else {
+            c[ci] = c0;
+            c[ci + crs] = c1;
+            c[ci + 2 * crs] = c2;
+            c[ci + 3 * crs] = c3;
+        }
+    }
+
+    private static void store(float[] c, int ci, int crs, float c0, float c1, float c2, float c3,
+                              boolean accumulate) {
+        if (accumulate) {
+            c[ci] += c0;
+            c[ci + crs] += c1;
+            c[ci + 2 * crs] += c2;
+            c[ci + 3 * crs] += c3;
+        } else {
+            c[ci] = c0;
+            c[ci + crs] = c1;
+            c[ci + 2 * crs] = c2;
+            c[ci + 3 * crs] = c3;
+        }
+    }
+
+    /**
+     * partial block of c (mr < MR or nr < NR)
+     */
+    private static void edge(int mr, int nr, int k,
+                             double[] a, int ai, int ars, int acs,
+                             double[] b, int bi, int brs, int bcs,
+                             double[] c, int ci, int crs, int ccs, boolean accumulate) {
+        for (int j = 0; j < nr; j++) {
+            for (int i = 0; i < mr; i++) {
+                double sum = 0;
+                for (int p = 0; p < k; p++) {
+                    sum += a[ai + i * ars + p * acs] * b[bi + p * brs + j * bcs];
+                }
+                int index = ci + i * crs + j * ccs;
+                c[index] = accumulate ? c[index] + sum : sum;
+            }
+        }
+    }
+
+    private static void edge(int mr, int nr, int k,
+                             float[] a, int ai, int ars, int acs,
+                             float[] b, int bi, int brs, int bcs,
+                             float[] c, int ci, int crs, int ccs, boolean accumulate) {
+        for (int j = 0; j < nr; j++) {
+            for (int i = 0; i < mr; i++) {
+                float sum = 0;
+                for (int p = 0; p < k; p++) {
+                    sum += a[ai + i * ars + p * acs] * b[bi + p * brs + j * bcs];
+                }
+                int index = ci + i * crs + j * ccs;
+                c[index] = accumulate ? c[index] + sum : sum;
+            }
+        }
+    }
+
+}
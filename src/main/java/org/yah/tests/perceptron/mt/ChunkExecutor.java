@@ -1,130 +1,385 @@
 package org.yah.tests.perceptron.mt;
 
-import java.util.concurrent.ExecutionException;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * Split a range in chunks handled by a pool of threads and the calling thread, which waits for the others with its
+ * {@link WaitStrategy}.<br/>
+ * <br/>
+ * The chunks are sized from the cost of the handler: {@link ChunkHandler#elementCost()} gives the relative cost of an
+ * element, the nanoseconds per cost unit of each handler are calibrated from the measured chunks timings. A range
+ * estimated under {@link #PARALLEL_NANOS} is handled by the calling thread only (as is the first range of a handler,
+ * used for its calibration), others are split in chunks of about {@link #TARGET_CHUNK_NANOS}, from one to
+ * {@link #MAX_CHUNKS_PER_THREAD} chunks per thread.<br/>
+ * Each thread owns a contiguous range of chunks, and steals chunks from the end of the other threads ranges once its
+ * own range is done: a slow core no longer stalls the whole distribution.<br/>
+ * <br/>
+ * The default backend and wait strategy are read from the <code>mt.backend</code> and <code>mt.wait</code> system
+ * properties ({@link Backend#FIXED} and {@link WaitStrategy#PARK} if not set).<br/>
+ * A single distribution can run at a time.
+ *
  * @author Yah
  *
  */
 public class ChunkExecutor implements AutoCloseable {
 
-    private static final int MIN_CHUNK_SIZE = 5000;
-    
-    private final ExecutorService executor;
+    public static final long PARALLEL_NANOS = 20_000;
+
+    public static final long TARGET_CHUNK_NANOS = 50_000;
+
+    public static final int MAX_CHUNKS_PER_THREAD = 8;
+
+    /**
+     * busy spins of {@link WaitStrategy#YIELD} and {@link WaitStrategy#PARK} before yielding or parking
+     */
+    private static final int SPINS = 1000;
+
+    /**
+     * weight of a new measure in the calibration
+     */
+    private static final double CALIBRATION_RATE = 0.25;
+
+    /**
+     * stride between the ranges of 2 threads, a cache line
+     */
+    private static final int RANGE_STRIDE = 8;
+
+    public static final Backend DEFAULT_BACKEND = Backend.valueOf(System.getProperty("mt.backend", "FIXED"));
+
+    public static final WaitStrategy DEFAULT_WAIT_STRATEGY = WaitStrategy.valueOf(System.getProperty("mt.wait",
+            "PARK"));
+
+    /**
+     * How the calling thread waits for the chunks of the other threads.
+     */
+    public enum WaitStrategy {
+        /**
+         * busy spin: lowest latency, burns the calling thread core
+         */
+        SPIN,
+        /**
+         * spin, then yield to the other threads of the host
+         */
+        YIELD,
+        /**
+         * spin, then park until the last chunk completes
+         */
+        PARK
+    }
+
+    /**
+     * Threads running the chunks.
+     */
+    public enum Backend {
+        FIXED {
+            @Override
+            ExecutorService create(int threads) {
+                return Executors.newFixedThreadPool(threads);
+            }
+        },
+        FORK_JOIN {
+            @Override
+            ExecutorService create(int threads) {
+                return new ForkJoinPool(threads);
+            }
+        },
+        /**
+         * one virtual thread per chunk, requires Java 21
+         */
+        VIRTUAL {
+            @Override
+            ExecutorService create(int threads) {
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                                                            .invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    throw new UnsupportedOperationException("Virtual threads are not available", e);
+                }
+            }
+        };
+
+        abstract ExecutorService create(int threads);
+    }
+
+    private final ExecutorService executor; // null if concurrency is 1
+    private final WaitStrategy waitStrategy;
+    private final int minChunkSize;
 
     @FunctionalInterface
     public interface ChunkHandler {
-        
+
+        /**
+         * @param chunksCount the chunks indices are in [0, chunksCount[
+         */
         default void start(int chunksCount) {}
 
         void handle(int chunkIndex, int offset, int size);
 
         default void complete(int chunksCount) {}
+
+        /**
+         * @return the relative cost of one element for the next distribution (the length of a dot product for
+         * instance), the executor calibrates the duration of a cost unit
+         */
+        default double elementCost() {
+            return 1;
+        }
     }
 
-    private static class Chunk implements Runnable {
+    /**
+     * a thread handling chunks, the calling thread is the last one
+     */
+    private class Worker implements Runnable {
         private final int index;
-        private int offset, size;
-        private ChunkHandler handler;
 
-        public Chunk(int index) {
+        public Worker(int index) {
             this.index = index;
         }
 
-        public void prepare(int offset, int size, ChunkHandler handler) {
-            this.offset = offset;
-            this.size = size;
-            this.handler = handler;
-        }
-
         @Override
         public void run() {
-            handler.handle(index, offset, size);
+            int chunk;
+            while ((chunk = take(index)) >= 0)
+                handleChunk(chunk);
+            for (int i = 1; i < participants; i++) {
+                int victim = (index + i) % participants;
+                while ((chunk = steal(victim)) >= 0)
+                    handleChunk(chunk);
+            }
         }
+    }
+
+    private static final class Calibration {
+        private double unitNanos = Double.NaN;
 
-        public void clear() {
-            handler = null;
-            offset = size = 0;
+        private void update(double measure) {
+            if (Double.isNaN(unitNanos))
+                unitNanos = measure;
+            else
+                unitNanos += CALIBRATION_RATE * (measure - unitNanos);
         }
     }
 
-    private final Chunk[] chunks;
+    private final Worker[] workers;
+    private final Map<ChunkHandler, Calibration> calibrations = new IdentityHashMap<>();
+
+    // state of the current distribution, published by the ranges
+    private ChunkHandler handler;
+    private int count, chunksCount, participants;
+    private final AtomicLongArray ranges; // per thread: first chunk << 32 | end chunk
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private volatile Thread waiter;
+    private volatile Throwable failure;
 
     public ChunkExecutor(int concurrency) {
-        this.executor = Executors.newFixedThreadPool(concurrency - 1);
-        chunks = new Chunk[concurrency];
-        for (int i = 0; i < chunks.length; i++) {
-            chunks[i] = new Chunk(i);
+        this(concurrency, DEFAULT_BACKEND, DEFAULT_WAIT_STRATEGY);
+    }
+
+    public ChunkExecutor(int concurrency, Backend backend, WaitStrategy waitStrategy) {
+        this(concurrency, backend, waitStrategy, 1);
+    }
+
+    /**
+     * @param minChunkSize minimum elements of a chunk
+     */
+    public ChunkExecutor(int concurrency, Backend backend, WaitStrategy waitStrategy, int minChunkSize) {
+        if (concurrency <= 0)
+            throw new IllegalArgumentException("Invalid concurrency " + concurrency);
+        this.executor = concurrency > 1 ? backend.create(concurrency - 1) : null;
+        this.waitStrategy = waitStrategy;
+        this.minChunkSize = Math.max(1, minChunkSize);
+        workers = new Worker[concurrency];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
         }
+        ranges = new AtomicLongArray(concurrency * RANGE_STRIDE);
+    }
+
+    public int concurrency() {
+        return workers.length;
+    }
+
+    public WaitStrategy waitStrategy() {
+        return waitStrategy;
     }
 
     @Override
     public void close() {
-        executor.shutdown();
+        if (executor != null)
+            executor.shutdown();
     }
 
+    /**
+     * Distribute in chunks sized from the handler calibrated cost.
+     */
     public void distribute(int count, ChunkHandler handler) {
-        int concurrency = chunks.length;
-        int chunkSize = count / concurrency;
-        
-        Chunk chunk;
-        if (chunkSize < MIN_CHUNK_SIZE) {
+        Calibration calibration = calibrations.computeIfAbsent(handler, h -> new Calibration());
+        double units = count * handler.elementCost();
+        int chunks = chunksCount(count, calibration.unitNanos * units);
+        if (chunks == 1) {
+            long start = System.nanoTime();
+            distribute(count, 1, handler);
+            if (units > 0)
+                calibration.update((System.nanoTime() - start) / units);
+        } else {
+            distribute(count, chunks, handler);
+            calibration.update(busyNanos.get() / units);
+        }
+    }
+
+    /**
+     * @return the calibrated duration of a cost unit of the handler, NaN if not calibrated yet
+     */
+    public double unitNanos(ChunkHandler handler) {
+        Calibration calibration = calibrations.get(handler);
+        return calibration == null ? Double.NaN : calibration.unitNanos;
+    }
+
+    /**
+     * @param estimatedNanos estimated duration of the range, NaN if unknown
+     */
+    int chunksCount(int count, double estimatedNanos) {
+        int concurrency = workers.length;
+        if (executor == null || Double.isNaN(estimatedNanos) || estimatedNanos < PARALLEL_NANOS)
+            return 1;
+        long chunks = (long) Math.ceil(estimatedNanos / TARGET_CHUNK_NANOS);
+        chunks = Math.max(concurrency, Math.min(chunks, (long) concurrency * MAX_CHUNKS_PER_THREAD));
+        chunks = Math.min(chunks, count / minChunkSize);
+        return (int) Math.max(1, chunks);
+    }
+
+    /**
+     * Distribute in a given number of chunks, the chunks sizes differ by one element at most.
+     */
+    public void distribute(int count, int chunksCount, ChunkHandler handler) {
+        chunksCount = Math.max(1, Math.min(chunksCount, count));
+        if (executor == null || chunksCount == 1) {
             handler.start(1);
-            chunk = chunks[0];
-            chunk.prepare(0, count, handler);
-            chunk.run();
+            handler.handle(0, 0, count);
             handler.complete(1);
             return;
         }
-        
-        int remaining = count % concurrency;
-        int offset = 0;
-        @SuppressWarnings("unchecked")
-        Future<Chunk>[] futures = new Future[concurrency - 1];
-        int chunkIndex;
-        handler.start(concurrency);
-        
-        for (chunkIndex = 0; chunkIndex < concurrency - 1; chunkIndex++) {
-            int size = chunkSize;
-            if (remaining > 0) {
-                size++;
-                remaining--;
-            }
 
-            chunk = chunks[chunkIndex];
-            chunk.prepare(offset, size, handler);
-            futures[chunkIndex] = executor.submit(chunk, chunk);
-            offset += size;
+        handler.start(chunksCount);
+        int participants = Math.min(workers.length, chunksCount);
+        this.handler = handler;
+        this.count = count;
+        this.chunksCount = chunksCount;
+        this.participants = participants;
+        failure = null;
+        busyNanos.set(0);
+        waiter = Thread.currentThread();
+        pending.set(chunksCount);
+        // contiguous chunks for each thread, publish the distribution
+        for (int p = 0; p < participants; p++) {
+            int first = (int) ((long) p * chunksCount / participants);
+            int end = (int) ((long) (p + 1) * chunksCount / participants);
+            ranges.set(p * RANGE_STRIDE, range(first, end));
+        }
+        for (int p = 0; p < participants - 1; p++) {
+            executor.execute(workers[p]);
         }
 
-        chunk = chunks[chunkIndex];
-        chunk.prepare(offset, chunkSize, handler);
-        chunk.run();
-
-        remaining = futures.length;
-        while (remaining > 0) {
-            for (int i = 0; i < futures.length; i++) {
-                if (futures[i] != null && futures[i].isDone()) {
-                    chunk = safeGet(futures[i]);
-                    chunk.clear();
-                    futures[i] = null;
-                    remaining--;
-                }
-            }
+        try {
+            workers[participants - 1].run();
+        } finally {
+            // the handler must not be reused while chunks are running
+            awaitChunks();
+            this.handler = null;
         }
-        handler.complete(concurrency);
+        Throwable error = failure;
+        if (error != null) {
+            failure = null;
+            throw new RuntimeException(error);
+        }
+        handler.complete(chunksCount);
     }
 
-    private Chunk safeGet(Future<Chunk> future) {
+    private void handleChunk(int chunk) {
+        long start = System.nanoTime();
         try {
-            return future.get();
-        } catch (InterruptedException e) {
-            throw new IllegalStateException("Should never happen");
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e);
+            int base = count / chunksCount;
+            int remaining = count % chunksCount;
+            int offset = chunk * base + Math.min(chunk, remaining);
+            handler.handle(chunk, offset, base + (chunk < remaining ? 1 : 0));
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            busyNanos.addAndGet(System.nanoTime() - start);
+            if (pending.decrementAndGet() == 0 && waitStrategy == WaitStrategy.PARK)
+                LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * @return the first chunk of the thread range, -1 if empty
+     */
+    private int take(int thread) {
+        int index = thread * RANGE_STRIDE;
+        while (true) {
+            long range = ranges.get(index);
+            int first = (int) (range >>> 32), end = (int) range;
+            if (first >= end)
+                return -1;
+            if (ranges.compareAndSet(index, range, range(first + 1, end)))
+                return first;
         }
     }
+
+    /**
+     * @return the last chunk of the thread range, -1 if empty
+     */
+    private int steal(int thread) {
+        int index = thread * RANGE_STRIDE;
+        while (true) {
+            long range = ranges.get(index);
+            int first = (int) (range >>> 32), end = (int) range;
+            if (first >= end)
+                return -1;
+            if (ranges.compareAndSet(index, range, range(first, end - 1)))
+                return end - 1;
+        }
+    }
+
+    private static long range(int first, int end) {
+        return (long) first << 32 | end;
+    }
+
+    private void awaitChunks() {
+        int spins = 0;
+        switch (waitStrategy) {
+            case SPIN:
+                while (pending.get() > 0)
+                    Thread.onSpinWait();
+                break;
+            case YIELD:
+                while (pending.get() > 0) {
+                    if (spins++ < SPINS)
+                        Thread.onSpinWait();
+                    else
+                        Thread.yield();
+                }
+                break;
+            case PARK:
+                while (pending.get() > 0) {
+                    if (spins++ < SPINS)
+                        Thread.onSpinWait();
+                    else
+                        LockSupport.park(this);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unhandled wait strategy " + waitStrategy);
+        }
+    }
+
 }
@@ -0,0 +1,194 @@
+package org.yah.tests.perceptron.mt;
+
+import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.NeuralNetworkState.WeightsLayout;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.TrainingSamples;
+import org.yah.tests.perceptron.base.AbstractBatchedNeuralNetwork;
+import org.yah.tests.perceptron.base.ArrayNetworkOutputs;
+import org.yah.tests.perceptron.base.SamplesSource;
+import org.yah.tests.perceptron.mt.ChunkExecutor.ChunkHandler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous training, Hogwild style: each thread pulls the next batch of the training samples, computes its
+ * gradients in its own {@link SampleWorkspace}, and updates the shared weights and biases without any lock or barrier.
+ * A thread may read the weights while others update them, and concurrent updates of a same weight may be lost: the
+ * training tolerates these races, the threads never wait for each other until the end of the epoch.<br/>
+ * Propagation and evaluation run on the calling thread.
+ *
+ * @author Yah
+ */
+public final class HogwildNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch, ArrayNetworkOutputs>
+        implements AutoCloseable {
+
+    private final ChunkExecutor executor;
+    private final Precision precision;
+
+    private final MTMatrix[] weights;
+    private final MTMatrix[] biases;
+
+    private final SampleWorkspace[] workspaces;
+    private final EpochHandler epochHandler = new EpochHandler();
+
+    public HogwildNeuralNetwork(NeuralNetworkState state) {
+        this(state, Precision.DOUBLE);
+    }
+
+    public HogwildNeuralNetwork(NeuralNetworkState state, Precision precision) {
+        this(state, precision, new ChunkExecutor(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param executor a training thread per executor thread, closed with this network
+     */
+    public HogwildNeuralNetwork(NeuralNetworkState state, Precision precision, ChunkExecutor executor) {
+        super(state);
+        this.precision = precision;
+        this.executor = executor;
+        int layers = layers();
+        weights = new MTMatrix[layers];
+        biases = new MTMatrix[layers];
+        for (int layer = 0; layer < layers; layer++) {
+            weights[layer] = MTMatrix.create(precision, neurons(layer), features(layer));
+            biases[layer] = MTMatrix.create(precision, neurons(layer), 1);
+        }
+        updateModel();
+        workspaces = new SampleWorkspace[executor.concurrency()];
+        for (int i = 0; i < workspaces.length; i++) {
+            workspaces[i] = new SampleWorkspace(this, precision, weights, biases);
+        }
+    }
+
+    public Precision precision() {
+        return precision;
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    @Override
+    public SamplesSource<MTBatch> createSampleSource() {
+        return new MTSamplesSource(features(), precision);
+    }
+
+    @Override
+    public ArrayNetworkOutputs createOutpus(int samples) {
+        return new ArrayNetworkOutputs(samples);
+    }
+
+    @Override
+    public ArrayNetworkOutputs createOutpus(int samples, int topK, boolean activations) {
+        return new ArrayNetworkOutputs(samples, outputs(), topK, activations);
+    }
+
+    /**
+     * The batches are shared by the executor threads, each one training the next batch until the end of the samples.
+     */
+    @Override
+    protected void doTrain(TrainingSamples samples, double learningRate) {
+        checkModel();
+        epochHandler.prepare((MTTrainingSamples) samples, learningRate);
+        executor.distribute(workspaces.length, workspaces.length, epochHandler);
+        modelChanged();
+    }
+
+    @Override
+    protected void train(MTBatch batch, double learningRate) {
+        train(workspaces[0], batch, learningRate);
+    }
+
+    @Override
+    protected void propagate(MTBatch batch, ArrayNetworkOutputs outputs) {
+        indexOutputs(batch, outputs);
+    }
+
+    @Override
+    protected int evaluate(MTBatch batch, ArrayNetworkOutputs outputs) {
+        return indexOutputs(batch, outputs);
+    }
+
+    @Override
+    protected void updateState() {
+        for (int layer = 0; layer < layers(); layer++) {
+            double[] values = new double[neurons(layer) * features(layer)];
+            weights[layer].getColumns(0, features(layer), values, 0);
+            state.setWeights(layer, values, 0, WeightsLayout.COLUMN_MAJOR);
+            biases[layer].getColumns(0, 1, values, 0);
+            state.setBiases(layer, values, 0);
+        }
+    }
+
+    @Override
+    protected void updateModel() {
+        for (int layer = 0; layer < layers(); layer++) {
+            double[] values = new double[neurons(layer) * features(layer)];
+            state.getWeights(layer, values, 0, WeightsLayout.COLUMN_MAJOR);
+            weights[layer].setColumns(0, features(layer), values, 0);
+            state.getBiases(layer, values, 0);
+            biases[layer].setColumns(0, 1, values, 0);
+        }
+    }
+
+    /**
+     * Compute the batch gradients in the workspace, then update the shared model, racing with the other threads.
+     */
+    private void train(SampleWorkspace workspace, MTBatch batch, double learningRate) {
+        workspace.train(batch, 0, batch.size());
+        double lr = learningRate / batch.size();
+        for (int layer = 0; layer < layers(); layer++) {
+            weights[layer].addScaled(workspace.wgrads[layer], -lr, 0, weights[layer].size());
+            biases[layer].addScaled(workspace.bgrads[layer], -lr, 0, biases[layer].size());
+        }
+    }
+
+    private int indexOutputs(MTBatch batch, ArrayNetworkOutputs networkOutputs) {
+        MTMatrix outputsMatrix = workspaces[0].forward(batch, 0, batch.size(), false);
+        boolean ranked = networkOutputs != null && networkOutputs.ranked();
+        int matched = 0;
+        for (int col = 0; col < batch.size(); col++) {
+            int sample = batch.offset() + col;
+            int index;
+            if (ranked) {
+                index = outputsMatrix.rank(col, networkOutputs, sample);
+            } else {
+                index = outputsMatrix.maxRowIndex(col);
+                if (networkOutputs != null)
+                    networkOutputs.set(sample, index);
+            }
+            if (batch.expectedIndex(col) == index)
+                matched++;
+        }
+        return matched;
+    }
+
+    /**
+     * A chunk per thread, pulling the batches of the epoch.
+     */
+    private class EpochHandler implements ChunkHandler {
+        private final AtomicInteger nextBatch = new AtomicInteger();
+        private MTTrainingSamples samples;
+        private double learningRate;
+
+        public void prepare(MTTrainingSamples samples, double learningRate) {
+            this.samples = samples;
+            this.learningRate = learningRate;
+            nextBatch.set(0);
+        }
+
+        @Override
+        public void handle(int chunkIndex, int offset, int size) {
+            MTBatch batch = samples.createBatch();
+            int batchSize = samples.batchSize();
+            int batchOffset;
+            while ((batchOffset = nextBatch.getAndIncrement() * batchSize) < samples.size()) {
+                batch.slide(batchOffset, batchSize);
+                train(workspaces[chunkIndex], batch, learningRate);
+            }
+        }
+    }
+
+}
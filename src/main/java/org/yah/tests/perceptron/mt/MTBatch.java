@@ -1,29 +1,61 @@
 package org.yah.tests.perceptron.mt;
 
+import org.yah.tests.perceptron.base.SamplesIndices;
 import org.yah.tests.perceptron.base.TrainingBatch;
 
 class MTBatch implements TrainingBatch  {
+    /**
+     * a view of the samples inputs, or their copied columns if the samples are indexed or not a {@link MTMatrix}
+     */
     final MTMatrix inputs;
+    private final MTMatrix transposedInputs;
+    private final MTInputs samplesInputs;
+    private final int[] indices;
+    private final boolean inPlace;
     int[] expectedIndices;
 
     private int offset;
     private int batchSize;
 
     public MTBatch(MTMatrix inputs, int[] expectedIndices) {
-        this.inputs = new MTMatrix(inputs);
+        this(inputs, expectedIndices, null, 0);
+    }
+
+    public MTBatch(MTInputs inputs, int[] expectedIndices, int[] indices, int batchSize) {
+        this.samplesInputs = inputs;
+        this.indices = indices;
+        this.inPlace = indices == null && inputs instanceof MTMatrix;
+        if (inPlace)
+            this.inputs = ((MTMatrix) inputs).createView();
+        else
+            this.inputs = MTMatrix.create(inputs.precision(), inputs.rows(), batchSize);
+        this.transposedInputs = this.inputs.createView();
         this.expectedIndices = expectedIndices;
     }
 
     int slide(int offset, int size) {
         this.offset = offset;
-        batchSize = Math.min(size, inputs.maxColumn() - offset);
-        inputs.offset(offset * inputs.rows());
-        inputs.columns(batchSize);
+        if (inPlace) {
+            batchSize = Math.min(size, inputs.maxColumn() - offset);
+            inputs.offset(offset * inputs.rows());
+            inputs.columns(batchSize);
+        } else {
+            batchSize = Math.min(size, (indices == null ? samplesInputs.columns() : indices.length) - offset);
+            inputs.columns(batchSize);
+            samplesInputs.copyColumns(indices, offset, batchSize, inputs);
+        }
         return batchSize;
     }
 
+    /**
+     * @return T(inputs), sharing the inputs data whatever their storage
+     */
+    MTMatrix transposedInputs() {
+        return inputs.transpose(transposedInputs);
+    }
+
     public int expectedIndex(int sample) {
-        return expectedIndices == null ? -1 : expectedIndices[offset + sample];
+        return expectedIndices == null ? -1 : expectedIndices[SamplesIndices.index(indices, offset + sample)];
     }
 
     @Override
@@ -0,0 +1,62 @@
+package org.yah.tests.perceptron.mt;
+
+import org.yah.tests.perceptron.Precision;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * {@link MTInputs} over an off heap buffer (a mapped samples file), in any precision, copied to the batch inputs in
+ * the network precision.
+ *
+ * @author Yah
+ */
+final class MTBufferInputs implements MTInputs {
+
+    private final Precision precision;
+    private final int rows, columns;
+    private final DoubleBuffer doubles;
+    private final FloatBuffer floats;
+
+    /**
+     * @param buffer          column major values, in the buffer byte order
+     * @param bufferPrecision precision of the buffer values
+     * @param precision       precision of the batch inputs
+     */
+    MTBufferInputs(ByteBuffer buffer, Precision bufferPrecision, Precision precision, int rows, int columns) {
+        this.precision = precision;
+        this.rows = rows;
+        this.columns = columns;
+        this.doubles = bufferPrecision == Precision.DOUBLE ? buffer.asDoubleBuffer() : null;
+        this.floats = bufferPrecision == Precision.FLOAT ? buffer.asFloatBuffer() : null;
+    }
+
+    @Override
+    public Precision precision() {
+        return precision;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public void copyColumns(int[] indices, int column, int count, MTMatrix target) {
+        // absolute reads straight to the target storage: the buffers are shared by the batches of concurrent threads
+        for (int c = 0; c < count; c++) {
+            int index = (indices == null ? column + c : indices[column + c]) * rows;
+            if (doubles != null)
+                target.setColumn(doubles, index, c);
+            else
+                target.setColumn(floats, index, c);
+        }
+    }
+
+}
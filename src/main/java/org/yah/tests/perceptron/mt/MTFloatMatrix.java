@@ -0,0 +1,238 @@
+package org.yah.tests.perceptron.mt;
+
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.base.ArrayNetworkOutputs;
+import org.yah.tests.perceptron.matrix.flat.Gemm;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Single precision {@link MTMatrix}: values are stored as float, the bulk operations used by the handlers work on
+ * the float arrays, the matrix products of float matrices are computed in float by {@link Gemm}.
+ *
+ * @author Yah
+ */
+public class MTFloatMatrix extends MTMatrix {
+
+    private float[] data;
+
+    public MTFloatMatrix() {}
+
+    public MTFloatMatrix(int rows, int columns) {
+        this(new float[rows * columns], rows, columns, 0, rows, 1);
+    }
+
+    public MTFloatMatrix(float[] data, int rows, int columns, int offset, int columnStride, int rowStride) {
+        super(rows, columns, offset, columnStride, rowStride);
+        this.data = data;
+    }
+
+    public MTFloatMatrix(MTFloatMatrix from) {
+        super(from.rows, from.columns, from.offset, from.columnStride, from.rowStride);
+        this.data = from.data;
+    }
+
+    @Override
+    public Precision precision() {
+        return Precision.FLOAT;
+    }
+
+    @Override
+    public MTMatrix createView() {
+        return new MTFloatMatrix(this);
+    }
+
+    @Override
+    public void dot(MTMatrix a, MTMatrix b, int column, int count) {
+        if (a instanceof MTFloatMatrix && b instanceof MTFloatMatrix) {
+            Gemm.gemm(rows, count, a.columns,
+                    ((MTFloatMatrix) a).data, a.offset, a.rowStride, a.columnStride,
+                    ((MTFloatMatrix) b).data, b.index(0, column), b.rowStride, b.columnStride,
+                    data, index(0, column), rowStride, columnStride);
+        } else {
+            super.dot(a, b, column, count);
+        }
+    }
+
+    @Override
+    public MTMatrix transpose() {
+        return transpose(new MTFloatMatrix());
+    }
+
+    @Override
+    protected void share(MTMatrix from) {
+        data = ((MTFloatMatrix) from).data;
+    }
+
+    @Override
+    public int capacity() {
+        return data == null ? 0 : data.length;
+    }
+
+    @Override
+    protected void allocate(int capacity) {
+        data = new float[capacity];
+    }
+
+    @Override
+    public double get(int index) {
+        return data[index];
+    }
+
+    @Override
+    public void set(int index, double v) {
+        data[index] = (float) v;
+    }
+
+    @Override
+    public void setColumns(int column, int count, double[] values, int offset) {
+        for (int c = 0; c < count; c++) {
+            int index = index(0, column + c);
+            for (int r = 0; r < rows; r++) {
+                data[index] = (float) values[offset++];
+                index += rowStride;
+            }
+        }
+    }
+
+    @Override
+    void setColumn(DoubleBuffer source, int sourceIndex, int column) {
+        int index = index(0, column);
+        for (int r = 0; r < rows; r++) {
+            data[index] = (float) source.get(sourceIndex + r);
+            index += rowStride;
+        }
+    }
+
+    @Override
+    void setColumn(FloatBuffer source, int sourceIndex, int column) {
+        int index = index(0, column);
+        for (int r = 0; r < rows; r++) {
+            data[index] = source.get(sourceIndex + r);
+            index += rowStride;
+        }
+    }
+
+    @Override
+    protected void copyColumn(MTMatrix source, int sourceColumn, int column) {
+        float[] sourceData = ((MTFloatMatrix) source).data;
+        int index = index(0, column);
+        int sourceIndex = source.index(0, sourceColumn);
+        if (rowStride == 1 && source.rowStride == 1) {
+            System.arraycopy(sourceData, sourceIndex, data, index, rows);
+            return;
+        }
+        for (int r = 0; r < rows; r++) {
+            data[index] = sourceData[sourceIndex];
+            index += rowStride;
+            sourceIndex += source.rowStride;
+        }
+    }
+
+    @Override
+    public void getColumns(int column, int count, double[] target, int offset) {
+        for (int c = 0; c < count; c++) {
+            int index = index(0, column + c);
+            for (int r = 0; r < rows; r++) {
+                target[offset++] = data[index];
+                index += rowStride;
+            }
+        }
+    }
+
+    @Override
+    public double mul(int index, double s) {
+        data[index] *= s;
+        return data[index];
+    }
+
+    @Override
+    public void add(int index, double delta) {
+        data[index] += delta;
+    }
+
+    @Override
+    public int maxRowIndex(int col) {
+        int res = 0;
+        int offset = index(0, col);
+        int resOffset = offset;
+        for (int r = 1; r < rows; r++) {
+            offset += rowStride;
+            if (data[offset] > data[resOffset]) {
+                resOffset = offset;
+                res = r;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public int rank(int col, ArrayNetworkOutputs outputs, int sample) {
+        return outputs.set(sample, data, index(0, col), rowStride);
+    }
+
+    @Override
+    public void addColumnVector(MTMatrix vector, int column, int count) {
+        float[] v = ((MTFloatMatrix) vector).data;
+        for (int col = column; col < column + count; col++) {
+            int index = index(0, col);
+            int vindex = vector.offset;
+            for (int row = 0; row < rows; row++) {
+                data[index] += v[vindex];
+                index += rowStride;
+                vindex += vector.rowStride;
+            }
+        }
+    }
+
+    @Override
+    public void mul(MTMatrix m, int offset, int length) {
+        float[] md = ((MTFloatMatrix) m).data;
+        for (int i = offset; i < offset + length; i++) {
+            data[i] *= md[i];
+        }
+    }
+
+    @Override
+    public void addScaled(MTMatrix m, double s, int offset, int length) {
+        float[] md = ((MTFloatMatrix) m).data;
+        for (int i = offset; i < offset + length; i++) {
+            data[i] += s * md[i];
+        }
+    }
+
+    @Override
+    public void sumRows(int offset, int length, double[] sums) {
+        int row = (offset - this.offset) % rows;
+        for (int i = offset; i < offset + length; i++) {
+            sums[row] += data[i];
+            if (++row == rows)
+                row = 0;
+        }
+    }
+
+    @Override
+    public void activate(Activation activation, boolean approximate, int offset, int length, MTMatrix target) {
+        activation.activate(data, offset, ((MTFloatMatrix) target).data, offset, length, approximate);
+    }
+
+    @Override
+    public void derivative(Activation activation, boolean approximate, int offset, int length,
+                           MTMatrix target) {
+        activation.derivative(data, offset, ((MTFloatMatrix) target).data, offset, length, approximate);
+    }
+
+    @Override
+    public double softmaxCrossEntropy(int offset, int length, int expected, MTMatrix target) {
+        return Activation.softmaxCrossEntropy(data, offset, ((MTFloatMatrix) target).data, offset, length, expected);
+    }
+
+    @Override
+    public void zero() {
+        Arrays.fill(data, offset, offset + size(), 0);
+    }
+
+}
@@ -0,0 +1,27 @@
+package org.yah.tests.perceptron.mt;
+
+import org.yah.tests.perceptron.Precision;
+
+/**
+ * Read only samples inputs of the MT engines, a column per sample. The batches use a {@link MTMatrix} in place when
+ * its columns are iterated in order, other inputs are copied to the batch inputs matrix.
+ *
+ * @author Yah
+ */
+interface MTInputs {
+
+    /**
+     * @return the precision of the batch inputs
+     */
+    Precision precision();
+
+    int rows();
+
+    int columns();
+
+    /**
+     * target[:, c] = this[:, column + c], or this[:, indices[column + c]] if indices is not null, for c in [0, count[
+     */
+    void copyColumns(int[] indices, int column, int count, MTMatrix target);
+
+}
@@ -1,17 +1,31 @@
 package org.yah.tests.perceptron.mt;
 
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.base.ArrayNetworkOutputs;
 import org.yah.tests.perceptron.matrix.MatrixFunction;
+import org.yah.tests.perceptron.matrix.flat.Gemm;
 
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 
-public class MTMatrix {
+public class MTMatrix implements MTInputs {
 
     public static final MTMatrix ZERO = new MTMatrix(new double[] { 0 }, 1, 1, 0, 0, 0);
 
     private double[] data;
 
-    private int rows, columns;
-    private int offset, columnStride, rowStride;
+    protected int rows, columns;
+    protected int offset, columnStride, rowStride;
+
+    public static MTMatrix create(Precision precision) {
+        return precision == Precision.FLOAT ? new MTFloatMatrix() : new MTMatrix();
+    }
+
+    public static MTMatrix create(Precision precision, int rows, int columns) {
+        return precision == Precision.FLOAT ? new MTFloatMatrix(rows, columns) : new MTMatrix(rows, columns);
+    }
 
     public MTMatrix() {}
 
@@ -20,7 +34,11 @@ public class MTMatrix {
     }
 
     public MTMatrix(double[] data, int rows, int columns, int offset, int columnStride, int rowStride) {
+        this(rows, columns, offset, columnStride, rowStride);
         this.data = data;
+    }
+
+    protected MTMatrix(int rows, int columns, int offset, int columnStride, int rowStride) {
         this.rows = rows;
         this.columns = columns;
         this.offset = offset;
@@ -37,10 +55,24 @@ public class MTMatrix {
         this.rowStride = from.rowStride;
     }
 
+    @Override
+    public Precision precision() {
+        return Precision.DOUBLE;
+    }
+
+    /**
+     * @return a new matrix sharing this matrix data and geometry
+     */
+    public MTMatrix createView() {
+        return new MTMatrix(this);
+    }
+
+    @Override
     public int rows() {
         return rows;
     }
 
+    @Override
     public int columns() {
         return columns;
     }
@@ -54,23 +86,111 @@ public class MTMatrix {
     }
 
     public double get(int row, int col) {
-        return data[index(row, col)];
+        return get(index(row, col));
     }
 
     public void set(int row, int col, double v) {
-        data[index(row, col)] = v;
+        set(index(row, col), v);
     }
 
     public void set(int index, double v) {
         data[index] = v;
     }
 
+    /**
+     * Copy <code>count</code> columns from <code>values</code>, starting at <code>column</code>.<br/>
+     * values are column major: values[offset + c * rows + r] is the row r of the column (column + c).
+     */
+    public void setColumns(int column, int count, double[] values, int offset) {
+        for (int c = 0; c < count; c++) {
+            int index = index(0, column + c);
+            if (rowStride == 1) {
+                System.arraycopy(values, offset, data, index, rows);
+                offset += rows;
+            } else {
+                for (int r = 0; r < rows; r++) {
+                    data[index] = values[offset++];
+                    index += rowStride;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy <code>count</code> columns, starting at <code>column</code>, to <code>target</code>, in the
+     * {@link #setColumns(int, int, double[], int)} layout.
+     */
+    public void getColumns(int column, int count, double[] target, int offset) {
+        for (int c = 0; c < count; c++) {
+            int index = index(0, column + c);
+            if (rowStride == 1 && data != null) {
+                System.arraycopy(data, index, target, offset, rows);
+                offset += rows;
+            } else {
+                for (int r = 0; r < rows; r++) {
+                    target[offset++] = get(index);
+                    index += rowStride;
+                }
+            }
+        }
+    }
+
+    /**
+     * this[:, c] = source[:, indices[offset + c]] for c in [0, count[
+     */
+    public void gatherColumns(MTMatrix source, int[] indices, int offset, int count) {
+        source.copyColumns(indices, offset, count, this);
+    }
+
+    @Override
+    public void copyColumns(int[] indices, int column, int count, MTMatrix target) {
+        for (int c = 0; c < count; c++) {
+            target.copyColumn(this, indices == null ? column + c : indices[column + c], c);
+        }
+    }
+
+    /**
+     * this[:, column] = source[sourceIndex, sourceIndex + rows[, absolute reads of a buffer shared by several threads
+     */
+    void setColumn(DoubleBuffer source, int sourceIndex, int column) {
+        int index = index(0, column);
+        for (int r = 0; r < rows; r++) {
+            data[index] = source.get(sourceIndex + r);
+            index += rowStride;
+        }
+    }
+
+    void setColumn(FloatBuffer source, int sourceIndex, int column) {
+        int index = index(0, column);
+        for (int r = 0; r < rows; r++) {
+            data[index] = source.get(sourceIndex + r);
+            index += rowStride;
+        }
+    }
+
+    /**
+     * this[:, column] = source[:, sourceColumn], source has the same storage
+     */
+    protected void copyColumn(MTMatrix source, int sourceColumn, int column) {
+        int index = index(0, column);
+        int sourceIndex = source.index(0, sourceColumn);
+        if (rowStride == 1 && source.rowStride == 1) {
+            System.arraycopy(source.data, sourceIndex, data, index, rows);
+            return;
+        }
+        for (int r = 0; r < rows; r++) {
+            data[index] = source.data[sourceIndex];
+            index += rowStride;
+            sourceIndex += source.rowStride;
+        }
+    }
+
     public MTMatrix transpose() {
         return transpose(new MTMatrix());
     }
 
     public MTMatrix transpose(MTMatrix target) {
-        target.data = data;
+        target.share(this);
         target.offset = offset;
 
         // swap to handle transpose(this)
@@ -86,6 +206,50 @@ public class MTMatrix {
         return target;
     }
 
+    /**
+     * this[:, column + c] = a . b[:, column + c] for c in [0, count[, with the blocked {@link Gemm} kernels if the 3
+     * matrices are stored in double arrays
+     */
+    public void dot(MTMatrix a, MTMatrix b, int column, int count) {
+        if (data != null && a.data != null && b.data != null) {
+            Gemm.gemm(rows, count, a.columns,
+                    a.data, a.offset, a.rowStride, a.columnStride,
+                    b.data, b.index(0, column), b.rowStride, b.columnStride,
+                    data, index(0, column), rowStride, columnStride);
+            return;
+        }
+        int cols = a.columns();
+        for (int col = column; col < column + count; col++) {
+            for (int row = 0; row < rows; row++) {
+                double sum = 0;
+                for (int c = 0; c < cols; c++) {
+                    sum += a.get(row, c) * b.get(c, col);
+                }
+                set(row, col, sum);
+            }
+        }
+    }
+
+    /**
+     * @return target, a view of the columns [column, column + count[ of this matrix, sharing its data
+     */
+    public MTMatrix slice(int column, int count, MTMatrix target) {
+        target.share(this);
+        target.offset = index(0, column);
+        target.rows = rows;
+        target.columns = count;
+        target.columnStride = columnStride;
+        target.rowStride = rowStride;
+        return target;
+    }
+
+    /**
+     * Use the data of another matrix of the same precision
+     */
+    protected void share(MTMatrix from) {
+        data = from.data;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -109,7 +273,7 @@ public class MTMatrix {
     public void reshape(int rows, int columns) {
         int newSize = rows * columns;
         if (capacity() < newSize)
-            data = new double[newSize];
+            allocate(newSize);
         offset = 0;
         this.columns = columns;
         this.rows = rows;
@@ -117,6 +281,10 @@ public class MTMatrix {
         rowStride = 1;
     }
 
+    protected void allocate(int capacity) {
+        data = new double[capacity];
+    }
+
     public static MTMatrix fromRM(double[][] rmm) {
         MTMatrix res = new MTMatrix(rmm.length, rmm[0].length);
         for (int r = 0; r < rmm.length; r++) {
@@ -153,8 +321,17 @@ public class MTMatrix {
         return res;
     }
 
+    /**
+     * rank the outputs of a column straight from the backing array
+     *
+     * @return the output index of the sample
+     */
+    public int rank(int col, ArrayNetworkOutputs outputs, int sample) {
+        return outputs.set(sample, data, index(0, col), rowStride);
+    }
+
     public void sub(int row, int col, double v) {
-        data[index(row, col)] -= v;
+        add(index(row, col), -v);
     }
 
     public double get(int index) {
@@ -167,15 +344,89 @@ public class MTMatrix {
     }
 
     public void add(int row, int col, double delta) {
-        data[index(row, col)] += delta;
+        add(index(row, col), delta);
     }
 
     public void add(int index, double delta) {
         data[index] += delta;
     }
 
+    /**
+     * this[:, column + c] += vector[:, 0] for c in [0, count[, vector has the same storage
+     */
+    public void addColumnVector(MTMatrix vector, int column, int count) {
+        double[] v = vector.data;
+        for (int col = column; col < column + count; col++) {
+            int index = index(0, col);
+            int vindex = vector.offset;
+            for (int row = 0; row < rows; row++) {
+                data[index] += v[vindex];
+                index += rowStride;
+                vindex += vector.rowStride;
+            }
+        }
+    }
+
+    /**
+     * this[index] *= m[index] for index in [offset, offset + length[, m has the same storage
+     */
+    public void mul(MTMatrix m, int offset, int length) {
+        double[] md = m.data;
+        for (int i = offset; i < offset + length; i++) {
+            data[i] *= md[i];
+        }
+    }
+
+    /**
+     * this[index] += s * m[index] for index in [offset, offset + length[, m has the same storage
+     */
+    public void addScaled(MTMatrix m, double s, int offset, int length) {
+        double[] md = m.data;
+        for (int i = offset; i < offset + length; i++) {
+            data[i] += s * md[i];
+        }
+    }
+
+    /**
+     * sums[row] += this[index] for index in [offset, offset + length[ of a contiguous matrix, row being the row of
+     * the element at index
+     */
+    public void sumRows(int offset, int length, double[] sums) {
+        int row = (offset - this.offset) % rows;
+        for (int i = offset; i < offset + length; i++) {
+            sums[row] += data[i];
+            if (++row == rows)
+                row = 0;
+        }
+    }
+
+    /**
+     * target[index] = activation(this[index]) for index in [offset, offset + length[
+     */
+    public void activate(Activation activation, boolean approximate, int offset, int length, MTMatrix target) {
+        activation.activate(data, offset, target.data, offset, length, approximate);
+    }
+
+    /**
+     * target[index] = activation'(this[index]) for index in [offset, offset + length[
+     */
+    public void derivative(Activation activation, boolean approximate, int offset, int length,
+                           MTMatrix target) {
+        activation.derivative(data, offset, target.data, offset, length, approximate);
+    }
+
+    /**
+     * Fused softmax and cross entropy cost derivative of the column starting at offset:<br/>
+     * target[offset + i] = softmax(this)[offset + i] - (i == expected ? 1 : 0) for i in [0, length[
+     *
+     * @return the column cross entropy cost
+     */
+    public double softmaxCrossEntropy(int offset, int length, int expected, MTMatrix target) {
+        return Activation.softmaxCrossEntropy(data, offset, target.data, offset, length, expected);
+    }
+
     public void zero() {
-        Arrays.fill(data, offset, size(), 0);
+        Arrays.fill(data, offset, offset + size(), 0);
     }
 
 }
@@ -2,17 +2,40 @@ package org.yah.tests.perceptron.mt;
 
 import org.yah.tests.perceptron.Activation;
 import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.NeuralNetworkState.WeightsLayout;
+import org.yah.tests.perceptron.Precision;
 import org.yah.tests.perceptron.base.AbstractBatchedNeuralNetwork;
 import org.yah.tests.perceptron.base.ArrayNetworkOutputs;
 import org.yah.tests.perceptron.base.SamplesSource;
 import org.yah.tests.perceptron.mt.ChunkExecutor.ChunkHandler;
 
+import java.util.Arrays;
+
 /**
+ * Multi threaded network, training with a {@link TrainingMode}: the default mode is read from the
+ * <code>mt.training</code> system property ({@link TrainingMode#OPERATIONS} if not set).
+ *
  * @author Yah
  */
 public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch, ArrayNetworkOutputs> implements AutoCloseable {
 
+    public static final TrainingMode DEFAULT_TRAINING_MODE = TrainingMode.valueOf(System.getProperty("mt.training",
+            "OPERATIONS"));
+
+    public enum TrainingMode {
+        /**
+         * each operation of each layer is distributed on the whole batch, a barrier per operation
+         */
+        OPERATIONS,
+        /**
+         * each thread propagates and back propagates its slice of the batch samples through all the layers, in its
+         * own gradients, reduced once per batch when updating the model
+         */
+        SAMPLES
+    }
+
     private final ChunkExecutor executor;
+    private final TrainingMode trainingMode;
 
     private final MTMatrix[] weights;
     private final MTMatrix[] biases;
@@ -22,18 +45,44 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
     private final MTMatrix[] bgrads;
 
     private final ForwardHandler forwardHandler = new ForwardHandler();
+    private final SoftmaxHandler softmaxHandler = new SoftmaxHandler();
     private final CostDerivativeHandler costHandler = new CostDerivativeHandler();
     private final OutputsIndexer outputsIndexer = new OutputsIndexer();
-    private final SigmoidPrimeHandler sigmoidPrimeHandler = new SigmoidPrimeHandler();
+    private final DerivativeHandler derivativeHandler = new DerivativeHandler();
     private final DotHandler dotHandler = new DotHandler();
     private final ModelUpdateHandler modelUpdateHandler = new ModelUpdateHandler();
+    private final SamplesTrainer samplesTrainer = new SamplesTrainer();
 
-    private final MTMatrix transposed = new MTMatrix();
+    private final Precision precision;
+
+    private final MTMatrix transposed;
 
     public MTNeuralNetwork(NeuralNetworkState state) {
+        this(state, Precision.DOUBLE);
+    }
+
+    public MTNeuralNetwork(NeuralNetworkState state, Precision precision) {
+        this(state, precision, new ChunkExecutor(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param executor closed with this network
+     */
+    public MTNeuralNetwork(NeuralNetworkState state, Precision precision, ChunkExecutor executor) {
+        this(state, precision, executor, DEFAULT_TRAINING_MODE);
+    }
+
+    /**
+     * @param executor closed with this network
+     */
+    public MTNeuralNetwork(NeuralNetworkState state, Precision precision, ChunkExecutor executor,
+                           TrainingMode trainingMode) {
         super(state);
+        this.precision = precision;
+        this.executor = executor;
+        this.trainingMode = trainingMode;
+        transposed = MTMatrix.create(precision);
         int layers = layers();
-        executor = new ChunkExecutor(Runtime.getRuntime().availableProcessors());
         weights = new MTMatrix[layers];
         biases = new MTMatrix[layers];
         zs = new MTMatrix[layers];
@@ -43,29 +92,35 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
         for (int layer = 0; layer < layers; layer++) {
             int neurons = neurons(layer);
             int features = features(layer);
-            weights[layer] = new MTMatrix(neurons, features);
+            weights[layer] = MTMatrix.create(precision, neurons, features);
             copyWeights(layer);
-            biases[layer] = new MTMatrix(neurons, 1);
+            biases[layer] = MTMatrix.create(precision, neurons, 1);
             copyBiases(layer);
-            zs[layer] = new MTMatrix();
-            activations[layer] = new MTMatrix();
-            wgrads[layer] = new MTMatrix(neurons, features);
-            bgrads[layer] = new MTMatrix(neurons, 1);
+            zs[layer] = MTMatrix.create(precision);
+            activations[layer] = MTMatrix.create(precision);
+            wgrads[layer] = MTMatrix.create(precision, neurons, features);
+            bgrads[layer] = MTMatrix.create(precision, neurons, 1);
         }
     }
 
     private void copyWeights(int layer) {
-        for (int neuron = 0; neuron < neurons(layer); neuron++) {
-            for (int feature = 0; feature < features(layer); feature++) {
-                weights[layer].set(neuron, feature, state.weight(layer, neuron, feature));
-            }
-        }
+        double[] values = new double[neurons(layer) * features(layer)];
+        state.getWeights(layer, values, 0, WeightsLayout.COLUMN_MAJOR);
+        weights[layer].setColumns(0, features(layer), values, 0);
     }
 
     private void copyBiases(int layer) {
-        for (int neuron = 0; neuron < neurons(layer); neuron++) {
-            biases[layer].set(neuron, 0, state.bias(layer, neuron));
-        }
+        double[] values = new double[neurons(layer)];
+        state.getBiases(layer, values, 0);
+        biases[layer].setColumns(0, 1, values, 0);
+    }
+
+    public Precision precision() {
+        return precision;
+    }
+
+    public TrainingMode trainingMode() {
+        return trainingMode;
     }
 
     @Override
@@ -83,6 +138,11 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
         return new ArrayNetworkOutputs(samples);
     }
 
+    @Override
+    public ArrayNetworkOutputs createOutpus(int samples, int topK, boolean activations) {
+        return new ArrayNetworkOutputs(samples, outputs(), topK, activations);
+    }
+
     @Override
     protected void propagate(MTBatch batch, ArrayNetworkOutputs outputs) {
         MTMatrix outputsMatrix = forward(batch);
@@ -97,34 +157,52 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
 
     @Override
     protected void train(MTBatch batch, double learningRate) {
+        if (trainingMode == TrainingMode.SAMPLES) {
+            // a slice of samples per thread, reduced by the model update
+            samplesTrainer.prepare(batch);
+            executor.distribute(batch.size(), Math.min(executor.concurrency(), batch.size()), samplesTrainer);
+            modelUpdateHandler.prepare(learningRate / batch.size(), samplesTrainer.slices, samplesTrainer.chunks);
+            executor.distribute(totalWeights(), modelUpdateHandler);
+            return;
+        }
+
         // forward propagation
-        MTMatrix outputs = forward(batch);
+        MTMatrix outputs = forward(batch, true);
 
-        // cost derivative = actual - expected
-        costHandler.prepare(outputs, batch);
-        executor.distribute(outputs.size(), costHandler);
+        if (activation(layers() - 1) != Activation.SOFTMAX) {
+            // cost derivative = actual - expected
+            costHandler.prepare(outputs, batch);
+            executor.distribute(outputs.columns(), costHandler);
+        }
 
         // backward propagation
         for (int layer = layers() - 1; layer > 0; layer--) {
-            backward(layer, activations[layer - 1]);
+            backward(layer, activations[layer - 1].transpose(transposed));
         }
-        backward(0, batch.inputs);
+        backward(0, batch.transposedInputs());
 
         // update model
-        modelUpdateHandler.prepare(learningRate / batch.size());
+        modelUpdateHandler.prepare(learningRate / batch.size(), null, 0);
         executor.distribute(totalWeights(), modelUpdateHandler);
     }
 
     @Override
     protected void updateState() {
-        visitWeights((layer, neuron, feature) -> weight(layer, neuron, feature, weights[layer].get(neuron, feature)));
-        visitBiases((layer, neuron) -> bias(layer, neuron, biases[layer].get(neuron, 0)));
+        for (int layer = 0; layer < layers(); layer++) {
+            double[] values = new double[neurons(layer) * features(layer)];
+            weights[layer].getColumns(0, features(layer), values, 0);
+            state.setWeights(layer, values, 0, WeightsLayout.COLUMN_MAJOR);
+            biases[layer].getColumns(0, 1, values, 0);
+            state.setBiases(layer, values, 0);
+        }
     }
 
     @Override
     protected void updateModel() {
-        visitWeights((layer, neuron, feature) -> weights[layer].set(neuron, feature, weight(layer, neuron, feature)));
-        visitBiases((layer, neuron) -> biases[layer].set(neuron, 0, bias(layer, neuron)));
+        for (int layer = 0; layer < layers(); layer++) {
+            copyWeights(layer);
+            copyBiases(layer);
+        }
     }
 
     private int indexOutputs(MTMatrix outputsMatrix, MTBatch batch, ArrayNetworkOutputs networkOutputs) {
@@ -134,32 +212,47 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
     }
 
     private MTMatrix forward(MTBatch batch) {
+        return forward(batch, false);
+    }
+
+    /**
+     * @param training if the output layer is a softmax, compute the fused cost derivative instead of the activation
+     */
+    private MTMatrix forward(MTBatch batch, boolean training) {
         prepareBatchSize(batch.size());
         MTMatrix inputs = batch.inputs;
         for (int layer = 0; layer < layers(); layer++) {
-            forwardHandler.prepare(inputs, layer);
-            executor.distribute(activations[layer].size(), forwardHandler);
-            inputs = forwardHandler.a;
+            if (activation(layer) == Activation.SOFTMAX) {
+                softmaxHandler.prepare(inputs, layer, training ? batch : null);
+                executor.distribute(batch.size(), softmaxHandler);
+            } else {
+                forwardHandler.prepare(inputs, layer);
+                executor.distribute(batch.size(), forwardHandler);
+            }
+            inputs = activations[layer];
         }
         return inputs;
     }
 
-    private void backward(int layer, MTMatrix inputs) {
-        // activation = activation * sigmoid_prime(z)
-        sigmoidPrimeHandler.prepare(layer);
-        executor.distribute(sigmoidPrimeHandler.a.size(), sigmoidPrimeHandler);
+    /**
+     * @param transposedInputs T(inputs) of the layer
+     */
+    private void backward(int layer, MTMatrix transposedInputs) {
+        // activation = activation * activation'(z)
+        derivativeHandler.prepare(layer);
+        executor.distribute(derivativeHandler.a.size(), derivativeHandler);
 
         // wgrad = delta . T(inputs)
         MTMatrix wgrad = wgrads[layer];
-        dotHandler.prepare(activations[layer], inputs.transpose(transposed), wgrad);
-        executor.distribute(wgrad.size(), dotHandler);
+        dotHandler.prepare(activations[layer], transposedInputs, wgrad);
+        executor.distribute(wgrad.columns(), dotHandler);
 
         if (layer > 0) {
             // activation[layer-1] (next inputs) = T(weight[layer]) . delta
             MTMatrix nextInputs = activations[layer - 1];
 
             dotHandler.prepare(weights[layer].transpose(transposed), activations[layer], nextInputs);
-            executor.distribute(nextInputs.size(), dotHandler);
+            executor.distribute(nextInputs.columns(), dotHandler);
         }
     }
 
@@ -170,48 +263,73 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
         }
     }
 
-    private static abstract class MatrixHandler implements ChunkHandler {
-        protected int rows;
+    /**
+     * Hidden layer, distributed by columns: z = weight . inputs + bias, then a = activation(z)
+     */
+    private class ForwardHandler implements ChunkHandler {
+        private MTMatrix i, a, z, w, b;
+        private Activation activation;
+        private boolean approximate;
+
+        public void prepare(MTMatrix inputs, int layer) {
+            this.i = inputs;
+            this.a = activations[layer];
+            this.w = weights[layer];
+            this.b = biases[layer];
+            this.z = zs[layer];
+            this.activation = activation(layer);
+            this.approximate = approximate();
+        }
 
         @Override
-        public final void handle(int chunkIndex, int offset, int size) {
-            int col = offset / rows;
-            int row = offset % rows;
-            for (int i = 0; i < size; i++) {
-                handleElement(chunkIndex, row, col);
-                row++;
-                if (row == rows) {
-                    row = 0;
-                    col++;
-                }
-            }
+        public double elementCost() {
+            return w.rows() * (w.columns() + 1.0);
         }
 
-        protected abstract void handleElement(int chunkIndex, int row, int col);
+        @Override
+        public void handle(int chunkIndex, int offset, int size) {
+            z.dot(w, i, offset, size);
+            z.addColumnVector(b, offset, size);
+            // a = activation(z), z and a are not views: same elements indices
+            z.activate(activation, approximate, z.index(0, offset), size * z.rows(), a);
+        }
     }
 
-    private class ForwardHandler extends MatrixHandler {
+    /**
+     * Softmax layer, distributed by columns: z = weight . inputs + bias, then a = softmax(z), or the fused
+     * softmax and cross entropy cost derivative a = softmax(z) - expected when training.
+     */
+    private class SoftmaxHandler implements ChunkHandler {
         private MTMatrix i, a, z, w, b;
+        private MTBatch batch;
 
-        public void prepare(MTMatrix inputs, int layer) {
+        public void prepare(MTMatrix inputs, int layer, MTBatch batch) {
             this.i = inputs;
             this.a = activations[layer];
             this.w = weights[layer];
             this.b = biases[layer];
             this.z = zs[layer];
-            this.rows = w.rows();
+            this.batch = batch;
+        }
+
+        @Override
+        public double elementCost() {
+            return w.rows() * (w.columns() + 1.0);
         }
 
-        // weight . inputs + bias
         @Override
-        protected void handleElement(int chunkIndex, int row, int col) {
-            double dot = 0;
-            for (int c = 0; c < w.columns(); c++) {
-                dot += w.get(row, c) * i.get(c, col);
+        public void handle(int chunkIndex, int offset, int size) {
+            int rows = w.rows();
+            z.dot(w, i, offset, size);
+            z.addColumnVector(b, offset, size);
+            for (int col = offset; col < offset + size; col++) {
+                // z and a are not views: same column index
+                int index = z.index(0, col);
+                if (batch == null)
+                    z.activate(Activation.SOFTMAX, false, index, rows, a);
+                else
+                    z.softmaxCrossEntropy(index, rows, batch.expectedIndex(col), a);
             }
-            dot += b.get(row, 0);
-            z.set(row, col, dot);
-            a.set(row, col, Activation.sigmoid(dot));
         }
     }
 
@@ -238,16 +356,29 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
             this.outputsIndices = outputsIndices;
         }
 
+        @Override
+        public double elementCost() {
+            return outputsMatrix.rows();
+        }
+
         @Override
         public void handle(int chunkIndex, int offset, int size) {
             int matched = 0;
+            boolean ranked = outputsIndices != null && outputsIndices.ranked();
             for (int c = 0; c < size; c++, offset++) {
-                int index = outputsMatrix.maxRowIndex(offset);
+                int sample = batch.offset() + offset;
+                int index;
+                if (ranked) {
+                    // ranked outputs replace the maxRowIndex pass
+                    index = outputsMatrix.rank(offset, outputsIndices, sample);
+                } else {
+                    index = outputsMatrix.maxRowIndex(offset);
+                    if (outputsIndices != null)
+                        outputsIndices.set(sample, index);
+                }
                 int expected = batch.expectedIndex(offset);
                 if (expected == index)
                     matched++;
-                if (outputsIndices != null)
-                    outputsIndices.set(offset, index);
             }
             matcheds[chunkIndex] = matched;
         }
@@ -261,60 +392,63 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
         }
     }
 
-    private static class CostDerivativeHandler extends MatrixHandler {
+    /**
+     * outputs - expected, distributed by columns: only the expected row of a column changes
+     */
+    private static class CostDerivativeHandler implements ChunkHandler {
         private MTBatch batch;
         private MTMatrix outputs;
 
         public void prepare(MTMatrix outputs, MTBatch batch) {
             this.outputs = outputs;
             this.batch = batch;
-            this.rows = outputs.rows();
         }
 
         @Override
-        protected void handleElement(int chunkIndex, int row, int col) {
-            outputs.sub(row, col, batch.expectedIndex(col) == row ? 1 : 0);
+        public void handle(int chunkIndex, int offset, int size) {
+            for (int col = offset; col < offset + size; col++) {
+                outputs.sub(batch.expectedIndex(col), col, 1);
+            }
         }
     }
 
-    private static class DotHandler extends MatrixHandler {
+    /**
+     * res = a . b, distributed by res columns
+     */
+    private static class DotHandler implements ChunkHandler {
         private MTMatrix a, b, res;
 
         public void prepare(MTMatrix a, MTMatrix b, MTMatrix res) {
             this.a = a;
             this.b = b;
             this.res = res;
-            this.rows = res.rows();
         }
 
         @Override
-        protected void handleElement(int chunkIndex, int row, int col) {
-            // res = a . b
-            int cols = a.columns();
-            double sum = 0;
-            for (int c = 0; c < cols; c++) {
-                sum += a.get(row, c) * b.get(c, col);
-            }
-            res.set(row, col, sum);
+        public double elementCost() {
+            return (double) res.rows() * a.columns();
+        }
+
+        @Override
+        public void handle(int chunkIndex, int offset, int size) {
+            res.dot(a, b, offset, size);
         }
     }
 
-    private class SigmoidPrimeHandler implements ChunkHandler {
+    private class DerivativeHandler implements ChunkHandler {
         private MTMatrix a, z, bgrad;
-        private MTMatrix[] chunkBgrads;
+        private Activation activation;
+        private boolean approximate;
+        private double[][] chunkBgrads;
         private int rows;
 
         @Override
         public void start(int chunksCount) {
             if (chunkBgrads == null || chunkBgrads.length < chunksCount) {
-                chunkBgrads = new MTMatrix[chunksCount];
-                for (int i = 0; i < chunkBgrads.length; i++) {
-                    chunkBgrads[i] = new MTMatrix(maxNeurons(), 1);
-                }
+                chunkBgrads = new double[chunksCount][maxNeurons()];
             }
             for (int i = 0; i < chunksCount; i++) {
-                chunkBgrads[i].reshape(bgrad.rows(), 1);
-                chunkBgrads[i].zero();
+                Arrays.fill(chunkBgrads[i], 0, rows, 0);
             }
         }
 
@@ -322,33 +456,35 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
             this.a = activations[layer];
             this.z = zs[layer];
             this.bgrad = bgrads[layer];
+            this.activation = activation(layer);
+            this.approximate = approximate();
             rows = a.rows();
         }
 
         @Override
         public void handle(int chunkIndex, int offset, int size) {
-            int row = offset % rows;
-            for (int i = 0; i < size; i++, offset++) {
-                // activation = activation * sigmoid_prime(z)
-                double delta = a.mul(offset, Activation.sigmoid_prime(z.get(offset)));
-
-                // sum activation row to thread bgrads
-                chunkBgrads[chunkIndex].add(row, delta);
-                if (++row == rows)
-                    row = 0;
+            // softmax delta is already computed by the fused cost derivative
+            boolean softmax = activation == Activation.SOFTMAX;
+            // z = activation'(z), z is not used anymore by this batch
+            if (!softmax) {
+                z.derivative(activation, approximate, offset, size, z);
+                // activation = activation * activation'(z)
+                a.mul(z, offset, size);
             }
+            // sum activation rows to thread bgrads
+            a.sumRows(offset, size, chunkBgrads[chunkIndex]);
         }
 
         @Override
         public void complete(int chunks) {
-            // sum chunk grads to layer bgrads
-            for (int r = 0; r < rows; r++) {
-                double s = 0;
-                for (int i = 0; i < chunks; i++) {
-                    s += chunkBgrads[i].get(r);
+            // sum chunk grads to layer bgrads, in the first chunk grads
+            double[] sums = chunkBgrads[0];
+            for (int i = 1; i < chunks; i++) {
+                for (int r = 0; r < rows; r++) {
+                    sums[r] += chunkBgrads[i][r];
                 }
-                bgrad.set(r, s);
             }
+            bgrad.setColumns(0, 1, sums, 0);
         }
     }
 
@@ -358,6 +494,10 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
 
         private double lr;
 
+        // gradients of the samples slices, summed in the update, layer gradients if none
+        private SampleWorkspace[] slices;
+        private int slicesCount;
+
         @Override
         public void start(int chunksCount) {
             if (layerOffsets == null) {
@@ -369,28 +509,57 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
             }
         }
 
-        public void prepare(double lr) {
+        public void prepare(double lr, SampleWorkspace[] slices, int slicesCount) {
             this.lr = lr;
+            this.slices = slices;
+            this.slicesCount = slicesCount;
+        }
+
+        @Override
+        public double elementCost() {
+            return Math.max(1, slicesCount);
         }
 
         @Override
         public void handle(int chunkIndex, int offset, int size) {
             int layer = layerIndex(offset);
             int layerOffset = offset - (layer > 0 ? layerOffsets[layer - 1] : 0);
-            for (int i = 0; i < size; i++) {
-                int neurons = neurons(layer);
-                weights[layer].add(layerOffset, -lr * wgrads[layer].get(layerOffset));
-                if (layerOffset < neurons) {
-                    // first col
-                    biases[layer].add(layerOffset, -lr * bgrads[layer].get(layerOffset));
-                }
-                layerOffset++;
-                if (layerOffset == layerOffsets[layer]) {
-                    layerOffset = 0;
-                    layer++;
-                }
+            while (size > 0) {
+                // the range of this layer, the bias of a neuron is updated with its first column weight
+                int length = Math.min(size, weights[layer].size() - layerOffset);
+                int biasesLength = Math.min(length, neurons(layer) - layerOffset);
+                weights[layer].addScaled(weightGradients(layer, layerOffset, length), -lr, layerOffset, length);
+                if (biasesLength > 0)
+                    biases[layer].addScaled(biasGradients(layer, layerOffset, biasesLength), -lr, layerOffset,
+                            biasesLength);
+                size -= length;
+                layerOffset = 0;
+                layer++;
+            }
+        }
+
+        /**
+         * @return the layer weight gradients, summed in the first slice gradients in [offset, offset + length[ if
+         * there are slices
+         */
+        private MTMatrix weightGradients(int layer, int offset, int length) {
+            if (slicesCount == 0)
+                return wgrads[layer];
+            MTMatrix sum = slices[0].wgrads[layer];
+            for (int i = 1; i < slicesCount; i++) {
+                sum.addScaled(slices[i].wgrads[layer], 1, offset, length);
             }
+            return sum;
+        }
 
+        private MTMatrix biasGradients(int layer, int offset, int length) {
+            if (slicesCount == 0)
+                return bgrads[layer];
+            MTMatrix sum = slices[0].bgrads[layer];
+            for (int i = 1; i < slicesCount; i++) {
+                sum.addScaled(slices[i].bgrads[layer], 1, offset, length);
+            }
+            return sum;
         }
 
         private int layerIndex(int offset) {
@@ -402,4 +571,36 @@ public final class MTNeuralNetwork extends AbstractBatchedNeuralNetwork<MTBatch,
         }
     }
 
+    /**
+     * Sample parallel training, distributed by batch columns: each chunk runs the forward and backward propagations of
+     * its columns through all the layers, in the gradients of its {@link SampleWorkspace}.
+     */
+    private class SamplesTrainer implements ChunkHandler {
+        private MTBatch batch;
+        private SampleWorkspace[] slices;
+        private int chunks;
+
+        public void prepare(MTBatch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void start(int chunksCount) {
+            if (slices == null || slices.length < chunksCount) {
+                SampleWorkspace[] newSlices = new SampleWorkspace[chunksCount];
+                for (int i = 0; i < chunksCount; i++) {
+                    newSlices[i] = slices != null && i < slices.length ? slices[i]
+                            : new SampleWorkspace(MTNeuralNetwork.this, precision, weights, biases);
+                }
+                slices = newSlices;
+            }
+            chunks = chunksCount;
+        }
+
+        @Override
+        public void handle(int chunkIndex, int offset, int size) {
+            slices[chunkIndex].train(batch, offset, size);
+        }
+    }
+
 }
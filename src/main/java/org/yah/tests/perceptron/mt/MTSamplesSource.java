@@ -1,5 +1,8 @@
 package org.yah.tests.perceptron.mt;
 
+import org.yah.tests.perceptron.DirectSamples;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.SamplesProviders;
 import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
 import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
 import org.yah.tests.perceptron.base.SamplesSource;
@@ -9,21 +12,27 @@ import org.yah.tests.perceptron.base.SamplesSource;
  */
 public class MTSamplesSource implements SamplesSource<MTBatch> {
 
-    private final MTNeuralNetwork network;
+    private final int features;
+    private final Precision precision;
 
     public MTSamplesSource(MTNeuralNetwork network) {
-        this.network = network;
+        this(network.features(), network.precision());
+    }
+
+    public MTSamplesSource(int features, Precision precision) {
+        this.features = features;
+        this.precision = precision;
     }
 
     @Override
     public MTTrainingSamples createInputs(SamplesProvider provider, int batchSize) {
-        MTMatrix inputs = createInputs(provider);
+        MTInputs inputs = createInputs(provider);
         return new MTTrainingSamples(inputs, batchSize);
     }
 
     @Override
     public MTTrainingSamples createTraining(TrainingSamplesProvider provider, int batchSize) {
-        MTMatrix inputs = createInputs(provider);
+        MTInputs inputs = createInputs(provider);
         int samples = provider.samples();
         int[] expectedIndices = new int[samples];
         for (int sample = 0; sample < samples; sample++) {
@@ -33,15 +42,17 @@ public class MTSamplesSource implements SamplesSource<MTBatch> {
         return new MTTrainingSamples(inputs, expectedIndices, batchSize);
     }
 
-    private MTMatrix createInputs(SamplesProvider provider) {
+    private MTInputs createInputs(SamplesProvider provider) {
         int samples = provider.samples();
-        int features = network.features();
-        MTMatrix inputs = new MTMatrix(features, samples);
-        for (int sample = 0; sample < samples; sample++) {
-            for (int feature = 0; feature < features; feature++) {
-                inputs.set(feature, sample, provider.input(sample, feature));
-            }
+        DirectSamples directSamples = provider instanceof DirectSamples ? (DirectSamples) provider : null;
+        if (directSamples != null && directSamples.isDirect(directSamples.precision(), features)) {
+            // any precision, the batches columns are copied in the network precision
+            return new MTBufferInputs(directSamples.inputsBuffer(), directSamples.precision(), precision, features,
+                    samples);
         }
+        MTMatrix inputs = MTMatrix.create(precision, features, samples);
+        SamplesProviders.readInputs(provider, features,
+                (sample, count, values) -> inputs.setColumns(sample, count, values, 0));
         return inputs;
     }
 
@@ -1,28 +1,47 @@
 package org.yah.tests.perceptron.mt;
 
+import org.yah.tests.perceptron.SamplesProviders;
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+import org.yah.tests.perceptron.TrainingSamples;
 import org.yah.tests.perceptron.base.BatchedSamples;
+import org.yah.tests.perceptron.base.SamplesIndices;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 class MTTrainingSamples implements BatchedSamples<MTBatch> {
     private final int batchSize;
-    final MTMatrix inputs;
+    final MTInputs inputs;
     final int[] expectedIndices;
+    /**
+     * iteration order, null for the inputs columns order
+     */
+    private int[] indices;
+    /**
+     * samples in the inputs columns, less than the columns once {@link #load(SamplesProvider) loaded}
+     */
+    private int samples;
 
-    public MTTrainingSamples(MTMatrix inputs, int batchSize) {
+    public MTTrainingSamples(MTInputs inputs, int batchSize) {
         this(inputs, null, batchSize);
     }
 
-    public MTTrainingSamples(MTMatrix inputs, int[] expectedIndices, int batchSize) {
+    public MTTrainingSamples(MTInputs inputs, int[] expectedIndices, int batchSize) {
+        this(inputs, expectedIndices, null, batchSize);
+    }
+
+    private MTTrainingSamples(MTInputs inputs, int[] expectedIndices, int[] indices, int batchSize) {
         this.inputs = inputs;
         this.expectedIndices = expectedIndices;
-        this.batchSize = batchSize == 0 ? inputs.columns() : batchSize;
+        this.indices = indices;
+        this.samples = inputs.columns();
+        this.batchSize = batchSize == 0 ? size() : batchSize;
     }
 
     @Override
     public int size() {
-        return inputs.columns();
+        return indices == null ? samples : indices.length;
     }
 
     @Override
@@ -30,13 +49,46 @@ class MTTrainingSamples implements BatchedSamples<MTBatch> {
         return batchSize;
     }
 
+    @Override
+    public void shuffle(Random random) {
+        indices = SamplesIndices.shuffle(indices, size(), random);
+    }
+
+    @Override
+    public TrainingSamples select(int[] selection) {
+        return new MTTrainingSamples(inputs, expectedIndices, SamplesIndices.select(indices, size(), selection),
+                Math.min(batchSize, selection.length));
+    }
+
+    @Override
+    public void load(SamplesProvider provider) {
+        if (expectedIndices != null || indices != null)
+            throw new IllegalStateException("Only the samples created by createInputs can be loaded");
+        if (!(inputs instanceof MTMatrix))
+            throw new IllegalStateException("Direct samples inputs are read in place");
+        MTMatrix matrix = (MTMatrix) inputs;
+        if (provider.samples() > matrix.columns())
+            throw new IllegalArgumentException("Can not load " + provider.samples() + " samples in "
+                                               + matrix.columns() + " columns");
+        SamplesProviders.readInputs(provider, matrix.rows(),
+                (sample, count, values) -> matrix.setColumns(sample, count, values, 0));
+        samples = provider.samples();
+    }
+
+    /**
+     * @return a new batch over these samples, in their iteration order, to {@link MTBatch#slide(int, int)}
+     */
+    MTBatch createBatch() {
+        return new MTBatch(inputs, expectedIndices, indices, batchSize);
+    }
+
     @Override
     public Iterator<MTBatch> iterator() {
         return new BatchIterator();
     }
 
     private class BatchIterator implements Iterator<MTBatch> {
-        private final MTBatch batch = new MTBatch(inputs, expectedIndices);
+        private final MTBatch batch = createBatch();
 
         private int offset;
 
@@ -49,7 +101,7 @@ class MTTrainingSamples implements BatchedSamples<MTBatch> {
         public MTBatch next() {
             if (!hasNext())
                 throw new NoSuchElementException();
-            int size = batch.slide(offset, batchSize);
+            int size = batch.slide(offset, Math.min(batchSize, size() - offset));
             offset += size;
             return batch;
         }
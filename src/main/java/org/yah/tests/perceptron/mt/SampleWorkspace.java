@@ -0,0 +1,138 @@
+package org.yah.tests.perceptron.mt;
+
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.NeuralNetwork;
+import org.yah.tests.perceptron.Precision;
+
+import java.util.Arrays;
+
+/**
+ * Forward and backward propagation of a slice of batch columns through all the layers, on the calling thread, in the
+ * buffers of this workspace: same layout as the network ones, for the slice columns.
+ *
+ * @author Yah
+ */
+final class SampleWorkspace {
+
+    private final NeuralNetwork network;
+    private final MTMatrix[] weights;
+    private final MTMatrix[] biases;
+
+    final MTMatrix[] zs;
+    final MTMatrix[] activations;
+    final MTMatrix[] wgrads;
+    final MTMatrix[] bgrads;
+
+    private final MTMatrix transposed;
+    private final double[] bgradSums;
+
+    private MTBatch batch;
+    private MTMatrix inputs, transposedInputs; // views of the batch inputs, of their storage
+
+    /**
+     * @param network the layers structure and the activations mode
+     * @param weights the network weights, read by the propagations
+     * @param biases  the network biases
+     */
+    SampleWorkspace(NeuralNetwork network, Precision precision, MTMatrix[] weights, MTMatrix[] biases) {
+        this.network = network;
+        this.weights = weights;
+        this.biases = biases;
+        transposed = MTMatrix.create(precision);
+        int layers = network.layers();
+        zs = new MTMatrix[layers];
+        activations = new MTMatrix[layers];
+        wgrads = new MTMatrix[layers];
+        bgrads = new MTMatrix[layers];
+        int maxNeurons = 0;
+        for (int layer = 0; layer < layers; layer++) {
+            zs[layer] = MTMatrix.create(precision);
+            activations[layer] = MTMatrix.create(precision);
+            wgrads[layer] = MTMatrix.create(precision, network.neurons(layer), network.features(layer));
+            bgrads[layer] = MTMatrix.create(precision, network.neurons(layer), 1);
+            maxNeurons = Math.max(maxNeurons, network.neurons(layer));
+        }
+        bgradSums = new double[maxNeurons];
+    }
+
+    /**
+     * @param training if the output layer is a softmax, compute the fused cost derivative instead of the activation
+     * @return the activations of the output layer, a column per sample of the slice
+     */
+    MTMatrix forward(MTBatch batch, int offset, int size, boolean training) {
+        MTMatrix inputs = sliceInputs(batch, offset, size);
+        for (int layer = 0; layer < network.layers(); layer++) {
+            MTMatrix z = zs[layer], a = activations[layer];
+            z.reshape(network.neurons(layer), size);
+            a.reshape(network.neurons(layer), size);
+            z.dot(weights[layer], inputs, 0, size);
+            z.addColumnVector(biases[layer], 0, size);
+            Activation activation = network.activation(layer);
+            if (activation == Activation.SOFTMAX) {
+                for (int col = 0; col < size; col++) {
+                    int index = z.index(0, col);
+                    if (training)
+                        z.softmaxCrossEntropy(index, z.rows(), batch.expectedIndex(offset + col), a);
+                    else
+                        z.activate(Activation.SOFTMAX, false, index, z.rows(), a);
+                }
+            } else {
+                z.activate(activation, network.approximate(), 0, z.size(), a);
+            }
+            inputs = a;
+        }
+        return inputs;
+    }
+
+    /**
+     * Forward and backward propagation of the slice, the gradients of the slice samples are summed in
+     * {@link #wgrads} and {@link #bgrads}.
+     */
+    void train(MTBatch batch, int offset, int size) {
+        int layers = network.layers();
+        MTMatrix outputs = forward(batch, offset, size, true);
+        if (network.activation(layers - 1) != Activation.SOFTMAX) {
+            // cost derivative = actual - expected
+            for (int col = 0; col < size; col++) {
+                outputs.sub(batch.expectedIndex(offset + col), col, 1);
+            }
+        }
+
+        for (int layer = layers - 1; layer >= 0; layer--) {
+            MTMatrix z = zs[layer], a = activations[layer];
+            Activation activation = network.activation(layer);
+            // softmax delta is already computed by the fused cost derivative
+            if (activation != Activation.SOFTMAX) {
+                // delta = activation * activation'(z)
+                z.derivative(activation, network.approximate(), 0, z.size(), z);
+                a.mul(z, 0, a.size());
+            }
+
+            // bgrad = sum of delta columns
+            Arrays.fill(bgradSums, 0, a.rows(), 0);
+            a.sumRows(0, a.size(), bgradSums);
+            bgrads[layer].setColumns(0, 1, bgradSums, 0);
+
+            // wgrad = delta . T(inputs)
+            MTMatrix wgrad = wgrads[layer];
+            if (layer > 0) {
+                MTMatrix layerInputs = activations[layer - 1];
+                wgrad.dot(a, layerInputs.transpose(transposed), 0, wgrad.columns());
+                // activation[layer-1] (next delta) = T(weight[layer]) . delta
+                layerInputs.dot(weights[layer].transpose(transposed), a, 0, size);
+            } else {
+                wgrad.dot(a, inputs.transpose(transposedInputs), 0, wgrad.columns());
+            }
+        }
+    }
+
+    private MTMatrix sliceInputs(MTBatch batch, int offset, int size) {
+        if (this.batch != batch) {
+            this.batch = batch;
+            inputs = batch.inputs.createView();
+            transposedInputs = batch.inputs.createView();
+        }
+        return batch.inputs.slice(offset, size, inputs);
+    }
+
+}
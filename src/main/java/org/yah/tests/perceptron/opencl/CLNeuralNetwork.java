@@ -2,7 +2,9 @@ package org.yah.tests.perceptron.opencl;
 
 import org.lwjgl.BufferUtils;
 import org.yah.tests.perceptron.InputSamples;
+import org.yah.tests.perceptron.NetworkParameters;
 import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
 import org.yah.tests.perceptron.base.AbstractBatchedNeuralNetwork;
 import org.yah.tests.perceptron.base.DirectBufferOutputs;
 import org.yah.tests.perceptron.base.SamplesSource;
@@ -17,7 +19,7 @@ import org.yah.tools.opencl.mem.CLMemObject;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.DoubleBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 
 public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTrainingBatch, DirectBufferOutputs>
@@ -25,14 +27,14 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
 
     private static final int SUM_WORKGROUP_SIZE = 64;
 
-    private static final int TYPE_SIZE = Double.BYTES;
-
     interface MatrixElementProvider {
         double get(int row, int col);
     }
 
     final CLEnvironment environment;
 
+    private final Precision precision;
+
     private final IntBuffer networkBuffer;
 
     private final CLKernel propagateKernel;
@@ -56,6 +58,12 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
     private CLBuffer outputsBuffer;
     private int outputsCapacity;
 
+    private CLBuffer scoresBuffer;
+    private int scoresCapacity;
+
+    private CLBuffer activationsBuffer;
+    private int activationsCapacity;
+
     private CLBuffer matchedCountBuffer;
     private int matchedCountCapacity;
 
@@ -69,11 +77,17 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
     }
 
     public CLNeuralNetwork(CLContext clContext, NeuralNetworkState state) throws IOException {
+        this(clContext, state, Precision.DOUBLE);
+    }
+
+    public CLNeuralNetwork(CLContext clContext, NeuralNetworkState state, Precision precision) throws IOException {
         super(state);
+        this.precision = precision;
         this.environment = CLEnvironment.builder()
                 .withContext(clContext)
                 .withSourceResource("cl/neuralnetwork.cl")
-                .withOptions("-DLAYERS=" + layers() + " -DTYPE=double")
+                .withOptions("-DLAYERS=" + layers() + " -DTYPE=" + precision.typeName()
+                        + " -DACTIVATIONS=" + activationsOption())
                 .build();
 
         localWorkSize = new long[]{CLUtils.nextPowerOfTwo(maxNeurons()), CLUtils.nextPowerOfTwo(maxFeatures())};
@@ -96,20 +110,45 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
         updateNetworkKernel = environment.kernel("update_network");
     }
 
+    private String activationsOption() {
+        StringBuilder sb = new StringBuilder();
+        for (int layer = 0; layer < layers(); layer++) {
+            if (layer > 0)
+                sb.append(',');
+            sb.append(activation(layer).ordinal());
+        }
+        return sb.toString();
+    }
+
     private CLBuffer createDataCLBuffer() {
-        return environment.mem(createDataDoubleBufffer(), BufferProperties.MEM_COPY_HOST_PTR,
+        return environment.mem(createDataBufffer(), BufferProperties.MEM_COPY_HOST_PTR,
                 BufferProperties.MEM_READ_WRITE);
     }
 
-    private DoubleBuffer createDataDoubleBufffer() {
-        DoubleBuffer buffer = BufferUtils.createDoubleBuffer(totalWeights() + totalNeurons());
-        for (int layer = 0; layer < layers(); layer++) {
-            visitWeights(layer, (l, neuron, feature) -> buffer.put(weight(l, neuron, feature)));
-            visitBiases(layer, (l, neuron) -> buffer.put(bias(l, neuron)));
-        }
+    /**
+     * @return the state parameters, the data buffer uses the {@link NetworkParameters} layout
+     */
+    private ByteBuffer createDataBufffer() {
+        ByteBuffer buffer = BufferUtils.createByteBuffer(NetworkParameters.bytes(this, precision));
+        state.getParameters(buffer, precision);
         return buffer.flip();
     }
 
+    private void put(ByteBuffer buffer, double value) {
+        if (precision == Precision.FLOAT)
+            buffer.putFloat((float) value);
+        else
+            buffer.putDouble(value);
+    }
+
+    private int typeSize() {
+        return precision.size();
+    }
+
+    public Precision precision() {
+        return precision;
+    }
+
     /**
      * <code>
      * typedef struct Network {
@@ -145,6 +184,11 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
         return new DirectBufferOutputs(samples);
     }
 
+    @Override
+    public DirectBufferOutputs createOutpus(int samples, int topK, boolean activations) {
+        return new DirectBufferOutputs(samples, outputs(), topK, activations, precision);
+    }
+
     @Override
     protected void doPropagate(InputSamples samples, DirectBufferOutputs outputs) {
         super.doPropagate(samples, outputs);
@@ -162,23 +206,22 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
     @Override
     protected void propagate(CLTrainingBatch batch, DirectBufferOutputs outputs) {
         range.dontWaitForEvents();
-        long event = forward(batch, null, outputs.buffer());
+        long event = forward(batch, null, outputs);
         range.waitForEvent(event);
-        readOutputs(batch, outputs.buffer());
+        readOutputs(batch, outputs);
     }
 
     @Override
     protected int evaluate(CLTrainingBatch batch, DirectBufferOutputs outputs) {
-        IntBuffer outputsBuffer = outputs != null ? outputs.buffer() : null;
         range.dontWaitForEvents();
-        long forwardEvent = forward(batch, batch.getExpectedIndices(), outputsBuffer);
+        long forwardEvent = forward(batch, batch.getExpectedIndices(), outputs);
         long matchedSumEvent = sumMatched(batch, forwardEvent);
         range.waitForEvent(matchedSumEvent);
         range.requestEvent();
         matchedSumEvent = environment.read(matchedCountBuffer, matchedCountResult, false, 0, range);
         if (outputs != null) {
             range.waitForEvent(forwardEvent);
-            readOutputs(batch, outputsBuffer);
+            readOutputs(batch, outputs);
         }
         environment.waitForEvent(matchedSumEvent);
         return matchedCountResult.get(0);
@@ -193,10 +236,11 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
         trainingKernel.setArg(index++, batch.offset);
         trainingKernel.setArg(index++, batch.getInputs());
         trainingKernel.setArg(index++, batch.getExpectedIndices());
+        trainingKernel.setArg(index++, batch.getIndices());
         trainingKernel.setArg(index++, gradsBuffer);
-        trainingKernel.setArgSize(index++, workGroupSize * TYPE_SIZE); // partial
-        trainingKernel.setArgSize(index++, totalNeurons() * TYPE_SIZE); // zs
-        trainingKernel.setArgSize(index, totalNeurons() * TYPE_SIZE); // activations
+        trainingKernel.setArgSize(index++, workGroupSize * typeSize()); // partial
+        trainingKernel.setArgSize(index++, totalNeurons() * typeSize()); // zs
+        trainingKernel.setArgSize(index, totalNeurons() * typeSize()); // activations
         range.globalWorkSizes(localWorkSize[0], localWorkSize[1] * batch.batchSize)
                 .dontWaitForEvents()
                 .requestEvent();
@@ -212,21 +256,60 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
 
     @Override
     protected void updateState() {
-        DoubleBuffer buffer = BufferUtils.createDoubleBuffer(totalWeights() + totalNeurons());
+        ByteBuffer buffer = BufferUtils.createByteBuffer(NetworkParameters.bytes(this, precision));
         environment.read(dataBuffer, buffer);
-        for (int layer = 0; layer < layers(); layer++) {
-            visitWeights(layer, (l, neuron, feature) -> weight(l, neuron, feature, buffer.get()));
-            visitBiases(layer, (l, neuron) -> bias(l, neuron, buffer.get()));
-        }
+        state.setParameters(buffer, precision);
     }
 
     @Override
     protected void updateModel() {
-        DoubleBuffer doubleBufffer = createDataDoubleBufffer();
-        environment.write(dataBuffer, doubleBufffer);
+        environment.write(dataBuffer, createDataBufffer());
     }
 
-    private long forward(CLTrainingBatch batch, CLMemObject expectedIndices, IntBuffer outputs) {
+    @Override
+    protected Precision modelPrecision() {
+        return precision;
+    }
+
+    /**
+     * the OpenCL activations are exact
+     */
+    @Override
+    public boolean approximate() {
+        return false;
+    }
+
+    @Override
+    public void approximate(boolean approximate) {
+        if (approximate)
+            throw new UnsupportedOperationException("OpenCL activations are exact");
+    }
+
+    @Override
+    protected boolean readParameters(ByteBuffer target, Precision precision) {
+        if (precision != this.precision || target.order() != ByteOrder.nativeOrder())
+            return false;
+        ByteBuffer parameters = parametersSlice(target);
+        environment.read(dataBuffer, parameters);
+        target.position(target.position() + parameters.capacity());
+        return true;
+    }
+
+    @Override
+    protected boolean writeParameters(ByteBuffer source, Precision precision) {
+        if (precision != this.precision || source.order() != ByteOrder.nativeOrder())
+            return false;
+        environment.write(dataBuffer, parametersSlice(source));
+        return true;
+    }
+
+    private ByteBuffer parametersSlice(ByteBuffer buffer) {
+        ByteBuffer res = buffer.slice().order(buffer.order());
+        res.limit(NetworkParameters.bytes(this, precision));
+        return res.slice().order(buffer.order());
+    }
+
+    private long forward(CLTrainingBatch batch, CLMemObject expectedIndices, DirectBufferOutputs outputs) {
         int index = 0;
         propagateKernel.setArg(index++, networkBuffer);
         propagateKernel.setArg(index++, dataBuffer);
@@ -234,15 +317,23 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
         propagateKernel.setArg(index++, batch.offset);
         propagateKernel.setArg(index++, batch.getInputs());
         propagateKernel.setArg(index++, expectedIndices);
+        propagateKernel.setArg(index++, batch.getIndices());
 
         if (outputs != null)
-            ensureOutputs(batch.batchSize);
+            ensureOutputs(batch.batchSize, outputs);
         propagateKernel.setArg(index++, outputsBuffer);
         if (expectedIndices != null)
             ensureMatchedCount(batch.batchSize);
         propagateKernel.setArg(index++, expectedIndices != null ? matchedCountBuffer : null);
 
-        propagateKernel.setArgSize(index++, workGroupSize * TYPE_SIZE);
+        // ranked outputs
+        boolean scores = outputs != null && outputs.hasScores();
+        boolean activations = outputs != null && outputs.hasActivations();
+        propagateKernel.setArg(index++, outputs != null ? outputs.topK() : 1);
+        propagateKernel.setArg(index++, scores ? scoresBuffer : null);
+        propagateKernel.setArg(index++, activations ? activationsBuffer : null);
+
+        propagateKernel.setArgSize(index++, workGroupSize * typeSize());
         propagateKernel.setArgSize(index, outputs() * Integer.BYTES);
 
         range.globalWorkSizes(localWorkSize[0], localWorkSize[1] * batch.batchSize).requestEvent();
@@ -296,7 +387,7 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
         sumGradsKernel.setArg(index++, networkBuffer);
         sumGradsKernel.setArg(index++, size);
         sumGradsKernel.setArg(index++, gradsBuffer);
-        sumGradsKernel.setArgSize(index, groupSize * TYPE_SIZE);
+        sumGradsKernel.setArgSize(index, groupSize * typeSize());
         return environment.run(sumGradsKernel, sumRange);
     }
 
@@ -307,26 +398,59 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
                 .requestEvent();
         int index = 0;
         updateNetworkKernel.setArg(index++, networkBuffer);
-        updateNetworkKernel.setArg(index++, lr);
+        if (precision == Precision.FLOAT)
+            updateNetworkKernel.setArg(index++, (float) lr);
+        else
+            updateNetworkKernel.setArg(index++, lr);
         updateNetworkKernel.setArg(index++, dataBuffer);
         updateNetworkKernel.setArg(index, gradsBuffer);
         return environment.run(updateNetworkKernel, sumRange);
     }
 
-    private void readOutputs(CLTrainingBatch batch, IntBuffer outputs) {
-        outputs.position(batch.offset).limit(batch.offset + batch.batchSize);
-        environment.read(outputsBuffer, outputs, true, 0, range);
+    private void readOutputs(CLTrainingBatch batch, DirectBufferOutputs outputs) {
+        int topK = outputs.topK();
+        IntBuffer indices = outputs.buffer();
+        indices.position(batch.offset * topK).limit((batch.offset + batch.batchSize) * topK);
+        environment.read(outputsBuffer, indices, true, 0, range);
+        if (outputs.hasScores())
+            readValues(scoresBuffer, outputs.scores(), batch.offset * topK, batch.batchSize * topK);
+        if (outputs.hasActivations())
+            readValues(activationsBuffer, outputs.activations(), batch.offset * outputs(), batch.batchSize * outputs());
+    }
+
+    private void readValues(CLBuffer buffer, ByteBuffer target, int offset, int count) {
+        target.position(offset * typeSize()).limit((offset + count) * typeSize());
+        environment.read(buffer, target, true, 0, range);
+        target.clear();
     }
 
-    private void ensureOutputs(int size) {
-        if (outputsCapacity < size) {
+    private void ensureOutputs(int size, DirectBufferOutputs outputs) {
+        int indices = size * outputs.topK();
+        if (outputsCapacity < indices) {
             if (outputsBuffer != null)
                 outputsBuffer.close();
-            outputsBuffer = environment.mem(size * Integer.BYTES,
+            outputsBuffer = environment.mem(indices * Integer.BYTES,
                     //BufferProperties.MEM_ALLOC_HOST_PTR,
                     BufferProperties.MEM_WRITE_ONLY,
                     BufferProperties.MEM_HOST_READ_ONLY);
-            outputsCapacity = size;
+            outputsCapacity = indices;
+        }
+        if (outputs.hasScores() && scoresCapacity < indices) {
+            if (scoresBuffer != null)
+                scoresBuffer.close();
+            scoresBuffer = environment.mem(indices * typeSize(),
+                    BufferProperties.MEM_WRITE_ONLY,
+                    BufferProperties.MEM_HOST_READ_ONLY);
+            scoresCapacity = indices;
+        }
+        int activations = size * outputs();
+        if (outputs.hasActivations() && activationsCapacity < activations) {
+            if (activationsBuffer != null)
+                activationsBuffer.close();
+            activationsBuffer = environment.mem(activations * typeSize(),
+                    BufferProperties.MEM_WRITE_ONLY,
+                    BufferProperties.MEM_HOST_READ_ONLY);
+            activationsCapacity = activations;
         }
     }
 
@@ -348,7 +472,7 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
             if (gradsBuffer != null)
                 gradsBuffer.close();
 
-            gradsBuffer = environment.mem(size * (totalWeights() + totalNeurons())  * TYPE_SIZE,
+            gradsBuffer = environment.mem(size * (totalWeights() + totalNeurons())  * typeSize(),
                     BufferProperties.MEM_READ_WRITE,
                     BufferProperties.MEM_HOST_NO_ACCESS);
             trainingBuffersCapacity = size;
@@ -357,11 +481,11 @@ public final class CLNeuralNetwork extends AbstractBatchedNeuralNetwork<CLTraini
 
     CLBuffer createMatrixBuffer(int rows, int cols, MatrixElementProvider provider,
                                 BufferProperties... properties) {
-        ByteBuffer fb = BufferUtils.createByteBuffer(rows * cols * TYPE_SIZE);
+        ByteBuffer fb = BufferUtils.createByteBuffer(rows * cols * typeSize());
         if (provider != null) {
             for (int c = 0; c < cols; c++) {
                 for (int r = 0; r < rows; r++) {
-                    fb.putDouble(provider.get(r, c));
+                    put(fb, provider.get(r, c));
                 }
             }
             fb.flip();
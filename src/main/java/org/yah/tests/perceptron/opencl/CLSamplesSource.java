@@ -1,6 +1,8 @@
 package org.yah.tests.perceptron.opencl;
 
 import org.lwjgl.BufferUtils;
+import org.yah.tests.perceptron.DirectSamples;
+import org.yah.tests.perceptron.SamplesProviders;
 import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
 import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
 import org.yah.tests.perceptron.base.BatchedSamples;
@@ -23,8 +25,16 @@ class CLSamplesSource implements SamplesSource<CLTrainingBatch> {
 
     @Override
     public BatchedSamples<CLTrainingBatch> createInputs(SamplesProvider provider, int batchSize) {
-        CLBuffer inputsBuffer = createInputsBuffer(provider);
-        return new CLTrainingSamples(provider.samples(), batchSize, inputsBuffer);
+        if (directSamples(provider) != null) {
+            CLBuffer inputsBuffer = createInputsBuffer(provider);
+            return new CLTrainingSamples(network.environment, provider.samples(), batchSize, inputsBuffer);
+        }
+        // the host inputs are kept to load the next inputs
+        ByteBuffer hostInputs = hostInputs(provider);
+        CLBuffer inputsBuffer = network.environment.mem(hostInputs, BufferProperties.MEM_COPY_HOST_PTR,
+                BufferProperties.MEM_READ_ONLY, BufferProperties.MEM_HOST_WRITE_ONLY);
+        return new CLTrainingSamples(network.environment, provider.samples(), batchSize, inputsBuffer, hostInputs,
+                network.features(), network.precision());
     }
 
     @Override
@@ -32,23 +42,54 @@ class CLSamplesSource implements SamplesSource<CLTrainingBatch> {
         CLBuffer inputsBuffer = createInputsBuffer(provider);
 
         int samples = provider.samples();
-        ByteBuffer buffer = BufferUtils.createByteBuffer(samples * Integer.BYTES);
-        for (int i = 0; i < samples; i++) {
-            buffer.putInt(provider.outputIndex(i));
+        ByteBuffer buffer;
+        DirectSamples directSamples = directSamples(provider);
+        if (directSamples != null && directSamples.hasLabels()) {
+            buffer = directSamples.labelsBuffer();
+        } else {
+            buffer = BufferUtils.createByteBuffer(samples * Integer.BYTES);
+            for (int i = 0; i < samples; i++) {
+                buffer.putInt(provider.outputIndex(i));
+            }
+            buffer.flip();
         }
-        buffer.flip();
         CLBuffer expectedIndicesBuffer = network.environment.mem(buffer,
                 BufferProperties.MEM_COPY_HOST_PTR,
                 BufferProperties.MEM_READ_ONLY,
                 BufferProperties.MEM_HOST_WRITE_ONLY);
-        return new CLTrainingSamples(samples, batchSize, inputsBuffer, expectedIndicesBuffer);
+        return new CLTrainingSamples(network.environment, samples, batchSize, inputsBuffer, expectedIndicesBuffer);
     }
 
     private CLBuffer createInputsBuffer(SamplesProvider provider) {
-        return network.createMatrixBuffer(network.features(), provider.samples(),
-                (r, c) -> provider.input(c, r), BufferProperties.MEM_COPY_HOST_PTR,
+        ByteBuffer buffer;
+        DirectSamples directSamples = directSamples(provider);
+        if (directSamples != null) {
+            buffer = directSamples.inputsBuffer();
+            if (directSamples.sharedInputs()) {
+                // no copy, the device reads the owner memory (zero copy on host or unified memory devices)
+                return network.environment.mem(buffer, BufferProperties.MEM_USE_HOST_PTR,
+                        BufferProperties.MEM_READ_ONLY, BufferProperties.MEM_HOST_NO_ACCESS);
+            }
+            // copied to the device straight from the direct buffer
+        } else {
+            buffer = hostInputs(provider);
+        }
+        return network.environment.mem(buffer, BufferProperties.MEM_COPY_HOST_PTR,
                 BufferProperties.MEM_READ_ONLY, BufferProperties.MEM_HOST_NO_ACCESS);
     }
 
+    private ByteBuffer hostInputs(SamplesProvider provider) {
+        ByteBuffer buffer = BufferUtils.createByteBuffer(provider.samples() * network.features()
+                                                         * network.precision().size());
+        return SamplesProviders.writeInputs(provider, network.features(), network.precision(), buffer).flip();
+    }
+
+    private DirectSamples directSamples(SamplesProvider provider) {
+        if (provider instanceof DirectSamples
+            && ((DirectSamples) provider).isDirect(network.precision(), network.features()))
+            return (DirectSamples) provider;
+        return null;
+    }
+
 
 }
@@ -16,6 +16,8 @@ class CLTrainingBatch implements TrainingBatch  {
 
     public CLMemObject getExpectedIndices() { return samples.expectedIndicesBuffer; }
 
+    public CLMemObject getIndices() { return samples.indicesBuffer(); }
+
     @Override
     public int size() {
         return batchSize;
@@ -1,29 +1,139 @@
 package org.yah.tests.perceptron.opencl;
 
+import org.lwjgl.BufferUtils;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.SamplesProviders;
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+import org.yah.tests.perceptron.TrainingSamples;
 import org.yah.tests.perceptron.base.BatchedSamples;
+import org.yah.tests.perceptron.base.SamplesIndices;
+import org.yah.tools.opencl.CLEnvironment;
+import org.yah.tools.opencl.mem.BufferProperties;
 import org.yah.tools.opencl.mem.CLBuffer;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 class CLTrainingSamples implements BatchedSamples<CLTrainingBatch>, AutoCloseable {
-    private final int size;
+    private final CLEnvironment environment;
+    private int size;
     private final int batchSize;
 
     final CLBuffer inputsBuffer;
     final CLBuffer expectedIndicesBuffer;
+    /**
+     * false for the views created by select, sharing the inputs and expected indices buffers
+     */
+    private final boolean ownsBuffers;
+    /**
+     * host copy of the inputs, written to inputsBuffer by {@link #load(SamplesProvider)}. null if the inputs can not
+     * be loaded
+     */
+    private final ByteBuffer hostInputs;
+    private final int features;
+    private final Precision precision;
 
-    CLTrainingSamples(int size, int batchSize, CLBuffer inputsBuffer) {
-        this(size, batchSize, inputsBuffer, null);
+    /**
+     * iteration order, null for the inputs order. Uploaded to indicesBuffer before the next iteration when modified.
+     */
+    private int[] indices;
+    private CLBuffer indicesBuffer;
+    private boolean indicesModified;
+
+    CLTrainingSamples(CLEnvironment environment, int size, int batchSize, CLBuffer inputsBuffer) {
+        this(environment, size, batchSize, inputsBuffer, null);
     }
 
-    CLTrainingSamples(int size, int batchSize,
+    CLTrainingSamples(CLEnvironment environment, int size, int batchSize,
                       CLBuffer inputsBuffer,
                       CLBuffer expectedIndicesBuffer) {
+        this(environment, size, batchSize, inputsBuffer, expectedIndicesBuffer, null, 0, null);
+    }
+
+    /**
+     * Loadable inputs, see {@link #load(SamplesProvider)}.
+     *
+     * @param hostInputs the host copy of the inputs, in the precision of the network
+     */
+    CLTrainingSamples(CLEnvironment environment, int size, int batchSize, CLBuffer inputsBuffer,
+                      ByteBuffer hostInputs, int features, Precision precision) {
+        this(environment, size, batchSize, inputsBuffer, null, hostInputs, features, precision);
+    }
+
+    private CLTrainingSamples(CLEnvironment environment, int size, int batchSize,
+                              CLBuffer inputsBuffer, CLBuffer expectedIndicesBuffer,
+                              ByteBuffer hostInputs, int features, Precision precision) {
+        this.environment = environment;
         this.size = size;
         this.batchSize = batchSize == 0 ? size : batchSize;
         this.inputsBuffer = inputsBuffer;
         this.expectedIndicesBuffer = expectedIndicesBuffer;
+        this.ownsBuffers = true;
+        this.hostInputs = hostInputs;
+        this.features = features;
+        this.precision = precision;
+    }
+
+    private CLTrainingSamples(CLTrainingSamples from, int[] indices, int batchSize) {
+        this.environment = from.environment;
+        this.size = indices.length;
+        this.batchSize = batchSize;
+        this.inputsBuffer = from.inputsBuffer;
+        this.expectedIndicesBuffer = from.expectedIndicesBuffer;
+        this.ownsBuffers = false;
+        this.hostInputs = null;
+        this.features = from.features;
+        this.precision = from.precision;
+        this.indices = indices;
+        this.indicesModified = true;
+    }
+
+    @Override
+    public void shuffle(Random random) {
+        indices = SamplesIndices.shuffle(indices, size, random);
+        indicesModified = true;
+    }
+
+    @Override
+    public TrainingSamples select(int[] selection) {
+        return new CLTrainingSamples(this, SamplesIndices.select(indices, size, selection),
+                Math.min(batchSize, selection.length));
+    }
+
+    @Override
+    public void load(SamplesProvider provider) {
+        if (hostInputs == null)
+            throw new IllegalStateException("Only the samples created by createInputs can be loaded");
+        int capacity = hostInputs.capacity() / (features * precision.size());
+        if (provider.samples() > capacity)
+            throw new IllegalArgumentException("Can not load " + provider.samples() + " samples in " + capacity);
+        hostInputs.clear();
+        SamplesProviders.writeInputs(provider, features, precision, hostInputs).flip();
+        environment.write(inputsBuffer, hostInputs);
+        size = provider.samples();
+    }
+
+    /**
+     * @return the device indices, null for the inputs order
+     */
+    CLBuffer indicesBuffer() {
+        return indicesBuffer;
+    }
+
+    private void uploadIndices() {
+        if (!indicesModified)
+            return;
+        IntBuffer buffer = BufferUtils.createIntBuffer(indices.length).put(indices).flip();
+        if (indicesBuffer == null) {
+            indicesBuffer = environment.mem(buffer, BufferProperties.MEM_COPY_HOST_PTR,
+                    BufferProperties.MEM_READ_ONLY, BufferProperties.MEM_HOST_WRITE_ONLY);
+        } else {
+            environment.write(indicesBuffer, buffer);
+        }
+        indicesModified = false;
     }
 
     @Override
@@ -38,11 +148,16 @@ class CLTrainingSamples implements BatchedSamples<CLTrainingBatch>, AutoCloseabl
 
     @Override
     public Iterator<CLTrainingBatch> iterator() {
+        uploadIndices();
         return new CLTrainingBatchIterator(this);
     }
 
     @Override
     public void close() {
+        if (indicesBuffer != null)
+            indicesBuffer.close();
+        if (!ownsBuffers)
+            return;
         inputsBuffer.close();
         if (expectedIndicesBuffer != null) {
             expectedIndicesBuffer.close();
@@ -0,0 +1,91 @@
+package org.yah.tests.perceptron.server;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram, in nanoseconds: log2 buckets split in {@link #SUB_BUCKETS} linear sub buckets, so a
+ * recorded value is known within 1/{@link #SUB_BUCKETS} of its magnitude.
+ *
+ * @author Yah
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : total.sum() / (double) count;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return the upper bound of the bucket of this percentile, capped by the max recorded value
+     */
+    public long percentile(double percentile) {
+        long count = count();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank)
+                return bucket + 1 < BUCKETS ? Math.min(lowerBound(bucket + 1) - 1, max()) : max();
+        }
+        return max();
+    }
+
+    /**
+     * @return count, mean, p50, p90, p99, p99.9 and max in microseconds
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus " +
+                                             "max=%.1fus", count(), mean() / 1E3, percentile(50) / 1E3,
+                percentile(90) / 1E3, percentile(99) / 1E3, percentile(99.9) / 1E3, max() / 1E3);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+
+}
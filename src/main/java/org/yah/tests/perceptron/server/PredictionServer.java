@@ -0,0 +1,327 @@
+package org.yah.tests.perceptron.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.yah.tests.perceptron.NetworkStateFile;
+import org.yah.tests.perceptron.NeuralNetwork;
+import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.PredictionBatcher;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.jni.NativeNeuralNetwork;
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork;
+import org.yah.tests.perceptron.matrix.array.CMArrayMatrix;
+import org.yah.tests.perceptron.matrix.flat.CMFloatMatrix;
+import org.yah.tests.perceptron.mt.MTNeuralNetwork;
+import org.yah.tests.perceptron.opencl.CLNeuralNetwork;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Local HTTP prediction server, backed by any {@link NeuralNetwork} engine, the predictions are micro-batched by a
+ * {@link PredictionBatcher}. Endpoints:
+ * <ul>
+ * <li><code>POST /predict</code>: one sample per line, comma separated features. Responds with the output index of
+ * each sample, one per line.</li>
+ * <li><code>POST /model</code>: a {@link NetworkStateFile} content. The new model replaces the current one without
+ * dropping the requests in progress, they complete on the previous model. Responds with the model version.</li>
+ * <li><code>GET /stats</code>: latency histogram of each endpoint, and the model version.</li>
+ * </ul>
+ * Launch with <code>PredictionServer state-file [matrix | mt | native | cl] [double | float] [port]</code>, the
+ * server is then only bound to the loopback address: the endpoints are not authenticated.
+ *
+ * @author Yah
+ */
+public final class PredictionServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final long DEFAULT_MAX_WAIT = 200; // microseconds
+    public static final int DEFAULT_THREADS = 32;
+
+    private static final String PREDICT = "/predict";
+    private static final String MODEL = "/model";
+    private static final String STATS = "/stats";
+
+    private final Function<NeuralNetworkState, NeuralNetwork> engine;
+    private final int maxBatchSize;
+    private final long maxWait;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LatencyHistogram> histograms;
+
+    private final AtomicReference<Model> model = new AtomicReference<>();
+    private final AtomicInteger versions = new AtomicInteger();
+
+    /**
+     * @param engine       create the network of a model
+     * @param maxBatchSize max samples per propagation
+     * @param maxWait      max wait of a sample for its batch, in microseconds
+     * @param threads      HTTP requests threads, blocked while their samples are predicted
+     */
+    public PredictionServer(InetSocketAddress address, NeuralNetworkState state,
+                            Function<NeuralNetworkState, NeuralNetwork> engine,
+                            int maxBatchSize, long maxWait, int threads) throws IOException {
+        this.engine = engine;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWait = maxWait;
+        Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        histograms.put(PREDICT, new LatencyHistogram());
+        histograms.put(MODEL, new LatencyHistogram());
+        histograms.put(STATS, new LatencyHistogram());
+        this.histograms = Collections.unmodifiableMap(histograms);
+
+        model.set(newModel(state));
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext(PREDICT, exchange -> handle(exchange, "POST", PREDICT, this::predict));
+        server.createContext(MODEL, exchange -> handle(exchange, "POST", MODEL, this::swapModel));
+        server.createContext(STATS, exchange -> handle(exchange, "GET", STATS, this::stats));
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the version of the current model, 1 for the initial model
+     */
+    public int version() {
+        return model.get().version;
+    }
+
+    public LatencyHistogram histogram(String endpoint) {
+        return histograms.get(endpoint);
+    }
+
+    /**
+     * Replace the current model, wait for the requests in progress on the previous model, and close it.
+     *
+     * @return the version of the new model
+     * @throws IllegalStateException if the previous model could not be closed, the new model is in place
+     */
+    public synchronized int swap(NeuralNetworkState state) {
+        Model next = newModel(state);
+        Model previous = model.getAndSet(next);
+        previous.retire();
+        return next.version;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        model.get().retire();
+    }
+
+    private Model newModel(NeuralNetworkState state) {
+        NeuralNetwork network = engine.apply(state);
+        return new Model(versions.incrementAndGet(), network,
+                new PredictionBatcher(network, maxBatchSize, maxWait));
+    }
+
+    /**
+     * @return the current model, its users count incremented
+     */
+    private Model acquireModel() {
+        while (true) {
+            Model current = model.get();
+            current.users.incrementAndGet();
+            if (model.get() == current)
+                return current;
+            // swapped meanwhile, the retiring model may be waiting for its users
+            current.release();
+        }
+    }
+
+    private String predict(byte[] body) throws Exception {
+        String[] lines = new String(body, StandardCharsets.US_ASCII).split("\\R");
+        Model current = acquireModel();
+        try {
+            int features = current.network.features();
+            List<CompletableFuture<Integer>> futures = new ArrayList<>(lines.length);
+            for (String line : lines) {
+                if (!line.isBlank())
+                    futures.add(current.batcher.submit(parseFeatures(line, features)));
+            }
+            StringBuilder sb = new StringBuilder(futures.size() * 3);
+            for (CompletableFuture<Integer> future : futures) {
+                sb.append(future.get()).append('\n');
+            }
+            return sb.toString();
+        } finally {
+            current.release();
+        }
+    }
+
+    private String swapModel(byte[] body) throws Exception {
+        NeuralNetworkState state = NetworkStateFile.read(ByteBuffer.wrap(body));
+        return swap(state) + "\n";
+    }
+
+    private String stats(byte[] body) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("model ").append(version()).append('\n');
+        histograms.forEach((endpoint, histogram) -> sb.append(endpoint).append(' ').append(histogram).append('\n'));
+        return sb.toString();
+    }
+
+    private static double[] parseFeatures(String line, int features) {
+        String[] values = line.split(",");
+        if (values.length != features)
+            throw new IllegalArgumentException("Expected " + features + " features, got " + values.length);
+        double[] res = new double[features];
+        for (int feature = 0; feature < features; feature++) {
+            res[feature] = Double.parseDouble(values[feature].trim());
+        }
+        return res;
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        String handle(byte[] body) throws Exception;
+    }
+
+    private void handle(HttpExchange exchange, String method, String endpoint, Handler handler) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!exchange.getRequestMethod().equals(method)) {
+                respond(exchange, 405, method + " expected\n");
+                return;
+            }
+            String response;
+            try {
+                response = handler.handle(exchange.getRequestBody().readAllBytes());
+            } catch (IOException | IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage() + "\n");
+                return;
+            } catch (ExecutionException e) {
+                respond(exchange, 503, e.getCause() + "\n");
+                return;
+            } catch (Exception e) {
+                respond(exchange, 500, e + "\n");
+                return;
+            }
+            respond(exchange, 200, response);
+        } finally {
+            exchange.close();
+            histograms.get(endpoint).record(System.nanoTime() - start);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String response) throws IOException {
+        byte[] bytes = response.getBytes(StandardCharsets.US_ASCII);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static final class Model {
+        private final int version;
+        private final NeuralNetwork network;
+        private final PredictionBatcher batcher;
+        private final AtomicInteger users = new AtomicInteger();
+
+        private Model(int version, NeuralNetwork network, PredictionBatcher batcher) {
+            this.version = version;
+            this.network = network;
+            this.batcher = batcher;
+        }
+
+        private void release() {
+            if (users.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * wait for the requests in progress, then close the batcher and the network. If the calling thread is
+         * interrupted, the requests are still awaited and the thread interrupt status is restored.
+         */
+        private void retire() {
+            boolean interrupted = false;
+            synchronized (this) {
+                while (users.get() > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            try {
+                batcher.close();
+                if (network instanceof AutoCloseable)
+                    ((AutoCloseable) network).close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Model " + version + " replaced, but could not be closed", e);
+            } finally {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: PredictionServer state-file [matrix | mt | native | cl] [double | float] [port]");
+            System.exit(1);
+        }
+        NeuralNetworkState state = NetworkStateFile.read(Paths.get(args[0]));
+        String engineName = args.length > 1 ? args[1] : "matrix";
+        Precision precision = args.length > 2 ? Precision.parse(args[2]) : Precision.DOUBLE;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_PORT;
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        PredictionServer server = new PredictionServer(address, state,
+                s -> createNetwork(engineName, s, precision), DEFAULT_BATCH_SIZE, DEFAULT_MAX_WAIT, DEFAULT_THREADS);
+        System.out.println("Serving " + state + " with " + engineName + " on localhost port " + server.port());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+
+    private static NeuralNetwork createNetwork(String engine, NeuralNetworkState state, Precision precision) {
+        switch (engine) {
+            case "native":
+                return new NativeNeuralNetwork(state, precision);
+            case "cl":
+                try {
+                    return new CLNeuralNetwork(null, state, precision);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            case "mt":
+                return new MTNeuralNetwork(state, precision);
+            case "matrix":
+                if (precision == Precision.FLOAT)
+                    return new MatrixNeuralNetwork<>(CMFloatMatrix::new, state);
+                return new MatrixNeuralNetwork<>(CMArrayMatrix::new, state);
+            default:
+                throw new IllegalArgumentException("Invalid engine " + engine);
+        }
+    }
+
+}
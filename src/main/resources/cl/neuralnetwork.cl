@@ -1,16 +1,58 @@
 // #DEFINE LAYERS x (layers count)
 // #DEFINE TYPE (float|double)
+// #DEFINE ACTIVATIONS a0,a1,... (activation ordinal of each layer)
 
 typedef TYPE T;
 
 /****************************** Activation ******************************/
-const float sigmoid(const T v) {
-	return 1.0 / (1.0 + exp(-v));
+T sigmoid(const T v) {
+	return 1 / (1 + exp(-v));
 }
 
-const float sigmoid_prime(const T v) {
+T sigmoid_prime(const T v) {
 	T s = sigmoid(v);
-	return s * (1.0 - s);
+	return s * (1 - s);
+}
+
+// same order as org.yah.tests.perceptron.Activation
+#define SIGMOID 0
+#define RELU 1
+#define LEAKY_RELU 2
+#define TANH 3
+// output layer only, computed per sample in layer_forward, no derivative: delta = softmax(z) - expected
+#define SOFTMAX 4
+
+#define LEAKY_RELU_SLOPE ((T) 0.01)
+
+constant int layer_activations[LAYERS] = { ACTIVATIONS };
+
+// the layer activation is uniform across work items: no divergence
+T activate(const int layer, const T z) {
+	switch (layer_activations[layer]) {
+	case RELU:
+		return z > 0 ? z : 0;
+	case LEAKY_RELU:
+		return z > 0 ? z : LEAKY_RELU_SLOPE * z;
+	case TANH:
+		return tanh(z);
+	default:
+		return sigmoid(z);
+	}
+}
+
+T derivative(const int layer, const T z) {
+	T t;
+	switch (layer_activations[layer]) {
+	case RELU:
+		return z > 0 ? 1 : 0;
+	case LEAKY_RELU:
+		return z > 0 ? 1 : LEAKY_RELU_SLOPE;
+	case TANH:
+		t = tanh(z);
+		return 1 - t * t;
+	default:
+		return sigmoid_prime(z);
+	}
 }
 
 /****************************** Network  ******************************/
@@ -183,6 +225,21 @@ T sum_columns(const Layer* layer) {
 
 /****************************** Forward  ******************************/
 
+bool is_softmax(const Layer* layer) {
+	return layer_activations[layer->index] == SOFTMAX;
+}
+
+// softmax(z) of the current work item neuron, z of all neurons are in partial[neuron][0]
+T layer_softmax(const Layer* layer, const T z) {
+	T max = get_layer_partial(layer, 0, 0);
+	for (int n = 1; n < layer->neurons; n++)
+		max = fmax(max, get_layer_partial(layer, n, 0));
+	T sum = 0;
+	for (int n = 0; n < layer->neurons; n++)
+		sum += exp(get_layer_partial(layer, n, 0) - max);
+	return exp(z - max) / sum;
+}
+
 T layer_forward(const Layer* layer, const T input) {
 	int neuron = get_local_id(0);	
 	int feature = get_local_id(1);
@@ -194,9 +251,21 @@ T layer_forward(const Layer* layer, const T input) {
 	barrier(CLK_LOCAL_MEM_FENCE);
 
 	T sum = sum_rows(layer);
+	T z = 0, a = 0;
+	if (neuron < layer->neurons && feature == 0)
+		z = sum + layer->biases[neuron];
+	if (is_softmax(layer)) {
+		// uniform branch: share all z of the sample, then normalize
+		if (neuron < layer->neurons && feature == 0)
+			set_layer_partial(layer, neuron, 0, z);
+		barrier(CLK_LOCAL_MEM_FENCE);
+		if (neuron < layer->neurons && feature == 0)
+			a = layer_softmax(layer, z);
+		barrier(CLK_LOCAL_MEM_FENCE);
+	}
 	if (neuron < layer->neurons && feature == 0) {
-		T z = sum + layer->biases[neuron];
-		T a = sigmoid(z); 
+		if (!is_softmax(layer))
+			a = activate(layer->index, z);
 		set_layer_partial(layer, neuron, 0, a);
 		if (layer->training) {
 			layer->zs[neuron] = z;
@@ -233,9 +302,34 @@ int index_layer_outputs(Layer* layer) {
 	return layer->partialIndices[0]; 
 }
 
+// keep the top_k output indices and scores of a sample, serial: outputs count is small
+void rank_outputs(const Layer* layer, int outputs, int top_k, global int* indices, global T* scores) {
+	int ranked = 0;
+	for (int output = 0; output < outputs; output++) {
+		T v = get_layer_partial(layer, output, 0);
+		// equal values keep the lowest index first
+		int rank = ranked;
+		while (rank > 0 && scores[rank - 1] < v)
+			rank--;
+		if (rank == top_k)
+			continue;
+		for (int r = min(ranked, top_k - 1); r > rank; r--) {
+			indices[r] = indices[r - 1];
+			scores[r] = scores[r - 1];
+		}
+		indices[rank] = output;
+		scores[rank] = v;
+		if (ranked < top_k)
+			ranked++;
+	}
+}
+
+// scores: null if only the output index is requested, outputIndices are then [samples] instead of [samples x top_k]
 kernel void propagate(Network network, global const T* data,
 					int samplesOffset, global const T* samples, global const int* expectedIndices,
+					global const int* sampleIndices,
 					global int* outputIndices, global int* matchedCount,
+					const int top_k, global T* scores, global T* activations,
 					local T* partial, local int* partialIndices) {
 	int neuron = get_local_id(1);
 	int feature = get_local_id(1);
@@ -244,7 +338,8 @@ kernel void propagate(Network network, global const T* data,
 	init_layer(&network, data, partial, partialIndices, &layer);
 
 	int batchSampleIndex = get_group_id(1);
-	int globalSampleIndex = samplesOffset + batchSampleIndex;
+	// shuffled or selected samples are read through their indices
+	int globalSampleIndex = sampleIndices ? sampleIndices[samplesOffset + batchSampleIndex] : samplesOffset + batchSampleIndex;
 	T sample = samples[globalSampleIndex * network.inputs + feature];
 	T input = sample;
 	for (; layer.index < LAYERS; next_layer(&layer)) {
@@ -252,8 +347,17 @@ kernel void propagate(Network network, global const T* data,
 	}
 
 	int outputIndex = index_layer_outputs(&layer);
+	if (scores) {
+		// ranked outputs, output activations are in partial[output][0]
+		int outputs = network.layers[LAYERS - 1];
+		int output = get_local_id(0);
+		if (activations && output < outputs && get_local_id(1) == 0)
+			activations[batchSampleIndex * outputs + output] = get_layer_partial(&layer, output, 0);
+		if (output == 0 && get_local_id(1) == 0)
+			rank_outputs(&layer, outputs, top_k, outputIndices + batchSampleIndex * top_k, scores + batchSampleIndex * top_k);
+	}
 	if (neuron == 0 && feature == 0) {
-		if (outputIndices)
+		if (outputIndices && !scores)
 			outputIndices[batchSampleIndex] = outputIndex;
 		if (expectedIndices) {
 			int expected = expectedIndices[globalSampleIndex];
@@ -286,6 +390,7 @@ kernel void sum_matched(const int size,
 
 kernel void train(Network network, global const T* data,
 									int samplesOffset, global const T* samples, global const int* expectedIndices,
+									global const int* sampleIndices,
 									global T* grads,
 									local T* partial, local T* zs, local T* activations) {
 	int neuron = get_local_id(0);
@@ -298,7 +403,8 @@ kernel void train(Network network, global const T* data,
 		&layer);
 
 	int batchSampleIndex = get_group_id(1);
-	int globalSampleIndex = samplesOffset + batchSampleIndex;
+	// shuffled or selected samples are read through their indices
+	int globalSampleIndex = sampleIndices ? sampleIndices[samplesOffset + batchSampleIndex] : samplesOffset + batchSampleIndex;
 	local T* activation_inputs;
 	T sample ,input , activation, temp;
 	input = sample = samples[globalSampleIndex * network.inputs + feature];
@@ -310,17 +416,19 @@ kernel void train(Network network, global const T* data,
 	if (neuron < layer.neurons && feature == 0) {
 			activation = layer.activations[neuron];
 			// cost derivative = actual - expected = activation - (1 or 0 depending of expected index)
-			T expectedValue = expectedIndices[globalSampleIndex] == neuron ? 1.0 : 0.0;
+			// with a softmax output, this is the fused softmax and cross entropy gradient
+			T expectedValue = expectedIndices[globalSampleIndex] == neuron ? 1 : 0;
 			layer.activations[neuron] -= expectedValue;
 	}
   barrier(CLK_LOCAL_MEM_FENCE);
 	
 	// backward propagation
 	for (; layer.index >= 0; prev_layer(&layer)) {
-		// activation = activation * sigmoid_prime(z)
+		// activation = activation * activation'(z), softmax delta is the cost derivative
 		if (neuron < layer.neurons && feature == 0) {
 			activation = layer.activations[neuron];
-			activation *= sigmoid_prime(layer.zs[neuron]);
+			if (!is_softmax(&layer))
+				activation *= derivative(layer.index, layer.zs[neuron]);
 			layer.activations[neuron] = activation;
 			layer.bgrads[neuron] = activation; 
 		}
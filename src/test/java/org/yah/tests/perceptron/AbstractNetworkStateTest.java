@@ -2,10 +2,14 @@ package org.yah.tests.perceptron;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.yah.tests.perceptron.NeuralNetworkState.WeightsLayout;
 import org.yah.tests.perceptron.base.DefaultNetworkState;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.function.DoubleSupplier;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
@@ -30,6 +34,13 @@ public abstract class AbstractNetworkStateTest {
         return res;
     }
 
+    /**
+     * @return the tolerance used when comparing weights and biases
+     */
+    protected double delta() {
+        return DELTA;
+    }
+
     protected DoubleSupplier randomSource;
 
     @Before
@@ -141,9 +152,9 @@ public abstract class AbstractNetworkStateTest {
         state.weight(0, 2, 1, 2.2);
         state.weight(1, 0, 1, 2.5);
 
-        assertEquals(1.5, state.weight(0, 1, 0), DELTA);
-        assertEquals(2.2, state.weight(0, 2, 1), DELTA);
-        assertEquals(2.5, state.weight(1, 0, 1), DELTA);
+        assertEquals(1.5, state.weight(0, 1, 0), delta());
+        assertEquals(2.2, state.weight(0, 2, 1), delta());
+        assertEquals(2.5, state.weight(1, 0, 1), delta());
     }
 
     @Test
@@ -153,9 +164,87 @@ public abstract class AbstractNetworkStateTest {
         state.bias(0, 2, 2.2);
         state.bias(1, 0, 2.5);
 
-        assertEquals(1.5, state.bias(0, 1), DELTA);
-        assertEquals(2.2, state.bias(0, 2), DELTA);
-        assertEquals(2.5, state.bias(1, 0), DELTA);
+        assertEquals(1.5, state.bias(0, 1), delta());
+        assertEquals(2.2, state.bias(0, 2), delta());
+        assertEquals(2.5, state.bias(1, 0), delta());
+    }
+
+    @Test
+    public void bulk_weights() {
+        NeuralNetworkState state = newState(2, 3, 2);
+        for (WeightsLayout layout : WeightsLayout.values()) {
+            double[] weights = new double[7];
+            for (int i = 0; i < 6; i++) {
+                weights[i + 1] = i + layout.ordinal() * 10;
+            }
+            state.setWeights(0, weights, 1, layout);
+            for (int neuron = 0; neuron < 3; neuron++) {
+                for (int feature = 0; feature < 2; feature++) {
+                    assertEquals(weights[1 + layout.index(3, 2, neuron, feature)], state.weight(0, neuron, feature),
+                            delta());
+                }
+            }
+            double[] actual = new double[7];
+            state.getWeights(0, actual, 1, layout);
+            assertArrayEquals(weights, actual, delta());
+
+            DoubleBuffer buffer = DoubleBuffer.allocate(7);
+            buffer.position(1);
+            state.getWeights(0, buffer, layout);
+            assertEquals(7, buffer.position());
+            assertArrayEquals(weights, buffer.array(), delta());
+            state.setWeights(1, buffer.position(1), layout);
+            assertEquals(weights[1 + layout.index(2, 3, 1, 2)], state.weight(1, 1, 2), delta());
+        }
+    }
+
+    @Test
+    public void bulk_biases() {
+        NeuralNetworkState state = newState(2, 3, 2);
+        state.setBiases(0, new double[]{0, 1, 2, 3}, 1);
+        assertEquals(1, state.bias(0, 0), delta());
+        assertEquals(3, state.bias(0, 2), delta());
+
+        DoubleBuffer buffer = DoubleBuffer.wrap(new double[]{4, 5});
+        state.setBiases(1, buffer);
+        assertEquals(2, buffer.position());
+        double[] actual = new double[2];
+        state.getBiases(1, actual, 0);
+        assertArrayEquals(new double[]{4, 5}, actual, delta());
+        buffer = DoubleBuffer.allocate(3);
+        state.getBiases(0, buffer);
+        assertArrayEquals(new double[]{1, 2, 3}, buffer.array(), delta());
+    }
+
+    @Test
+    public void parameters() {
+        for (Precision precision : Precision.values()) {
+            NeuralNetworkState state = newState(2, 3, 2);
+            state.bias(1, 1, 5);
+            ByteBuffer buffer = NetworkParameters.allocate(state, precision);
+            state.getParameters(buffer, precision);
+            assertEquals(NetworkParameters.bytes(state, precision), buffer.position());
+            assertEquals(17, NetworkParameters.size(state));
+
+            int index = NetworkParameters.weightsOffset(state, 1) + 2 * 2 + 1; // neuron 1, feature 2
+            assertEquals(state.weight(1, 1, 2), value(buffer, precision, index), delta());
+            index = NetworkParameters.biasesOffset(state, 1) + 1;
+            assertEquals(5, value(buffer, precision, index), delta());
+
+            NeuralNetworkState copy = newState(new DefaultNetworkState(2, 3, 2));
+            buffer.flip();
+            copy.setParameters(buffer, precision);
+            assertEquals(NetworkParameters.bytes(state, precision), buffer.position());
+            state.visitWeights((layer, neuron, feature) ->
+                    assertEquals(state.weight(layer, neuron, feature), copy.weight(layer, neuron, feature), delta()));
+            state.visitBiases((layer, neuron) ->
+                    assertEquals(state.bias(layer, neuron), copy.bias(layer, neuron), delta()));
+        }
+    }
+
+    private static double value(ByteBuffer buffer, Precision precision, int index) {
+        return precision == Precision.FLOAT ? buffer.getFloat(index * Float.BYTES)
+                : buffer.getDouble(index * Double.BYTES);
     }
 
     @Test
@@ -169,7 +258,7 @@ public abstract class AbstractNetworkStateTest {
         NeuralNetworkState state = newState(2, 3, 2);
         double[][][] expecteds = createExepectedWeights(state);
         state.visitWeights((layer, neuron, feature) ->
-                assertEquals(expecteds[layer][neuron][feature], state.weight(layer, neuron, feature), DELTA));
+                assertEquals(expecteds[layer][neuron][feature], state.weight(layer, neuron, feature), delta()));
     }
 
     @Test
@@ -187,9 +276,9 @@ public abstract class AbstractNetworkStateTest {
             assertEquals(state.features(l), copy.features(l));
         }
         state.visitWeights((layer, neuron, feature) ->
-                assertEquals(state.weight(layer, neuron, feature), copy.weight(layer, neuron, feature), DELTA));
+                assertEquals(state.weight(layer, neuron, feature), copy.weight(layer, neuron, feature), delta()));
         state.visitBiases((layer, neuron) ->
-                assertEquals(state.bias(layer, neuron), copy.bias(layer, neuron), DELTA));
+                assertEquals(state.bias(layer, neuron), copy.bias(layer, neuron), delta()));
 
         copy.weight(0, 0, 0, 3.14);
         assertNotEquals(3.14, state.weight(0, 0, 0));
@@ -198,4 +287,19 @@ public abstract class AbstractNetworkStateTest {
         assertNotEquals(3.14, state.bias(0, 0));
     }
 
+    @Test
+    public void activations() {
+        DefaultNetworkState state = new DefaultNetworkState(randomSource, 2, 3, 2);
+        assertEquals(Activation.SIGMOID, newState(state).activation(0));
+        assertEquals(Activation.SIGMOID, newState(state).activation(1));
+
+        state.activations(Activation.RELU, Activation.TANH);
+        NeuralNetworkState copy = newState(state);
+        assertEquals(Activation.RELU, copy.activation(0));
+        assertEquals(Activation.TANH, copy.activation(1));
+
+        state.activations(Activation.RELU, Activation.SOFTMAX);
+        assertEquals(Activation.SOFTMAX, newState(state).activation(1));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package org.yah.tests.perceptron;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ActivationTest {
+
+    private static final double[] VALUES = {Double.NEGATIVE_INFINITY, -20, -3.3, -1, 0, 0.25, 2, 15.99, 30};
+
+    @Test
+    public void exact() {
+        for (double v : VALUES) {
+            assertEquals(1.0 / (1.0 + Math.exp(-v)), Activation.SIGMOID.activate(v), 0);
+            assertEquals(1.0 / (1.0 + Math.exp(-v)), Activation.SIGMOID.activate(v, false), 0);
+            assertEquals(Math.tanh(v), Activation.TANH.activate(v), 0);
+        }
+    }
+
+    @Test
+    public void approximate() {
+        for (double v : VALUES) {
+            assertEquals(SigmoidTable.sigmoid(v), Activation.SIGMOID.activate(v, true), 0);
+            assertEquals(1.0 / (1.0 + Math.exp(-v)), Activation.SIGMOID.activate(v, true), 1E-6);
+            assertEquals(Math.tanh(v), Activation.TANH.activate(v, true), 1E-5);
+        }
+        assertTrue(Double.isNaN(Activation.SIGMOID.activate(Double.NaN, true)));
+        assertTrue(Double.isNaN(Activation.TANH.activate(Double.NaN, true)));
+    }
+
+    @Test
+    public void bulk() {
+        for (boolean approximate : new boolean[]{false, true}) {
+            for (Activation activation : new Activation[]{Activation.SIGMOID, Activation.TANH}) {
+                double[] dst = new double[VALUES.length];
+                double[] derivatives = new double[VALUES.length];
+                activation.activate(VALUES, 0, dst, 0, VALUES.length, approximate);
+                activation.derivative(VALUES, 0, derivatives, 0, VALUES.length, approximate);
+                float[] fsrc = new float[VALUES.length];
+                float[] fdst = new float[VALUES.length];
+                for (int i = 0; i < VALUES.length; i++)
+                    fsrc[i] = (float) VALUES[i];
+                activation.activate(fsrc, 0, fdst, 0, fsrc.length, approximate);
+                for (int i = 0; i < VALUES.length; i++) {
+                    assertEquals(activation.activate(VALUES[i], approximate), dst[i], 0);
+                    assertEquals(activation.derivative(VALUES[i], approximate), derivatives[i], 0);
+                    assertEquals(activation.activate(VALUES[i], approximate), fdst[i], 1E-6);
+                }
+            }
+        }
+    }
+
+}
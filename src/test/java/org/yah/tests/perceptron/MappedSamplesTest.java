@@ -0,0 +1,149 @@
+package org.yah.tests.perceptron;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class MappedSamplesTest {
+
+    private static final double[][] INPUTS = {{1, 2}, {3, 4}, {5, 6}};
+    private static final int[] EXPECTEDS = {0, 2, 1};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void write_open() throws IOException {
+        TrainingSamplesProvider provider = SamplesProviders.newTrainingProvider(INPUTS, false, EXPECTEDS);
+        for (Precision precision : Precision.values()) {
+            Path file = folder.newFile().toPath();
+            MappedSamples.write(file, provider, 2, precision);
+            assertEquals(MappedSamples.HEADER_SIZE + 6 * precision.size() + 3 * Integer.BYTES, Files.size(file));
+
+            MappedSamples samples = MappedSamples.open(file);
+            assertEquals(3, samples.samples());
+            assertEquals(2, samples.features());
+            assertEquals(precision, samples.precision());
+            assertTrue(samples.hasLabels());
+            for (int sample = 0; sample < 3; sample++) {
+                assertEquals(EXPECTEDS[sample], samples.outputIndex(sample));
+                for (int feature = 0; feature < 2; feature++) {
+                    assertEquals(INPUTS[sample][feature], samples.input(sample, feature), 0);
+                }
+            }
+
+            ByteBuffer inputs = samples.inputsBuffer();
+            assertEquals(6 * precision.size(), inputs.remaining());
+            assertEquals(5, precision == Precision.FLOAT ? inputs.getFloat(4 * Float.BYTES)
+                    : inputs.getDouble(4 * Double.BYTES), 0);
+            assertEquals(2, samples.labelsBuffer().getInt(Integer.BYTES));
+        }
+    }
+
+    @Test
+    public void bulk_inputs() throws IOException {
+        for (Precision precision : Precision.values()) {
+            Path file = folder.newFile().toPath();
+            MappedSamples.write(file, SamplesProviders.newSamplesProvider(INPUTS, false), 2, precision);
+            MappedSamples samples = MappedSamples.open(file);
+
+            double[] target = new double[5];
+            samples.inputs(1, 2, 2, target, 1);
+            assertArrayEquals(new double[]{0, 3, 4, 5, 6}, target, 0);
+
+            DoubleBuffer buffer = DoubleBuffer.allocate(4);
+            samples.inputs(0, 2, 2, buffer);
+            assertEquals(4, buffer.position());
+            assertArrayEquals(new double[]{1, 2, 3, 4}, buffer.array(), 0);
+
+            // less features than stored
+            target = new double[3];
+            samples.inputs(0, 3, 1, target, 0);
+            assertArrayEquals(new double[]{1, 3, 5}, target, 0);
+        }
+    }
+
+    @Test
+    public void no_labels() throws IOException {
+        Path file = folder.newFile().toPath();
+        SamplesProvider provider = SamplesProviders.newSamplesProvider(INPUTS, false);
+        MappedSamples.write(file, provider, 2, Precision.DOUBLE);
+        MappedSamples samples = MappedSamples.open(file);
+        assertFalse(samples.hasLabels());
+        assertNull(samples.labelsBuffer());
+    }
+
+    @Test
+    public void direct() throws IOException {
+        Path file = folder.newFile().toPath();
+        MappedSamples.write(file, SamplesProviders.newSamplesProvider(INPUTS, false), 2, Precision.FLOAT);
+        MappedSamples samples = MappedSamples.open(file);
+        boolean littleEndian = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+        assertEquals(littleEndian, samples.isDirect(Precision.FLOAT, 2));
+        assertFalse(samples.isDirect(Precision.DOUBLE, 2));
+        assertFalse(samples.isDirect(Precision.FLOAT, 1));
+    }
+
+    @Test
+    public void regions() throws IOException {
+        double[][] inputs = {{1, 2}, {3, 4}, {5, 6}, {7, 8}, {9, 10}};
+        int[] expecteds = {0, 2, 1, 1, 0};
+        TrainingSamplesProvider provider = SamplesProviders.newTrainingProvider(inputs, false, expecteds);
+        for (Precision precision : Precision.values()) {
+            // 2 samples by inputs region
+            int maxRegionSize = 2 * 2 * precision.size();
+            Path file = folder.newFile().toPath();
+            MappedSamples.write(file, provider, 2, precision, maxRegionSize);
+            assertEquals(MappedSamples.HEADER_SIZE + 10 * precision.size() + 5 * Integer.BYTES, Files.size(file));
+
+            MappedSamples samples = MappedSamples.open(file, maxRegionSize);
+            assertFalse(samples.isDirect(precision, 2));
+            for (int sample = 0; sample < 5; sample++) {
+                assertEquals(expecteds[sample], samples.outputIndex(sample));
+                for (int feature = 0; feature < 2; feature++) {
+                    assertEquals(inputs[sample][feature], samples.input(sample, feature), 0);
+                }
+            }
+
+            double[] target = new double[6];
+            samples.inputs(1, 3, 2, target, 0);
+            assertArrayEquals(new double[]{3, 4, 5, 6, 7, 8}, target, 0);
+
+            DoubleBuffer buffer = DoubleBuffer.allocate(10);
+            samples.inputs(0, 5, 2, buffer);
+            assertArrayEquals(new double[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, buffer.array(), 0);
+
+            try {
+                samples.inputsBuffer();
+                fail("inputs mapped in several regions");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            // same file in one region
+            samples = MappedSamples.open(file);
+            assertEquals(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN, samples.isDirect(precision, 2));
+            assertEquals(9, samples.input(4, 0), 0);
+            assertEquals(0, samples.labelsBuffer().getInt(4 * Integer.BYTES));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void invalid_file() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, new byte[MappedSamples.HEADER_SIZE]);
+        MappedSamples.open(file);
+    }
+
+}
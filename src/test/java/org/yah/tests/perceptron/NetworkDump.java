@@ -45,16 +45,20 @@ public class NetworkDump {
     }
 
     public void test(NeuralNetwork network) {
-        assertState(0, state, network.getState());
+        test(network, DELTA);
+    }
+
+    public void test(NeuralNetwork network, double delta) {
+        assertState(0, state, network.getState(), delta);
         TrainingSamplesProvider provider = newTrainingProvider(inputs, false, expectedOutputs);
         TrainingSamples samples = network.createTraining(provider, batchSize);
         for (int epoch = 0; epoch < epochs; epoch++) {
             network.train(samples, learningRate);
-            assertState(epoch, epochStates.get(epoch), network.getState());
+            assertState(epoch, epochStates.get(epoch), network.getState(), delta);
         }
     }
 
-    private static void assertState(int epoch, NeuralNetworkState expected, NeuralNetworkState actual) {
+    private static void assertState(int epoch, NeuralNetworkState expected, NeuralNetworkState actual, double delta) {
         assertEquals("layers", expected.layers(), actual.layers());
         assertEquals("features", expected.features(), actual.features());
         for (int layer = 0; layer < expected.layers(); layer++) {
@@ -63,12 +67,12 @@ public class NetworkDump {
         expected.visitWeights((layer, neuron, feature) ->
                 assertEquals(String.format("epoch[%d] weight[%d][%d][%d]", epoch, layer, neuron, feature),
                         expected.weight(layer, neuron, feature),
-                        actual.weight(layer, neuron, feature), DELTA)
+                        actual.weight(layer, neuron, feature), delta)
         );
         expected.visitBiases((layer, neuron) ->
                 assertEquals(String.format("epoch[%d] bias[%d][%d]", epoch, layer, neuron),
                         expected.bias(layer, neuron),
-                        actual.bias(layer, neuron), DELTA)
+                        actual.bias(layer, neuron), delta)
         );
     }
 
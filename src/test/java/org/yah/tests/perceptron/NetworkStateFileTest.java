@@ -0,0 +1,86 @@
+package org.yah.tests.perceptron;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yah.tests.perceptron.base.DefaultNetworkState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NetworkStateFileTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void write_read() throws IOException {
+        Random random = new Random(12345);
+        DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 3, 5, 2);
+        state.activation(0, Activation.RELU);
+        state.activation(1, Activation.SOFTMAX);
+        for (Precision precision : Precision.values()) {
+            Path file = folder.newFile().toPath();
+            NetworkStateFile.write(file, state, precision);
+            DefaultNetworkState read = NetworkStateFile.read(file);
+            assertEquals(2, read.layers());
+            assertEquals(3, read.features());
+            assertEquals(5, read.neurons(0));
+            assertEquals(2, read.outputs());
+            assertEquals(Activation.RELU, read.activation(0));
+            assertEquals(Activation.SOFTMAX, read.activation(1));
+            double delta = precision == Precision.FLOAT ? 1E-6 : 0;
+            state.visitWeights((layer, neuron, feature) -> assertEquals(state.weight(layer, neuron, feature),
+                    read.weight(layer, neuron, feature), delta));
+            state.visitBiases((layer, neuron) -> assertEquals(state.bias(layer, neuron), read.bias(layer, neuron),
+                    delta));
+        }
+    }
+
+    @Test
+    public void to_bytes() throws IOException {
+        DefaultNetworkState state = new DefaultNetworkState(new Random(12345)::nextGaussian, 2, 2);
+        byte[] bytes = NetworkStateFile.toBytes(state, Precision.DOUBLE);
+        assertEquals(NetworkStateFile.HEADER_SIZE + 2 * Integer.BYTES + 6 * Double.BYTES, bytes.length);
+        Path file = folder.newFile().toPath();
+        NetworkStateFile.write(file, state, Precision.DOUBLE);
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalid_file() throws IOException {
+        NetworkStateFile.read(ByteBuffer.allocate(NetworkStateFile.HEADER_SIZE));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated_file() throws IOException {
+        byte[] bytes = NetworkStateFile.toBytes(new DefaultNetworkState(2, 2), Precision.DOUBLE);
+        NetworkStateFile.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void oversized_header() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(NetworkStateFile.toBytes(new DefaultNetworkState(2, 2), Precision.DOUBLE))
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(3 * Integer.BYTES, Integer.MAX_VALUE); // layers
+        NetworkStateFile.read(buffer);
+    }
+
+    @Test(expected = IOException.class)
+    public void oversized_layers() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(NetworkStateFile.toBytes(new DefaultNetworkState(2, 2), Precision.DOUBLE))
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        // features x neurons weights overflow an int
+        buffer.putInt(4 * Integer.BYTES, 1 << 16); // features
+        buffer.putInt(NetworkStateFile.HEADER_SIZE, 1 << 16); // neurons
+        NetworkStateFile.read(buffer);
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.yah.tests.perceptron;
+
+import org.junit.Test;
+import org.yah.tests.perceptron.base.DefaultNetworkState;
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork;
+import org.yah.tests.perceptron.matrix.array.CMArrayMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PredictionBatcherTest {
+
+    @Test
+    public void concurrent_submit() throws Exception {
+        Random random = new Random(12345);
+        DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 3, 8, 4);
+        state.activation(1, Activation.SOFTMAX);
+        NeuralNetwork network = new MatrixNeuralNetwork<>(CMArrayMatrix::new, state);
+        double[][] inputs = new double[200][3];
+        for (double[] input : inputs) {
+            for (int feature = 0; feature < input.length; feature++)
+                input[feature] = random.nextGaussian();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (PredictionBatcher batcher = new PredictionBatcher(network, 16, 500)) {
+            List<Future<List<CompletableFuture<Integer>>>> tasks = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int first = thread;
+                tasks.add(executor.submit(() -> {
+                    List<CompletableFuture<Integer>> futures = new ArrayList<>();
+                    for (int sample = first; sample < inputs.length; sample += 4)
+                        futures.add(batcher.submit(inputs[sample]));
+                    return futures;
+                }));
+            }
+            for (int thread = 0; thread < 4; thread++) {
+                List<CompletableFuture<Integer>> futures = tasks.get(thread).get();
+                for (int i = 0; i < futures.size(); i++) {
+                    int sample = thread + i * 4;
+                    assertEquals(network.predict(inputs[sample]), (int) futures.get(i).get(5, TimeUnit.SECONDS));
+                }
+            }
+            assertEquals(inputs.length, batcher.predictions());
+            assertTrue(batcher.batches() >= inputs.length / 16);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void closed() throws Exception {
+        NeuralNetwork network = new MatrixNeuralNetwork<>(CMArrayMatrix::new, new DefaultNetworkState(2, 2));
+        PredictionBatcher batcher = new PredictionBatcher(network, 4, 100);
+        batcher.close();
+        CompletableFuture<Integer> future = batcher.submit(new double[2]);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("closed batcher");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void close_interrupted() {
+        NeuralNetwork network = new MatrixNeuralNetwork<>(CMArrayMatrix::new, new DefaultNetworkState(2, 2));
+        PredictionBatcher batcher = new PredictionBatcher(network, 4, 100);
+        Thread.currentThread().interrupt();
+        batcher.close();
+        // interrupt status restored, and cleared for the next tests
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missing_features() throws Exception {
+        NeuralNetwork network = new MatrixNeuralNetwork<>(CMArrayMatrix::new, new DefaultNetworkState(2, 2));
+        try (PredictionBatcher batcher = new PredictionBatcher(network, 4, 100)) {
+            batcher.submit(new double[1]);
+        }
+    }
+
+}
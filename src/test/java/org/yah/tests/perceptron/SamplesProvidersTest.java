@@ -0,0 +1,103 @@
+package org.yah.tests.perceptron;
+
+import org.junit.Test;
+import org.yah.tests.perceptron.SamplesProviders.SamplesProvider;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SamplesProvidersTest {
+
+    private static final double[][] INPUTS = {{1, 2}, {3, 4}, {5, 6}};
+    private static final double[][] TINPUTS = {{1, 3, 5}, {2, 4, 6}};
+
+    private static final double[] EXPECTED = {0, 3, 4, 5, 6, 0};
+
+    @Test
+    public void inputs() {
+        assertInputs(SamplesProviders.newSamplesProvider(INPUTS, false));
+        assertInputs(SamplesProviders.newSamplesProvider(TINPUTS, true));
+        // default implementation
+        SamplesProvider provider = SamplesProviders.newSamplesProvider(INPUTS, false);
+        assertInputs(new SamplesProvider() {
+            @Override
+            public int samples() {
+                return provider.samples();
+            }
+
+            @Override
+            public double input(int sample, int feature) {
+                return provider.input(sample, feature);
+            }
+        });
+    }
+
+    @Test
+    public void flat_inputs() {
+        assertInputs(SamplesProviders.newTrainingProvider(new double[]{1, 2, 3, 4, 5, 6}, 2, null));
+        // less features than stored
+        SamplesProvider provider = SamplesProviders.newTrainingProvider(new double[]{1, 2, 3, 4, 5, 6}, 2, null);
+        double[] target = new double[2];
+        provider.inputs(1, 2, 1, target, 0);
+        assertArrayEquals(new double[]{3, 5}, target, 0);
+    }
+
+    @Test
+    public void single_feature() {
+        SamplesProvider provider = SamplesProviders.newSamplesProvider(new double[][]{{1, 2, 3}}, true);
+        double[] target = new double[2];
+        provider.inputs(1, 2, 1, target, 0);
+        assertArrayEquals(new double[]{2, 3}, target, 0);
+    }
+
+    @Test
+    public void readInputs() {
+        int samples = SamplesProviders.CHUNK_SAMPLES * 2 + 3;
+        double[][] inputs = new double[samples][2];
+        for (int i = 0; i < samples; i++) {
+            inputs[i][0] = i;
+            inputs[i][1] = -i;
+        }
+        SamplesProvider provider = SamplesProviders.newSamplesProvider(inputs, false);
+        double[] target = new double[samples * 2];
+        SamplesProviders.readInputs(provider, 2,
+                (sample, count, values) -> System.arraycopy(values, 0, target, sample * 2, count * 2));
+        for (int i = 0; i < samples; i++) {
+            assertEquals(i, target[i * 2], 0);
+            assertEquals(-i, target[i * 2 + 1], 0);
+        }
+    }
+
+    @Test
+    public void writeInputs() {
+        SamplesProvider provider = SamplesProviders.newSamplesProvider(TINPUTS, true);
+        for (Precision precision : Precision.values()) {
+            ByteBuffer buffer = ByteBuffer.allocate(8 * precision.size()).order(ByteOrder.nativeOrder());
+            buffer.position(precision.size());
+            SamplesProviders.writeInputs(provider, 2, precision, buffer);
+            assertEquals(7 * precision.size(), buffer.position());
+            for (int i = 0; i < 6; i++) {
+                int index = (i + 1) * precision.size();
+                double actual = precision == Precision.FLOAT ? buffer.getFloat(index) : buffer.getDouble(index);
+                assertEquals(i + 1, actual, 0);
+            }
+        }
+    }
+
+    private static void assertInputs(SamplesProvider provider) {
+        double[] target = new double[6];
+        provider.inputs(1, 2, 2, target, 1);
+        assertArrayEquals(EXPECTED, target, 0);
+
+        DoubleBuffer buffer = DoubleBuffer.allocate(6);
+        buffer.position(1);
+        provider.inputs(1, 2, 2, buffer);
+        assertEquals(5, buffer.position());
+        assertArrayEquals(EXPECTED, buffer.array(), 0);
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.yah.tests.perceptron;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SigmoidTableTest {
+
+    private static double sigmoid(double v) {
+        return 1.0 / (1.0 + Math.exp(-v));
+    }
+
+    @Test
+    public void sigmoid() {
+        for (double v = -20; v <= 20; v += 0.001) {
+            assertEquals(sigmoid(v), SigmoidTable.sigmoid(v), 1E-6);
+        }
+        assertEquals(sigmoid(SigmoidTable.MIN), SigmoidTable.sigmoid(Double.NEGATIVE_INFINITY), 0);
+        assertEquals(sigmoid(SigmoidTable.MAX), SigmoidTable.sigmoid(Double.POSITIVE_INFINITY), 0);
+        assertTrue(Double.isNaN(SigmoidTable.sigmoid(Double.NaN)));
+        assertTrue(Float.isNaN(SigmoidTable.sigmoid(Float.NaN)));
+    }
+
+    @Test
+    public void bulk() {
+        double[] src = {-30, -3.3, -1, 0, 0.25, 2, 15.99, 30};
+        double[] dst = new double[src.length + 2];
+        SigmoidTable.sigmoid(src, 1, dst, 2, src.length - 1);
+        assertEquals(0, dst[0], 0);
+        assertEquals(0, dst[1], 0);
+        for (int i = 1; i < src.length; i++) {
+            assertEquals(SigmoidTable.sigmoid(src[i]), dst[i + 1], 0);
+        }
+
+        float[] fsrc = {-3.3f, 0, 2};
+        float[] fdst = new float[fsrc.length];
+        SigmoidTable.sigmoid(fsrc, 0, fdst, 0, fsrc.length);
+        for (int i = 0; i < fsrc.length; i++) {
+            assertEquals(sigmoid(fsrc[i]), fdst[i], 1E-6);
+        }
+    }
+
+}
@@ -2,22 +2,38 @@ package org.yah.tests.perceptron.base;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
-import org.yah.tests.perceptron.AbstractNetworkStateTest;
-import org.yah.tests.perceptron.NetworkDump;
-import org.yah.tests.perceptron.NeuralNetwork;
-import org.yah.tests.perceptron.NeuralNetworkState;
+import org.junit.rules.TemporaryFolder;
+import org.yah.tests.perceptron.*;
+import org.yah.tests.perceptron.NeuralNetworkState.WeightsLayout;
+import org.yah.tests.perceptron.SamplesProviders.TrainingSamplesProvider;
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork;
+import org.yah.tests.perceptron.matrix.array.CMArrayMatrix;
+import org.yah.tests.perceptron.matrix.buffer.CMBufferMatrix;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import java.util.function.DoubleSupplier;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public abstract class AbstractNeuralNetworkTest extends AbstractNetworkStateTest {
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     private List<AutoCloseable> resources;
 
     @Before
@@ -60,19 +76,425 @@ public abstract class AbstractNeuralNetworkTest extends AbstractNetworkStateTest
         updateState(neuralNetwork);
         NeuralNetworkState state = neuralNetwork.getState();
         state.visitWeights((layer, neuron, feature) ->
-                assertEquals(expecteds[layer][neuron][feature], state.weight(layer, neuron, feature), DELTA));
+                assertEquals(expecteds[layer][neuron][feature], state.weight(layer, neuron, feature), delta()));
     }
 
     @Test
     public void dump_n2_2_b0() throws IOException {
         NetworkDump dump = NetworkDump.load(Paths.get("dumps/matrix_n2_2_b0.dump"));
-        dump.test(newNetwork(dump.state));
+        dump.test(newNetwork(dump.state), delta());
     }
 
     @Test
     public void dump_n2_3_2_b0() throws IOException {
         NetworkDump dump = NetworkDump.load(Paths.get("dumps/matrix_n2_3_2_b0.dump"));
-        dump.test(newNetwork(dump.state));
+        dump.test(newNetwork(dump.state), delta());
+    }
+
+    @Test
+    public void train_activations() {
+        Random random = new Random(12345);
+        TrainingSamplesProvider provider = randomSamples(random, 20, 3);
+        for (Activation activation : Activation.values()) {
+            if (activation == Activation.SOFTMAX)
+                continue; // output layer only, see train_softmax
+            DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 2, 4, 4, 3);
+            state.activations(activation, activation, Activation.SIGMOID);
+            assertSameTraining(activation.name(), state, provider, provider);
+        }
+    }
+
+    @Test
+    public void train_softmax() {
+        Random random = new Random(12345);
+        TrainingSamplesProvider provider = randomSamples(random, 20, 3);
+        for (Activation activation : new Activation[] { Activation.SIGMOID, Activation.RELU }) {
+            DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 2, 4, 4, 3);
+            state.activations(activation, activation, Activation.SOFTMAX);
+            assertSameTraining(activation.name(), state, provider, provider);
+        }
+    }
+
+    /**
+     * The ranking rules are tested by {@link ArrayNetworkOutputsTest}, the engine ranks match the reference ones.
+     */
+    @Test
+    public void propagate_ranked() {
+        Random random = new Random(12345);
+        TrainingSamplesProvider provider = randomSamples(random, 20, 4);
+        int samples = provider.samples();
+        DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 2, 5, 4);
+        state.activation(1, Activation.SOFTMAX);
+        NeuralNetwork expected = new MatrixNeuralNetwork<>(CMArrayMatrix::new, state);
+        NeuralNetwork actual = (NeuralNetwork) newState(state);
+        NetworkOutputs expectedOutputs = expected.createOutpus(samples, 3, true);
+        NetworkOutputs actualOutputs = actual.createOutpus(samples, 3, true);
+        NetworkOutputs indices = actual.createOutpus(samples);
+        // several batches
+        expected.propagate(expected.createInputs(provider, 8), expectedOutputs);
+        InputSamples actualInputs = actual.createInputs(provider, 8);
+        actual.propagate(actualInputs, actualOutputs);
+        actual.propagate(actualInputs, indices);
+
+        assertEquals(3, actualOutputs.topK());
+        for (int sample = 0; sample < samples; sample++) {
+            assertEquals(indices.outputIndex(sample), actualOutputs.outputIndex(sample));
+            for (int output = 0; output < actual.outputs(); output++) {
+                assertEquals(expectedOutputs.activation(sample, output), actualOutputs.activation(sample, output),
+                        delta());
+            }
+            for (int rank = 0; rank < 3; rank++) {
+                assertEquals(expectedOutputs.outputIndex(sample, rank), actualOutputs.outputIndex(sample, rank));
+                assertEquals(expectedOutputs.score(sample, rank), actualOutputs.score(sample, rank), delta());
+            }
+        }
+    }
+
+    /**
+     * Off heap samples read in place by the engines of the same precision: a mapped file and a buffer matrix.
+     */
+    @Test
+    public void train_direct() throws IOException {
+        Random random = new Random(12345);
+        double[][] inputs = randomInputs(random, 20);
+        int[] outputIndices = random.ints(inputs.length, 0, 3).toArray();
+        TrainingSamplesProvider provider = SamplesProviders.newTrainingProvider(inputs, false, outputIndices);
+
+        for (Precision precision : Precision.values()) {
+            Path file = folder.newFile("samples_" + precision).toPath();
+            MappedSamples.write(file, provider, 2, precision);
+            assertSameTraining(precision + " mapped", new DefaultNetworkState(random::nextGaussian, 2, 4, 3),
+                    provider, MappedSamples.open(file));
+
+            try (CMBufferMatrix matrix = CMBufferMatrix.allocate(precision, 2, inputs.length)) {
+                for (int sample = 0; sample < inputs.length; sample++) {
+                    matrix.set(0, sample, inputs[sample][0]);
+                    matrix.set(1, sample, inputs[sample][1]);
+                }
+                assertSameTraining(precision + " off heap", new DefaultNetworkState(random::nextGaussian, 2, 4, 3),
+                        provider, matrix.samples(outputIndices));
+            }
+        }
+    }
+
+    @Test
+    public void bulk_after_training() {
+        Random random = new Random(12345);
+        TrainingSamplesProvider provider = randomSamples(random, 20, 3);
+        NeuralNetwork network = (NeuralNetwork) newState(new DefaultNetworkState(random::nextGaussian, 2, 4, 3));
+        network.train(network.createTraining(provider, 8), 0.5);
+
+        NeuralNetworkState trained = network.getState();
+        for (int layer = 0; layer < network.layers(); layer++) {
+            int neurons = network.neurons(layer);
+            int features = network.features(layer);
+            double[] weights = new double[neurons * features];
+            network.getWeights(layer, weights, 0, WeightsLayout.ROW_MAJOR);
+            double[] biases = new double[neurons];
+            network.getBiases(layer, biases, 0);
+            for (int neuron = 0; neuron < neurons; neuron++) {
+                assertEquals(trained.bias(layer, neuron), biases[neuron], 0);
+                for (int feature = 0; feature < features; feature++) {
+                    assertEquals(trained.weight(layer, neuron, feature), weights[neuron * features + feature], 0);
+                }
+            }
+        }
+
+        // bulk set are used by the next propagation
+        NeuralNetwork expected = new MatrixNeuralNetwork<>(CMArrayMatrix::new, trained);
+        for (int layer = 0; layer < network.layers(); layer++) {
+            double[] weights = new double[network.neurons(layer) * network.features(layer)];
+            Arrays.fill(weights, 0.25);
+            expected.setWeights(layer, weights, 0, WeightsLayout.COLUMN_MAJOR);
+            network.setWeights(layer, weights, 0, WeightsLayout.COLUMN_MAJOR);
+        }
+        TrainingSamples expectedSamples = expected.createTraining(provider, 8);
+        TrainingSamples actualSamples = network.createTraining(provider, 8);
+        expected.train(expectedSamples, 0.5);
+        network.train(actualSamples, 0.5);
+        assertSameState(expected, network.getState());
+    }
+
+    @Test
+    public void parameters_handoff() {
+        Random random = new Random(12345);
+        TrainingSamplesProvider provider = randomSamples(random, 20, 3);
+        NeuralNetwork network = (NeuralNetwork) newState(new DefaultNetworkState(random::nextGaussian, 2, 4, 3));
+        TrainingSamples samples = network.createTraining(provider, 8);
+
+        for (Precision precision : Precision.values()) {
+            network.train(samples, 0.5);
+            ByteBuffer parameters = NetworkParameters.allocate(network, precision);
+            network.getParameters(parameters, precision);
+            assertEquals(parameters.capacity(), parameters.position());
+
+            // trained on this engine, served by another one
+            NeuralNetwork served = new MatrixNeuralNetwork<>(CMArrayMatrix::new,
+                    new DefaultNetworkState(2, 4, 3));
+            served.setParameters(parameters.flip(), precision);
+            assertSameState(network.getState(), served);
+
+            // and back
+            served.train(served.createTraining(provider, 8), 0.5);
+            parameters.clear();
+            served.getParameters(parameters, precision);
+            network.setParameters(parameters.flip(), precision);
+            assertSameState(served, network);
+            NeuralNetwork expected = new MatrixNeuralNetwork<>(CMArrayMatrix::new, served);
+            expected.train(expected.createTraining(provider, 8), 0.5);
+            network.train(samples, 0.5);
+            assertSameState(expected, network.getState());
+        }
+    }
+
+    @Test
+    public void snapshots() throws Exception {
+        Random random = new Random(12345);
+        TrainingSamplesProvider provider = randomSamples(random, 20, 3);
+        NeuralNetwork network = (NeuralNetwork) newState(new DefaultNetworkState(random::nextGaussian, 2, 4, 3));
+        TrainingSamples samples = network.createTraining(provider, 8);
+
+        NetworkSnapshot initial = network.snapshot();
+        assertEquals(0, initial.epoch());
+        assertSameState(network.getState(), initial);
+
+        network.train(samples, 0.5);
+        NetworkSnapshot snapshot = network.publishSnapshot().get(5, TimeUnit.SECONDS);
+        assertEquals(1, snapshot.epoch());
+        assertSame(snapshot, network.snapshot());
+        NeuralNetworkState trained = network.getState();
+        assertSameState(trained, snapshot);
+
+        // automatic snapshots
+        network.snapshotInterval(2);
+        network.train(samples, 0.5);
+        awaitSnapshot(network, 2);
+        network.train(samples, 0.5);
+        assertEquals(2, network.snapshot().epoch());
+        network.train(samples, 0.5);
+        awaitSnapshot(network, 4);
+        assertSameState(network.getState(), network.snapshot());
+        // older snapshots are unchanged
+        assertSameState(trained, snapshot);
+    }
+
+    @Test
+    public void train_shuffled() {
+        Random random = new Random(12345);
+        double[][] inputs = randomInputs(random, 20);
+        int[] outputIndices = random.ints(inputs.length, 0, 3).toArray();
+        TrainingSamplesProvider provider = SamplesProviders.newTrainingProvider(inputs, false, outputIndices);
+
+        DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 2, 4, 3);
+        NeuralNetwork expected = new MatrixNeuralNetwork<>(CMArrayMatrix::new, state);
+        NeuralNetwork actual = (NeuralNetwork) newState(state);
+        TrainingSamples actualSamples = actual.createTraining(provider, 8);
+        Random expectedRandom = new Random(42), actualRandom = new Random(42);
+        int[] permutation = null;
+        for (int epoch = 0; epoch < 3; epoch++) {
+            permutation = SamplesIndices.shuffle(permutation, inputs.length, expectedRandom);
+            expected.train(expected.createTraining(select(inputs, outputIndices, permutation), 8), 0.5);
+            actualSamples.shuffle(actualRandom);
+            actual.train(actualSamples, 0.5);
+        }
+        assertSameState(expected, actual.getState());
+    }
+
+    @Test
+    public void train_selected() {
+        Random random = new Random(12345);
+        double[][] inputs = randomInputs(random, 20);
+        int[] outputIndices = random.ints(inputs.length, 0, 3).toArray();
+        TrainingSamplesProvider provider = SamplesProviders.newTrainingProvider(inputs, false, outputIndices);
+        // bootstrap like selection, with repeated samples
+        int[] selection = {3, 17, 3, 0, 9, 9, 12, 5, 19, 1, 3};
+
+        DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 2, 4, 3);
+        NeuralNetwork expected = new MatrixNeuralNetwork<>(CMArrayMatrix::new, state);
+        NeuralNetwork actual = (NeuralNetwork) newState(state);
+        TrainingSamples expectedSamples = expected.createTraining(select(inputs, outputIndices, selection), 4);
+        TrainingSamples actualSamples = actual.createTraining(provider, 4).select(selection);
+        assertEquals(selection.length, actualSamples.size());
+        for (int epoch = 0; epoch < 3; epoch++) {
+            expected.train(expectedSamples, 0.5);
+            actual.train(actualSamples, 0.5);
+        }
+        assertSameState(expected, actual.getState());
+        assertEquals(expected.evaluate(expectedSamples), actual.evaluate(actualSamples), 0);
+    }
+
+    @Test
+    public void predict() {
+        Random random = new Random(12345);
+        double[][] inputs = randomInputs(random, 20);
+        int[] outputIndices = random.ints(inputs.length, 0, 4).toArray();
+        TrainingSamplesProvider provider = SamplesProviders.newTrainingProvider(inputs, false, outputIndices);
+
+        DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 2, 5, 4);
+        state.activation(1, Activation.SOFTMAX);
+        NeuralNetwork network = (NeuralNetwork) newState(state);
+        TrainingSamples samples = network.createTraining(provider, 8);
+        // before and after training: the predictions follow the model
+        assertPredictions(network, samples, inputs);
+        network.train(samples, 0.5);
+        assertPredictions(network, samples, inputs);
+    }
+
+    @Test
+    public void approximate() {
+        Random random = new Random(12345);
+        double[][] inputs = randomInputs(random, 10);
+        int[] outputIndices = random.ints(inputs.length, 0, 4).toArray();
+        TrainingSamplesProvider provider = SamplesProviders.newTrainingProvider(inputs, false, outputIndices);
+        DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 2, 5, 4);
+        state.activation(0, Activation.TANH);
+        NeuralNetwork exact = (NeuralNetwork) newState(state);
+        NeuralNetwork approximate = (NeuralNetwork) newState(state);
+        exact.approximate(false);
+        try {
+            approximate.approximate(true);
+        } catch (UnsupportedOperationException e) {
+            // exact only engine
+            assertFalse(approximate.approximate());
+            return;
+        }
+        // the mode is per network
+        assertTrue(approximate.approximate());
+        assertFalse(exact.approximate());
+        for (NeuralNetwork network : new NeuralNetwork[]{exact, approximate}) {
+            assertPredictions(network, network.createTraining(provider, 4), inputs);
+            SamplePredictor expected = new SamplePredictor(state, Precision.DOUBLE, network.approximate());
+            double[] expectedScores = new double[network.outputs()], scores = new double[network.outputs()];
+            for (double[] sample : inputs) {
+                assertEquals(expected.predict(sample, expectedScores), network.predict(sample, scores));
+                for (int output = 0; output < network.outputs(); output++)
+                    assertEquals(expectedScores[output], scores[output], delta());
+            }
+        }
+    }
+
+    @Test
+    public void predict_non_positive_outputs() {
+        double[][] inputs = { { 1, 2 }, { 2, 1 }, { 0.5, 0.5 } };
+        int[] outputIndices = { 0, 1, 2 };
+        TrainingSamplesProvider provider = SamplesProviders.newTrainingProvider(inputs, false, outputIndices);
+        // negative weights and biases of positive inputs: every tanh output is negative
+        double[] next = { 0 };
+        DefaultNetworkState state = new DefaultNetworkState(() -> next[0] -= 0.1, 2, 3);
+        state.activation(0, Activation.TANH);
+        NeuralNetwork network = (NeuralNetwork) newState(state);
+        TrainingSamples samples = network.createTraining(provider, 2);
+        NetworkOutputs ranked = network.createOutpus(inputs.length, 1, true);
+        network.propagate(samples, ranked);
+        NetworkOutputs outputs = network.createOutpus(inputs.length);
+        network.propagate(samples, outputs);
+        for (int sample = 0; sample < inputs.length; sample++) {
+            int expected = 0;
+            for (int output = 1; output < network.outputs(); output++) {
+                if (ranked.activation(sample, output) > ranked.activation(sample, expected))
+                    expected = output;
+            }
+            assertTrue(ranked.activation(sample, expected) < 0);
+            assertEquals(expected, outputs.outputIndex(sample));
+            assertEquals(expected, network.predict(inputs[sample]));
+        }
+    }
+
+    @Test
+    public void load_inputs() {
+        Random random = new Random(12345);
+        NeuralNetwork network = (NeuralNetwork) newState(new DefaultNetworkState(random::nextGaussian, 2, 4, 3));
+        InputSamples samples = network.createInputs(SamplesProviders.newSamplesProvider(randomInputs(random, 8),
+                false), 3);
+        NetworkOutputs outputs = network.createOutpus(8);
+        double[][] inputs = randomInputs(random, 5);
+        samples.load(SamplesProviders.newSamplesProvider(inputs, false));
+        assertEquals(5, samples.size());
+        network.propagate(samples, outputs);
+        for (int sample = 0; sample < inputs.length; sample++) {
+            assertEquals(network.predict(inputs[sample]), outputs.outputIndex(sample));
+        }
+    }
+
+    private void assertPredictions(NeuralNetwork network, TrainingSamples samples, double[][] inputs) {
+        NetworkOutputs outputs = network.createOutpus(inputs.length, 1, true);
+        network.propagate(samples, outputs);
+        double[] scores = new double[network.outputs()];
+        DoubleBuffer buffer = DoubleBuffer.allocate(3);
+        for (int sample = 0; sample < inputs.length; sample++) {
+            assertEquals(outputs.outputIndex(sample), network.predict(inputs[sample]));
+            assertEquals(outputs.outputIndex(sample), network.predict(inputs[sample], scores));
+            for (int output = 0; output < network.outputs(); output++) {
+                assertEquals(outputs.activation(sample, output), scores[output], delta());
+            }
+            buffer.clear();
+            buffer.put(0).put(inputs[sample]).position(1);
+            assertEquals(outputs.outputIndex(sample), network.predict(buffer, null));
+            assertEquals(1, buffer.position());
+        }
+    }
+
+    private static void awaitSnapshot(NeuralNetwork network, int epoch) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (network.snapshot().epoch() < epoch && System.currentTimeMillis() < timeout)
+            Thread.sleep(1);
+        assertEquals(epoch, network.snapshot().epoch());
+    }
+
+    /**
+     * Train a reference {@link MatrixNeuralNetwork} over {@link CMArrayMatrix} and a network of this engine from the
+     * same state, 3 epochs in batches of 8 samples, then compare their states.
+     *
+     * @param actualProvider the samples of the tested network, the same as the reference ones in another storage
+     */
+    private void assertSameTraining(String message, NeuralNetworkState state, TrainingSamplesProvider provider,
+                                    TrainingSamplesProvider actualProvider) {
+        NeuralNetwork expected = new MatrixNeuralNetwork<>(CMArrayMatrix::new, state);
+        NeuralNetwork actual = (NeuralNetwork) newState(state);
+        TrainingSamples expectedSamples = expected.createTraining(provider, 8);
+        TrainingSamples actualSamples = actual.createTraining(actualProvider, 8);
+        for (int epoch = 0; epoch < 3; epoch++) {
+            expected.train(expectedSamples, 0.5);
+            actual.train(actualSamples, 0.5);
+        }
+        assertSameState(message, expected, actual.getState());
+    }
+
+    private static TrainingSamplesProvider randomSamples(Random random, int samples, int outputs) {
+        double[][] inputs = randomInputs(random, samples);
+        int[] outputIndices = random.ints(samples, 0, outputs).toArray();
+        return SamplesProviders.newTrainingProvider(inputs, false, outputIndices);
+    }
+
+    private static double[][] randomInputs(Random random, int samples) {
+        double[][] inputs = new double[samples][2];
+        for (int sample = 0; sample < samples; sample++) {
+            // exact in float
+            inputs[sample][0] = random.nextInt(64) / 16.0 - 2;
+            inputs[sample][1] = random.nextInt(64) / 16.0 - 2;
+        }
+        return inputs;
+    }
+
+    private static TrainingSamplesProvider select(double[][] inputs, int[] outputIndices, int[] indices) {
+        double[][] selectedInputs = new double[indices.length][];
+        int[] selectedOutputs = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            selectedInputs[i] = inputs[indices[i]];
+            selectedOutputs[i] = outputIndices[indices[i]];
+        }
+        return SamplesProviders.newTrainingProvider(selectedInputs, false, selectedOutputs);
+    }
+
+    private void assertSameState(NeuralNetworkState expected, NeuralNetworkState actual) {
+        assertSameState("", expected, actual);
+    }
+
+    private void assertSameState(String message, NeuralNetworkState expected, NeuralNetworkState actual) {
+        expected.visitWeights((layer, neuron, feature) -> assertEquals(message + " weight",
+                expected.weight(layer, neuron, feature), actual.weight(layer, neuron, feature), delta()));
+        expected.visitBiases((layer, neuron) -> assertEquals(message + " bias",
+                expected.bias(layer, neuron), actual.bias(layer, neuron), delta()));
     }
 
     protected abstract NeuralNetwork newNetwork(NeuralNetworkState state);
@@ -0,0 +1,81 @@
+package org.yah.tests.perceptron.base;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArrayNetworkOutputsTest {
+
+    /**
+     * 4 outputs (rows) of 2 samples (columns)
+     */
+    private static final double[][] VALUES = {
+            { 0.1, -3 },
+            { 0.4, -1 },
+            { 0.2, -1 },
+            { 0.3, -2 }
+    };
+
+    /**
+     * VALUES backing array, rows are contiguous: the column c starts at c with a stride of 2
+     */
+    private static final double[] DATA = { 0.1, -3, 0.4, -1, 0.2, -1, 0.3, -2 };
+
+    @Test
+    public void ranked() {
+        ArrayNetworkOutputs outputs = new ArrayNetworkOutputs(2, 4, 3, true);
+        assertTrue(outputs.ranked());
+        assertEquals(1, outputs.set(0, DATA, 0, 2));
+        // equal activations keep the lowest index first, as maxRowIndex
+        assertEquals(1, outputs.set(1, DATA, 1, 2));
+
+        int[][] expectedRanks = { { 1, 3, 2 }, { 1, 2, 3 } };
+        for (int sample = 0; sample < 2; sample++) {
+            assertEquals(expectedRanks[sample][0], outputs.outputIndex(sample));
+            for (int rank = 0; rank < 3; rank++) {
+                int output = expectedRanks[sample][rank];
+                assertEquals(output, outputs.outputIndex(sample, rank));
+                assertEquals(VALUES[output][sample], outputs.score(sample, rank), 0);
+            }
+            for (int output = 0; output < 4; output++) {
+                assertEquals(VALUES[output][sample], outputs.activation(sample, output), 0);
+            }
+        }
+    }
+
+    @Test
+    public void without_activations() {
+        ArrayNetworkOutputs outputs = new ArrayNetworkOutputs(1, 4, 1, false);
+        assertEquals(1, outputs.set(0, DATA, 0, 2));
+        assertTrue(outputs.hasScores());
+        assertFalse(outputs.hasActivations());
+        assertEquals(0.4, outputs.score(0, 0), 0);
+    }
+
+    @Test
+    public void ranked_floats() {
+        float[] data = new float[DATA.length + 1];
+        for (int i = 0; i < DATA.length; i++)
+            data[i + 1] = (float) DATA[i];
+        ArrayNetworkOutputs outputs = new ArrayNetworkOutputs(2, 4, 2, true);
+        assertEquals(1, outputs.set(0, data, 1, 2));
+        assertEquals(1, outputs.set(1, data, 2, 2));
+        assertEquals(3, outputs.outputIndex(0, 1));
+        assertEquals(2, outputs.outputIndex(1, 1));
+        assertEquals((float) 0.4, outputs.score(0, 0), 0);
+        assertEquals((float) -2, outputs.activation(1, 3), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rank_out_of_top_k() {
+        new ArrayNetworkOutputs(1, 4, 2, false).outputIndex(0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_top_k() {
+        new ArrayNetworkOutputs(1, 4, 5, false);
+    }
+
+}
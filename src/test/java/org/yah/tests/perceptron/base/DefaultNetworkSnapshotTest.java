@@ -0,0 +1,41 @@
+package org.yah.tests.perceptron.base;
+
+import org.junit.Test;
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.NetworkParameters;
+import org.yah.tests.perceptron.Precision;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class DefaultNetworkSnapshotTest {
+
+    @Test
+    public void from_parameters() {
+        DefaultNetworkState state = new DefaultNetworkState(new Random(12345)::nextGaussian, 2, 3, 2);
+        state.activations(Activation.RELU, Activation.SOFTMAX);
+        state.bias(1, 1, 0.5);
+        ByteBuffer parameters = NetworkParameters.allocate(state, Precision.DOUBLE);
+        state.getParameters(parameters, Precision.DOUBLE);
+
+        DefaultNetworkSnapshot snapshot = new DefaultNetworkSnapshot(state, 12, parameters.flip(), Precision.DOUBLE);
+        assertEquals(12, snapshot.epoch());
+        assertEquals(Activation.SOFTMAX, snapshot.activation(1));
+        assertEquals(0.5, snapshot.bias(1, 1), 0);
+        state.visitWeights((layer, neuron, feature) ->
+                assertEquals(state.weight(layer, neuron, feature), snapshot.weight(layer, neuron, feature), 0));
+
+        // independent of the source
+        state.bias(1, 1, 2);
+        assertEquals(0.5, snapshot.bias(1, 1), 0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable() {
+        DefaultNetworkSnapshot snapshot = new DefaultNetworkSnapshot(new DefaultNetworkState(2, 3, 2), 0);
+        snapshot.weight(0, 0, 0, 1);
+    }
+
+}
@@ -2,6 +2,7 @@ package org.yah.tests.perceptron.base;
 
 import org.junit.Test;
 import org.yah.tests.perceptron.AbstractNetworkStateTest;
+import org.yah.tests.perceptron.Activation;
 import org.yah.tests.perceptron.NeuralNetworkState;
 
 import java.util.function.DoubleSupplier;
@@ -19,4 +20,10 @@ public class DefaultNetworkStateTest extends AbstractNetworkStateTest {
     protected NeuralNetworkState newState(NeuralNetworkState from) {
         return new DefaultNetworkState(from);
     }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hidden_softmax() {
+        DefaultNetworkState state = new DefaultNetworkState(2, 3, 2);
+        state.activation(0, Activation.SOFTMAX);
+    }
 }
\ No newline at end of file
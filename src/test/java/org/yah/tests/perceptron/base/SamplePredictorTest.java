@@ -0,0 +1,95 @@
+package org.yah.tests.perceptron.base;
+
+import org.junit.Test;
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
+
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SamplePredictorTest {
+
+    @Test
+    public void predict_double() {
+        Random random = new Random(12345);
+        DefaultNetworkState state = newState(random);
+        SamplePredictor predictor = new SamplePredictor(state);
+        for (int sample = 0; sample < 10; sample++) {
+            double[] inputs = random.doubles(3, -1, 1).toArray();
+            double[] expected = forward(state, inputs);
+            assertPrediction(predictor, inputs, expected);
+        }
+    }
+
+    @Test
+    public void predict_float() {
+        Random random = new Random(12345);
+        DefaultNetworkState state = newState(random);
+        SamplePredictor predictor = new SamplePredictor(state, Precision.FLOAT);
+        for (int sample = 0; sample < 10; sample++) {
+            double[] inputs = random.doubles(3, -1, 1).toArray();
+            double[] expected = forwardFloat(state, inputs);
+            assertPrediction(predictor, inputs, expected);
+        }
+    }
+
+    private static DefaultNetworkState newState(Random random) {
+        DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 3, 4, 2);
+        state.activation(0, Activation.RELU);
+        state.activation(1, Activation.LEAKY_RELU);
+        return state;
+    }
+
+    private static void assertPrediction(SamplePredictor predictor, double[] inputs, double[] expected) {
+        int expectedIndex = expected[1] > expected[0] ? 1 : 0;
+        double[] scores = new double[2];
+        assertEquals(expectedIndex, predictor.predict(inputs, scores));
+        assertEquals(expected[0], scores[0], 0);
+        assertEquals(expected[1], scores[1], 0);
+        assertEquals(expectedIndex, predictor.predict(DoubleBuffer.wrap(inputs), scores));
+        assertEquals(expected[0], scores[0], 0);
+        assertEquals(expected[1], scores[1], 0);
+    }
+
+    private static double[] forward(NeuralNetworkState state, double[] inputs) {
+        for (int layer = 0; layer < state.layers(); layer++) {
+            double[] outputs = new double[state.neurons(layer)];
+            for (int neuron = 0; neuron < outputs.length; neuron++) {
+                double z = state.bias(layer, neuron);
+                for (int feature = 0; feature < inputs.length; feature++)
+                    z += state.weight(layer, neuron, feature) * inputs[feature];
+                outputs[neuron] = state.activation(layer).activate(z);
+            }
+            inputs = outputs;
+        }
+        return inputs;
+    }
+
+    /**
+     * same pass on float parameters and float arithmetic, as the FLOAT engines
+     */
+    private static double[] forwardFloat(NeuralNetworkState state, double[] values) {
+        float[] inputs = new float[values.length];
+        for (int i = 0; i < values.length; i++)
+            inputs[i] = (float) values[i];
+        for (int layer = 0; layer < state.layers(); layer++) {
+            float[] outputs = new float[state.neurons(layer)];
+            for (int neuron = 0; neuron < outputs.length; neuron++) {
+                float z = (float) state.bias(layer, neuron);
+                for (int feature = 0; feature < inputs.length; feature++)
+                    z += (float) state.weight(layer, neuron, feature) * inputs[feature];
+                outputs[neuron] = state.activation(layer) == Activation.RELU
+                                  ? Activation.relu(z) : Activation.leaky_relu(z);
+            }
+            inputs = outputs;
+        }
+        double[] res = new double[inputs.length];
+        for (int i = 0; i < inputs.length; i++)
+            res[i] = inputs[i];
+        return res;
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.yah.tests.perceptron.base;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SamplesIndicesTest {
+
+    @Test
+    public void shuffle() {
+        int[] indices = SamplesIndices.shuffle(null, 100, new Random(12345));
+        assertEquals(100, indices.length);
+        int[] sorted = indices.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(i, sorted[i]);
+        }
+        // shuffled in place
+        assertSame(indices, SamplesIndices.shuffle(indices, 100, new Random(12345)));
+    }
+
+    @Test
+    public void select() {
+        assertArrayEquals(new int[]{2, 2, 0}, SamplesIndices.select(null, 3, new int[]{2, 2, 0}));
+        int[] indices = {5, 3, 4};
+        assertArrayEquals(new int[]{4, 5}, SamplesIndices.select(indices, 3, new int[]{2, 0}));
+        assertEquals(4, SamplesIndices.index(indices, 2));
+        assertEquals(2, SamplesIndices.index(null, 2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void select_out_of_bounds() {
+        SamplesIndices.select(null, 3, new int[]{3});
+    }
+
+}
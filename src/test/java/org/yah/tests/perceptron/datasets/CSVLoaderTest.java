@@ -0,0 +1,88 @@
+package org.yah.tests.perceptron.datasets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+public class CSVLoaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void load() throws IOException {
+        Path file = write("x,y,class\n1.5, 2,setosa\r\n-3,4e1,virginica\n\n5,6,setosa");
+        Dataset dataset = CSVLoader.load(file, -1, true);
+        assertEquals(3, dataset.samples());
+        assertEquals(2, dataset.features());
+        assertEquals(2, dataset.outputs());
+        assertEquals("setosa", dataset.label(0));
+        assertEquals("virginica", dataset.label(1));
+        assertEquals(1.5, dataset.input(0, 0), 0);
+        assertEquals(2, dataset.input(0, 1), 0);
+        assertEquals(-3, dataset.input(1, 0), 0);
+        assertEquals(40, dataset.input(1, 1), 0);
+        assertEquals(6, dataset.input(2, 1), 0);
+        assertEquals(0, dataset.outputIndex(0));
+        assertEquals(1, dataset.outputIndex(1));
+        assertEquals(0, dataset.outputIndex(2));
+    }
+
+    @Test
+    public void numeric_labels() throws IOException {
+        Path file = write("10,1,2\n2,3,4\n-1,5,6\n");
+        Dataset dataset = CSVLoader.load(file, 0, false);
+        assertEquals(3, dataset.outputs());
+        assertEquals("-1", dataset.label(0));
+        assertEquals("2", dataset.label(1));
+        assertEquals("10", dataset.label(2));
+        assertEquals(2, dataset.outputIndex(0));
+        assertEquals(1, dataset.input(0, 0), 0);
+        assertEquals(6, dataset.input(2, 1), 0);
+    }
+
+    @Test
+    public void parallel_chunks() throws IOException {
+        Path file = folder.newFile().toPath();
+        int samples = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("a,b,label\n");
+            while (Files.size(file) < CSVLoader.CHUNK_SIZE * 3L) {
+                for (int i = 0; i < 10000; i++, samples++) {
+                    writer.write(samples + "," + (-samples) + "," + (samples % 3) + "\n");
+                }
+                writer.flush();
+            }
+        }
+        Dataset dataset = CSVLoader.load(file, -1, true);
+        assertEquals(samples, dataset.samples());
+        for (int sample = 0; sample < samples; sample++) {
+            assertEquals(sample, dataset.input(sample, 0), 0);
+            assertEquals(-sample, dataset.input(sample, 1), 0);
+            assertEquals(sample % 3, dataset.outputIndex(sample));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void invalid_value() throws IOException {
+        CSVLoader.load(write("1,2,0\n3,x,1\n"), -1, false);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalid_columns() throws IOException {
+        CSVLoader.load(write("1,2,0\n3,1\n"), -1, false);
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes());
+        return file;
+    }
+}
@@ -0,0 +1,100 @@
+package org.yah.tests.perceptron.datasets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class IDXLoaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void load() throws IOException {
+        // 3 images of 2 x 2
+        Path images = write("images", false, 0x0803, new int[]{3, 2, 2},
+                new byte[]{0, (byte) 255, 51, 102, 1, 2, 3, 4, 5, 6, 7, 8});
+        Path labels = write("labels", false, 0x0801, new int[]{3}, new byte[]{7, 2, 7});
+        Dataset dataset = IDXLoader.load(images, labels);
+
+        assertEquals(3, dataset.samples());
+        assertEquals(4, dataset.features());
+        assertEquals(2, dataset.outputs());
+        assertEquals("2", dataset.label(0));
+        assertEquals("7", dataset.label(1));
+        assertEquals(1, dataset.outputIndex(0));
+        assertEquals(0, dataset.outputIndex(1));
+        assertEquals(1, dataset.outputIndex(2));
+
+        double[] inputs = new double[4];
+        dataset.inputs(0, 1, 4, inputs, 0);
+        assertArrayEquals(new double[]{0, 1, 0.2, 0.4}, inputs, 1E-15);
+        assertEquals(8 / 255.0, dataset.input(2, 3), 1E-15);
+    }
+
+    @Test
+    public void load_gzip() throws IOException {
+        ByteBuffer values = ByteBuffer.allocate(4 * Float.BYTES);
+        values.putFloat(1.5f).putFloat(-2).putFloat(3).putFloat(4);
+        Path images = write("images.gz", true, 0x0D02, new int[]{2, 2}, values.array());
+        Path labels = write("labels.gz", true, 0x0801, new int[]{2}, new byte[]{0, 1});
+        Dataset dataset = IDXLoader.load(images, labels);
+
+        assertEquals(2, dataset.samples());
+        assertEquals(2, dataset.features());
+        assertEquals(1.5, dataset.input(0, 0), 0);
+        assertEquals(-2, dataset.input(0, 1), 0);
+        assertEquals(4, dataset.input(1, 1), 0);
+    }
+
+    @Test
+    public void parallel_chunks() throws IOException {
+        int count = IDXLoader.CHUNK_SAMPLES * 3 + 5;
+        byte[] pixels = new byte[count];
+        byte[] labelValues = new byte[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = (byte) i;
+            labelValues[i] = (byte) (i % 10);
+        }
+        Path images = write("images", false, 0x0802, new int[]{count, 1}, pixels);
+        Path labels = write("labels", false, 0x0801, new int[]{count}, labelValues);
+        Dataset dataset = IDXLoader.load(images, labels);
+        assertEquals(10, dataset.outputs());
+        for (int i = 0; i < count; i++) {
+            assertEquals((i & 0xFF) / 255.0, dataset.input(i, 0), 1E-15);
+            assertEquals(i % 10, dataset.outputIndex(i));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void labels_count() throws IOException {
+        Path images = write("images", false, 0x0802, new int[]{2, 1}, new byte[]{1, 2});
+        Path labels = write("labels", false, 0x0801, new int[]{1}, new byte[]{1});
+        IDXLoader.load(images, labels);
+    }
+
+    private Path write(String name, boolean gzip, int magic, int[] dimensions, byte[] data) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * (1 + dimensions.length));
+        header.putInt(magic);
+        for (int dimension : dimensions) {
+            header.putInt(dimension);
+        }
+        Path path = folder.getRoot().toPath().resolve(name);
+        try (OutputStream os = gzip ? new GZIPOutputStream(Files.newOutputStream(path))
+                : Files.newOutputStream(path)) {
+            os.write(header.array());
+            os.write(data);
+        }
+        return path;
+    }
+}
@@ -1,15 +1,26 @@
 package org.yah.tests.perceptron.jni;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
 import java.util.function.Consumer;
 
+import org.junit.Test;
+import org.yah.tests.perceptron.InputSamples;
+import org.yah.tests.perceptron.MappedSamples;
+import org.yah.tests.perceptron.NetworkOutputs;
 import org.yah.tests.perceptron.NeuralNetwork;
 import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.SamplesProviders;
 import org.yah.tests.perceptron.base.AbstractNeuralNetworkTest;
 import org.yah.tests.perceptron.base.DefaultNetworkState;
 
 import javax.management.JMX;
 import javax.management.MBeanServer;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * @author Yah
  */
@@ -19,6 +30,30 @@ public class NativeNeuralNetworkTest extends AbstractNeuralNetworkTest {
         System.out.println("PID: " + ProcessHandle.current().pid());
     }
 
+    @Test
+    public void propagate_unlabeled_mapped() throws IOException {
+        Random random = new Random(12345);
+        double[][] inputs = new double[10][2];
+        for (double[] input : inputs) {
+            // exact in float
+            input[0] = random.nextInt(64) / 16.0 - 2;
+            input[1] = random.nextInt(64) / 16.0 - 2;
+        }
+        NeuralNetwork network = (NeuralNetwork) newState(new DefaultNetworkState(random::nextGaussian, 2, 4, 3));
+        // the file precision matching the network uses the mapped inputs in place, the other copies them
+        for (Precision precision : Precision.values()) {
+            Path file = folder.newFile("unlabeled_" + precision).toPath();
+            MappedSamples.write(file, SamplesProviders.newSamplesProvider(inputs, false), 2, precision);
+            InputSamples samples = network.createInputs(MappedSamples.open(file), 4);
+            NetworkOutputs outputs = network.createOutpus(inputs.length);
+            network.propagate(samples, outputs);
+            for (int sample = 0; sample < inputs.length; sample++) {
+                assertEquals(precision + " sample " + sample, network.predict(inputs[sample]),
+                        outputs.outputIndex(sample));
+            }
+        }
+    }
+
     @Override
     protected NeuralNetwork newNetwork(NeuralNetworkState state) {
         return new NativeNeuralNetwork(state);
@@ -1,17 +1,26 @@
 package org.yah.tests.perceptron.matrix;
 
 import org.junit.Before;
-import org.yah.tests.perceptron.NeuralNetwork;
-import org.yah.tests.perceptron.NeuralNetworkState;
+import org.junit.Test;
+import org.yah.tests.perceptron.*;
 import org.yah.tests.perceptron.base.AbstractNeuralNetworkTest;
 import org.yah.tests.perceptron.base.DefaultNetworkState;
 import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork.MatrixFactory;
 import org.yah.tests.perceptron.matrix.array.CMArrayMatrix;
 import org.yah.tests.perceptron.mt.MTNeuralNetwork;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.DoubleSupplier;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * @author Yah
  */
@@ -40,6 +49,42 @@ public abstract class AbstractMatrixNeuralNetworkTest<M extends Matrix<M>> exten
         ((MatrixNeuralNetwork<?>) network).updateModel();
     }
 
+    @Test
+    public void concurrent_propagate() throws Exception {
+        Random random = new Random(12345);
+        double[][] inputs = new double[200][2];
+        for (double[] input : inputs) {
+            input[0] = random.nextGaussian();
+            input[1] = random.nextGaussian();
+        }
+        NeuralNetwork network = newNetwork(new DefaultNetworkState(random::nextGaussian, 2, 8, 4));
+        InputSamples samples = network.createInputs(SamplesProviders.newSamplesProvider(inputs, false), 16);
+        NetworkOutputs expected = network.createOutpus(inputs.length, 2, true);
+        network.propagate(samples, expected);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<NetworkOutputs>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> {
+                    NetworkOutputs outputs = network.createOutpus(inputs.length, 2, true);
+                    network.propagate(samples, outputs);
+                    return outputs;
+                }));
+            }
+            for (Future<NetworkOutputs> future : futures) {
+                NetworkOutputs actual = future.get(10, TimeUnit.SECONDS);
+                for (int sample = 0; sample < inputs.length; sample++) {
+                    assertEquals(expected.outputIndex(sample, 1), actual.outputIndex(sample, 1));
+                    assertEquals(expected.score(sample, 0), actual.score(sample, 0), 0);
+                    assertEquals(expected.activation(sample, 3), actual.activation(sample, 3), 0);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     protected abstract MatrixFactory<M> createMatrixFactory();
 
 }
@@ -128,6 +128,16 @@ public abstract class AbstractMatrixTest<M extends Matrix<M>> {
         assertMatrix(new double[][] {}, matrix);
     }
 
+    @Test
+    public void testSetColumns() {
+        matrix.setColumns(1, 2, new double[] { 0, 7, 8, 9, 10 }, 1);
+        assertMatrix(new double[][] { { 1, 4 }, { 7, 8 }, { 9, 10 } }, matrix);
+
+        matrix.slide(1, 2);
+        matrix.setColumns(1, 1, new double[] { 11, 12 }, 0);
+        assertMatrix(new double[][] { { 7, 8 }, { 11, 12 } }, matrix);
+    }
+
     @Test
     public void testSlidingSub() {
         M m2 = createMatrix(new double[][] { { 1, 3 }, { 2, 5 } });
@@ -161,13 +171,21 @@ public abstract class AbstractMatrixTest<M extends Matrix<M>> {
         assertEquals(0, matrix.maxRowIndex(1));
     }
 
+    @Test
+    public void testMaxRowIndexNonPositive() {
+        matrix = createMatrix(new double[][] { { -4, -3 }, { 0, -7 }, { -1, -1 } });
+        assertEquals(1, matrix.maxRowIndex(0));
+        assertEquals(0, matrix.maxRowIndex(1));
+        assertEquals(0, matrix.maxRowIndex(2));
+    }
+
     @Test
     public void testSigmoid() {
         M result = createMatrix(matrix.rows(), matrix.columns());
         matrix.sigmoid(result);
         for (int r = 0; r < matrix.rows(); r++) {
             for (int c = 0; c < matrix.columns(); c++) {
-                Assert.assertEquals(Activation.sigmoid(matrix.get(r, c)), result.get(r, c), 0);
+                Assert.assertEquals(Activation.sigmoid(matrix.get(r, c)), result.get(r, c), delta());
             }
         }
     }
@@ -178,10 +196,80 @@ public abstract class AbstractMatrixTest<M extends Matrix<M>> {
         matrix.sigmoid_prime(result);
         for (int r = 0; r < matrix.rows(); r++) {
             for (int c = 0; c < matrix.columns(); c++) {
-                assertEquals(Activation.sigmoid_prime(matrix.get(r, c)), result.get(r, c), 0);
+                assertEquals(Activation.sigmoid_prime(matrix.get(r, c)), result.get(r, c), delta());
             }
         }
     }
+    @Test
+    public void testActivate() {
+        M values = createMatrix(new double[][] { { -1, 4 }, { 2, -5 }, { 0.5, -6 } });
+        for (Activation activation : Activation.values()) {
+            if (activation == Activation.SOFTMAX)
+                continue; // not element wise
+            M result = createMatrix(values.rows(), values.columns());
+            values.activate(activation, result);
+            for (int r = 0; r < values.rows(); r++) {
+                for (int c = 0; c < values.columns(); c++) {
+                    assertEquals(activation.name(), activation.activate(values.get(r, c)), result.get(r, c), delta());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDerivative() {
+        M values = createMatrix(new double[][] { { -1, 4 }, { 2, -5 }, { 0.5, -6 } });
+        for (Activation activation : Activation.values()) {
+            if (activation == Activation.SOFTMAX)
+                continue; // not element wise
+            M result = createMatrix(values.rows(), values.columns());
+            values.derivative(activation, result);
+            for (int r = 0; r < values.rows(); r++) {
+                for (int c = 0; c < values.columns(); c++) {
+                    assertEquals(activation.name(), activation.derivative(values.get(r, c)), result.get(r, c), delta());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSoftmax() {
+        M values = createMatrix(new double[][] { { -1, 4 }, { 2, -5 }, { 0.5, -6 } });
+        M result = createMatrix(values.rows(), values.columns());
+        values.activate(Activation.SOFTMAX, result);
+        for (int c = 0; c < values.columns(); c++) {
+            double sum = 0;
+            for (int r = 0; r < values.rows(); r++) {
+                sum += Math.exp(values.get(r, c));
+            }
+            for (int r = 0; r < values.rows(); r++) {
+                assertEquals(Math.exp(values.get(r, c)) / sum, result.get(r, c), 1E-6);
+            }
+        }
+    }
+
+    @Test
+    public void testSoftmaxCrossEntropy() {
+        M values = createMatrix(new double[][] { { -1, 4 }, { 2, -5 }, { 0.5, -6 } });
+        M softmax = createMatrix(values.rows(), values.columns());
+        values.activate(Activation.SOFTMAX, softmax);
+        int[] expected = new int[values.columns()];
+        for (int c = 0; c < expected.length; c++) {
+            expected[c] = (c + 1) % values.rows();
+        }
+        M result = createMatrix(values.rows(), values.columns());
+        double cost = values.softmaxCrossEntropy(c -> expected[c], result);
+        double expectedCost = 0;
+        for (int c = 0; c < values.columns(); c++) {
+            expectedCost -= Math.log(softmax.get(expected[c], c));
+            for (int r = 0; r < values.rows(); r++) {
+                double onehot = expected[c] == r ? 1 : 0;
+                assertEquals(softmax.get(r, c) - onehot, result.get(r, c), 1E-6);
+            }
+        }
+        assertEquals(expectedCost, cost, 1E-4);
+    }
+
     @Test
     public void testAddColumnVector() {
         M result = createMatrix(matrix.rows(), matrix.columns());
@@ -189,6 +277,13 @@ public abstract class AbstractMatrixTest<M extends Matrix<M>> {
         assertMatrix(new double[][] { { 11, 24 }, { 12, 25 }, { 13, 26 } }, result);
     }
 
+    /**
+     * @return the tolerance used when comparing matrix values
+     */
+    protected double delta() {
+        return 0;
+    }
+
     protected void randomMatrix(M matrix) {
         matrix.apply((r, c, v) -> random.nextGaussian());
     }
@@ -202,7 +297,7 @@ public abstract class AbstractMatrixTest<M extends Matrix<M>> {
     protected void assertMatrix(double[][] expected, M actual) {
         for (int col = 0; col < expected.length; col++) {
             for (int row = 0; row < expected[col].length; row++) {
-                assertEquals(expected[col][row], actual.get(row, col), 0);
+                assertEquals(expected[col][row], actual.get(row, col), delta());
             }
         }
     }
@@ -0,0 +1,13 @@
+package org.yah.tests.perceptron.matrix;
+
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork.MatrixFactory;
+import org.yah.tests.perceptron.matrix.buffer.CMBufferMatrix;
+
+public class BufferMatrixNeuralNetworkTest extends AbstractMatrixNeuralNetworkTest<CMBufferMatrix> {
+
+    @Override
+    protected MatrixFactory<CMBufferMatrix> createMatrixFactory() {
+        return CMBufferMatrix::new;
+    }
+
+}
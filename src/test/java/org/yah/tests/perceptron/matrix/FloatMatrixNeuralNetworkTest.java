@@ -0,0 +1,17 @@
+package org.yah.tests.perceptron.matrix;
+
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork.MatrixFactory;
+import org.yah.tests.perceptron.matrix.flat.CMFloatMatrix;
+
+public class FloatMatrixNeuralNetworkTest extends AbstractMatrixNeuralNetworkTest<CMFloatMatrix> {
+
+    @Override
+    protected MatrixFactory<CMFloatMatrix> createMatrixFactory() {
+        return CMFloatMatrix::new;
+    }
+
+    @Override
+    protected double delta() {
+        return 1E-4;
+    }
+}
@@ -0,0 +1,127 @@
+package org.yah.tests.perceptron.matrix.buffer;
+
+import org.junit.Test;
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.DirectSamples;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.matrix.AbstractMatrixTest;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CMBufferMatrixTest extends AbstractMatrixTest<CMBufferMatrix> {
+
+    @Override
+    protected CMBufferMatrix createMatrix(int rows, int columns) {
+        return new CMBufferMatrix(rows, columns);
+    }
+
+    @Override
+    protected CMBufferMatrix createMatrix(double[][] values) {
+        return new CMBufferMatrix(values);
+    }
+
+    @Test
+    public void allocate() {
+        for (Precision precision : Precision.values()) {
+            CMBufferMatrix matrix = CMBufferMatrix.allocate(precision, 3, 2);
+            assertEquals(precision, matrix.precision());
+            assertMatrix(new double[][] { { 0, 0, 0 }, { 0, 0, 0 } }, matrix);
+            matrix.setColumns(0, 2, new double[] { 1, 2, 3, 4, 5, 6 }, 0);
+            CMBufferMatrix view = matrix.createView();
+            view.slide(1, 1);
+            assertEquals(4, view.get(0, 0), 0);
+            view.close(); // does not release the matrix memory
+            assertEquals(6, matrix.get(2, 1), 0);
+            matrix.close();
+            try {
+                view.get(0, 0);
+            } catch (IllegalStateException e) {
+                continue;
+            }
+            throw new AssertionError("released " + precision + " matrix is readable");
+        }
+    }
+
+    @Test
+    public void wrap() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(6 * Float.BYTES).order(ByteOrder.nativeOrder());
+        buffer.asFloatBuffer().put(new float[] { 1, 4, 2, 5, 3, 6 });
+        CMBufferMatrix matrix = new CMBufferMatrix(buffer, Precision.FLOAT, 2, 3);
+        assertMatrix(VALUES, matrix);
+        matrix.set(0, 1, 10);
+        assertEquals(10, buffer.getFloat(2 * Float.BYTES), 0);
+    }
+
+    @Test
+    public void samples() {
+        DirectSamples samples = matrix.samples(new int[] { 2, 1, 0 });
+        assertEquals(3, samples.samples());
+        assertEquals(2, samples.features());
+        assertEquals(2, samples.input(1, 0), 0);
+        assertEquals(1, samples.outputIndex(1));
+        assertEquals(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN, samples.isDirect(Precision.DOUBLE, 2));
+        assertFalse(samples.isDirect(Precision.FLOAT, 2));
+        assertFalse(samples.sharedInputs());
+
+        // inputs are read in place
+        matrix.set(1, 1, 10);
+        assertEquals(10, samples.inputsBuffer().getDouble(3 * Double.BYTES), 0);
+        assertEquals(10, samples.input(1, 1), 0);
+
+        matrix.slide(1, 1);
+        DirectSamples slided = matrix.samples(null);
+        assertEquals(1, slided.samples());
+        assertFalse(slided.hasLabels());
+        assertEquals(2, slided.inputsBuffer().getDouble(0), 0);
+
+        try (CMBufferMatrix allocated = CMBufferMatrix.allocate(Precision.FLOAT, 3, 2)) {
+            assertTrue(allocated.samples(null).sharedInputs());
+        }
+    }
+
+    @Test
+    public void activations() {
+        double[] values = { -2, -0.5, 0, 0.25, 1, 3 };
+        for (Precision precision : Precision.values()) {
+            double delta = precision == Precision.FLOAT ? 1E-6 : 1E-12;
+            try (CMBufferMatrix matrix = CMBufferMatrix.allocate(precision, 3, 2);
+                 CMBufferMatrix target = CMBufferMatrix.allocate(precision, 3, 2)) {
+                matrix.setColumns(0, 2, values, 0);
+                for (Activation activation : Activation.values()) {
+                    if (activation == Activation.SOFTMAX)
+                        continue;
+                    matrix.activate(activation, target);
+                    for (int i = 0; i < values.length; i++) {
+                        assertEquals(precision + " " + activation, activation.activate(values[i]),
+                                target.get(i % 3, i / 3), delta);
+                    }
+                    matrix.derivative(activation, target);
+                    for (int i = 0; i < values.length; i++) {
+                        assertEquals(precision + " " + activation + "'", activation.derivative(values[i]),
+                                target.get(i % 3, i / 3), delta);
+                    }
+                }
+
+                matrix.activate(Activation.SOFTMAX, target);
+                double[] expected = new double[values.length];
+                Activation.softmax(values, 0, expected, 0, 3);
+                Activation.softmax(values, 3, expected, 3, 3);
+                for (int i = 0; i < values.length; i++) {
+                    assertEquals(precision + " softmax", expected[i], target.get(i % 3, i / 3), delta);
+                }
+
+                double cost = matrix.softmaxCrossEntropy(c -> c, target);
+                assertEquals(precision + " cost", -Math.log(expected[0]) - Math.log(expected[4]), cost, delta);
+                assertEquals(expected[0] - 1, target.get(0, 0), delta);
+                assertEquals(expected[4] - 1, target.get(1, 1), delta);
+                assertEquals(expected[5], target.get(2, 1), delta);
+            }
+        }
+    }
+
+}
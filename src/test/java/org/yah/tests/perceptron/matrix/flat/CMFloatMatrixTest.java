@@ -0,0 +1,22 @@
+package org.yah.tests.perceptron.matrix.flat;
+
+import org.yah.tests.perceptron.matrix.AbstractMatrixTest;
+
+public class CMFloatMatrixTest extends AbstractMatrixTest<CMFloatMatrix> {
+
+    @Override
+    protected CMFloatMatrix createMatrix(int rows, int columns) {
+        return new CMFloatMatrix(rows, columns);
+    }
+
+    @Override
+    protected CMFloatMatrix createMatrix(double[][] values) {
+        return new CMFloatMatrix(values);
+    }
+
+    @Override
+    protected double delta() {
+        return 1E-6;
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.yah.tests.perceptron.matrix.flat;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class GemmTest {
+
+    private final Random random = new Random(12345);
+
+    @Test
+    public void unpacked() {
+        // under the pack threshold, with kernel and edge blocks
+        test(7, 5, 9);
+        test(4, 4, 1);
+        test(1, 1, 1);
+    }
+
+    @Test
+    public void packed() {
+        // partial MC, KC, MR and NR blocks
+        test(Gemm.MC + 3, 70, Gemm.KC + 45);
+        // partial NC panel
+        test(10, Gemm.NC + 6, 64);
+    }
+
+    @Test
+    public void empty_product() {
+        double[] c = { 1, 1, 1, 1 };
+        Gemm.gemm(2, 2, 0, new double[0], 0, 1, 2, new double[0], 0, 1, 0, c, 0, 1, 2);
+        for (double v : c) {
+            assertEquals(0, v, 0);
+        }
+    }
+
+    private void test(int m, int n, int k) {
+        for (boolean transA : new boolean[] { false, true }) {
+            for (boolean transB : new boolean[] { false, true }) {
+                testDouble(m, n, k, transA, transB);
+                testFloat(m, n, k, transA, transB);
+            }
+        }
+    }
+
+    /**
+     * column major operands, stored transposed (row major) if trans
+     */
+    private void testDouble(int m, int n, int k, boolean transA, boolean transB) {
+        int offset = 3;
+        double[] a = randoms(offset + m * k), b = randoms(offset + k * n), c = randoms(offset + m * n);
+        int ars = transA ? k : 1, acs = transA ? 1 : m;
+        int brs = transB ? n : 1, bcs = transB ? 1 : k;
+        Gemm.gemm(m, n, k, a, offset, ars, acs, b, offset, brs, bcs, c, offset, 1, m);
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                double expected = 0;
+                for (int p = 0; p < k; p++) {
+                    expected += a[offset + i * ars + p * acs] * b[offset + p * brs + j * bcs];
+                }
+                assertEquals(m + "x" + n + "x" + k + " " + transA + " " + transB + " (" + i + "," + j + ")",
+                        expected, c[offset + i + j * m], 1E-10);
+            }
+        }
+    }
+
+    private void testFloat(int m, int n, int k, boolean transA, boolean transB) {
+        float[] a = floats(randoms(m * k)), b = floats(randoms(k * n)), c = new float[m * n];
+        int ars = transA ? k : 1, acs = transA ? 1 : m;
+        int brs = transB ? n : 1, bcs = transB ? 1 : k;
+        Gemm.gemm(m, n, k, a, 0, ars, acs, b, 0, brs, bcs, c, 0, 1, m);
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                double expected = 0;
+                for (int p = 0; p < k; p++) {
+                    expected += (double) a[i * ars + p * acs] * b[p * brs + j * bcs];
+                }
+                assertEquals(expected, c[i + j * m], 1E-3);
+            }
+        }
+    }
+
+    private double[] randoms(int length) {
+        double[] res = new double[length];
+        for (int i = 0; i < length; i++) {
+            res[i] = random.nextDouble() * 2 - 1;
+        }
+        return res;
+    }
+
+    private static float[] floats(double[] values) {
+        float[] res = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            res[i] = (float) values[i];
+        }
+        return res;
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.yah.tests.perceptron.mt;
+
+import org.junit.Test;
+import org.yah.tests.perceptron.mt.ChunkExecutor.Backend;
+import org.yah.tests.perceptron.mt.ChunkExecutor.ChunkHandler;
+import org.yah.tests.perceptron.mt.ChunkExecutor.WaitStrategy;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class ChunkExecutorTest {
+
+    @Test
+    public void distribute() {
+        for (Backend backend : new Backend[]{Backend.FIXED, Backend.FORK_JOIN}) {
+            for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+                try (ChunkExecutor executor = new ChunkExecutor(4, backend, waitStrategy)) {
+                    assertDistributed(executor, 3, 4, 3);
+                    assertDistributed(executor, 4, 4, 4);
+                    assertDistributed(executor, 103, 4, 4);
+                    // more chunks than threads, stolen by the idle threads
+                    assertDistributed(executor, 1000, 32, 32);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void virtual_threads() {
+        ChunkExecutor executor;
+        try {
+            executor = new ChunkExecutor(3, Backend.VIRTUAL, WaitStrategy.PARK);
+        } catch (UnsupportedOperationException e) {
+            // before Java 21
+            return;
+        }
+        try (executor) {
+            assertDistributed(executor, 100, 12, 12);
+        }
+    }
+
+    @Test
+    public void single_thread() {
+        try (ChunkExecutor executor = new ChunkExecutor(1, Backend.FIXED, WaitStrategy.PARK)) {
+            assertDistributed(executor, 100, 4, 1);
+            assertEquals(1, executor.chunksCount(100, 1E9));
+        }
+    }
+
+    @Test
+    public void chunks_count() {
+        try (ChunkExecutor executor = new ChunkExecutor(4, Backend.FIXED, WaitStrategy.PARK, 10)) {
+            // not calibrated
+            assertEquals(1, executor.chunksCount(1000, Double.NaN));
+            assertEquals(1, executor.chunksCount(1000, ChunkExecutor.PARALLEL_NANOS - 1));
+            // at least one chunk per thread
+            assertEquals(4, executor.chunksCount(1000, ChunkExecutor.PARALLEL_NANOS));
+            assertEquals(10, executor.chunksCount(1000, ChunkExecutor.TARGET_CHUNK_NANOS * 10));
+            assertEquals(4 * ChunkExecutor.MAX_CHUNKS_PER_THREAD, executor.chunksCount(1000, 1E12));
+            // min chunk size
+            assertEquals(5, executor.chunksCount(50, 1E12));
+        }
+    }
+
+    @Test
+    public void calibration() {
+        try (ChunkExecutor executor = new ChunkExecutor(4, Backend.FIXED, WaitStrategy.PARK)) {
+            int[] chunks = new int[1];
+            double[] values = new double[4096];
+            ChunkHandler handler = new ChunkHandler() {
+                @Override
+                public void start(int chunksCount) {
+                    chunks[0] = chunksCount;
+                }
+
+                @Override
+                public void handle(int chunkIndex, int offset, int size) {
+                    // about 50us per element
+                    long end = System.nanoTime() + 50_000L * size;
+                    while (System.nanoTime() < end)
+                        values[offset] += 1;
+                }
+            };
+            assertTrue(Double.isNaN(executor.unitNanos(handler)));
+            // first distribution is used to calibrate
+            executor.distribute(8, handler);
+            assertEquals(1, chunks[0]);
+            assertTrue(executor.unitNanos(handler) >= 50_000);
+            // a few costly elements are still distributed
+            executor.distribute(8, handler);
+            assertEquals(8, chunks[0]);
+            // cheap elements are not
+            ChunkHandler cheap = (chunkIndex, offset, size) -> values[offset]++;
+            executor.distribute(8, cheap);
+            executor.distribute(8, cheap);
+            assertTrue(executor.unitNanos(cheap) < executor.unitNanos(handler));
+        }
+    }
+
+    @Test
+    public void failure() {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            try (ChunkExecutor executor = new ChunkExecutor(4, Backend.FIXED, waitStrategy)) {
+                try {
+                    executor.distribute(100, 8, (chunkIndex, offset, size) -> {
+                        if (chunkIndex == 0)
+                            throw new IllegalArgumentException("chunk 0");
+                    });
+                    fail("chunk failure");
+                } catch (RuntimeException e) {
+                    assertTrue(e.getCause() instanceof IllegalArgumentException);
+                }
+                // still usable
+                assertDistributed(executor, 100, 8, 8);
+            }
+        }
+    }
+
+    private static void assertDistributed(ChunkExecutor executor, int count, int chunksCount, int expectedChunks) {
+        AtomicIntegerArray handled = new AtomicIntegerArray(count);
+        AtomicIntegerArray handledChunks = new AtomicIntegerArray(expectedChunks);
+        int[] chunks = new int[2];
+        executor.distribute(count, chunksCount, new ChunkHandler() {
+            @Override
+            public void start(int chunksCount) {
+                chunks[0] = chunksCount;
+            }
+
+            @Override
+            public void handle(int chunkIndex, int offset, int size) {
+                handledChunks.incrementAndGet(chunkIndex);
+                for (int i = offset; i < offset + size; i++)
+                    handled.incrementAndGet(i);
+            }
+
+            @Override
+            public void complete(int chunksCount) {
+                chunks[1] = chunksCount;
+            }
+        });
+        assertEquals(expectedChunks, chunks[0]);
+        assertEquals(expectedChunks, chunks[1]);
+        for (int i = 0; i < expectedChunks; i++)
+            assertEquals(1, handledChunks.get(i));
+        for (int i = 0; i < count; i++)
+            assertEquals(1, handled.get(i));
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.yah.tests.perceptron.mt;
+
+import org.junit.Test;
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.NeuralNetwork;
+import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.SamplesProviders;
+import org.yah.tests.perceptron.TrainingSamples;
+import org.yah.tests.perceptron.base.AbstractNeuralNetworkTest;
+import org.yah.tests.perceptron.base.DefaultNetworkState;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A single training thread: same updates as the synchronous engines.
+ *
+ * @author Yah
+ */
+public class HogwildNeuralNetworkTest extends AbstractNeuralNetworkTest {
+
+    @Override
+    protected NeuralNetwork newNetwork(NeuralNetworkState state) {
+        return new HogwildNeuralNetwork(state, Precision.DOUBLE, new ChunkExecutor(1));
+    }
+
+    @Override
+    protected void updateState(NeuralNetworkState network) {
+        ((HogwildNeuralNetwork) network).updateState();
+    }
+
+    @Override
+    protected void updateModel(NeuralNetworkState network) {
+        ((HogwildNeuralNetwork) network).updateModel();
+    }
+
+    @Test
+    public void concurrent_training() {
+        Random random = new Random(12345);
+        double[][] inputs = new double[2000][2];
+        int[] outputIndices = new int[inputs.length];
+        for (int sample = 0; sample < inputs.length; sample++) {
+            inputs[sample][0] = random.nextGaussian();
+            inputs[sample][1] = random.nextGaussian();
+            outputIndices[sample] = inputs[sample][0] + inputs[sample][1] > 0 ? 1 : 0;
+        }
+        DefaultNetworkState state = new DefaultNetworkState(random::nextGaussian, 2, 8, 2);
+        state.activation(1, Activation.SOFTMAX);
+        try (HogwildNeuralNetwork network = new HogwildNeuralNetwork(state, Precision.DOUBLE, new ChunkExecutor(4))) {
+            TrainingSamples samples = network.createTraining(SamplesProviders.newTrainingProvider(inputs, false,
+                    outputIndices), 16);
+            for (int epoch = 0; epoch < 20; epoch++) {
+                network.train(samples, 0.5);
+            }
+            double accuracy = network.evaluate(samples);
+            assertTrue("accuracy " + accuracy, accuracy > 0.95);
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.yah.tests.perceptron.mt;
+
+import static org.junit.Assert.assertEquals;
+import static org.yah.tests.perceptron.mt.MTMatrixTest.assertMatrix;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+import org.yah.tests.perceptron.Precision;
+
+public class MTBufferInputsTest {
+
+    /**
+     * <code>
+     * 0 2 4
+     * 1 3 5
+     * </code>
+     */
+    @Test
+    public void copyColumns() {
+        for (Precision bufferPrecision : Precision.values()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(6 * bufferPrecision.size()).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < 6; i++) {
+                if (bufferPrecision == Precision.FLOAT)
+                    buffer.putFloat(i);
+                else
+                    buffer.putDouble(i);
+            }
+            buffer.flip();
+            for (Precision precision : Precision.values()) {
+                MTBufferInputs inputs = new MTBufferInputs(buffer, bufferPrecision, precision, 2, 3);
+                assertEquals(precision, inputs.precision());
+                MTMatrix target = MTMatrix.create(precision, 2, 2);
+                assertEquals(precision, target.precision());
+
+                inputs.copyColumns(null, 1, 2, target);
+                assertMatrix(new double[][] { { 2, 4 }, { 3, 5 } }, target);
+
+                inputs.copyColumns(new int[] { 2, 1, 0 }, 1, 2, target);
+                assertMatrix(new double[][] { { 2, 0 }, { 3, 1 } }, target);
+            }
+        }
+    }
+
+}
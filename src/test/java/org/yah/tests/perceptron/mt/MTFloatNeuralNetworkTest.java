@@ -0,0 +1,22 @@
+package org.yah.tests.perceptron.mt;
+
+import org.yah.tests.perceptron.NeuralNetwork;
+import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
+
+/**
+ * @author Yah
+ */
+public class MTFloatNeuralNetworkTest extends MTNeuralNetworkTest {
+
+    @Override
+    protected NeuralNetwork newNetwork(NeuralNetworkState state) {
+        return new MTNeuralNetwork(state, Precision.FLOAT);
+    }
+
+    @Override
+    protected double delta() {
+        return 1E-4;
+    }
+
+}
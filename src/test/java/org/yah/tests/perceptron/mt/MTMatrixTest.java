@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.yah.tests.perceptron.Precision;
 
 public class MTMatrixTest {
 
@@ -75,6 +76,20 @@ public class MTMatrixTest {
         }
     }
     
+    @Test
+    public void testZeroView() {
+        new MTMatrix(data, 5, 1, 10, 5, 1).zero();
+        float[] floats = new float[15];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = i;
+        }
+        new MTFloatMatrix(floats, 5, 1, 10, 5, 1).zero();
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(i < 10 ? i : 0, data[i], 0);
+            assertEquals(i < 10 ? i : 0, floats[i], 0);
+        }
+    }
+
     @Test
     public void testMaxRowIndex() {
         MTMatrix matrix = new MTMatrix(data, 5, 3, 0, 5, 1);
@@ -91,6 +106,59 @@ public class MTMatrixTest {
         assertEquals(2, matrix.maxRowIndex(4));
     }
 
+    @Test
+    public void testSetColumns() {
+        MTMatrix matrix = new MTMatrix(data, 2, 3, 1, 5, 1);
+        matrix.setColumns(1, 2, new double[] { -1, 20, 21, 22, 23 }, 1);
+        assertMatrix(new double[][] { { 1, 20, 22 }, { 2, 21, 23 } }, matrix);
+
+        // strided rows
+        matrix = matrix.transpose();
+        matrix.setColumns(0, 1, new double[] { 30, 31, 32 }, 0);
+        assertMatrix(new double[][] { { 30, 31, 32 }, { 2, 21, 23 } }, matrix.transpose());
+
+        MTMatrix floatMatrix = new MTFloatMatrix(2, 3);
+        floatMatrix.setColumns(1, 2, new double[] { 20, 21, 22, 23 }, 0);
+        assertMatrix(new double[][] { { 0, 20, 22 }, { 0, 21, 23 } }, floatMatrix);
+    }
+
+    @Test
+    public void testBulkOperations() {
+        for (Precision precision : Precision.values()) {
+            MTMatrix matrix = MTMatrix.create(precision, 2, 3);
+            matrix.setColumns(0, 3, new double[] { 1, 2, 3, 4, 5, 6 }, 0);
+            MTMatrix other = MTMatrix.create(precision, 2, 3);
+            other.setColumns(0, 3, new double[] { 2, 2, 2, 2, 2, 2 }, 0);
+            MTMatrix vector = MTMatrix.create(precision, 2, 1);
+            vector.setColumns(0, 1, new double[] { 10, 20 }, 0);
+
+            matrix.addColumnVector(vector, 1, 2);
+            assertMatrix(new double[][] { { 1, 13, 15 }, { 2, 24, 26 } }, matrix);
+
+            matrix.mul(other, 0, 3);
+            assertMatrix(new double[][] { { 2, 26, 15 }, { 4, 24, 26 } }, matrix);
+
+            matrix.addScaled(other, -0.5, 2, 4);
+            assertMatrix(new double[][] { { 2, 25, 14 }, { 4, 23, 25 } }, matrix);
+
+            double[] sums = { 100, 0 };
+            matrix.sumRows(1, 5, sums);
+            assertEquals(100 + 25 + 14, sums[0], 0);
+            assertEquals(4 + 23 + 25, sums[1], 0);
+        }
+    }
+
+    @Test
+    public void testGatherColumns() {
+        for (Precision precision : Precision.values()) {
+            MTMatrix source = MTMatrix.create(precision, 2, 3);
+            source.setColumns(0, 3, new double[] { 1, 2, 3, 4, 5, 6 }, 0);
+            MTMatrix matrix = MTMatrix.create(precision, 2, 2);
+            matrix.gatherColumns(source, new int[] { 0, 2, 1 }, 1, 2);
+            assertMatrix(new double[][] { { 5, 3 }, { 6, 4 } }, matrix);
+        }
+    }
+
     static void assertMatrix(double[][] expected, MTMatrix actual) {
         assertEquals(expected.length, actual.rows());
         assertEquals(expected[0].length, actual.columns());
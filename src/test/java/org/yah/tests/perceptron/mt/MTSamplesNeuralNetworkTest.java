@@ -0,0 +1,18 @@
+package org.yah.tests.perceptron.mt;
+
+import org.yah.tests.perceptron.NeuralNetwork;
+import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.mt.MTNeuralNetwork.TrainingMode;
+
+/**
+ * @author Yah
+ */
+public class MTSamplesNeuralNetworkTest extends MTNeuralNetworkTest {
+
+    @Override
+    protected NeuralNetwork newNetwork(NeuralNetworkState state) {
+        return new MTNeuralNetwork(state, Precision.DOUBLE, new ChunkExecutor(4), TrainingMode.SAMPLES);
+    }
+
+}
@@ -0,0 +1,28 @@
+package org.yah.tests.perceptron.opencl;
+
+import org.yah.tests.perceptron.NeuralNetwork;
+import org.yah.tests.perceptron.NeuralNetworkState;
+import org.yah.tests.perceptron.Precision;
+
+import java.io.IOException;
+
+/**
+ * @author Yah
+ */
+public class CLFloatNeuralNetworkTest extends CLNeuralNetworkTest {
+
+    @Override
+    protected NeuralNetwork newNetwork(NeuralNetworkState state) {
+        try {
+            return new CLNeuralNetwork(context(), state, Precision.FLOAT);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    protected double delta() {
+        return 1E-4;
+    }
+
+}
@@ -28,6 +28,10 @@ public class CLNeuralNetworkTest extends AbstractNeuralNetworkTest {
             context.close();
     }
 
+    protected static CLContext context() {
+        return context;
+    }
+
     @Override
     protected NeuralNetwork newNetwork(NeuralNetworkState state) {
         try {
@@ -0,0 +1,45 @@
+package org.yah.tests.perceptron.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets() {
+        int last = -1;
+        for (long value = 0; value < 100_000; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(bucket == last || bucket == last + 1);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= value);
+            assertTrue(LatencyHistogram.lowerBound(bucket + 1) > value);
+            last = bucket;
+        }
+        long value = Long.MAX_VALUE;
+        assertTrue(LatencyHistogram.lowerBound(LatencyHistogram.bucket(value)) <= value);
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(500_500, histogram.mean(), 0);
+        assertEquals(1_000_000, histogram.max());
+        assertRelative(500_000, histogram.percentile(50));
+        assertRelative(990_000, histogram.percentile(99));
+        assertEquals(1_000_000, histogram.percentile(100));
+        assertTrue(histogram.toString().startsWith("count=1000 "));
+    }
+
+    private static void assertRelative(long expected, long actual) {
+        assertTrue(expected + " ~ " + actual, actual >= expected);
+        assertTrue(expected + " ~ " + actual, actual <= expected * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS));
+    }
+
+}
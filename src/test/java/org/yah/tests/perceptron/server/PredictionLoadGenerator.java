@@ -0,0 +1,107 @@
+package org.yah.tests.perceptron.server;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator of a {@link PredictionServer}: concurrent clients posting random samples, the client side latencies
+ * are recorded in a {@link LatencyHistogram}.<br/>
+ * <code>PredictionLoadGenerator url features [threads] [requests per thread] [samples per request]</code>
+ *
+ * @author Yah
+ */
+public class PredictionLoadGenerator {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final URI predictUri;
+    private final int features;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    public PredictionLoadGenerator(URI server, int features) {
+        this.predictUri = server.resolve("/predict");
+        this.features = features;
+    }
+
+    public LatencyHistogram histogram() {
+        return histogram;
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    /**
+     * @return the number of predicted samples
+     */
+    public long run(int threads, int requests, int samples) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> futures = new ArrayList<>(threads);
+            for (int thread = 0; thread < threads; thread++) {
+                long seed = thread;
+                futures.add(executor.submit(() -> client(new Random(seed), requests, samples)));
+            }
+            long res = 0;
+            for (Future<Long> future : futures) {
+                res += future.get();
+            }
+            return res;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private long client(Random random, int requests, int samples) throws IOException, InterruptedException {
+        long res = 0;
+        for (int request = 0; request < requests; request++) {
+            StringBuilder body = new StringBuilder();
+            for (int sample = 0; sample < samples; sample++) {
+                for (int feature = 0; feature < features; feature++) {
+                    if (feature > 0) body.append(',');
+                    body.append(random.nextGaussian());
+                }
+                body.append('\n');
+            }
+            long start = System.nanoTime();
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(predictUri)
+                                                                   .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                                                                   .build(), HttpResponse.BodyHandlers.ofString());
+            histogram.record(System.nanoTime() - start);
+            if (response.statusCode() == 200 && response.body().lines().count() == samples)
+                res += samples;
+            else
+                errors.incrementAndGet();
+        }
+        return res;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: PredictionLoadGenerator url features [threads] [requests] [samples]");
+            System.exit(1);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int samples = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        PredictionLoadGenerator generator = new PredictionLoadGenerator(URI.create(args[0]), Integer.parseInt(args[1]));
+        long start = System.nanoTime();
+        long predicted = generator.run(threads, requests, samples);
+        double seconds = (System.nanoTime() - start) * 1E-9;
+        System.out.println(String.format(Locale.ENGLISH, "%d samples in %.2fs (%.0f samples/s), %d errors",
+                predicted, seconds, predicted / seconds, generator.errors()));
+        System.out.println(generator.histogram());
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.yah.tests.perceptron.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.NetworkStateFile;
+import org.yah.tests.perceptron.NeuralNetwork;
+import org.yah.tests.perceptron.Precision;
+import org.yah.tests.perceptron.base.DefaultNetworkState;
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork;
+import org.yah.tests.perceptron.matrix.array.CMArrayMatrix;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PredictionServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private DefaultNetworkState state;
+    private PredictionServer server;
+    private URI uri;
+
+    @Before
+    public void setup() throws Exception {
+        state = newState(12345);
+        server = new PredictionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), state,
+                s -> new MatrixNeuralNetwork<>(CMArrayMatrix::new, s), 16, 200, 8);
+        uri = URI.create("http://localhost:" + server.port());
+    }
+
+    @After
+    public void close() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void predict() throws Exception {
+        NeuralNetwork network = new MatrixNeuralNetwork<>(CMArrayMatrix::new, state);
+        double[][] samples = {{0.5, -1}, {2, 1}, {-3, 0.25}};
+        HttpResponse<String> response = post("/predict", "0.5,-1\n2, 1\n\n-3,0.25\n");
+        assertEquals(200, response.statusCode());
+        String[] lines = response.body().split("\n");
+        assertEquals(samples.length, lines.length);
+        for (int sample = 0; sample < samples.length; sample++) {
+            assertEquals(network.predict(samples[sample]), Integer.parseInt(lines[sample]));
+        }
+        assertEquals(1, server.histogram("/predict").count());
+    }
+
+    @Test
+    public void invalid_requests() throws Exception {
+        assertEquals(400, post("/predict", "1,2,3\n").statusCode());
+        assertEquals(400, post("/predict", "1,x\n").statusCode());
+        assertEquals(400, post("/model", "not a state").statusCode());
+        assertEquals(405, send(HttpRequest.newBuilder(uri.resolve("/predict")).GET()).statusCode());
+        assertEquals(1, server.version());
+    }
+
+    @Test
+    public void hot_swap() throws Exception {
+        PredictionLoadGenerator generator = new PredictionLoadGenerator(uri, 2);
+        CompletableFuture<Long> load = CompletableFuture.supplyAsync(() -> {
+            try {
+                return generator.run(4, 50, 4);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        for (int version = 2; version <= 4; version++) {
+            byte[] file = NetworkStateFile.toBytes(newState(version), Precision.DOUBLE);
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri.resolve("/model"))
+                                                                   .POST(HttpRequest.BodyPublishers.ofByteArray(file))
+                                                                   .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals(version, Integer.parseInt(response.body().trim()));
+        }
+        // no request dropped by the swaps
+        assertEquals(4 * 50 * 4, (long) load.get());
+        assertEquals(0, generator.errors());
+
+        NeuralNetwork network = new MatrixNeuralNetwork<>(CMArrayMatrix::new, newState(4));
+        HttpResponse<String> response = post("/predict", "1.5,-0.5\n");
+        assertEquals(network.predict(new double[]{1.5, -0.5}), Integer.parseInt(response.body().trim()));
+
+        String stats = send(HttpRequest.newBuilder(uri.resolve("/stats")).GET()).body();
+        assertTrue(stats, stats.startsWith("model 4\n"));
+        assertTrue(stats, stats.contains("/predict count=201 "));
+        assertTrue(stats, stats.contains("/model count=3 "));
+    }
+
+    private static DefaultNetworkState newState(long seed) {
+        DefaultNetworkState state = new DefaultNetworkState(new Random(seed)::nextGaussian, 2, 6, 3);
+        state.activation(1, Activation.SOFTMAX);
+        return state;
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return send(HttpRequest.newBuilder(uri.resolve(path)).POST(HttpRequest.BodyPublishers.ofString(body)));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder builder) throws Exception {
+        return client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.yah.tests.perceptron.matrix.vector;
+
+import org.junit.Test;
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.matrix.AbstractMatrixTest;
+import org.yah.tests.perceptron.matrix.Matrix;
+import org.yah.tests.perceptron.matrix.flat.CMFlatMatrix;
+
+import static org.junit.Assert.assertEquals;
+
+public class CMVectorMatrixTest extends AbstractMatrixTest<CMVectorMatrix> {
+
+    @Override
+    protected CMVectorMatrix createMatrix(int rows, int columns) {
+        return new CMVectorMatrix(rows, columns);
+    }
+
+    @Override
+    protected CMVectorMatrix createMatrix(double[][] values) {
+        return new CMVectorMatrix(values);
+    }
+
+    /**
+     * vector loops and their tails, on slid views, compared to {@link CMFlatMatrix}
+     */
+    @Test
+    public void compare_flat() {
+        int neurons = 37, features = 23, batchSize = 11;
+        double[][] w = randoms(features, neurons), i = randoms(batchSize + 5, features);
+        double[][] d = randoms(batchSize, neurons), b = randoms(1, neurons);
+
+        CMVectorMatrix vw = new CMVectorMatrix(w), vi = new CMVectorMatrix(i).createView();
+        CMVectorMatrix vd = new CMVectorMatrix(d), vb = new CMVectorMatrix(b);
+        CMFlatMatrix fw = new CMFlatMatrix(w), fi = new CMFlatMatrix(i).createView();
+        CMFlatMatrix fd = new CMFlatMatrix(d), fb = new CMFlatMatrix(b);
+        vi.slide(5, batchSize);
+        fi.slide(5, batchSize);
+
+        assertSame(fw.dot(fi), vw.dot(vi));
+        assertSame(fw.transpose_dot(fd), vw.transpose_dot(vd));
+        assertSame(fd.dot_transpose(fi), vd.dot_transpose(vi));
+
+        CMFlatMatrix fz = fw.dot(fi);
+        CMVectorMatrix vz = vw.dot(vi);
+        fz.addColumnVector(fb);
+        vz.addColumnVector(vb);
+        assertSame(fz, vz);
+        assertSame(fz.activate(Activation.SIGMOID, new CMFlatMatrix(neurons, batchSize)),
+                vz.activate(Activation.SIGMOID, new CMVectorMatrix(neurons, batchSize)));
+
+        fz.sigmoid_prime();
+        vz.sigmoid_prime();
+        assertSame(fz, vz);
+        fz.mul(fd);
+        vz.mul(vd);
+        assertSame(fz, vz);
+        fz.sub(fd);
+        vz.sub(vd);
+        assertSame(fz, vz);
+        fz.mul(0.5);
+        vz.mul(0.5);
+        assertSame(fz, vz);
+
+        CMFlatMatrix fs = new CMFlatMatrix(neurons, 1);
+        CMVectorMatrix vs = new CMVectorMatrix(neurons, 1);
+        fz.sumRows(fs);
+        vz.sumRows(vs);
+        assertSame(fs, vs);
+    }
+
+    private double[][] randoms(int columns, int rows) {
+        double[][] res = new double[columns][rows];
+        for (double[] column : res) {
+            for (int r = 0; r < rows; r++) {
+                column[r] = random.nextGaussian();
+            }
+        }
+        return res;
+    }
+
+    private static void assertSame(Matrix<?> expected, Matrix<?> actual) {
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        for (int c = 0; c < expected.columns(); c++) {
+            for (int r = 0; r < expected.rows(); r++) {
+                assertEquals("(" + r + "," + c + ")", expected.get(r, c), actual.get(r, c), 1E-12);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,12 @@
+package org.yah.tests.perceptron.matrix.vector;
+
+import org.yah.tests.perceptron.matrix.AbstractMatrixNeuralNetworkTest;
+import org.yah.tests.perceptron.matrix.MatrixNeuralNetwork.MatrixFactory;
+
+public class VectorMatrixNeuralNetworkTest extends AbstractMatrixNeuralNetworkTest<CMVectorMatrix> {
+
+    @Override
+    protected MatrixFactory<CMVectorMatrix> createMatrixFactory() {
+        return CMVectorMatrix::new;
+    }
+}
@@ -0,0 +1,417 @@
+package org.yah.tests.perceptron.matrix.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.yah.tests.perceptron.Activation;
+import org.yah.tests.perceptron.matrix.Matrix;
+import org.yah.tests.perceptron.matrix.MatrixFunction;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * {@link org.yah.tests.perceptron.matrix.flat.CMFlatMatrix} layout computed with the JDK Vector API
+ * (<code>jdk.incubator.vector</code>, built by the <code>vector</code> profile).<br/>
+ * The columns of a view are contiguous: the element wise operations are a single vector loop over the view range,
+ * the products broadcast one operand and accumulate a column block of the other in vector registers.<br/>
+ * The exact sigmoid is computed with the vector exponential.
+ *
+ * @author Yah
+ */
+public class CMVectorMatrix implements Matrix<CMVectorMatrix> {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final double[] data;
+    private final int rows, totalColumns;
+    private int colOffset, columns;
+
+    public CMVectorMatrix(double[][] _data) {
+        this.totalColumns = _data.length;
+        this.rows = _data[0].length;
+        this.columns = totalColumns;
+        this.colOffset = 0;
+        this.data = new double[rows * columns];
+        for (int c = 0; c < _data.length; c++) {
+            System.arraycopy(_data[c], 0, this.data, c * rows, rows);
+        }
+    }
+
+    public CMVectorMatrix(int rows, int columns) {
+        this.totalColumns = columns;
+        this.rows = rows;
+        this.columns = totalColumns;
+        this.colOffset = 0;
+        this.data = new double[rows * columns];
+    }
+
+    private CMVectorMatrix(CMVectorMatrix from) {
+        this.totalColumns = from.totalColumns;
+        this.columns = totalColumns;
+        this.rows = from.rows;
+        this.data = from.data;
+        this.colOffset = 0;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return data[indexOf(col) + row];
+    }
+
+    @Override
+    public void set(int row, int col, double value) {
+        data[indexOf(col) + row] = value;
+    }
+
+    @Override
+    public void gatherColumns(CMVectorMatrix source, int[] indices, int offset, int count) {
+        for (int c = 0; c < count; c++) {
+            System.arraycopy(source.data, source.indexOf(indices[offset + c]), data, indexOf(c), rows);
+        }
+    }
+
+    @Override
+    public void setColumns(int column, int count, double[] values, int offset) {
+        System.arraycopy(values, offset, data, indexOf(column), count * rows);
+    }
+
+    @Override
+    public void getColumns(int column, int count, double[] target, int offset) {
+        System.arraycopy(data, indexOf(column), target, offset, count * rows);
+    }
+
+    @Override
+    public CMVectorMatrix self() {
+        return this;
+    }
+
+    @Override
+    public void apply(MatrixFunction func) {
+        for (int c = 0; c < columns; c++) {
+            int ci = indexOf(c);
+            for (int r = 0; r < rows; r++) {
+                data[ci + r] = func.apply(r, c, data[ci + r]);
+            }
+        }
+    }
+
+    @Override
+    public void sub(CMVectorMatrix b, CMVectorMatrix target) {
+        int length = size();
+        int ai = indexOf(0), bi = b.indexOf(0), ti = target.indexOf(0);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, data, ai + i)
+                        .sub(DoubleVector.fromArray(SPECIES, b.data, bi + i))
+                        .intoArray(target.data, ti + i);
+        }
+        for (; i < length; i++) {
+            target.data[ti + i] = data[ai + i] - b.data[bi + i];
+        }
+    }
+
+    @Override
+    public void mul(CMVectorMatrix b, CMVectorMatrix target) {
+        int length = size();
+        int ai = indexOf(0), bi = b.indexOf(0), ti = target.indexOf(0);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, data, ai + i)
+                        .mul(DoubleVector.fromArray(SPECIES, b.data, bi + i))
+                        .intoArray(target.data, ti + i);
+        }
+        for (; i < length; i++) {
+            target.data[ti + i] = data[ai + i] * b.data[bi + i];
+        }
+    }
+
+    @Override
+    public CMVectorMatrix mul(double s, CMVectorMatrix target) {
+        int length = size();
+        int ai = indexOf(0), ti = target.indexOf(0);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, data, ai + i).mul(s).intoArray(target.data, ti + i);
+        }
+        for (; i < length; i++) {
+            target.data[ti + i] = data[ai + i] * s;
+        }
+        return target;
+    }
+
+    @Override
+    public void addColumnVector(CMVectorMatrix vector, CMVectorMatrix target) {
+        assert vector.columns == 1;
+        assert vector.rows() == rows;
+
+        int vi = vector.indexOf(0);
+        int bound = SPECIES.loopBound(rows);
+        for (int c = 0; c < columns; c++) {
+            int ci = indexOf(c);
+            int tci = target.indexOf(c);
+            int r = 0;
+            for (; r < bound; r += SPECIES.length()) {
+                DoubleVector.fromArray(SPECIES, data, ci + r)
+                            .add(DoubleVector.fromArray(SPECIES, vector.data, vi + r))
+                            .intoArray(target.data, tci + r);
+            }
+            for (; r < rows; r++) {
+                target.data[tci + r] = data[ci + r] + vector.data[vi + r];
+            }
+        }
+    }
+
+    @Override
+    public void sumRows(CMVectorMatrix target) {
+        assert target.rows == rows;
+        assert target.columns == 1;
+        int ti = target.indexOf(0);
+        int bound = SPECIES.loopBound(rows);
+        int r = 0;
+        for (; r < bound; r += SPECIES.length()) {
+            DoubleVector sum = DoubleVector.zero(SPECIES);
+            for (int c = 0; c < columns; c++) {
+                sum = sum.add(DoubleVector.fromArray(SPECIES, data, indexOf(c) + r));
+            }
+            sum.intoArray(target.data, ti + r);
+        }
+        for (; r < rows; r++) {
+            double s = 0;
+            for (int c = 0; c < columns; c++) {
+                s += data[indexOf(c) + r];
+            }
+            target.data[ti + r] = s;
+        }
+    }
+
+    @Override
+    public CMVectorMatrix dot(CMVectorMatrix b, CMVectorMatrix target) {
+        assert columns == b.rows();
+        assert target.rows() == rows() && target.columns == b.columns;
+
+        // b(p, j) = b.data[b.indexOf(0) + p + j * b.rows]
+        broadcastProduct(b.data, b.indexOf(0), 1, b.rows, columns, target);
+        return target;
+    }
+
+    @Override
+    public CMVectorMatrix transpose_dot(CMVectorMatrix b, CMVectorMatrix target) {
+        assert rows() == b.rows();
+        assert target.rows() == columns && target.columns == b.columns;
+
+        // target(i, j) = this[:, i] . b[:, j], 4 columns of b per column of this
+        int bound = SPECIES.loopBound(rows);
+        for (int tc = 0; tc < target.columns; tc += 4) {
+            int nc = Math.min(4, target.columns - tc);
+            int b0 = b.indexOf(tc), b1 = b.indexOf(tc + Math.min(1, nc - 1));
+            int b2 = b.indexOf(tc + Math.min(2, nc - 1)), b3 = b.indexOf(tc + Math.min(3, nc - 1));
+            for (int tr = 0; tr < target.rows; tr++) {
+                int ai = indexOf(tr);
+                DoubleVector s0 = DoubleVector.zero(SPECIES), s1 = s0, s2 = s0, s3 = s0;
+                int p = 0;
+                for (; p < bound; p += SPECIES.length()) {
+                    DoubleVector a = DoubleVector.fromArray(SPECIES, data, ai + p);
+                    s0 = a.fma(DoubleVector.fromArray(SPECIES, b.data, b0 + p), s0);
+                    s1 = a.fma(DoubleVector.fromArray(SPECIES, b.data, b1 + p), s1);
+                    s2 = a.fma(DoubleVector.fromArray(SPECIES, b.data, b2 + p), s2);
+                    s3 = a.fma(DoubleVector.fromArray(SPECIES, b.data, b3 + p), s3);
+                }
+                double v0 = s0.reduceLanes(VectorOperators.ADD), v1 = s1.reduceLanes(VectorOperators.ADD);
+                double v2 = s2.reduceLanes(VectorOperators.ADD), v3 = s3.reduceLanes(VectorOperators.ADD);
+                for (; p < rows; p++) {
+                    double a = data[ai + p];
+                    v0 += a * b.data[b0 + p];
+                    v1 += a * b.data[b1 + p];
+                    v2 += a * b.data[b2 + p];
+                    v3 += a * b.data[b3 + p];
+                }
+                // the missing columns of the last block repeat its last column
+                target.data[target.indexOf(tc) + tr] = v0;
+                if (nc > 1)
+                    target.data[target.indexOf(tc + 1) + tr] = v1;
+                if (nc > 2)
+                    target.data[target.indexOf(tc + 2) + tr] = v2;
+                if (nc > 3)
+                    target.data[target.indexOf(tc + 3) + tr] = v3;
+            }
+        }
+        return target;
+    }
+
+    @Override
+    public CMVectorMatrix dot_transpose(CMVectorMatrix b, CMVectorMatrix target) {
+        assert columns == b.columns;
+        assert target.rows() == rows() && target.columns == b.rows();
+
+        // T(b)(p, j) = b(j, p) = b.data[b.indexOf(0) + j + p * b.rows]
+        broadcastProduct(b.data, b.indexOf(0), b.rows, 1, columns, target);
+        return target;
+    }
+
+    /**
+     * target = this . b, with b(p, j) = b[bOffset + p * bps + j * bjs]: a vector of rows of this is multiplied by
+     * broadcast values of 4 columns of b, accumulated in 4 vectors.
+     */
+    private void broadcastProduct(double[] b, int bOffset, int bps, int bjs, int k, CMVectorMatrix target) {
+        int bound = SPECIES.loopBound(rows);
+        int step = SPECIES.length();
+        for (int tc = 0; tc < target.columns; tc += 4) {
+            int nc = Math.min(4, target.columns - tc);
+            int b0 = bOffset + tc * bjs, b1 = b0 + Math.min(1, nc - 1) * bjs;
+            int b2 = b0 + Math.min(2, nc - 1) * bjs, b3 = b0 + Math.min(3, nc - 1) * bjs;
+            int t0 = target.indexOf(tc), t1 = target.indexOf(tc + Math.min(1, nc - 1));
+            int t2 = target.indexOf(tc + Math.min(2, nc - 1)), t3 = target.indexOf(tc + Math.min(3, nc - 1));
+            int r = 0;
+            for (; r < bound; r += step) {
+                DoubleVector s0 = DoubleVector.zero(SPECIES), s1 = s0, s2 = s0, s3 = s0;
+                for (int p = 0; p < k; p++) {
+                    DoubleVector a = DoubleVector.fromArray(SPECIES, data, indexOf(p) + r);
+                    int bp = p * bps;
+                    s0 = a.fma(DoubleVector.broadcast(SPECIES, b[b0 + bp]), s0);
+                    s1 = a.fma(DoubleVector.broadcast(SPECIES, b[b1 + bp]), s1);
+                    s2 = a.fma(DoubleVector.broadcast(SPECIES, b[b2 + bp]), s2);
+                    s3 = a.fma(DoubleVector.broadcast(SPECIES, b[b3 + bp]), s3);
+                }
+                // the missing columns of the last block repeat its last column
+                s3.intoArray(target.data, t3 + r);
+                s2.intoArray(target.data, t2 + r);
+                s1.intoArray(target.data, t1 + r);
+                s0.intoArray(target.data, t0 + r);
+            }
+            for (; r < rows; r++) {
+                for (int j = 0; j < nc; j++) {
+                    double v = 0;
+                    for (int p = 0; p < k; p++) {
+                        v += data[indexOf(p) + r] * b[bOffset + p * bps + (tc + j) * bjs];
+                    }
+                    target.data[target.indexOf(tc + j) + r] = v;
+                }
+            }
+        }
+    }
+
+    @Override
+    public CMVectorMatrix dot(CMVectorMatrix b) {
+        return dot(b, new CMVectorMatrix(rows(), b.columns()));
+    }
+
+    @Override
+    public CMVectorMatrix transpose_dot(CMVectorMatrix b) {
+        return transpose_dot(b, new CMVectorMatrix(columns(), b.columns()));
+    }
+
+    @Override
+    public CMVectorMatrix dot_transpose(CMVectorMatrix b) {
+        return dot_transpose(b, new CMVectorMatrix(rows(), b.rows()));
+    }
+
+    @Override
+    public CMVectorMatrix activate(Activation activation, boolean approximate, CMVectorMatrix target) {
+        if (activation == Activation.SOFTMAX) {
+            for (int c = 0; c < columns; c++) {
+                Activation.softmax(data, indexOf(c), target.data, target.indexOf(c), rows);
+            }
+        } else if (activation == Activation.SIGMOID && !approximate) {
+            sigmoid(false, target);
+        } else {
+            activation.activate(data, indexOf(0), target.data, target.indexOf(0), rows * columns, approximate);
+        }
+        return target;
+    }
+
+    @Override
+    public void derivative(Activation activation, boolean approximate, CMVectorMatrix target) {
+        if (activation == Activation.SIGMOID && !approximate)
+            sigmoid(true, target);
+        else
+            activation.derivative(data, indexOf(0), target.data, target.indexOf(0), rows * columns, approximate);
+    }
+
+    /**
+     * target = sigmoid(this), or sigmoid'(this) = sigmoid(this) * (1 - sigmoid(this)) if derivative
+     */
+    private void sigmoid(boolean derivative, CMVectorMatrix target) {
+        int length = size();
+        int ai = indexOf(0), ti = target.indexOf(0);
+        int bound = SPECIES.loopBound(length);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector s = one.div(DoubleVector.fromArray(SPECIES, data, ai + i)
+                                                 .neg()
+                                                 .lanewise(VectorOperators.EXP)
+                                                 .add(1));
+            if (derivative)
+                s = s.mul(one.sub(s));
+            s.intoArray(target.data, ti + i);
+        }
+        for (; i < length; i++) {
+            double v = data[ai + i];
+            target.data[ti + i] = derivative ? Activation.sigmoid_prime(v) : Activation.sigmoid(v);
+        }
+    }
+
+    @Override
+    public double softmaxCrossEntropy(IntUnaryOperator expectedIndex, CMVectorMatrix target) {
+        double cost = 0;
+        for (int c = 0; c < columns; c++) {
+            cost += Activation.softmaxCrossEntropy(data, indexOf(c), target.data, target.indexOf(c), rows,
+                    expectedIndex.applyAsInt(c));
+        }
+        return cost;
+    }
+
+    @Override
+    public int maxRowIndex(int column) {
+        int ci = indexOf(column);
+        int res = 0;
+        double max = data[ci];
+        for (int r = 1; r < rows; r++) {
+            double v = data[ci + r];
+            if (v > max) {
+                res = r;
+                max = v;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public int slide(int offset, int columns) {
+        this.colOffset = offset;
+        this.columns = Math.min(columns, totalColumns - colOffset);
+        return this.columns;
+    }
+
+    @Override
+    public CMVectorMatrix createView() {
+        return new CMVectorMatrix(this);
+    }
+
+    private int size() {
+        return rows * columns;
+    }
+
+    private int indexOf(int column) {
+        return (column + colOffset) * rows;
+    }
+
+    @Override
+    public String toString() {
+        return Matrix.toString(this);
+    }
+
+}